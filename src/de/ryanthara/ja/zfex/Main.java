@@ -26,12 +26,20 @@
 package de.ryanthara.ja.zfex;
 
 import de.ryanthara.ja.zfex.data.PreferenceHandler;
-import de.ryanthara.ja.zfex.gui.StatusPane;
-import javafx.application.Application;
+import de.ryanthara.ja.zfex.events.EventBus;
+import de.ryanthara.ja.zfex.events.EventSink;
+import de.ryanthara.ja.zfex.io.CubemapConverter;
+import de.ryanthara.ja.zfex.metrics.Metrics;
 
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.logging.FileHandler;
 import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.zip.Deflater;
 
 /**
  * This implements values, constants and objects for the complete ZFEx application as an abstract class.
@@ -43,7 +51,7 @@ import java.util.logging.Level;
  * @version 1
  * @since 1
  */
-public abstract class Main extends Application {
+public abstract class Main {
 
     /**
      * Contains the URL of the ZFEx website.
@@ -53,18 +61,6 @@ public abstract class Main extends Application {
      * The reference to the global FileHandler for logging into a single file.
      */
     public static FileHandler fileHandler;
-    /**
-     * The reference for read success of the laser radar project.
-     */
-    public static boolean isLoadedLaserRadarProject = false;
-    /**
-     * The reference for write success of the stand points coordinate file.
-     */
-    public static boolean isWrittenStandPointsFile = false;
-    /**
-     * The reference for write success of the viewer file.
-     */
-    public static boolean isWrittenViewerFile = false;
     /**
      * The reference to the logging level for ZFEx.
      */
@@ -78,9 +74,14 @@ public abstract class Main extends Application {
      */
     public static PreferenceHandler pref;
     /**
-     * The reference to the global application status bar.
+     * The reference to the global event bus for the status and the progress, which is shown by the status bar,
+     * or by the console in the headless mode.
+     */
+    public static final EventBus eventBus = new EventBus(EventBus.DEFAULT_CAPACITY);
+    /**
+     * The reference to the global metrics of parsing, writing and copying, which are summed up at the end of a run.
      */
-    public static StatusPane statusPane;
+    public static final Metrics metrics = new Metrics();
     /**
      * The reference to the use superior coordinate system check box.
      */
@@ -89,5 +90,158 @@ public abstract class Main extends Application {
      * The reference tot the use color pictures check box.
      */
     public static boolean useColorPictures;
+    /**
+     * The reference to the incremental sync mode of the image export.
+     */
+    public static boolean useIncrementalSync;
+    /**
+     * The reference to the compact viewer file without white space.
+     */
+    public static boolean useCompactViewerFile;
+    /**
+     * The reference to the compression level of the pre-compressed viewer file, 0 for none.
+     */
+    public static int viewerGzipLevel;
+    /**
+     * The reference to the number of viewpoints per viewer tile, 0 for no tiles.
+     */
+    public static int viewerTileCapacity;
+    /**
+     * The reference to forcing the written files of an export run to the disk.
+     */
+    public static boolean useFsync;
+    /**
+     * The reference to the formats of the coordinate files.
+     */
+    public static List<String> coordinateFormats;
+    /**
+     * The reference to the edge length of the exported cube map faces, 0 if no cube maps are exported.
+     */
+    public static int cubeFaceSize;
+    /**
+     * The reference to the edge length of the tiles of the cube map faces, 0 for one file per face.
+     */
+    public static int cubeTileSize;
+
+    private final static Logger logger = Logger.getLogger(Main.class.getName());
+
+    /**
+     * Initializes the logging, the options from the command line interface and the preferences. This is the
+     * first step of the graphical user interface and of the headless mode, and it does not need JavaFX.
+     *
+     * @param parameters named command line parameters
+     */
+    public static void initialize(Map<String, String> parameters) {
+        initLogging();
+
+        Main.cliParameters = parameters;
+        applyParameters(parameters);
+
+        Main.pref = new PreferenceHandler();
+    }
+
+    /**
+     * Parses the named parameters '--name=value' like the JavaFX application does, a parameter without value
+     * like '--headless' is stored as 'true'.
+     *
+     * @param args command line arguments
+     *
+     * @return named parameters
+     */
+    public static Map<String, String> parseNamedParameters(String... args) {
+        final Map<String, String> parameters = new HashMap<>();
+
+        for (String arg : args) {
+            if (arg.startsWith("--") && arg.length() > 2) {
+                final int separator = arg.indexOf('=');
+
+                if (separator > 2) {
+                    parameters.put(arg.substring(2, separator), arg.substring(separator + 1));
+                } else if (separator < 0) {
+                    parameters.put(arg.substring(2), "true");
+                }
+            }
+        }
+
+        return parameters;
+    }
+
+    /*
+     * Sets the options of the export from the command line interface, which are used by the graphical user
+     * interface and the headless mode.
+     */
+    private static void applyParameters(Map<String, String> parameters) {
+        // Copy only new or changed images with '--incremental_sync=true'
+        Main.useIncrementalSync = Boolean.parseBoolean(parameters.get("incremental_sync"));
+
+        // Write the viewer file without white space with '--compact_viewer=true'
+        Main.useCompactViewerFile = Boolean.parseBoolean(parameters.get("compact_viewer"));
+
+        // Compression level of the pre-compressed viewer file with '--gzip_level=9', '--gzip_level=0' disables it
+        try {
+            Main.viewerGzipLevel = Math.max(0, Math.min(9, Integer.parseInt(parameters.get("gzip_level"))));
+        } catch (NumberFormatException e) {
+            Main.viewerGzipLevel = Deflater.DEFAULT_COMPRESSION;
+        }
+
+        // Write the coordinate file in several formats with '--coordinate_formats=plain,csv,gsi,dxf,landxml'
+        Main.coordinateFormats = Arrays.asList(parameters.getOrDefault("coordinate_formats", "plain").split(","));
+
+        // Transform the coordinates with the preference parameters with '--superior_coordinate_system=true'
+        Main.useSuperiorCoordinateSystem = Boolean.parseBoolean(parameters.get("superior_coordinate_system"));
+
+        // Export the colored panoramic images as well with '--color_pictures=true'
+        Main.useColorPictures = Boolean.parseBoolean(parameters.get("color_pictures"));
+
+        // Force the written files of an export run to the disk with '--fsync=true'
+        Main.useFsync = Boolean.parseBoolean(parameters.get("fsync"));
+
+        // Write the viewpoints also as quadtree tiles with '--viewer_tile_capacity=500'
+        try {
+            Main.viewerTileCapacity = Integer.parseInt(parameters.getOrDefault("viewer_tile_capacity", "0"));
+        } catch (NumberFormatException e) {
+            Main.viewerTileCapacity = 0;
+        }
+
+        // Export cube maps with '--cube_face_size=1024' and tiled faces with '--cube_tile_size=512'
+        try {
+            Main.cubeFaceSize = Integer.parseInt(parameters.getOrDefault("cube_face_size", "0"));
+            Main.cubeTileSize = Integer.parseInt(parameters.getOrDefault("cube_tile_size", "0"));
+        } catch (NumberFormatException e) {
+            Main.cubeFaceSize = 0;
+            Main.cubeTileSize = 0;
+        }
+
+        // Invalid sizes would let every export run fail, so no cube maps are exported then
+        if ((Main.cubeFaceSize != 0 && Main.cubeFaceSize < CubemapConverter.MIN_FACE_SIZE) || Main.cubeTileSize < 0) {
+            logger.log(Level.WARNING, "invalid cube map face size " + Main.cubeFaceSize + " or tile size " +
+                    Main.cubeTileSize + ", no cube maps are exported");
+
+            Main.cubeFaceSize = 0;
+            Main.cubeTileSize = 0;
+        }
+    }
+
+    /*
+     * Logs into the rolling log files 'ZFEx_logfile[n].xml', every status text goes into the log file as well.
+     */
+    private static void initLogging() {
+        Main.loggingLevel = Level.FINEST;
+
+        logger.setLevel(Main.loggingLevel);
+
+        try {
+            FileHandler fh = new FileHandler("ZFEx_logfile%g.xml", 1024 * 1024, 10, true);
+            Main.fileHandler = fh;
+
+            logger.addHandler(fh);
+            logger.log(Level.INFO, "logging with level '" + Main.loggingLevel.getName() + "' for ZFEx enabled successful");
+        } catch (IOException e) {
+            System.err.println("Can not access file 'ZFEx_logfile[n].xml' " + e.getMessage());
+        }
+
+        // Every status text goes into the log file
+        Main.eventBus.subscribe(EventSink.of(logger), 250, false);
+    }
 
 } // end of Main
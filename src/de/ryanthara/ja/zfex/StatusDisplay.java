@@ -0,0 +1,67 @@
+/*
+ * License: MIT. Copyright (c) 2017 by Sebastian Aust (https://www.ryanthara.de/)
+ *
+ * This file is part of the package de.ryanthara.ja.zfex
+ *
+ * Copyright (c) 2017 ryanthara
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package de.ryanthara.ja.zfex;
+
+/**
+ * The <tt>StatusDisplay</tt> shows the status of ZFEx, which is a status icon, a status text and the progress of
+ * the running file operation.
+ * <p>
+ * In the graphical user interface this is the status bar, in the headless mode the status is written to the
+ * console. The workers don't call it directly, they publish their status to the
+ * {@link de.ryanthara.ja.zfex.events.EventBus}, which passes it to the display.
+ *
+ * @author sebastian
+ * @version 1
+ * @since 2
+ */
+public interface StatusDisplay {
+
+    int STATUS_OK = 0;
+    int STATUS_INFORMATION = 5;
+    int STATUS_ERROR = 10;
+
+    /**
+     * Sets the progress of the running file operation.
+     *
+     * @param progress the progress value between 0 and 1
+     */
+    void setProgress(double progress);
+
+    /**
+     * Sets the status icon.
+     *
+     * @param status status icon to be set
+     */
+    void setStatusIcon(int status);
+
+    /**
+     * Sets the status text with the given string.
+     *
+     * @param statusText status text to be set
+     */
+    void setStatusText(String statusText);
+
+} // end of StatusDisplay
@@ -25,7 +25,11 @@
  */
 package de.ryanthara.ja.zfex;
 
+import de.ryanthara.ja.zfex.cli.HeadlessRunner;
 import de.ryanthara.ja.zfex.gui.MainApplication;
+import javafx.application.Application;
+
+import java.util.Map;
 
 /**
  * This is the entry point of the program.
@@ -34,10 +38,31 @@ import de.ryanthara.ja.zfex.gui.MainApplication;
  * no Info.plist file used at the moment. This will be changed in a future version of ZFEx.
  * <p>
  * For more information see the <a href="https://developer.apple.com/library/mac/documentation/Java/Conceptual/Java14Development/00-Intro/JavaDevelopment.html#//apple_ref/doc/uid/TP40001911-SW1">Apple documentation about java</a> on the web.
+ * <p>
+ * The launcher does not extend a JavaFX class, so the headless mode '--headless' runs without loading JavaFX
+ * at all, for example on a build server without display. Otherwise the {@link MainApplication} is launched.
  *
  * @author sebastian
  * @version 1
  * @since 1
  */
-public class ZFEx extends MainApplication {
+public class ZFEx {
+
+    /**
+     * Main application startup, which runs the headless mode or launches the graphical user interface.
+     *
+     * @param args command line arguments
+     */
+    public static void main(String... args) {
+        final Map<String, String> parameters = Main.parseNamedParameters(args);
+
+        if (Boolean.parseBoolean(parameters.get("headless"))) {
+            Main.initialize(parameters);
+
+            System.exit(new HeadlessRunner(parameters).run());
+        }
+
+        Application.launch(MainApplication.class, args);
+    }
+
 } // end of ZFEx
@@ -0,0 +1,96 @@
+/*
+ * License: MIT. Copyright (c) 2017 by Sebastian Aust (https://www.ryanthara.de/)
+ *
+ * This file is part of the package de.ryanthara.ja.zfex.cli
+ *
+ * Copyright (c) 2017 ryanthara
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package de.ryanthara.ja.zfex.cli;
+
+import de.ryanthara.ja.zfex.StatusDisplay;
+
+import java.io.PrintStream;
+
+/**
+ * The <tt>ConsoleStatusDisplay</tt> writes the status of ZFEx to the console in the headless mode.
+ * <p>
+ * Every status text is written as one line with the status as prefix, errors go to the error stream.
+ * The progress is written in steps of ten percent, so the output stays readable in the log of a build server.
+ *
+ * @author sebastian
+ * @version 1
+ * @since 2
+ */
+class ConsoleStatusDisplay implements StatusDisplay {
+
+    private final PrintStream err;
+    private final PrintStream out;
+    private int lastProgressStep = -1;
+    private int status = STATUS_OK;
+
+    /**
+     * Constructs a status display for the given streams.
+     *
+     * @param out stream for the status and the progress
+     * @param err stream for the errors
+     */
+    ConsoleStatusDisplay(PrintStream out, PrintStream err) {
+        this.out = out;
+        this.err = err;
+    }
+
+    @Override
+    public synchronized void setProgress(double progress) {
+        final int step = (int) (Math.max(0, Math.min(1, progress)) * 10);
+
+        if (step != lastProgressStep) {
+            lastProgressStep = step;
+            out.println("  " + step * 10 + " %");
+        }
+    }
+
+    @Override
+    public synchronized void setStatusIcon(int status) {
+        this.status = status;
+    }
+
+    @Override
+    public synchronized void setStatusText(String statusText) {
+        if (statusText == null || statusText.isEmpty()) {
+            return;
+        }
+
+        lastProgressStep = -1;
+
+        switch (status) {
+            case STATUS_ERROR:
+                err.println("[ERROR] " + statusText);
+                break;
+            case STATUS_INFORMATION:
+                out.println("[INFO]  " + statusText);
+                break;
+            default:
+                out.println("[OK]    " + statusText);
+                break;
+        }
+    }
+
+} // end of ConsoleStatusDisplay
@@ -0,0 +1,582 @@
+/*
+ * License: MIT. Copyright (c) 2017 by Sebastian Aust (https://www.ryanthara.de/)
+ *
+ * This file is part of the package de.ryanthara.ja.zfex.cli
+ *
+ * Copyright (c) 2017 ryanthara
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package de.ryanthara.ja.zfex.cli;
+
+import de.ryanthara.ja.zfex.Main;
+import de.ryanthara.ja.zfex.data.AffineTransformation;
+import de.ryanthara.ja.zfex.data.PreferenceHandler;
+import de.ryanthara.ja.zfex.events.EventSink;
+import de.ryanthara.ja.zfex.io.CoordinateExportWriter;
+import de.ryanthara.ja.zfex.io.CubemapConverter;
+import de.ryanthara.ja.zfex.io.OverwritePolicy;
+import de.ryanthara.ja.zfex.io.PanoramaConverter;
+import de.ryanthara.ja.zfex.io.ParallelFileCopier;
+import de.ryanthara.ja.zfex.io.ParseCache;
+import de.ryanthara.ja.zfex.io.TransferMode;
+import de.ryanthara.ja.zfex.io.ViewerServer;
+import de.ryanthara.ja.zfex.jobs.BatchExport;
+import de.ryanthara.ja.zfex.jobs.ExportRun;
+import de.ryanthara.ja.zfex.jobs.RunResult;
+import de.ryanthara.ja.zfex.jobs.StageResult;
+import de.ryanthara.ja.zfex.jobs.WatchFolderDaemon;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * The <tt>HeadlessRunner</tt> runs a complete export of ZFEx without the graphical user interface.
+ * <p>
+ * The project file is parsed, the coordinate files are written, the panoramic images are exported and the
+ * viewer file is written by an {@link ExportRun}, like a click on the run button does it.
+ * The JavaFX toolkit is not initialized and no dialog is shown, existing files are handled by the
+ * {@link OverwritePolicy} of the parameter 'overwrite'. The status is written to the console and the result
+ * is returned as exit code, so ZFEx can be used on a build server.
+ * <p>
+ * The runner is started with '--headless' and uses the same named parameters as the graphical user interface,
+ * for example:
+ * <pre>
+ * java -jar ZFEx.jar --headless --project=scan.zfprj --export_folder=export --viewer_folder=viewer --overwrite=skip
+ * </pre>
+ * <p>
+ * With the parameter 'projects' the runner exports a list or glob of projects like 'scans/&#42;&#42;/&#42;.zfprj' at the
+ * same time by a {@link BatchExport}, every project into a folder with its name below the export folder.
+ * <p>
+ * With the parameter 'serve' the runner does not write any files. It serves the viewer files of the project by a
+ * local {@link ViewerServer} on the given port, so the project can be reviewed before it is exported.
+ * <p>
+ * With the parameter 'watch' the runner does not stop after one export. It watches the given folders with a
+ * {@link WatchFolderDaemon} and exports every project that LaserControl writes into them.
+ *
+ * @author sebastian
+ * @version 1
+ * @since 2
+ */
+public class HeadlessRunner {
+
+    /**
+     * Exit code of a successful run.
+     */
+    public static final int EXIT_OK = 0;
+    /**
+     * Exit code of a run that failed with an unexpected error.
+     */
+    public static final int EXIT_ERROR = 1;
+    /**
+     * Exit code of invalid or missing parameters.
+     */
+    public static final int EXIT_USAGE = 2;
+    /**
+     * Exit code of a project file that could not be read.
+     */
+    public static final int EXIT_PROJECT_FAILED = 3;
+    /**
+     * Exit code of coordinate files that could not be written.
+     */
+    public static final int EXIT_COORDINATES_FAILED = 4;
+    /**
+     * Exit code of panoramic images that could not be exported.
+     */
+    public static final int EXIT_IMAGES_FAILED = 5;
+    /**
+     * Exit code of a viewer file or tile pyramids that could not be written.
+     */
+    public static final int EXIT_VIEWER_FAILED = 6;
+    /**
+     * Exit code of written files that could not be committed.
+     */
+    public static final int EXIT_COMMIT_FAILED = 7;
+
+    private final static Logger logger = Logger.getLogger(HeadlessRunner.class.getName());
+
+    private final Map<String, String> parameters;
+    private final ParseCache parseCache = new ParseCache(ParseCache.getDefaultDirectory(), ParseCache.DEFAULT_SIZE_BUDGET);
+    private ParallelFileCopier fileCopier;
+    private OverwritePolicy overwritePolicy;
+    private AffineTransformation transformation;
+
+    /**
+     * Constructs a runner with the named command line parameters.
+     *
+     * @param parameters named command line parameters without the leading '--'
+     */
+    public HeadlessRunner(Map<String, String> parameters) {
+        this.parameters = parameters;
+
+        logger.setLevel(Main.loggingLevel);
+        logger.addHandler(Main.fileHandler);
+    }
+
+    /**
+     * Runs the export and returns the exit code. Every stage is done unless a stage it depends on failed,
+     * the first failure decides about the exit code.
+     *
+     * @return {@link #EXIT_OK} or the exit code of the first failed step
+     */
+    public int run() {
+        // Every status line is printed, the progress only in the period of the console
+        Main.eventBus.subscribe(EventSink.of(new ConsoleStatusDisplay(System.out, System.err)), 100, false);
+
+        final String project = getParameter("project");
+        final String export = getParameter("export_folder");
+        final String viewer = getParameter("viewer_folder");
+        final String projects = getParameter("projects");
+        final String watch = getParameter("watch");
+        final String serve = getParameter("serve");
+
+        // The viewer server does not write any files
+        if (!serve.isEmpty() && project.isEmpty()) {
+            return usage("the parameters 'serve' and 'project' are needed");
+        } else if (serve.isEmpty() && ((project.isEmpty() && projects.isEmpty() && watch.isEmpty()) || export.isEmpty())) {
+            return usage("the parameters 'project', 'projects' or 'watch' and 'export_folder' are needed");
+        }
+
+        final File projectFile = new File(project);
+        final File exportFolder = new File(export);
+        final File viewerFolder = new File(viewer);
+
+        if (watch.isEmpty() && projects.isEmpty() && !projectFile.isFile()) {
+            return usage("the project file " + projectFile + " does not exist");
+        } else if (serve.isEmpty() && !exportFolder.isDirectory()) {
+            return usage("the export folder " + exportFolder + " does not exist");
+        } else if (!viewer.isEmpty() && !viewerFolder.isDirectory()) {
+            return usage("the viewer folder " + viewerFolder + " does not exist");
+        }
+
+        // Changed projects are exported again, so the watch mode overwrites by default
+        try {
+            overwritePolicy = OverwritePolicy.parse(parameters.getOrDefault("overwrite", watch.isEmpty() ? "fail" : "overwrite"));
+        } catch (IllegalArgumentException e) {
+            return usage("unknown overwrite policy '" + parameters.get("overwrite") + "'");
+        }
+
+        if (overwritePolicy == OverwritePolicy.ASK) {
+            return usage("the overwrite policy 'ask' needs the graphical user interface");
+        }
+
+        // Only checks the formats, every run gets its own exporters because an exporter writes one file
+        try {
+            CoordinateExportWriter.loadExporters(Main.coordinateFormats);
+        } catch (IllegalArgumentException e) {
+            return usage(e.getMessage() + ", available are " + CoordinateExportWriter.getAvailableFormats());
+        }
+
+        // The graphical user interface ignores invalid cube map sizes, here they are an error
+        try {
+            final int faceSize = Integer.parseInt(parameters.getOrDefault("cube_face_size", "0").trim());
+            final int tileSize = Integer.parseInt(parameters.getOrDefault("cube_tile_size", "0").trim());
+
+            if (faceSize != 0 && faceSize < CubemapConverter.MIN_FACE_SIZE) {
+                return usage("the cube face size must be 0 or at least " + CubemapConverter.MIN_FACE_SIZE);
+            } else if (tileSize < 0) {
+                return usage("the cube tile size must not be negative");
+            }
+        } catch (NumberFormatException e) {
+            return usage("invalid cube face size '" + parameters.get("cube_face_size") + "' or tile size '" +
+                    parameters.get("cube_tile_size") + "'");
+        }
+
+        // One copier for all projects, so its limit per target file store applies to all of them
+        fileCopier = new ParallelFileCopier(ParallelFileCopier.DEFAULT_THREADS,
+                ParallelFileCopier.DEFAULT_TARGET_CONCURRENCY, getTransferMode());
+
+        // Transform into the superior coordinate system
+        if (Main.useSuperiorCoordinateSystem) {
+            final String system = Main.pref.getUserPref(PreferenceHandler.SUPERIOR_COORDINATE_SYSTEM);
+
+            try {
+                transformation = AffineTransformation.parse(system);
+            } catch (IllegalArgumentException e) {
+                logger.log(Level.SEVERE, "invalid parameters for the superior coordinate system", e);
+
+                return usage("invalid parameters for the superior coordinate system '" + system + "'");
+            }
+        }
+
+        try {
+            if (!serve.isEmpty()) {
+                return serve(serve, projectFile);
+            } else if (!watch.isEmpty()) {
+                return watch(watch, exportFolder, viewer.isEmpty() ? null : viewerFolder);
+            } else if (!projects.isEmpty()) {
+                return batch(projects, exportFolder, viewer.isEmpty() ? null : viewerFolder);
+            }
+
+            return export(projectFile, exportFolder, viewer.isEmpty() ? null : viewerFolder);
+        } catch (RuntimeException e) {
+            logger.log(Level.SEVERE, "headless export failed", e);
+            Main.eventBus.flush();
+            System.err.println("[ERROR] " + e);
+
+            return EXIT_ERROR;
+        }
+    }
+
+    /*
+     * Exports all projects of the list or glob patterns at the same time, every project into a folder with its
+     * name below the export folder. The first failed project decides about the exit code.
+     */
+    private int batch(String projects, File exportFolder, File viewerFolder) {
+        final List<File> projectFiles;
+
+        try {
+            projectFiles = BatchExport.findProjects(projects);
+        } catch (IOException e) {
+            return usage("can't search the projects '" + projects + "': " + e.getMessage());
+        }
+
+        if (projectFiles.isEmpty()) {
+            return usage("no project file matches '" + projects + "'");
+        }
+
+        // The export and the viewer files are named after the project
+        final Set<String> names = new HashSet<>();
+
+        for (File projectFile : projectFiles) {
+            if (!names.add(getProjectExportFolder(exportFolder, projectFile).getName())) {
+                return usage("there are several projects with the name " + projectFile.getName());
+            }
+        }
+
+        final int parallelism;
+
+        try {
+            parallelism = Integer.parseInt(parameters.getOrDefault("batch_parallelism",
+                    String.valueOf(BatchExport.DEFAULT_PARALLELISM)).trim());
+        } catch (NumberFormatException e) {
+            return usage("invalid batch parallelism '" + parameters.get("batch_parallelism") + "'");
+        }
+
+        if (parallelism < 1) {
+            return usage("the batch parallelism must be at least 1");
+        }
+
+        System.out.println("[INFO]  batch export of " + projectFiles.size() + " projects");
+
+        final Map<File, RunResult> results = new BatchExport(projectFiles, parallelism, projectFile ->
+                createExportRun(projectFile, getProjectExportFolder(exportFolder, projectFile), viewerFolder)).start().join();
+
+        int exitCode = EXIT_OK;
+
+        Main.eventBus.flush();
+
+        for (Map.Entry<File, RunResult> entry : results.entrySet()) {
+            System.out.println(entry.getKey());
+            System.out.println(entry.getValue().getSummary());
+            System.out.println(entry.getValue().getMetrics().getSummary());
+
+            final int projectExitCode = getExitCode(entry.getValue());
+
+            if (exitCode == EXIT_OK) {
+                exitCode = projectExitCode;
+            }
+        }
+
+        // The global metrics sum up the runs of all projects
+        System.out.println("all projects");
+        System.out.println(Main.metrics.getSummary());
+
+        return exitCode;
+    }
+
+    /*
+     * Creates an export run with the options of the command line.
+     */
+    private ExportRun createExportRun(File projectFile, File exportFolder, File viewerFolder) {
+        ExportRun exportRun = new ExportRun(projectFile, exportFolder, viewerFolder);
+        exportRun.setParseCache(parseCache);
+        exportRun.setOverwritePolicy(overwritePolicy);
+        exportRun.setCoordinateExporters(CoordinateExportWriter.loadExporters(Main.coordinateFormats));
+        exportRun.setFileCopier(fileCopier);
+        exportRun.setConverter(createPanoramaConverter());
+        exportRun.setTransformation(transformation);
+
+        return exportRun;
+    }
+
+    /*
+     * Runs the export stages like the run button and maps the first failed stage to its exit code.
+     */
+    private int export(File projectFile, File exportFolder, File viewerFolder) {
+        final RunResult result = createExportRun(projectFile, exportFolder, viewerFolder).start().join();
+
+        Main.eventBus.flush();
+
+        System.out.println(result.getSummary());
+        System.out.println(result.getMetrics().getSummary());
+
+        return getExitCode(result);
+    }
+
+    /*
+     * Returns the exit code of the first failed stage of a run.
+     */
+    private int getExitCode(RunResult result) {
+        final StageResult failure = result.getFirstFailure();
+
+        if (failure == null) {
+            return EXIT_OK;
+        } else if (failure.getException() != null) {
+            System.err.println("[ERROR] " + failure.getName() + ": " + failure.getException().getMessage());
+        }
+
+        if (failure.getStatus() == StageResult.Status.CANCELLED) {
+            return EXIT_ERROR;
+        }
+
+        switch (failure.getName()) {
+            case ExportRun.STAGE_PARSE:
+                return EXIT_PROJECT_FAILED;
+            case ExportRun.STAGE_COORDINATES:
+                return EXIT_COORDINATES_FAILED;
+            case ExportRun.STAGE_PNG:
+            case ExportRun.STAGE_JPG:
+            case ExportRun.STAGE_CUBEMAPS:
+                return EXIT_IMAGES_FAILED;
+            case ExportRun.STAGE_VIEWER:
+            case ExportRun.STAGE_TILES:
+                return EXIT_VIEWER_FAILED;
+            case ExportRun.STAGE_COMMIT:
+                return EXIT_COMMIT_FAILED;
+            default:
+                return EXIT_ERROR;
+        }
+    }
+
+    private PanoramaConverter createPanoramaConverter() {
+        PanoramaConverter converter = new PanoramaConverter();
+        converter.setTransferMode(getTransferMode());
+
+        // The command line parameter '--jpeg_quality=0.8' overrides the preference
+        final String quality = parameters.getOrDefault("jpeg_quality", Main.pref.getUserPref(PreferenceHandler.JPEG_QUALITY));
+
+        if (!quality.trim().equalsIgnoreCase("")) {
+            try {
+                converter.setJpegQuality(Float.parseFloat(quality.trim()));
+            } catch (IllegalArgumentException e) {
+                logger.log(Level.WARNING, "invalid jpeg quality '" + quality + "', the default quality is used");
+            }
+        }
+
+        return converter;
+    }
+
+    private String getParameter(String name) {
+        final String value = parameters.get(name);
+
+        return value == null ? "" : value.trim();
+    }
+
+    /*
+     * Returns the folder with the name of the project below the export folder and creates it if needed.
+     */
+    private File getProjectExportFolder(File exportFolder, File projectFile) {
+        final String name = projectFile.getName();
+        final File folder = new File(exportFolder, name.toLowerCase().endsWith(".zfprj") ?
+                name.substring(0, name.length() - ".zfprj".length()) : name);
+
+        if (!folder.isDirectory() && !folder.mkdirs()) {
+            logger.log(Level.WARNING, "can't create the export folder " + folder);
+        }
+
+        return folder;
+    }
+
+    private TransferMode getTransferMode() {
+        // The command line parameter '--transfer_mode=hard_link' overrides the preference
+        final String mode = parameters.getOrDefault("transfer_mode", Main.pref.getUserPref(PreferenceHandler.TRANSFER_MODE));
+
+        if (!mode.trim().equalsIgnoreCase("")) {
+            try {
+                return TransferMode.valueOf(mode.trim().toUpperCase());
+            } catch (IllegalArgumentException e) {
+                logger.log(Level.WARNING, "unknown transfer mode '" + mode + "', zero copy is used");
+            }
+        }
+
+        return TransferMode.ZERO_COPY;
+    }
+
+    /*
+     * Watches the folders and exports every changed project into a folder with its name below the export
+     * folder, until ZFEx is stopped.
+     */
+    private int watch(String watch, File exportFolder, File viewerFolder) {
+        final List<Path> roots = new ArrayList<>();
+
+        for (String root : watch.split(",")) {
+            if (!root.trim().isEmpty()) {
+                roots.add(Paths.get(root.trim()));
+            }
+        }
+
+        for (Path root : roots) {
+            if (!Files.isDirectory(root)) {
+                return usage("the watch folder " + root + " does not exist");
+            }
+        }
+
+        final long debounceMillis;
+
+        try {
+            debounceMillis = Long.parseLong(parameters.getOrDefault("watch_debounce",
+                    String.valueOf(WatchFolderDaemon.DEFAULT_DEBOUNCE_MILLIS)).trim());
+        } catch (NumberFormatException e) {
+            return usage("invalid debounce time '" + parameters.get("watch_debounce") + "'");
+        }
+
+        final WatchFolderDaemon daemon;
+
+        try {
+            daemon = new WatchFolderDaemon(roots, debounceMillis, projectFile -> {
+                // Only the changed images are copied again
+                ExportRun exportRun = createExportRun(projectFile, getProjectExportFolder(exportFolder, projectFile),
+                        viewerFolder);
+                exportRun.setIncrementalSync(true);
+
+                return exportRun;
+            });
+        } catch (IOException e) {
+            logger.log(Level.SEVERE, "can't watch the folders " + roots, e);
+            System.err.println("[ERROR] can't watch the folders " + roots + ": " + e.getMessage());
+
+            return EXIT_ERROR;
+        }
+
+        final Thread watchThread = Thread.currentThread();
+        final CountDownLatch stopped = new CountDownLatch(1);
+
+        // Stops watching with Ctrl+C or when the service is stopped, the daemon is closed by the watching thread
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            watchThread.interrupt();
+
+            try {
+                stopped.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }, "ZFEx-watch-shutdown"));
+
+        try {
+            System.out.println("[INFO]  watching " + roots + ", stop with Ctrl+C");
+
+            daemon.run();
+        } finally {
+            try {
+                daemon.close();
+            } catch (IOException e) {
+                logger.log(Level.WARNING, "can't stop watching", e);
+            }
+
+            stopped.countDown();
+        }
+
+        return EXIT_OK;
+    }
+
+    /*
+     * Serves the viewer files of the project by a local HTTP server until ZFEx is stopped.
+     */
+    private int serve(String serve, File projectFile) {
+        final int port;
+
+        try {
+            port = Integer.parseInt(serve);
+        } catch (NumberFormatException e) {
+            return usage("invalid port '" + serve + "'");
+        }
+
+        // Only reachable from the computer of the reviewer
+        final InetSocketAddress address = new InetSocketAddress(
+                parameters.getOrDefault("serve_address", InetAddress.getLoopbackAddress().getHostAddress()), port);
+
+        try {
+            ViewerServer server = new ViewerServer(projectFile, address, ViewerServer.DEFAULT_CACHE_SIZE);
+            server.setCompact(Main.useCompactViewerFile);
+            server.setParseCache(parseCache);
+            server.setTileCapacity(Main.viewerTileCapacity);
+            server.setTransformation(transformation);
+
+            final CountDownLatch stopped = new CountDownLatch(1);
+
+            // Stops serving with Ctrl+C or when the service is stopped
+            Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+                try {
+                    server.close();
+                } catch (IOException e) {
+                    logger.log(Level.WARNING, "can't stop the viewer server", e);
+                } finally {
+                    stopped.countDown();
+                }
+            }, "ZFEx-serve-shutdown"));
+
+            server.start();
+
+            System.out.println("[INFO]  serving the viewer files of " + projectFile.getName() + " on http://" +
+                    server.getAddress().getHostString() + ":" + server.getAddress().getPort() + "/, stop with Ctrl+C");
+
+            stopped.await();
+        } catch (IOException e) {
+            logger.log(Level.SEVERE, "can't start the viewer server on " + address, e);
+            System.err.println("[ERROR] can't start the viewer server on " + address + ": " + e.getMessage());
+
+            return EXIT_ERROR;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        return EXIT_OK;
+    }
+
+    private int usage(String message) {
+        System.err.println("[ERROR] " + message);
+        System.err.println();
+        System.err.println("usage: ZFEx --headless --project=<file.zfprj> --export_folder=<folder> [--viewer_folder=<folder>]");
+        System.err.println("       ZFEx --headless --projects=<file.zfprj|glob>[,...] --export_folder=<folder> [--viewer_folder=<folder>]");
+        System.err.println("            [--batch_parallelism=<stages>]");
+        System.err.println("       ZFEx --headless --serve=<port> --project=<file.zfprj> [--serve_address=<address>]");
+        System.err.println("       ZFEx --headless --watch=<folder>[,<folder>] --export_folder=<folder> [--viewer_folder=<folder>]");
+        System.err.println("            [--watch_debounce=<milliseconds>]");
+        System.err.println("            [--overwrite=fail|skip|overwrite] [--coordinate_formats=" +
+                String.join(",", CoordinateExportWriter.getAvailableFormats()) + "]");
+        System.err.println("            [--cube_face_size=<pixels>] [--cube_tile_size=<pixels>]");
+
+        return EXIT_USAGE;
+    }
+
+} // end of HeadlessRunner
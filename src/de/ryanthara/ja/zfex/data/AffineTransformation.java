@@ -0,0 +1,245 @@
+/*
+ * License: MIT. Copyright (c) 2017 by Sebastian Aust (https://www.ryanthara.de/)
+ *
+ * This file is part of the package de.ryanthara.ja.zfex.data
+ *
+ * Copyright (c) 2017 ryanthara
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package de.ryanthara.ja.zfex.data;
+
+import java.util.Arrays;
+
+/**
+ * The <tt>AffineTransformation</tt> describes a three dimensional affine transformation into a superior
+ * coordinate system.
+ * <p>
+ * The transformation is stored as the upper three rows of a homogeneous 4x4 matrix in row major order,
+ * which is the same layout as the 'RegisterMatrix' of a ZF Laser Radar viewpoint. A seven parameter
+ * Helmert transformation is a special case of it and can be created with
+ * {@link #helmert(double, double, double, double, double, double, double)}.
+ *
+ * @author sebastian
+ * @version 1
+ * @since 2
+ */
+public final class AffineTransformation {
+
+    /**
+     * The transformation that does not change anything.
+     */
+    public static final AffineTransformation IDENTITY = new AffineTransformation(new double[]{
+            1, 0, 0, 0,
+            0, 1, 0, 0,
+            0, 0, 1, 0});
+
+    private static final double ARC_SECONDS_TO_RADIANS = Math.PI / (180d * 3600d);
+
+    private final double[] m;
+
+    private AffineTransformation(double[] m) {
+        this.m = m;
+    }
+
+    /**
+     * Creates an affine transformation from the twelve values of the upper three matrix rows in row major order.
+     *
+     * @param values twelve matrix values
+     *
+     * @return affine transformation
+     */
+    public static AffineTransformation affine(double... values) {
+        if (values.length != 12) {
+            throw new IllegalArgumentException("an affine transformation needs 12 values, got " + values.length);
+        }
+
+        return new AffineTransformation(values.clone());
+    }
+
+    /**
+     * Creates a seven parameter Helmert transformation with the position vector rotation convention.
+     * <p>
+     * The rotation angles are small angles, so the linearized rotation matrix is used like it is common
+     * in geodetic datum transformations.
+     *
+     * @param tx       translation in x direction
+     * @param ty       translation in y direction
+     * @param tz       translation in z direction
+     * @param rx       rotation around the x axis in radians
+     * @param ry       rotation around the y axis in radians
+     * @param rz       rotation around the z axis in radians
+     * @param scalePPM scale difference in parts per million
+     *
+     * @return Helmert transformation
+     */
+    public static AffineTransformation helmert(double tx, double ty, double tz,
+                                               double rx, double ry, double rz, double scalePPM) {
+        final double s = 1d + scalePPM * 1e-6;
+
+        return new AffineTransformation(new double[]{
+                s, -s * rz, s * ry, tx,
+                s * rz, s, -s * rx, ty,
+                -s * ry, s * rx, s, tz});
+    }
+
+    /**
+     * Parses a transformation from a string with comma, semicolon or white space separated values.
+     * <p>
+     * Seven values are read as Helmert parameters (tx, ty, tz, rx, ry, rz, scale) with the rotations in arc seconds
+     * and the scale in parts per million. Twelve values are read as the upper three rows of an affine matrix.
+     *
+     * @param parameters parameter string
+     *
+     * @return parsed transformation
+     *
+     * @throws IllegalArgumentException if the string does not contain 7 or 12 numbers
+     */
+    public static AffineTransformation parse(String parameters) {
+        String[] tokens = parameters.trim().split("[\\s,;]+");
+        double[] values = new double[tokens.length];
+
+        try {
+            for (int i = 0; i < tokens.length; i++) {
+                values[i] = Double.parseDouble(tokens[i]);
+            }
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("invalid transformation parameters: " + parameters, e);
+        }
+
+        switch (values.length) {
+            case 7:
+                return helmert(values[0], values[1], values[2],
+                        values[3] * ARC_SECONDS_TO_RADIANS, values[4] * ARC_SECONDS_TO_RADIANS,
+                        values[5] * ARC_SECONDS_TO_RADIANS, values[6]);
+            case 12:
+                return affine(values);
+            default:
+                throw new IllegalArgumentException("transformation needs 7 or 12 values: " + parameters);
+        }
+    }
+
+    /**
+     * Returns the matrix value at the given row and column of the upper three rows.
+     *
+     * @param row    row index (0..2)
+     * @param column column index (0..3)
+     *
+     * @return matrix value
+     */
+    public double get(int row, int column) {
+        return m[row * 4 + column];
+    }
+
+    /**
+     * Returns a copy of the twelve matrix values in row major order.
+     *
+     * @return matrix values
+     */
+    public double[] toArray() {
+        return m.clone();
+    }
+
+    /**
+     * Returns the transformation that applies the given transformation first and this one afterwards.
+     *
+     * @param first transformation to apply first
+     *
+     * @return concatenated transformation
+     */
+    public AffineTransformation concatenate(AffineTransformation first) {
+        double[] matrix = Arrays.copyOf(first.m, 16);
+        matrix[15] = 1d;
+
+        transformMatrix(matrix, 0);
+
+        return new AffineTransformation(Arrays.copyOf(matrix, 12));
+    }
+
+    /**
+     * Transforms the point (x, y, z) and writes the result into the target array.
+     *
+     * @param x      x coordinate
+     * @param y      y coordinate
+     * @param z      z coordinate
+     * @param target array with at least three elements for the transformed coordinates
+     */
+    public void transformPoint(double x, double y, double z, double[] target) {
+        target[0] = m[0] * x + m[1] * y + m[2] * z + m[3];
+        target[1] = m[4] * x + m[5] * y + m[6] * z + m[7];
+        target[2] = m[8] * x + m[9] * y + m[10] * z + m[11];
+    }
+
+    /**
+     * Multiplies this transformation with the homogeneous 4x4 matrix in row major order that starts at the
+     * offset of the given array. The result replaces the matrix, which is the register matrix of a viewpoint
+     * expressed in the superior coordinate system afterwards.
+     *
+     * @param matrix array with the 4x4 matrix
+     * @param offset offset of the first matrix value
+     */
+    public void transformMatrix(double[] matrix, int offset) {
+        for (int column = 0; column < 4; column++) {
+            final double b0 = matrix[offset + column];
+            final double b1 = matrix[offset + 4 + column];
+            final double b2 = matrix[offset + 8 + column];
+            final double b3 = matrix[offset + 12 + column];
+
+            matrix[offset + column] = m[0] * b0 + m[1] * b1 + m[2] * b2 + m[3] * b3;
+            matrix[offset + 4 + column] = m[4] * b0 + m[5] * b1 + m[6] * b2 + m[7] * b3;
+            matrix[offset + 8 + column] = m[8] * b0 + m[9] * b1 + m[10] * b2 + m[11] * b3;
+        }
+    }
+
+    /**
+     * Multiplies the 3x3 linear part of this transformation with the 3x3 rotation part of a register matrix in
+     * row major order that starts at the offset of the given array. The result replaces the rotation, the
+     * translation part of the register matrix is transformed like a point.
+     *
+     * @param rotation array with the 3x3 rotation
+     * @param offset   offset of the first rotation value
+     */
+    public void transformRotation(double[] rotation, int offset) {
+        for (int column = 0; column < 3; column++) {
+            final double b0 = rotation[offset + column];
+            final double b1 = rotation[offset + 3 + column];
+            final double b2 = rotation[offset + 6 + column];
+
+            rotation[offset + column] = m[0] * b0 + m[1] * b1 + m[2] * b2;
+            rotation[offset + 3 + column] = m[4] * b0 + m[5] * b1 + m[6] * b2;
+            rotation[offset + 6 + column] = m[8] * b0 + m[9] * b1 + m[10] * b2;
+        }
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        return this == o || (o instanceof AffineTransformation && Arrays.equals(m, ((AffineTransformation) o).m));
+    }
+
+    @Override
+    public int hashCode() {
+        return Arrays.hashCode(m);
+    }
+
+    @Override
+    public String toString() {
+        return "AffineTransformation" + Arrays.toString(m);
+    }
+
+} // end of AffineTransformation
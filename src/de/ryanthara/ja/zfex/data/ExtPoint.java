@@ -28,6 +28,8 @@ package de.ryanthara.ja.zfex.data;
 /**
  * The <tt>ExtPoint</tt> is used to hold the extended point information of the measured scan stations for writing
  * coordinate files and GeoJSON files.
+ * <p>
+ * Large numbers of points are held in a {@link ViewpointTable}, which returns its rows as views of this class.
  *
  * @author sebastian
  * @version 1
@@ -55,6 +57,12 @@ public class ExtPoint {
         this.z = z;
     }
 
+    /**
+     * Constructs a new extended point without values for subclasses that override all getters.
+     */
+    protected ExtPoint() {
+    }
+
     /**
      * Returns the point number string.
      *
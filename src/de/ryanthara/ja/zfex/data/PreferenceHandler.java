@@ -42,6 +42,23 @@ public class PreferenceHandler implements PreferenceChangeListener {
      * Member for the preference key for the RyCON position on the first monitor.
      */
     public final static String LAST_POS_PRIMARY_MONITOR = "param_pos_primary_monitor";
+    /**
+     * Member for the preference key for the transformation parameters into the superior coordinate system.
+     * <p>
+     * The value contains seven Helmert parameters (tx, ty, tz, rx, ry, rz in arc seconds, scale in ppm)
+     * or twelve affine matrix values.
+     */
+    public final static String SUPERIOR_COORDINATE_SYSTEM = "param_superior_coordinate_system";
+    /**
+     * Member for the preference key for the transfer mode of the exported images.
+     * <p>
+     * The value is the name of a {@link de.ryanthara.ja.zfex.io.TransferMode}, for example 'AUTO' or 'HARD_LINK'.
+     */
+    public final static String TRANSFER_MODE = "param_transfer_mode";
+    /**
+     * Member for the preference key for the quality of the exported JPEG files between 0 and 1.
+     */
+    public final static String JPEG_QUALITY = "param_jpeg_quality";
     private Preferences userPreferences;
 
     public PreferenceHandler() {
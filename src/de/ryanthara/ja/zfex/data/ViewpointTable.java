@@ -0,0 +1,812 @@
+/*
+ * License: MIT. Copyright (c) 2017 by Sebastian Aust (https://www.ryanthara.de/)
+ *
+ * This file is part of the package de.ryanthara.ja.zfex.data
+ *
+ * Copyright (c) 2017 ryanthara
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package de.ryanthara.ja.zfex.data;
+
+import de.ryanthara.ja.zfex.tools.CoordinateFormatter;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * The <tt>ViewpointTable</tt> holds the viewpoints of a ZF Laser Radar project in a column oriented way.
+ * <p>
+ * The coordinates are stored in primitive double columns and the scan names are dictionary encoded. Every
+ * coordinate remembers the number of fraction digits of its string in the project file, and the rare strings
+ * that can not be reproduced from the value and the fraction digits, like '4.5123e+001', are kept as they are.
+ * So the coordinates are written exactly like in the project file.
+ * <p>
+ * Of the 4x4 'RegisterMatrix' of every viewpoint only the 3x3 rotation part is kept in a primitive column,
+ * because the translation part equals the coordinates and the last row is always (0, 0, 0, 1). So a row costs
+ * about 103 bytes: 4 for the name id, 24 for the coordinates, 3 for the fraction digits and 72 for the
+ * rotation, instead of four string objects and a matrix per point.
+ * <p>
+ * The columns are accessible directly for batch operations like transformations, and every row can be viewed
+ * as an {@link ExtPoint} for the existing consumers.
+ *
+ * @author sebastian
+ * @version 1
+ * @since 2
+ */
+public class ViewpointTable {
+
+    /**
+     * Number of values of one complete register matrix.
+     */
+    public static final int MATRIX_SIZE = 16;
+    /**
+     * Number of values of one rotation part of a register matrix in the rotation column.
+     */
+    public static final int ROTATION_SIZE = 9;
+    /**
+     * Axis of the x coordinate.
+     */
+    public static final int X = 0;
+    /**
+     * Axis of the y coordinate.
+     */
+    public static final int Y = 1;
+    /**
+     * Axis of the z coordinate.
+     */
+    public static final int Z = 2;
+
+    private static final int AXES = 3;
+
+    private static final int DEFAULT_CAPACITY = 64;
+
+    private final ArrayList<String> dictionary = new ArrayList<>();
+    private final HashMap<String, Integer> dictionaryIndex = new HashMap<>();
+    // coordinate strings that are not reproduced by the value and its fraction digits, by index * AXES + axis
+    private final HashMap<Integer, String> texts = new HashMap<>();
+
+    private int fractionDigits = -1;
+    private CoordinateFormatter formatter;
+    private int[] nameIds;
+    private double[] rotations;
+    private byte[] scales;
+    private int size;
+    private double[] x;
+    private double[] y;
+    private double[] z;
+
+    /**
+     * Constructs a new empty table with a default capacity.
+     */
+    public ViewpointTable() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Constructs a new empty table with the given initial capacity.
+     *
+     * @param capacity initial number of rows
+     */
+    public ViewpointTable(int capacity) {
+        capacity = Math.max(capacity, 1);
+
+        nameIds = new int[capacity];
+        rotations = new double[capacity * ROTATION_SIZE];
+        scales = new byte[capacity * AXES];
+        x = new double[capacity];
+        y = new double[capacity];
+        z = new double[capacity];
+    }
+
+    /**
+     * Creates a new table from an array of {@link ExtPoint}. The string coordinates are parsed into doubles
+     * and their number of fraction digits is taken over from the strings.
+     *
+     * @param extPoints array of extended points
+     *
+     * @return new table with one row for every extended point
+     */
+    public static ViewpointTable fromExtPoints(ExtPoint[] extPoints) {
+        ViewpointTable table = new ViewpointTable(extPoints.length);
+
+        for (ExtPoint extPoint : extPoints) {
+            table.add(extPoint.getNumber(), extPoint.getX(), extPoint.getY(), extPoint.getZ());
+        }
+
+        return table;
+    }
+
+    /**
+     * Creates a new table from existing columns, for example from a stored snapshot. The arrays are taken over
+     * without copying.
+     *
+     * @param dictionary scan names by their dictionary id
+     * @param nameIds    dictionary id of the scan name of every row
+     * @param rotations  rotation parts of the register matrices with {@link #ROTATION_SIZE} values per row
+     * @param x          x coordinate of every row
+     * @param y          y coordinate of every row
+     * @param z          z coordinate of every row
+     * @param scales     number of fraction digits of the x, y and z coordinate of every row, see
+     *                   {@link #getScaleColumn()}
+     * @param texts      coordinate strings that are not reproduced by the value and its fraction digits, see
+     *                   {@link #getCoordinateTexts()}
+     * @param size       number of rows
+     *
+     * @return new table with the given columns
+     */
+    public static ViewpointTable fromColumns(String[] dictionary, int[] nameIds, double[] rotations, double[] x,
+                                             double[] y, double[] z, byte[] scales, Map<Integer, String> texts,
+                                             int size) {
+        if (nameIds.length < size || rotations.length < size * ROTATION_SIZE || x.length < size || y.length < size
+                || z.length < size || scales.length < size * AXES) {
+            throw new IllegalArgumentException("columns are smaller than the size " + size);
+        }
+
+        ViewpointTable table = new ViewpointTable(1);
+
+        for (String name : dictionary) {
+            table.encode(name);
+        }
+
+        // all columns get the capacity of the name id column
+        final int capacity = nameIds.length;
+
+        table.nameIds = nameIds;
+        table.rotations = rotations.length < capacity * ROTATION_SIZE
+                ? Arrays.copyOf(rotations, capacity * ROTATION_SIZE) : rotations;
+        table.x = x.length < capacity ? Arrays.copyOf(x, capacity) : x;
+        table.y = y.length < capacity ? Arrays.copyOf(y, capacity) : y;
+        table.z = z.length < capacity ? Arrays.copyOf(z, capacity) : z;
+        table.scales = scales.length < capacity * AXES ? Arrays.copyOf(scales, capacity * AXES) : scales;
+        table.texts.putAll(texts);
+        table.size = size;
+
+        for (int i = 0; i < size * AXES; i++) {
+            table.fractionDigits = Math.max(table.fractionDigits, scales[i]);
+        }
+
+        return table;
+    }
+
+    /**
+     * Adds a new row to the table. The register matrix of the row is a pure translation to the coordinates,
+     * which are formatted with the shortest representation.
+     *
+     * @param name scan name respectively point number
+     * @param x    x coordinate
+     * @param y    y coordinate
+     * @param z    z coordinate
+     *
+     * @return index of the added row
+     */
+    public int add(String name, double x, double y, double z) {
+        ensureCapacity(size + 1);
+
+        nameIds[size] = encode(name);
+        Arrays.fill(scales, size * AXES, size * AXES + AXES, (byte) -1);
+        this.x[size] = x;
+        this.y[size] = y;
+        this.z[size] = z;
+
+        final int offset = size * ROTATION_SIZE;
+
+        Arrays.fill(rotations, offset, offset + ROTATION_SIZE, 0d);
+        rotations[offset] = 1d;
+        rotations[offset + 4] = 1d;
+        rotations[offset + 8] = 1d;
+
+        return size++;
+    }
+
+    /**
+     * Adds a new row to the table with coordinates given as decimal strings.
+     * <p>
+     * The number of fraction digits of every string is remembered and used for formatting the coordinate, so
+     * the written values look like the ones in the project file. A string that is not reproduced this way, like
+     * '4.5123e+001' or '+12.5', is kept as it is until the coordinate changes.
+     *
+     * @param name scan name respectively point number
+     * @param x    x coordinate as decimal string
+     * @param y    y coordinate as decimal string
+     * @param z    z coordinate as decimal string
+     *
+     * @return index of the added row
+     */
+    public int add(String name, String x, String y, String z) {
+        final int index = add(name, Double.parseDouble(x), Double.parseDouble(y), Double.parseDouble(z));
+
+        setScale(index, X, x);
+        setScale(index, Y, y);
+        setScale(index, Z, z);
+
+        return index;
+    }
+
+    /**
+     * Returns the number of rows.
+     *
+     * @return number of rows
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Returns the scan name respectively point number of a row.
+     *
+     * @param index row index
+     *
+     * @return scan name
+     */
+    public String getName(int index) {
+        checkIndex(index);
+
+        return dictionary.get(nameIds[index]);
+    }
+
+    /**
+     * Returns the dictionary id of the scan name of a row.
+     *
+     * @param index row index
+     *
+     * @return dictionary id of the scan name
+     */
+    public int getNameId(int index) {
+        checkIndex(index);
+
+        return nameIds[index];
+    }
+
+    /**
+     * Returns the number of distinct scan names.
+     *
+     * @return size of the scan name dictionary
+     */
+    public int getDictionarySize() {
+        return dictionary.size();
+    }
+
+    /**
+     * Returns the scan name for a dictionary id.
+     *
+     * @param nameId dictionary id
+     *
+     * @return scan name
+     */
+    public String getDictionaryName(int nameId) {
+        return dictionary.get(nameId);
+    }
+
+    /**
+     * Returns the x coordinate of a row.
+     *
+     * @param index row index
+     *
+     * @return x coordinate
+     */
+    public double getX(int index) {
+        checkIndex(index);
+
+        return x[index];
+    }
+
+    /**
+     * Returns the y coordinate of a row.
+     *
+     * @param index row index
+     *
+     * @return y coordinate
+     */
+    public double getY(int index) {
+        checkIndex(index);
+
+        return y[index];
+    }
+
+    /**
+     * Returns the z coordinate of a row.
+     *
+     * @param index row index
+     *
+     * @return z coordinate
+     */
+    public double getZ(int index) {
+        checkIndex(index);
+
+        return z[index];
+    }
+
+    /**
+     * Sets the coordinates of a row, which are the translation part of the register matrix as well.
+     *
+     * @param index row index
+     * @param x     x coordinate
+     * @param y     y coordinate
+     * @param z     z coordinate
+     */
+    public void setCoordinates(int index, double x, double y, double z) {
+        checkIndex(index);
+
+        updateCoordinates(index, x, y, z);
+    }
+
+    /**
+     * Copies the 4x4 register matrix of a row in row major order into the target array. The matrix is put
+     * together from the rotation part and the coordinates, the last row is (0, 0, 0, 1).
+     *
+     * @param index  row index
+     * @param target array with at least 16 elements
+     *
+     * @return the target array
+     */
+    public double[] getRegisterMatrix(int index, double[] target) {
+        checkIndex(index);
+
+        final int offset = index * ROTATION_SIZE;
+
+        for (int row = 0; row < 3; row++) {
+            System.arraycopy(rotations, offset + row * 3, target, row * 4, 3);
+        }
+
+        target[3] = x[index];
+        target[7] = y[index];
+        target[11] = z[index];
+        target[12] = 0d;
+        target[13] = 0d;
+        target[14] = 0d;
+        target[15] = 1d;
+
+        return target;
+    }
+
+    /**
+     * Sets the register matrix of a row. The coordinates of the row are taken from the translation part.
+     * <p>
+     * Only the upper three rows of the matrix are read, the last row of a register matrix is always
+     * (0, 0, 0, 1).
+     *
+     * @param index  row index
+     * @param values 12 or 16 matrix values in row major order
+     */
+    public void setRegisterMatrix(int index, double[] values) {
+        checkIndex(index);
+
+        if (values.length != 12 && values.length != MATRIX_SIZE) {
+            throw new IllegalArgumentException("register matrix needs 12 or 16 values, got " + values.length);
+        }
+
+        final int offset = index * ROTATION_SIZE;
+
+        for (int row = 0; row < 3; row++) {
+            System.arraycopy(values, row * 4, rotations, offset + row * 3, 3);
+        }
+
+        updateCoordinates(index, values[3], values[7], values[11]);
+    }
+
+    /**
+     * Returns the backing x column. Only the first {@link #size()} values are valid.
+     *
+     * @return backing x column
+     */
+    public double[] getXColumn() {
+        return x;
+    }
+
+    /**
+     * Returns the backing y column. Only the first {@link #size()} values are valid.
+     *
+     * @return backing y column
+     */
+    public double[] getYColumn() {
+        return y;
+    }
+
+    /**
+     * Returns the backing z column. Only the first {@link #size()} values are valid.
+     *
+     * @return backing z column
+     */
+    public double[] getZColumn() {
+        return z;
+    }
+
+    /**
+     * Returns the backing column with the dictionary ids of the scan names. Only the first {@link #size()}
+     * values are valid.
+     *
+     * @return backing name id column
+     */
+    public int[] getNameIdColumn() {
+        return nameIds;
+    }
+
+    /**
+     * Returns the backing column with the number of fraction digits of the x, y and z coordinate of every row,
+     * or -1 for the shortest representation. Only the first {@link #size()} times three values are valid.
+     *
+     * @return backing scale column
+     */
+    public byte[] getScaleColumn() {
+        return scales;
+    }
+
+    /**
+     * Returns the coordinate strings of the project file that are not reproduced by the value and its fraction
+     * digits. The key is the row index times three plus the axis.
+     *
+     * @return unmodifiable map of the coordinate strings
+     */
+    public Map<Integer, String> getCoordinateTexts() {
+        return Collections.unmodifiableMap(texts);
+    }
+
+    /**
+     * Forgets the coordinate strings of the project file after the coordinate columns were changed directly,
+     * for example by a transformation. The coordinates keep their number of fraction digits.
+     */
+    public void clearCoordinateTexts() {
+        texts.clear();
+    }
+
+    /**
+     * Returns the backing column with the 3x3 rotation part of the register matrices, {@link #ROTATION_SIZE}
+     * values per row in row major order. Only the first {@link #size()} rotations are valid.
+     *
+     * @return backing rotation column
+     */
+    public double[] getRotationColumn() {
+        return rotations;
+    }
+
+    /**
+     * Returns the highest number of fraction digits of all coordinates, which is used for formatting values
+     * derived from the coordinates, like the bounds of the viewpoints.
+     *
+     * @return number of fraction digits or -1 for the shortest representation
+     */
+    public int getFractionDigits() {
+        return fractionDigits;
+    }
+
+    /**
+     * Returns the number of fraction digits of a coordinate.
+     *
+     * @param index row index
+     * @param axis  axis {@link #X}, {@link #Y} or {@link #Z}
+     *
+     * @return number of fraction digits or -1 for the shortest representation
+     */
+    public int getScale(int index, int axis) {
+        checkIndex(index);
+
+        return scales[index * AXES + axis];
+    }
+
+    /**
+     * Formats a coordinate like in the project file into the buffer of the formatter, which can be read until
+     * the formatter is used again.
+     *
+     * @param index     row index
+     * @param axis      axis {@link #X}, {@link #Y} or {@link #Z}
+     * @param formatter formatter of the calling writer
+     *
+     * @return length of the formatted coordinate
+     */
+    public int formatCoordinate(int index, int axis, CoordinateFormatter formatter) {
+        checkIndex(index);
+
+        final String text = texts.isEmpty() ? null : texts.get(index * AXES + axis);
+
+        if (text != null) {
+            return formatter.format(text);
+        }
+
+        return formatter.format(getCoordinate(index, axis), scales[index * AXES + axis]);
+    }
+
+    /**
+     * Formats a coordinate like in the project file into a new string, which is meant for single values only.
+     *
+     * @param index row index
+     * @param axis  axis {@link #X}, {@link #Y} or {@link #Z}
+     *
+     * @return formatted coordinate
+     */
+    public String formatCoordinate(int index, int axis) {
+        final CoordinateFormatter formatter = new CoordinateFormatter(-1);
+        final StringBuilder builder = new StringBuilder(24);
+
+        formatCoordinate(index, axis, formatter);
+        formatter.append(builder);
+
+        return builder.toString();
+    }
+
+    /**
+     * Formats a coordinate value with the given number of fraction digits, rounded half up. Writers of many
+     * coordinates use their own {@link CoordinateFormatter} instead.
+     *
+     * @param value          coordinate value
+     * @param fractionDigits number of fraction digits or -1 for the shortest representation
+     *
+     * @return formatted coordinate
+     */
+    public static String formatCoordinate(double value, int fractionDigits) {
+        return new CoordinateFormatter(fractionDigits).toString(value);
+    }
+
+    /**
+     * Returns a row as {@link ExtPoint}. The returned object is a view which reads through to this table.
+     *
+     * @param index row index
+     *
+     * @return extended point view of the row
+     */
+    public ExtPoint getExtPoint(int index) {
+        checkIndex(index);
+
+        return new Row(this, index);
+    }
+
+    /**
+     * Returns all rows as an array of {@link ExtPoint} views.
+     *
+     * @return array of extended point views
+     */
+    public ExtPoint[] toExtPoints() {
+        ExtPoint[] extPoints = new ExtPoint[size];
+
+        for (int i = 0; i < size; i++) {
+            extPoints[i] = new Row(this, i);
+        }
+
+        return extPoints;
+    }
+
+    /**
+     * Sorts the rows by the scan name in natural string order. Rows with equal names keep their order.
+     */
+    public void sortByName() {
+        // rank of every dictionary entry in sorted order
+        Integer[] sortedIds = new Integer[dictionary.size()];
+
+        for (int i = 0; i < sortedIds.length; i++) {
+            sortedIds[i] = i;
+        }
+
+        Arrays.sort(sortedIds, (a, b) -> dictionary.get(a).compareTo(dictionary.get(b)));
+
+        int[] rank = new int[sortedIds.length];
+
+        for (int i = 0; i < sortedIds.length; i++) {
+            rank[sortedIds[i]] = i;
+        }
+
+        // sort primitive keys with the rank in the upper and the row index in the lower half
+        long[] keys = new long[size];
+
+        for (int i = 0; i < size; i++) {
+            keys[i] = ((long) rank[nameIds[i]] << 32) | i;
+        }
+
+        Arrays.sort(keys);
+
+        double[] sortedRotations = new double[rotations.length];
+        int[] sortedNameIds = new int[nameIds.length];
+        byte[] sortedScales = new byte[scales.length];
+        HashMap<Integer, String> sortedTexts = new HashMap<>();
+        double[] sortedX = new double[x.length];
+        double[] sortedY = new double[y.length];
+        double[] sortedZ = new double[z.length];
+
+        for (int i = 0; i < size; i++) {
+            int source = (int) keys[i];
+
+            System.arraycopy(rotations, source * ROTATION_SIZE, sortedRotations, i * ROTATION_SIZE, ROTATION_SIZE);
+            sortedNameIds[i] = nameIds[source];
+            System.arraycopy(scales, source * AXES, sortedScales, i * AXES, AXES);
+            sortedX[i] = x[source];
+            sortedY[i] = y[source];
+            sortedZ[i] = z[source];
+
+            for (int axis = 0; axis < AXES && !texts.isEmpty(); axis++) {
+                final String text = texts.get(source * AXES + axis);
+
+                if (text != null) {
+                    sortedTexts.put(i * AXES + axis, text);
+                }
+            }
+        }
+
+        nameIds = sortedNameIds;
+        rotations = sortedRotations;
+        scales = sortedScales;
+        texts.clear();
+        texts.putAll(sortedTexts);
+        x = sortedX;
+        y = sortedY;
+        z = sortedZ;
+    }
+
+    /**
+     * Reduces the capacity of the columns to the number of rows.
+     */
+    public void trimToSize() {
+        if (size < nameIds.length) {
+            int capacity = Math.max(size, 1);
+
+            nameIds = Arrays.copyOf(nameIds, capacity);
+            rotations = Arrays.copyOf(rotations, capacity * ROTATION_SIZE);
+            scales = Arrays.copyOf(scales, capacity * AXES);
+            x = Arrays.copyOf(x, capacity);
+            y = Arrays.copyOf(y, capacity);
+            z = Arrays.copyOf(z, capacity);
+        }
+    }
+
+    private void checkIndex(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("index: " + index + ", size: " + size);
+        }
+    }
+
+    /*
+     * Returns the number of fraction digits of a plain decimal string, or -1 for the shortest representation
+     * of strings with an exponent.
+     */
+    private static int countFractionDigits(String value) {
+        if (value.indexOf('e') >= 0 || value.indexOf('E') >= 0) {
+            return -1;
+        }
+
+        final int dot = value.trim().indexOf('.');
+
+        return dot < 0 ? 0 : Math.min(value.trim().length() - dot - 1, Byte.MAX_VALUE);
+    }
+
+    private double getCoordinate(int index, int axis) {
+        return axis == X ? x[index] : axis == Y ? y[index] : z[index];
+    }
+
+    /*
+     * Remembers the fraction digits of the coordinate string and keeps the string if the formatted value
+     * differs from it.
+     */
+    private void setScale(int index, int axis, String text) {
+        final int scale = countFractionDigits(text);
+
+        scales[index * AXES + axis] = (byte) scale;
+        fractionDigits = Math.max(fractionDigits, scale);
+
+        if (formatter == null) {
+            formatter = new CoordinateFormatter(-1);
+        }
+
+        formatter.format(getCoordinate(index, axis), scale);
+
+        if (!formatter.contentEquals(text)) {
+            texts.put(index * AXES + axis, text);
+        }
+    }
+
+    /*
+     * Sets the coordinates of a row, the strings of the changed coordinates are not valid any more.
+     */
+    private void updateCoordinates(int index, double x, double y, double z) {
+        if (!texts.isEmpty()) {
+            if (Double.compare(this.x[index], x) != 0) {
+                texts.remove(index * AXES + X);
+            }
+
+            if (Double.compare(this.y[index], y) != 0) {
+                texts.remove(index * AXES + Y);
+            }
+
+            if (Double.compare(this.z[index], z) != 0) {
+                texts.remove(index * AXES + Z);
+            }
+        }
+
+        this.x[index] = x;
+        this.y[index] = y;
+        this.z[index] = z;
+    }
+
+    private int encode(String name) {
+        Integer id = dictionaryIndex.get(name);
+
+        if (id == null) {
+            id = dictionary.size();
+            dictionary.add(name);
+            dictionaryIndex.put(name, id);
+        }
+
+        return id;
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (capacity > nameIds.length) {
+            int newCapacity = Math.max(capacity, nameIds.length + (nameIds.length >> 1));
+
+            nameIds = Arrays.copyOf(nameIds, newCapacity);
+            rotations = Arrays.copyOf(rotations, newCapacity * ROTATION_SIZE);
+            scales = Arrays.copyOf(scales, newCapacity * AXES);
+            x = Arrays.copyOf(x, newCapacity);
+            y = Arrays.copyOf(y, newCapacity);
+            z = Arrays.copyOf(z, newCapacity);
+        }
+    }
+
+    /*
+     * Read through view of one table row as extended point.
+     */
+    private static final class Row extends ExtPoint {
+
+        private final int index;
+        private final ViewpointTable table;
+
+        private Row(ViewpointTable table, int index) {
+            this.table = table;
+            this.index = index;
+        }
+
+        @Override
+        public String getNumber() {
+            return table.getName(index);
+        }
+
+        @Override
+        public String getX() {
+            return table.formatCoordinate(index, X);
+        }
+
+        @Override
+        public String getY() {
+            return table.formatCoordinate(index, Y);
+        }
+
+        @Override
+        public String getZ() {
+            return table.formatCoordinate(index, Z);
+        }
+
+        @Override
+        public String toString() {
+            final CoordinateFormatter formatter = new CoordinateFormatter(-1);
+            final StringBuilder builder = new StringBuilder(64);
+
+            builder.append(getNumber());
+
+            for (int axis = X; axis <= Z; axis++) {
+                builder.append("    ");
+                table.formatCoordinate(index, axis, formatter);
+                formatter.append(builder);
+            }
+
+            return builder.toString();
+        }
+
+    }
+
+} // end of ViewpointTable
@@ -0,0 +1,248 @@
+/*
+ * License: MIT. Copyright (c) 2017 by Sebastian Aust (https://www.ryanthara.de/)
+ *
+ * This file is part of the package de.ryanthara.ja.zfex.events
+ *
+ * Copyright (c) 2017 ryanthara
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package de.ryanthara.ja.zfex.events;
+
+import de.ryanthara.ja.zfex.StatusDisplay;
+import de.ryanthara.ja.zfex.tools.BlockingExecutors;
+
+import java.io.Closeable;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * The <tt>EventBus</tt> passes the status and the progress of the export from the workers to the status bar,
+ * the console and the log.
+ * <p>
+ * Publishing an event never blocks and takes no lock: the event is written into the next slot of a ring buffer,
+ * which is claimed by an atomic counter. Every subscription reads the ring buffer with its own cursor in a fixed
+ * period in the thread of the bus, so a worker that processes thousands of files does not flood the sinks. The
+ * progress events of a period are coalesced into the last one. A coalescing subscription, like the one of the
+ * status bar, also gets only the last status event of a period. A subscription that falls behind by more than
+ * the capacity of the ring buffer loses the oldest events.
+ *
+ * @author sebastian
+ * @version 1
+ * @since 2
+ */
+public final class EventBus {
+
+    /**
+     * Default number of events in the ring buffer.
+     */
+    public static final int DEFAULT_CAPACITY = 4096;
+
+    private final static Logger logger = Logger.getLogger(EventBus.class.getName());
+
+    private final int mask;
+    private final AtomicLong next = new AtomicLong();
+    private final AtomicReferenceArray<Slot> slots;
+    private final List<Subscription> subscriptions = new CopyOnWriteArrayList<>();
+    private ScheduledExecutorService dispatcher;
+
+    /**
+     * Constructs an event bus with a ring buffer of the given capacity.
+     *
+     * @param capacity number of events in the ring buffer, which is rounded up to a power of two
+     */
+    public EventBus(int capacity) {
+        final int size = Integer.highestOneBit(Math.max(2, capacity) * 2 - 1);
+
+        this.slots = new AtomicReferenceArray<>(size);
+        this.mask = size - 1;
+    }
+
+    /**
+     * Delivers all published events to all subscriptions in the calling thread, for example before the
+     * application exits.
+     */
+    public void flush() {
+        for (Subscription subscription : subscriptions) {
+            subscription.drain();
+        }
+    }
+
+    /**
+     * Publishes an event.
+     *
+     * @param event the event
+     */
+    public void publish(ExportEvent event) {
+        final long sequence = next.getAndIncrement();
+
+        slots.set((int) (sequence & mask), new Slot(sequence, event));
+    }
+
+    /**
+     * Publishes the progress of the running file operation.
+     *
+     * @param progress the progress value between 0 and 1
+     */
+    public void publishProgress(double progress) {
+        publish(ExportEvent.progress(progress));
+    }
+
+    /**
+     * Publishes a status with its text.
+     *
+     * @param status status like {@link StatusDisplay#STATUS_OK}
+     * @param text   status text
+     */
+    public void publishStatus(int status, String text) {
+        publish(ExportEvent.status(status, text));
+    }
+
+    /**
+     * Subscribes a sink, which gets the events published from now on.
+     *
+     * @param sink         the sink
+     * @param periodMillis period of the delivery in milliseconds
+     * @param coalesce     true for getting only the last status event of a period
+     *
+     * @return the subscription, which is ended by closing it
+     */
+    public synchronized Subscription subscribe(EventSink sink, long periodMillis, boolean coalesce) {
+        if (dispatcher == null) {
+            dispatcher = Executors.newSingleThreadScheduledExecutor(BlockingExecutors.newDaemonThreadFactory("ZFEx-events"));
+        }
+
+        final Subscription subscription = new Subscription(sink, coalesce, next.get());
+        subscriptions.add(subscription);
+
+        subscription.future = dispatcher.scheduleAtFixedRate(subscription::drain, periodMillis, periodMillis,
+                TimeUnit.MILLISECONDS);
+
+        return subscription;
+    }
+
+    /*
+     * A published event with its position.
+     */
+    private static class Slot {
+
+        private final ExportEvent event;
+        private final long sequence;
+
+        private Slot(long sequence, ExportEvent event) {
+            this.sequence = sequence;
+            this.event = event;
+        }
+
+    }
+
+    /**
+     * The <tt>Subscription</tt> of a sink to the event bus.
+     */
+    public final class Subscription implements Closeable {
+
+        private final boolean coalesce;
+        private final EventSink sink;
+        private long cursor;
+        private ScheduledFuture<?> future;
+
+        private Subscription(EventSink sink, boolean coalesce, long cursor) {
+            this.sink = sink;
+            this.coalesce = coalesce;
+            this.cursor = cursor;
+        }
+
+        /**
+         * Ends the subscription after delivering the events published so far.
+         */
+        @Override
+        public void close() {
+            future.cancel(false);
+            subscriptions.remove(this);
+
+            drain();
+        }
+
+        /*
+         * Delivers the events from the cursor up to the last published event.
+         */
+        private synchronized void drain() {
+            final long end = next.get();
+            ExportEvent progress = null;
+            ExportEvent status = null;
+
+            while (cursor < end) {
+                final Slot slot = slots.get((int) (cursor & mask));
+
+                if (slot == null || slot.sequence < cursor) {
+                    // The slot is claimed, but the event is not written yet
+                    break;
+                } else if (slot.sequence > cursor) {
+                    // The ring buffer was overwritten, go on with the oldest event that is left
+                    final long oldest = Math.max(cursor + 1, next.get() - mask);
+
+                    logger.log(Level.FINE, "event bus sink lost " + (oldest - cursor) + " events");
+                    cursor = oldest;
+                    continue;
+                }
+
+                cursor++;
+
+                if (slot.event.getType() == ExportEvent.Type.PROGRESS) {
+                    progress = slot.event;
+                } else if (coalesce) {
+                    status = slot.event;
+                } else {
+                    if (progress != null) {
+                        deliver(progress);
+                        progress = null;
+                    }
+
+                    deliver(slot.event);
+                }
+            }
+
+            if (status != null) {
+                deliver(status);
+            }
+
+            if (progress != null) {
+                deliver(progress);
+            }
+        }
+
+        private void deliver(ExportEvent event) {
+            try {
+                sink.accept(event);
+            } catch (RuntimeException e) {
+                logger.log(Level.WARNING, "event bus sink failed with " + event, e);
+            }
+        }
+
+    }
+
+} // end of EventBus
@@ -0,0 +1,85 @@
+/*
+ * License: MIT. Copyright (c) 2017 by Sebastian Aust (https://www.ryanthara.de/)
+ *
+ * This file is part of the package de.ryanthara.ja.zfex.events
+ *
+ * Copyright (c) 2017 ryanthara
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package de.ryanthara.ja.zfex.events;
+
+import de.ryanthara.ja.zfex.StatusDisplay;
+
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * The <tt>EventSink</tt> receives the events of an {@link EventBus} in the thread of the bus.
+ *
+ * @author sebastian
+ * @version 1
+ * @since 2
+ */
+@FunctionalInterface
+public interface EventSink {
+
+    /**
+     * Shows the events on a {@link StatusDisplay}.
+     *
+     * @param display the status display
+     *
+     * @return sink for the status display
+     */
+    static EventSink of(StatusDisplay display) {
+        return event -> {
+            if (event.getType() == ExportEvent.Type.PROGRESS) {
+                display.setProgress(event.getProgress());
+            } else {
+                display.setStatusIcon(event.getStatus());
+                display.setStatusText(event.getText());
+            }
+        };
+    }
+
+    /**
+     * Writes the status events into a log, errors with the level {@link Level#WARNING} and all others with
+     * the level {@link Level#FINE}. Progress events are not logged.
+     *
+     * @param logger the logger
+     *
+     * @return sink for the logger
+     */
+    static EventSink of(Logger logger) {
+        return event -> {
+            if (event.getType() == ExportEvent.Type.STATUS && event.getText() != null && !event.getText().isEmpty()) {
+                logger.log(event.getStatus() == StatusDisplay.STATUS_ERROR ? Level.WARNING : Level.FINE,
+                        "status: " + event.getText());
+            }
+        };
+    }
+
+    /**
+     * Receives an event.
+     *
+     * @param event the event
+     */
+    void accept(ExportEvent event);
+
+} // end of EventSink
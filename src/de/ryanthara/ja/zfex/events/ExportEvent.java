@@ -0,0 +1,136 @@
+/*
+ * License: MIT. Copyright (c) 2017 by Sebastian Aust (https://www.ryanthara.de/)
+ *
+ * This file is part of the package de.ryanthara.ja.zfex.events
+ *
+ * Copyright (c) 2017 ryanthara
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package de.ryanthara.ja.zfex.events;
+
+import de.ryanthara.ja.zfex.StatusDisplay;
+
+/**
+ * The <tt>ExportEvent</tt> is an immutable event of the export, which is published to the {@link EventBus}.
+ * <p>
+ * A {@link Type#STATUS} event has a status like {@link StatusDisplay#STATUS_OK} and a status text, a
+ * {@link Type#PROGRESS} event has the progress of the running file operation.
+ *
+ * @author sebastian
+ * @version 1
+ * @since 2
+ */
+public final class ExportEvent {
+
+    private final double progress;
+    private final int status;
+    private final String text;
+    private final long time;
+    private final Type type;
+
+    private ExportEvent(Type type, int status, String text, double progress) {
+        this.type = type;
+        this.status = status;
+        this.text = text;
+        this.progress = progress;
+        this.time = System.currentTimeMillis();
+    }
+
+    /**
+     * Creates a progress event.
+     *
+     * @param progress the progress value between 0 and 1
+     *
+     * @return progress event
+     */
+    public static ExportEvent progress(double progress) {
+        return new ExportEvent(Type.PROGRESS, StatusDisplay.STATUS_OK, null, progress);
+    }
+
+    /**
+     * Creates a status event.
+     *
+     * @param status status like {@link StatusDisplay#STATUS_OK}
+     * @param text   status text
+     *
+     * @return status event
+     */
+    public static ExportEvent status(int status, String text) {
+        return new ExportEvent(Type.STATUS, status, text, 0);
+    }
+
+    /**
+     * Returns the progress of a progress event.
+     *
+     * @return the progress value between 0 and 1
+     */
+    public double getProgress() {
+        return progress;
+    }
+
+    /**
+     * Returns the status of a status event.
+     *
+     * @return status like {@link StatusDisplay#STATUS_OK}
+     */
+    public int getStatus() {
+        return status;
+    }
+
+    /**
+     * Returns the status text of a status event.
+     *
+     * @return status text
+     */
+    public String getText() {
+        return text;
+    }
+
+    /**
+     * Returns the time of the event.
+     *
+     * @return time in milliseconds since the epoch
+     */
+    public long getTime() {
+        return time;
+    }
+
+    /**
+     * Returns the type of the event.
+     *
+     * @return type of the event
+     */
+    public Type getType() {
+        return type;
+    }
+
+    @Override
+    public String toString() {
+        return type == Type.PROGRESS ? "progress " + progress : "status " + status + " " + text;
+    }
+
+    /**
+     * The types of the events.
+     */
+    public enum Type {
+        PROGRESS, STATUS
+    }
+
+} // end of ExportEvent
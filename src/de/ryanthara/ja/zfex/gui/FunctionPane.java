@@ -26,16 +26,25 @@
 package de.ryanthara.ja.zfex.gui;
 
 import de.ryanthara.ja.zfex.Main;
+import de.ryanthara.ja.zfex.data.AffineTransformation;
+import de.ryanthara.ja.zfex.data.PreferenceHandler;
 import de.ryanthara.ja.zfex.i18n.LangStrings;
 import de.ryanthara.ja.zfex.i18n.ResourceBundleUtils;
-import de.ryanthara.ja.zfex.io.ExportFileWorker;
-import de.ryanthara.ja.zfex.io.ProjectFileWorker;
-import de.ryanthara.ja.zfex.io.ViewerFileWorker;
+import de.ryanthara.ja.zfex.io.CoordinateExportWriter;
+import de.ryanthara.ja.zfex.io.PanoramaConverter;
+import de.ryanthara.ja.zfex.io.ParallelFileCopier;
+import de.ryanthara.ja.zfex.io.ParseCache;
+import de.ryanthara.ja.zfex.io.TransferMode;
+import de.ryanthara.ja.zfex.jobs.ExportRun;
 import de.ryanthara.ja.zfex.tools.Checker;
+import de.ryanthara.ja.zfex.tools.FxThread;
 import javafx.application.Platform;
 import javafx.beans.binding.BooleanBinding;
+import javafx.beans.property.BooleanProperty;
+import javafx.beans.property.SimpleBooleanProperty;
 import javafx.geometry.Insets;
 import javafx.geometry.Pos;
+import javafx.scene.control.Alert;
 import javafx.scene.control.Button;
 import javafx.scene.control.Label;
 import javafx.scene.control.TextField;
@@ -43,19 +52,15 @@ import javafx.scene.control.Tooltip;
 import javafx.scene.input.ClipboardContent;
 import javafx.scene.input.Dragboard;
 import javafx.scene.input.KeyCode;
-import javafx.scene.input.TransferMode;
 import javafx.scene.layout.ColumnConstraints;
 import javafx.scene.layout.GridPane;
 import javafx.scene.layout.Priority;
 import javafx.stage.DirectoryChooser;
 import javafx.stage.FileChooser;
 import javafx.stage.Stage;
-import org.xml.sax.SAXException;
+import javafx.stage.WindowEvent;
 
-import javax.xml.parsers.ParserConfigurationException;
 import java.io.File;
-import java.io.IOException;
-import java.nio.file.FileSystems;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.logging.Level;
@@ -75,11 +80,16 @@ class FunctionPane extends GridPane {
 
     private final static Logger logger = Logger.getLogger(FunctionPane.class.getName());
 
+    private final ParseCache parseCache = new ParseCache(ParseCache.getDefaultDirectory(), ParseCache.DEFAULT_SIZE_BUDGET);
+    private final BooleanProperty running = new SimpleBooleanProperty(false);
+
+    private Button cancelBtn;
     private Button runBtn;
     private TextField exportTextField;
     private TextField projectTextField;
     private TextField viewerTextField;
 
+    private ExportRun exportRun;
     private Stage primaryStage;
 
     FunctionPane(Stage primaryStage) {
@@ -89,6 +99,21 @@ class FunctionPane extends GridPane {
         logger.addHandler(Main.fileHandler);
 
         createPane();
+
+        // A running export is cancelled with the window, its temporary files are deleted then
+        primaryStage.addEventHandler(WindowEvent.WINDOW_CLOSE_REQUEST, event -> cancelAction());
+    }
+
+    private void cancelAction() {
+        if (exportRun != null) {
+            exportRun.cancel();
+        }
+    }
+
+    private void createCancelButton() {
+        cancelBtn = new Button(ResourceBundleUtils.getLangString(LangStrings.btn_cancel));
+        cancelBtn.setMaxSize(Double.MAX_VALUE, Double.MAX_VALUE);
+        cancelBtn.setOnAction(event -> cancelAction());
     }
 
     private Button createExportButton() {
@@ -105,7 +130,7 @@ class FunctionPane extends GridPane {
         exportTextField.setPromptText(ResourceBundleUtils.getLangString(LangStrings.text_exportPrompt));
 
         exportTextField.setOnDragDetected(event -> {
-            Dragboard db = exportTextField.startDragAndDrop(TransferMode.ANY);
+            Dragboard db = exportTextField.startDragAndDrop(javafx.scene.input.TransferMode.ANY);
 
             ClipboardContent content = new ClipboardContent();
 
@@ -121,7 +146,7 @@ class FunctionPane extends GridPane {
         exportTextField.setOnDragOver(event -> {
             Dragboard db = event.getDragboard();
             if (db.hasFiles() && db.getFiles().get(0).isDirectory()) {
-                event.acceptTransferModes(TransferMode.COPY);
+                event.acceptTransferModes(javafx.scene.input.TransferMode.COPY);
             } else {
                 event.consume();
             }
@@ -185,20 +210,23 @@ class FunctionPane extends GridPane {
         createViewerTextField();
         Button viewerBtn = createViewerButton();
 
-        // Run button
+        // Run button and the cancel button in the same place while an export is running
         createRunButton();
+        createCancelButton();
 
         // Special button alignment to make all buttons the same width
         setFillWidth(projectBtn, true);
         setFillWidth(exportBtn, true);
         setFillWidth(viewerBtn, true);
         setFillWidth(runBtn, true);
+        setFillWidth(cancelBtn, true);
 
         addRow(0, projectLabel, projectTextField, projectBtn);
         addRow(1, exportLabel, exportTextField, exportBtn);
         addRow(2, viewerLabel, viewerTextField, viewerBtn);
 
         add(runBtn, 2, 4);
+        add(cancelBtn, 2, 4);
 
         //Checks text fields and enable the run button if not empty and valid values
         BooleanBinding bb = new BooleanBinding() {
@@ -216,7 +244,9 @@ class FunctionPane extends GridPane {
             }
         };
 
-        runBtn.disableProperty().bind(bb);
+        runBtn.disableProperty().bind(bb.or(running));
+        runBtn.visibleProperty().bind(running.not());
+        cancelBtn.visibleProperty().bind(running);
 
         // Add keyboard shortcuts for the buttons
         this.setOnKeyPressed(ke -> {
@@ -230,6 +260,8 @@ class FunctionPane extends GridPane {
                 if (!runBtn.disabledProperty().get()) {
                     runAction();
                 }
+            } else if (ke.getCode() == KeyCode.ESCAPE) {
+                cancelAction();
             }
         });
 
@@ -239,6 +271,23 @@ class FunctionPane extends GridPane {
         logger.log(Level.FINE, "FunctionPane created successful");
     }
 
+    private PanoramaConverter createPanoramaConverter() {
+        PanoramaConverter converter = new PanoramaConverter();
+        converter.setTransferMode(getTransferMode());
+
+        final String quality = Main.pref.getUserPref(PreferenceHandler.JPEG_QUALITY);
+
+        if (!quality.trim().equalsIgnoreCase("")) {
+            try {
+                converter.setJpegQuality(Float.parseFloat(quality.trim()));
+            } catch (IllegalArgumentException e) {
+                logger.log(Level.WARNING, "invalid jpeg quality '" + quality + "', the default quality is used");
+            }
+        }
+
+        return converter;
+    }
+
     private Button createProjectButton() {
         Button projectBtn = new Button(ResourceBundleUtils.getLangString(LangStrings.btn_project));
         projectBtn.setMaxSize(Double.MAX_VALUE, Double.MAX_VALUE);
@@ -255,7 +304,7 @@ class FunctionPane extends GridPane {
         projectTextField.setOnDragOver(event -> {
             Dragboard db = event.getDragboard();
             if (db.hasFiles() && db.getFiles().get(0).isFile()) {
-                event.acceptTransferModes(TransferMode.COPY);
+                event.acceptTransferModes(javafx.scene.input.TransferMode.COPY);
             } else {
                 event.consume();
             }
@@ -312,7 +361,7 @@ class FunctionPane extends GridPane {
         viewerTextField.setPromptText(ResourceBundleUtils.getLangString(LangStrings.text_viewerPrompt));
 
         viewerTextField.setOnDragDetected(event -> {
-            Dragboard db = viewerTextField.startDragAndDrop(TransferMode.ANY);
+            Dragboard db = viewerTextField.startDragAndDrop(javafx.scene.input.TransferMode.ANY);
 
             ClipboardContent content = new ClipboardContent();
 
@@ -328,7 +377,7 @@ class FunctionPane extends GridPane {
         viewerTextField.setOnDragOver(event -> {
             Dragboard db = event.getDragboard();
             if (db.hasFiles() && db.getFiles().get(0).isDirectory()) {
-                event.acceptTransferModes(TransferMode.COPY);
+                event.acceptTransferModes(javafx.scene.input.TransferMode.COPY);
             } else {
                 event.consume();
             }
@@ -383,6 +432,20 @@ class FunctionPane extends GridPane {
         }
     }
 
+    private TransferMode getTransferMode() {
+        final String mode = Main.pref.getUserPref(PreferenceHandler.TRANSFER_MODE);
+
+        if (!mode.trim().equalsIgnoreCase("")) {
+            try {
+                return TransferMode.valueOf(mode.trim().toUpperCase());
+            } catch (IllegalArgumentException e) {
+                logger.log(Level.WARNING, "unknown transfer mode '" + mode + "', zero copy is used");
+            }
+        }
+
+        return TransferMode.ZERO_COPY;
+    }
+
     private void projectAction() {
         FileChooser fileChooser = new FileChooser();
         fileChooser.setTitle(ResourceBundleUtils.getLangString(LangStrings.title_projectFileChooser));
@@ -413,41 +476,54 @@ class FunctionPane extends GridPane {
         // Text field check is done by the Boolean binding which activates the run button!
         File projectFile = new File(projectTextField.getText());
         File exportFolder = new File(exportTextField.getText());
-        File viewerFolder = new File(viewerTextField.getText());
+        File viewerFolder = viewerTextField.getText().trim().equalsIgnoreCase("") ? null :
+                new File(viewerTextField.getText());
 
-        // Process project file
-        ProjectFileWorker projectFileWorker = new ProjectFileWorker(projectFile);
+        ExportRun exportRun = new ExportRun(projectFile, exportFolder, viewerFolder);
+        exportRun.setParseCache(parseCache);
+        exportRun.setFileCopier(new ParallelFileCopier(ParallelFileCopier.DEFAULT_THREADS,
+                ParallelFileCopier.DEFAULT_TARGET_CONCURRENCY, getTransferMode()));
+        exportRun.setConverter(createPanoramaConverter());
 
         try {
-            Main.isLoadedLaserRadarProject = projectFileWorker.processProjectFile();
-        } catch (IOException | SAXException | ParserConfigurationException e) {
-            logger.log(Level.SEVERE, "can't load laser radar project", e);
-            logger.log(Level.SEVERE, e.getMessage());
+            exportRun.setCoordinateExporters(CoordinateExportWriter.loadExporters(Main.coordinateFormats));
+        } catch (IllegalArgumentException e) {
+            logger.log(Level.SEVERE, "invalid coordinate formats, available are " +
+                    CoordinateExportWriter.getAvailableFormats(), e);
         }
 
-        // Write coordinate file
-        if (Main.isLoadedLaserRadarProject) {
-            final String fileName = new File(projectTextField.getText()).getName();
+        // Transform into the superior coordinate system
+        if (Main.useSuperiorCoordinateSystem) {
+            final String parameters = Main.pref.getUserPref(PreferenceHandler.SUPERIOR_COORDINATE_SYSTEM);
 
-            Main.isWrittenStandPointsFile = projectFileWorker.writeCoordinateFile(
-                    exportFolder.getPath() + FileSystems.getDefault().getSeparator() + fileName + "_register.txt");
+            if (!parameters.trim().equalsIgnoreCase("")) {
+                try {
+                    exportRun.setTransformation(AffineTransformation.parse(parameters));
+                } catch (IllegalArgumentException e) {
+                    logger.log(Level.SEVERE, "invalid parameters for the superior coordinate system", e);
+                }
+            }
         }
 
-        // Copy images
-        if (Main.isWrittenStandPointsFile) {
-            ExportFileWorker exportFileWorker = new ExportFileWorker(projectFile, exportFolder);
-            exportFileWorker.exportBlackAndWhitePNG();
+        // The stages run in the background, the run button is replaced by the cancel button until they are finished
+        this.exportRun = exportRun;
+        running.set(true);
 
-            if (Main.useColorPictures) {
-                exportFileWorker.exportColorJPG();
-            }
-        }
+        exportRun.start().whenComplete((result, throwable) -> FxThread.run(() -> {
+            this.exportRun = null;
+            running.set(false);
 
-        // Prepare viewer folder
-        if (Main.isWrittenStandPointsFile && !viewerTextField.getText().trim().equalsIgnoreCase("")) {
-            ViewerFileWorker viewerFileWorker = new ViewerFileWorker(projectFile, viewerFolder);
-            Main.isWrittenViewerFile = viewerFileWorker.exportViewerJSON(projectFileWorker.getExtPoints());
-        }
+            if (throwable != null) {
+                logger.log(Level.SEVERE, "export run failed", throwable);
+            } else if (result.isSuccess() && result.isSucceeded(ExportRun.STAGE_VIEWER)) {
+                Alert alert = new Alert(Alert.AlertType.INFORMATION);
+                alert.setTitle(ResourceBundleUtils.getLangString(LangStrings.workSuccessTitle));
+                alert.setHeaderText(ResourceBundleUtils.getLangString(LangStrings.workSuccessHeaderText));
+                alert.setContentText(ResourceBundleUtils.getLangString(LangStrings.workSuccessContentText));
+
+                alert.showAndWait();
+            }
+        }));
     }
 
     private void viewerAction() {
@@ -27,7 +27,9 @@ package de.ryanthara.ja.zfex.gui;
 
 import com.apple.eawt.Application;
 import de.ryanthara.ja.zfex.Main;
+import de.ryanthara.ja.zfex.ZFEx;
 import de.ryanthara.ja.zfex.data.PreferenceHandler;
+import de.ryanthara.ja.zfex.events.EventSink;
 import de.ryanthara.ja.zfex.i18n.LangStrings;
 import de.ryanthara.ja.zfex.i18n.ResourceBundleUtils;
 import de.ryanthara.ja.zfex.tools.PrimaryStagePositioner;
@@ -38,41 +40,27 @@ import javafx.scene.layout.Pane;
 import javafx.stage.Stage;
 
 import java.awt.*;
-import java.io.IOException;
-import java.util.logging.FileHandler;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
 /**
  * The <tt>MainApplication</tt> is the main application of <tt>ZFEx</tt>.
  * <p>
- * It initialize the main window of <tt>ZFEx</tt> and setup the background functionality. This is done
- * by an extension of the {@link Main} class.
+ * It initialize the main window of <tt>ZFEx</tt> and setup the background functionality with the values of
+ * the {@link Main} class. It is started by the launcher {@link ZFEx}, which does the headless mode without
+ * JavaFX.
  *
  * @author sebastian
  * @version 1
  * @see Main
  * @since 1
  */
-public class MainApplication extends Main {
+public class MainApplication extends javafx.application.Application {
 
     private final static Logger logger = Logger.getLogger(MainApplication.class.getName());
 
     private Scene scene;
 
-    private static void initPreferences() {
-        Main.pref = new PreferenceHandler();
-    }
-
-    /**
-     * Main application startup.
-     *
-     * @param args command line arguments
-     */
-    public static void main(String... args) {
-        launch(args);
-    }
-
     private static void saveFramePosition(Scene scene) {
         // Runs only on one monitor systems
         // Detect the active monitor on which ZFEx is visible
@@ -82,13 +70,8 @@ public class MainApplication extends Main {
 
     @Override
     public void init() {
-        initLogging();
-
         // Load parameters from the command line interface
-        Parameters parameters = getParameters();
-        Main.cliParameters = parameters.getNamed();
-
-        initPreferences();
+        Main.initialize(getParameters().getNamed());
     }
 
     /**
@@ -146,28 +129,16 @@ public class MainApplication extends Main {
     private Pane createStatusPane() {
         final GridPane gridPane = new GridPane();
 
-        Main.statusPane = new StatusPane();
+        StatusPane statusPane = new StatusPane();
+
+        // The status bar shows only the last status and progress of a frame
+        Main.eventBus.subscribe(EventSink.of(statusPane), 50, true);
 
-        gridPane.add(Main.statusPane, 0, 0);
+        gridPane.add(statusPane, 0, 0);
 
         return gridPane;
     }
 
-    private void initLogging() {
-        Main.loggingLevel = Level.FINEST;
-
-        logger.setLevel(Main.loggingLevel);
-
-        try {
-            FileHandler fh = new FileHandler("ZFEx_logfile%g.xml", 1024 * 1024, 10, true);
-            Main.fileHandler = fh;
-
-            logger.addHandler(fh);
-            logger.log(Level.INFO, "logging with level '" + Main.loggingLevel.getName() + "' for ZFEx enabled successful");
-        } catch (IOException e) {
-            System.err.println("Can not access file 'ZFEx_logfile[n].xml' " + e.getMessage());
-        }
-    }
 
     /*
      * Replace this 'hack' when JDK 9 is available with a solution for showing application icons for different os.
@@ -25,6 +25,8 @@
  */
 package de.ryanthara.ja.zfex.gui;
 
+import de.ryanthara.ja.zfex.StatusDisplay;
+import de.ryanthara.ja.zfex.tools.FxThread;
 import javafx.geometry.Insets;
 import javafx.geometry.Pos;
 import javafx.scene.control.Label;
@@ -35,17 +37,20 @@ import javafx.scene.layout.ColumnConstraints;
 import javafx.scene.layout.GridPane;
 import javafx.scene.layout.Priority;
 
+import java.util.concurrent.atomic.AtomicReference;
+
 /**
  * This is a special {@link GridPane} which contains the status of ZFEx.
  * <p>
  * It contains a three coloured signal on the left side, the status message area in the center
  * and a {@link ProgressIndicator} on the right side.
+ *
+ * @see StatusDisplay
  */
-public class StatusPane extends GridPane {
+public class StatusPane extends GridPane implements StatusDisplay {
+
+    private final AtomicReference<Double> pendingProgress = new AtomicReference<>();
 
-    public final int STATUS_OK = 0;
-    public final int STATUS_INFORMATION = 5;
-    public final int STATUS_ERROR = 10;
     private ProgressIndicator progressIndicator;
     private Label imageLabel;
     private Label textLabel;
@@ -67,15 +72,25 @@ public class StatusPane extends GridPane {
      * Sets the progress of the progress indicator for the file copy operation.
      * <p>
      * After the start of ZFEx the progress indicator is hidden, so it has to be set visible here.
+     * The status pane can be updated from any thread, the controls are changed on the JavaFX application thread.
+     * Progress values that arrive before the last one is shown are coalesced, so a fast export does not flood
+     * the JavaFX application thread.
      *
      * @param progress the progress value
      */
+    @Override
     public void setProgress(double progress) {
-        if (!progressIndicator.isVisible()) {
-            progressIndicator.setVisible(true);
+        if (pendingProgress.getAndSet(progress) != null) {
+            return;
         }
 
-        progressIndicator.setProgress(progress);
+        FxThread.run(() -> {
+            if (!progressIndicator.isVisible()) {
+                progressIndicator.setVisible(true);
+            }
+
+            progressIndicator.setProgress(pendingProgress.getAndSet(null));
+        });
     }
 
     /**
@@ -83,20 +98,23 @@ public class StatusPane extends GridPane {
      *
      * @param status status icon to be set
      */
+    @Override
     public void setStatusIcon(int status) {
-        switch (status) {
-            case 0:
-                imageLabel.setGraphic(new ImageView(imgOK));
-                break;
-            case 5:
-                imageLabel.setGraphic(new ImageView(imgINFO));
-                break;
-            case 10:
-                imageLabel.setGraphic(new ImageView(imgERROR));
-                break;
-            default:
-                break;
-        }
+        FxThread.run(() -> {
+            switch (status) {
+                case STATUS_OK:
+                    imageLabel.setGraphic(new ImageView(imgOK));
+                    break;
+                case STATUS_INFORMATION:
+                    imageLabel.setGraphic(new ImageView(imgINFO));
+                    break;
+                case STATUS_ERROR:
+                    imageLabel.setGraphic(new ImageView(imgERROR));
+                    break;
+                default:
+                    break;
+            }
+        });
     }
 
     /**
@@ -104,9 +122,12 @@ public class StatusPane extends GridPane {
      *
      * @param statusText status text to be set
      */
+    @Override
     public void setStatusText(String statusText) {
-        this.statusText = statusText;
-        textLabel.setText(statusText);
+        FxThread.run(() -> {
+            this.statusText = statusText;
+            textLabel.setText(statusText);
+        });
     }
 
     private void createPane() {
@@ -41,6 +41,9 @@ public enum LangStrings {
     exportLabel,
     exportPromptText,
     filterExtensionDescriptionZF,
+    head_copyJPGWarning,
+    head_copyPNGFailed,
+    head_cubemapFailed,
     informationText1,
     informationText2,
     informationText3,
@@ -58,6 +61,10 @@ public enum LangStrings {
     statusCreatePNGFolderExists,
     statusCreatePNGFolderFailed,
     statusCreatePNGFolderSuccess,
+    statusExistingFileFailed,
+    statusExistingFileKept,
+    statusExportCubemapFailed,
+    statusExportCubemapSuccess,
     statusExportPNGCancelled,
     statusExportPNGFailed,
     statusExportPNGSuccess,
@@ -66,9 +73,26 @@ public enum LangStrings {
     statusLaserRadarProjectExportCoordinatesSuccess,
     statusLaserRadarProjectReadFailed,
     statusLaserRadarProjectReadSuccess,
+    statusSyncJPGSuccess,
+    statusSyncPNGSuccess,
     statusViewerExportSuccess,
+    statusViewerTilesFailed,
+    statusViewerTilesSuccess,
     statusWorkSuccess,
+    statusWriteBatchFailed,
+    status_copyJPGError,
+    status_createJPGFolderExists,
+    status_createJPGFolderFailed,
+    status_createJPGFolderSuccess,
+    status_exportJPGCancelled,
+    status_exportJPGFailed,
+    status_exportJPGSuccess,
+    status_exportJPGZero,
+    text_copyJPGWarning,
     title,
+    title_copyJPGWarning,
+    title_copyPNGFailed,
+    title_cubemapFailed,
     viewerBtn,
     viewerBtnToolTip,
     viewerFileChooserTitle,
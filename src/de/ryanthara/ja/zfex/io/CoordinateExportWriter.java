@@ -0,0 +1,345 @@
+/*
+ * License: MIT. Copyright (c) 2017 by Sebastian Aust (https://www.ryanthara.de/)
+ *
+ * This file is part of the package de.ryanthara.ja.zfex.io
+ *
+ * Copyright (c) 2017 ryanthara
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package de.ryanthara.ja.zfex.io;
+
+import de.ryanthara.ja.zfex.Main;
+import de.ryanthara.ja.zfex.data.ViewpointTable;
+import de.ryanthara.ja.zfex.metrics.Measurement;
+import de.ryanthara.ja.zfex.metrics.Metrics;
+import de.ryanthara.ja.zfex.metrics.QueueGauge;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.ServiceLoader;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * The <tt>CoordinateExportWriter</tt> writes the viewpoints of a {@link ViewpointTable} into several coordinate
+ * files at once, one for every selected {@link CoordinateExporter}.
+ * <p>
+ * The viewpoints are handed over in chunks of consecutive rows to one thread per exporter through a small
+ * queue. So all files are written concurrently, while every exporter reads the rows of the table directly
+ * without copying them. A failing exporter does not stop the others.
+ *
+ * @author sebastian
+ * @version 1
+ * @since 2
+ */
+public class CoordinateExportWriter {
+
+    private static final int CHUNK_SIZE = 4096;
+    private static final int QUEUE_SIZE = 4;
+    private static final Chunk END = new Chunk(0, 0);
+
+    private final List<CoordinateExporter> exporters;
+    private final WriteBatch writeBatch;
+    private Metrics metrics = Main.metrics;
+
+    /**
+     * Constructs a new writer for the given exporters.
+     *
+     * @param exporters  exporters, one file is written for each of them
+     * @param writeBatch batch of the export run or null for replacing the files immediately
+     */
+    public CoordinateExportWriter(List<CoordinateExporter> exporters, WriteBatch writeBatch) {
+        this.exporters = new ArrayList<>(exporters);
+        this.writeBatch = writeBatch;
+    }
+
+    /**
+     * Sets the {@link Metrics} registry of the export run, which receives the measurements of this writer.
+     *
+     * @param metrics metrics registry, the global one of {@link Main#metrics} is used by default
+     */
+    public void setMetrics(Metrics metrics) {
+        this.metrics = metrics;
+    }
+
+    /**
+     * Returns the names of all exporters which are registered as service.
+     *
+     * @return names of the available formats
+     */
+    public static List<String> getAvailableFormats() {
+        List<String> names = new ArrayList<>();
+
+        for (CoordinateExporter exporter : ServiceLoader.load(CoordinateExporter.class)) {
+            names.add(exporter.getName());
+        }
+
+        return names;
+    }
+
+    /**
+     * Loads new instances of the exporters with the given names in the given order.
+     *
+     * @param formats names of the formats, case is ignored
+     *
+     * @return exporters
+     *
+     * @throws IllegalArgumentException if there is no exporter for a name
+     */
+    public static List<CoordinateExporter> loadExporters(Collection<String> formats) {
+        Map<String, CoordinateExporter> available = new LinkedHashMap<>();
+
+        for (CoordinateExporter exporter : ServiceLoader.load(CoordinateExporter.class)) {
+            available.putIfAbsent(exporter.getName().toLowerCase(), exporter);
+        }
+
+        Map<String, CoordinateExporter> selected = new LinkedHashMap<>();
+
+        for (String format : formats) {
+            final String name = format.trim().toLowerCase();
+
+            if (name.isEmpty() || selected.containsKey(name)) {
+                continue;
+            }
+
+            CoordinateExporter exporter = available.get(name);
+
+            if (exporter == null) {
+                throw new IllegalArgumentException("unknown coordinate format: " + format);
+            }
+
+            selected.put(name, exporter);
+        }
+
+        return new ArrayList<>(selected.values());
+    }
+
+    /**
+     * Returns the files which are written for the given base name.
+     *
+     * @param folder   folder of the files
+     * @param baseName base name of the files, usually the name of the project file
+     *
+     * @return files in the order of the exporters
+     */
+    public List<Path> getFiles(Path folder, String baseName) {
+        List<Path> files = new ArrayList<>();
+
+        for (CoordinateExporter exporter : exporters) {
+            files.add(folder.resolve(baseName + exporter.getFileSuffix()));
+        }
+
+        return files;
+    }
+
+    /**
+     * Writes the viewpoints with all exporters.
+     *
+     * @param viewpoints viewpoints to be written
+     * @param folder     folder of the files
+     * @param baseName   base name of the files, usually the name of the project file
+     *
+     * @return result with the number of written files and the failed ones
+     *
+     * @throws InterruptedException if the thread is interrupted while waiting for the exporters
+     */
+    public ParallelFileCopier.Result write(ViewpointTable viewpoints, Path folder, String baseName)
+            throws InterruptedException {
+        final WriteBatch batch = writeBatch != null ? writeBatch : new WriteBatch(false);
+        final List<Path> files = getFiles(folder, baseName);
+        final List<BlockingQueue<Chunk>> queues = new ArrayList<>();
+        final List<Future<Long>> futures = new ArrayList<>();
+        final QueueGauge writeQueue = metrics.getQueue(Metrics.WRITE_QUEUE);
+
+        ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, exporters.size()), r -> {
+            Thread thread = new Thread(r, "ZFEx coordinate export");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        try {
+            for (int i = 0; i < exporters.size(); i++) {
+                BlockingQueue<Chunk> queue = new ArrayBlockingQueue<>(QUEUE_SIZE);
+
+                queues.add(queue);
+                futures.add(executor.submit(new ExportTask(exporters.get(i), queue, writeQueue, files.get(i),
+                        baseName, viewpoints, batch, metrics)));
+            }
+
+            for (int from = 0; from < viewpoints.size(); from += CHUNK_SIZE) {
+                final Chunk chunk = new Chunk(from, Math.min(CHUNK_SIZE, viewpoints.size() - from));
+
+                for (BlockingQueue<Chunk> queue : queues) {
+                    writeQueue.add(1);
+                    queue.put(chunk);
+                }
+            }
+
+            for (BlockingQueue<Chunk> queue : queues) {
+                writeQueue.add(1);
+                queue.put(END);
+            }
+
+            long bytes = 0;
+            List<ParallelFileCopier.Failure> failures = new ArrayList<>();
+
+            for (int i = 0; i < futures.size(); i++) {
+                try {
+                    bytes += futures.get(i).get();
+                } catch (ExecutionException e) {
+                    final IOException exception = e.getCause() instanceof IOException ? (IOException) e.getCause() :
+                            new IOException(e.getCause());
+
+                    batch.discard(files.get(i));
+                    failures.add(new ParallelFileCopier.Failure(files.get(i), files.get(i), exception));
+                }
+            }
+
+            if (writeBatch == null) {
+                try {
+                    batch.commit();
+                } catch (IOException e) {
+                    return new ParallelFileCopier.Result(0, 0, toFailures(files, e));
+                }
+            }
+
+            return new ParallelFileCopier.Result(files.size() - failures.size(), bytes, failures);
+        } finally {
+            executor.shutdownNow();
+
+            if (writeBatch == null) {
+                batch.abort();
+            }
+        }
+    }
+
+    private static List<ParallelFileCopier.Failure> toFailures(List<Path> files, IOException e) {
+        List<ParallelFileCopier.Failure> failures = new ArrayList<>();
+
+        for (Path file : files) {
+            failures.add(new ParallelFileCopier.Failure(file, file, e));
+        }
+
+        return failures;
+    }
+
+    /*
+     * Writes the chunks of one queue with one exporter. After a failure the queue is still drained, so the
+     * reading thread never blocks.
+     */
+    private static class ExportTask implements Callable<Long> {
+
+        private final WriteBatch batch;
+        private final CoordinateExporter exporter;
+        private final Path file;
+        private final Metrics metrics;
+        private final String projectName;
+        private final BlockingQueue<Chunk> queue;
+        private final QueueGauge queueGauge;
+        private final ViewpointTable viewpoints;
+
+        private ExportTask(CoordinateExporter exporter, BlockingQueue<Chunk> queue, QueueGauge queueGauge, Path file,
+                           String projectName, ViewpointTable viewpoints, WriteBatch batch, Metrics metrics) {
+            this.exporter = exporter;
+            this.queue = queue;
+            this.queueGauge = queueGauge;
+            this.file = file;
+            this.projectName = projectName;
+            this.viewpoints = viewpoints;
+            this.batch = batch;
+            this.metrics = metrics;
+        }
+
+        @Override
+        public Long call() throws Exception {
+            Chunk chunk = null;
+
+            try (Measurement measurement = metrics.start(Metrics.WRITE, file.getFileName().toString())) {
+                final Path temp = batch.add(file);
+                long points = 0;
+
+                try (Writer writer = Files.newBufferedWriter(temp, StandardCharsets.UTF_8)) {
+                    exporter.begin(writer, projectName);
+
+                    for (chunk = take(); chunk != END; chunk = take()) {
+                        for (int i = chunk.from; i < chunk.from + chunk.size; i++) {
+                            exporter.write(writer, viewpoints, i);
+                        }
+
+                        points += chunk.size;
+                    }
+
+                    exporter.end(writer);
+                }
+
+                final long bytes = Files.size(temp);
+
+                measurement.setItems(points);
+                measurement.setBytes(bytes);
+                measurement.succeeded();
+
+                return bytes;
+            } finally {
+                // The queue is drained after any failure, even an error of the exporter, so the reading thread
+                // never blocks
+                while (chunk != END) {
+                    chunk = take();
+                }
+            }
+        }
+
+        private Chunk take() throws InterruptedException {
+            final Chunk chunk = queue.take();
+            queueGauge.remove();
+
+            return chunk;
+        }
+
+    }
+
+    /*
+     * A range of consecutive rows of the viewpoint table.
+     */
+    private static class Chunk {
+
+        private final int from;
+        private final int size;
+
+        private Chunk(int from, int size) {
+            this.from = from;
+            this.size = size;
+        }
+
+    }
+
+} // end of CoordinateExportWriter
@@ -0,0 +1,93 @@
+/*
+ * License: MIT. Copyright (c) 2017 by Sebastian Aust (https://www.ryanthara.de/)
+ *
+ * This file is part of the package de.ryanthara.ja.zfex.io
+ *
+ * Copyright (c) 2017 ryanthara
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package de.ryanthara.ja.zfex.io;
+
+import de.ryanthara.ja.zfex.data.ViewpointTable;
+
+import java.io.IOException;
+import java.io.Writer;
+
+/**
+ * The <tt>CoordinateExporter</tt> is the service interface for the formats of the coordinate file.
+ * <p>
+ * Implementations are found with the {@link java.util.ServiceLoader} and have to be registered in the file
+ * 'META-INF/services/de.ryanthara.ja.zfex.io.CoordinateExporter'. Every load creates new instances and an
+ * instance writes exactly one file, so it may keep state between the calls. The calls for one file are always
+ * made by the same thread.
+ *
+ * @author sebastian
+ * @version 1
+ * @since 2
+ */
+public interface CoordinateExporter {
+
+    /**
+     * Returns the short name which is used to select the format, for example 'csv'.
+     *
+     * @return name of the format
+     */
+    String getName();
+
+    /**
+     * Returns the suffix which is appended to the project name to build the file name, for example '.csv'.
+     *
+     * @return file name suffix
+     */
+    String getFileSuffix();
+
+    /**
+     * Writes everything in front of the first viewpoint.
+     *
+     * @param writer      writer of the file
+     * @param projectName name of the project
+     *
+     * @throws IOException if the file could not be written
+     */
+    void begin(Writer writer, String projectName) throws IOException;
+
+    /**
+     * Writes one viewpoint. The coordinates are usually written with
+     * {@link ViewpointTable#formatCoordinate(int, int, de.ryanthara.ja.zfex.tools.CoordinateFormatter)}, so they
+     * look like in the project file.
+     *
+     * @param writer     writer of the file
+     * @param viewpoints table of the viewpoints, which is only read
+     * @param index      row index of the viewpoint
+     *
+     * @throws IOException if the file could not be written
+     */
+    void write(Writer writer, ViewpointTable viewpoints, int index) throws IOException;
+
+    /**
+     * Writes everything behind the last viewpoint.
+     *
+     * @param writer writer of the file
+     *
+     * @throws IOException if the file could not be written
+     */
+    void end(Writer writer) throws IOException;
+
+} // end of CoordinateExporter
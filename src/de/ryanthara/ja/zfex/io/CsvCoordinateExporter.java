@@ -0,0 +1,89 @@
+/*
+ * License: MIT. Copyright (c) 2017 by Sebastian Aust (https://www.ryanthara.de/)
+ *
+ * This file is part of the package de.ryanthara.ja.zfex.io
+ *
+ * Copyright (c) 2017 ryanthara
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package de.ryanthara.ja.zfex.io;
+
+import de.ryanthara.ja.zfex.data.ViewpointTable;
+import de.ryanthara.ja.zfex.tools.CoordinateFormatter;
+
+import java.io.IOException;
+import java.io.Writer;
+
+/**
+ * The <tt>CsvCoordinateExporter</tt> writes the viewpoints as comma separated values after RFC 4180 with a
+ * header line. Names with commas, quotes or line breaks are quoted.
+ *
+ * @author sebastian
+ * @version 1
+ * @since 2
+ */
+public class CsvCoordinateExporter implements CoordinateExporter {
+
+    private static final String LINE_BREAK = "\r\n";
+
+    private final CoordinateFormatter formatter = new CoordinateFormatter(-1);
+
+    @Override
+    public String getName() {
+        return "csv";
+    }
+
+    @Override
+    public String getFileSuffix() {
+        return ".csv";
+    }
+
+    @Override
+    public void begin(Writer writer, String projectName) throws IOException {
+        writer.write("Name,X,Y,Z");
+        writer.write(LINE_BREAK);
+    }
+
+    @Override
+    public void write(Writer writer, ViewpointTable viewpoints, int index) throws IOException {
+        final String name = viewpoints.getName(index);
+
+        if (name.indexOf(',') >= 0 || name.indexOf('"') >= 0 || name.indexOf('\n') >= 0 || name.indexOf('\r') >= 0) {
+            writer.write('"');
+            writer.write(name.replace("\"", "\"\""));
+            writer.write('"');
+        } else {
+            writer.write(name);
+        }
+
+        for (int axis = ViewpointTable.X; axis <= ViewpointTable.Z; axis++) {
+            writer.write(',');
+            viewpoints.formatCoordinate(index, axis, formatter);
+            formatter.write(writer);
+        }
+
+        writer.write(LINE_BREAK);
+    }
+
+    @Override
+    public void end(Writer writer) {
+    }
+
+} // end of CsvCoordinateExporter
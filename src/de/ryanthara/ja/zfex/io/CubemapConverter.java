@@ -0,0 +1,491 @@
+/*
+ * License: MIT. Copyright (c) 2017 by Sebastian Aust (https://www.ryanthara.de/)
+ *
+ * This file is part of the package de.ryanthara.ja.zfex.io
+ *
+ * Copyright (c) 2017 ryanthara
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package de.ryanthara.ja.zfex.io;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.ImageTypeSpecifier;
+import javax.imageio.stream.FileImageInputStream;
+import javax.imageio.stream.ImageInputStream;
+import java.awt.Graphics2D;
+import java.awt.color.ColorSpace;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferByte;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * The <tt>CubemapConverter</tt> converts equirectangular 360° panoramic images into the six faces of a cube
+ * map, which web viewers can render with far less texture memory.
+ * <p>
+ * The faces are written as 'front', 'right', 'back', 'left', 'up' and 'down' into a folder per panorama,
+ * either as one PNG file per face or, with a tile size, as a folder per face with the tiles 'column_row.png'.
+ * The front face looks to the center of the panorama, the faces are oriented like a viewer sees them.
+ * <p>
+ * For every face pixel a lookup table holds the position and the bilinear weights of the source pixels.
+ * The tables only depend on the size of the source and the faces, so they are computed once and reused for
+ * all panoramas with the same size. The rows of the faces are interpolated in parallel. Sources that are
+ * much larger than needed for the face size are subsampled while they are decoded.
+ *
+ * @author sebastian
+ * @version 1
+ * @since 2
+ */
+public class CubemapConverter {
+
+    /**
+     * Default edge length of the faces in pixels.
+     */
+    public static final int DEFAULT_FACE_SIZE = 1024;
+
+    /**
+     * Smallest edge length of the faces in pixels.
+     */
+    public static final int MIN_FACE_SIZE = 16;
+
+    /**
+     * Names of the faces in the order of the lookup tables.
+     */
+    public static final String[] FACE_NAMES = {"front", "right", "back", "left", "up", "down"};
+
+    private static final int MAX_CACHED_TABLES = 4;
+    private static final int STRIPE_ROWS = 64;
+    private static final int WEIGHT_BITS = 8;
+    private static final int WEIGHT_ONE = 1 << WEIGHT_BITS;
+    private static final int WRAP_FLAG = 1 << 30;
+
+    private final static Logger logger = Logger.getLogger(CubemapConverter.class.getName());
+
+    private static final Map<TableKey, LookupTable> tables = new ConcurrentHashMap<>();
+
+    private final int faceSize;
+    private final int threads;
+    private final int tileSize;
+
+    /**
+     * Constructs a new converter with the default face size, without tiling and one thread per processor
+     * up to eight threads.
+     */
+    public CubemapConverter() {
+        this(DEFAULT_FACE_SIZE, 0, ParallelFileCopier.DEFAULT_THREADS);
+    }
+
+    /**
+     * Constructs a new converter.
+     *
+     * @param faceSize edge length of the faces in pixels
+     * @param tileSize edge length of the tiles in pixels or 0 for one file per face
+     * @param threads  number of threads for the interpolation
+     */
+    public CubemapConverter(int faceSize, int tileSize, int threads) {
+        if (faceSize < MIN_FACE_SIZE || tileSize < 0 || threads < 1) {
+            throw new IllegalArgumentException("face size must be at least " + MIN_FACE_SIZE +
+                    ", tile size not negative and threads at least 1");
+        }
+
+        this.faceSize = faceSize;
+        this.tileSize = tileSize;
+        this.threads = threads;
+    }
+
+    /**
+     * Converts all panoramas one after another and blocks until every panorama is finished.
+     *
+     * @param images   map with the source images as keys and the names of the cube maps as values
+     * @param folder   folder for the cube map folders
+     * @param listener listener for the progress by images, may be null
+     *
+     * @return result with the number of converted panoramas and all failures in the order of the images
+     *
+     * @throws InterruptedException if the calling thread is interrupted
+     */
+    public ParallelFileCopier.Result convert(LinkedHashMap<Path, String> images, Path folder,
+                                             ParallelFileCopier.ProgressListener listener) throws InterruptedException {
+        final int count = images.size();
+
+        List<ParallelFileCopier.Failure> failures = new ArrayList<>();
+
+        ExecutorService executor = Executors.newFixedThreadPool(threads, r -> {
+            Thread thread = new Thread(r, "ZFEx cube map");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        try {
+            int done = 0;
+
+            for (Map.Entry<Path, String> entry : images.entrySet()) {
+                try {
+                    convert(entry.getKey(), folder.resolve(entry.getValue()), executor);
+                } catch (IOException | RuntimeException e) {
+                    logger.log(Level.SEVERE, "can not convert " + entry.getKey() + " into a cube map", e);
+                    failures.add(new ParallelFileCopier.Failure(entry.getKey(), folder.resolve(entry.getValue()),
+                            e instanceof IOException ? (IOException) e : new IOException(e.toString(), e)));
+                }
+
+                if (listener != null) {
+                    listener.progress(++done, count, 0, 0);
+                }
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        return new ParallelFileCopier.Result(count - failures.size(), 0, failures);
+    }
+
+    /*
+     * Converts one panorama into the cube map folder.
+     */
+    private void convert(Path source, Path cubeFolder, ExecutorService executor) throws IOException, InterruptedException {
+        final BufferedImage image = read(source);
+        final int width = image.getWidth();
+        final int height = image.getHeight();
+
+        final boolean gray = image.getType() == BufferedImage.TYPE_BYTE_GRAY;
+        final int bands = gray ? 1 : 3;
+        final byte[] pixels = ((DataBufferByte) image.getRaster().getDataBuffer()).getData();
+
+        final LookupTable table = getTable(width, height);
+
+        Files.createDirectories(cubeFolder);
+
+        for (int face = 0; face < 6; face++) {
+            final BufferedImage faceImage = new BufferedImage(faceSize, faceSize,
+                    gray ? BufferedImage.TYPE_BYTE_GRAY : BufferedImage.TYPE_3BYTE_BGR);
+            final byte[] target = ((DataBufferByte) faceImage.getRaster().getDataBuffer()).getData();
+            final int faceOffset = face * faceSize * faceSize;
+
+            List<Future<?>> futures = new ArrayList<>();
+
+            for (int row = 0; row < faceSize; row += STRIPE_ROWS) {
+                final int from = row * faceSize;
+                final int to = Math.min(row + STRIPE_ROWS, faceSize) * faceSize;
+
+                futures.add(executor.submit(() ->
+                        interpolate(table, faceOffset, pixels, width, bands, target, from, to)));
+            }
+
+            for (Future<?> future : futures) {
+                try {
+                    future.get();
+                } catch (ExecutionException e) {
+                    throw new IOException("interpolation of face " + FACE_NAMES[face] + " failed", e.getCause());
+                }
+            }
+
+            writeFace(faceImage, cubeFolder, FACE_NAMES[face]);
+        }
+    }
+
+    /*
+     * Interpolates the face pixels in the range [from, to) with the lookup table.
+     */
+    private static void interpolate(LookupTable table, int faceOffset, byte[] source, int width, int bands,
+                                    byte[] target, int from, int to) {
+        final int[] offsets = table.offsets;
+        final int[] weights = table.weights;
+        final int rowStep = width * bands;
+
+        for (int i = from; i < to; i++) {
+            final int offset = offsets[faceOffset + i];
+            final int weight = weights[faceOffset + i];
+
+            final int fx = weight & (WEIGHT_ONE | (WEIGHT_ONE - 1));
+            final int fy = (weight >> 9) & (WEIGHT_ONE | (WEIGHT_ONE - 1));
+            final int right = (weight & WRAP_FLAG) != 0 ? -(width - 1) * bands : bands;
+            final int down = (weight & (WRAP_FLAG >> 1)) != 0 ? 0 : rowStep;
+
+            final int p00 = offset * bands;
+            final int p01 = p00 + right;
+            final int p10 = p00 + down;
+            final int p11 = p10 + right;
+
+            for (int b = 0; b < bands; b++) {
+                final int top = (source[p00 + b] & 0xFF) * (WEIGHT_ONE - fx) + (source[p01 + b] & 0xFF) * fx;
+                final int bottom = (source[p10 + b] & 0xFF) * (WEIGHT_ONE - fx) + (source[p11 + b] & 0xFF) * fx;
+                final int value = (top * (WEIGHT_ONE - fy) + bottom * fy + (1 << (2 * WEIGHT_BITS - 1))) >> (2 * WEIGHT_BITS);
+
+                target[i * bands + b] = (byte) value;
+            }
+        }
+    }
+
+    /*
+     * Returns the lookup table for the source size, computing it if necessary.
+     */
+    private LookupTable getTable(int width, int height) {
+        TableKey key = new TableKey(width, height, faceSize);
+
+        LookupTable table = tables.get(key);
+
+        if (table == null) {
+            if (tables.size() >= MAX_CACHED_TABLES) {
+                tables.clear();
+            }
+
+            table = tables.computeIfAbsent(key, k -> new LookupTable(width, height, faceSize));
+        }
+
+        return table;
+    }
+
+    /*
+     * Decodes the panorama, subsampled if it is much larger than needed for the faces, as gray or bgr image.
+     */
+    private BufferedImage read(Path source) throws IOException {
+        try (ImageInputStream in = new FileImageInputStream(source.toFile())) {
+            Iterator<ImageReader> readers = ImageIO.getImageReaders(in);
+
+            if (!readers.hasNext()) {
+                throw new IOException("unknown image format of " + source);
+            }
+
+            ImageReader reader = readers.next();
+
+            try {
+                reader.setInput(in, true, true);
+
+                // the equator of the panorama covers four faces
+                final int subsampling = Math.max(1, reader.getWidth(0) / (4 * faceSize));
+
+                ImageReadParam param = reader.getDefaultReadParam();
+                param.setSourceSubsampling(subsampling, subsampling, 0, 0);
+
+                ImageTypeSpecifier type = reader.getRawImageType(0);
+                final boolean gray = type != null && type.getColorModel().getColorSpace().getType() == ColorSpace.TYPE_GRAY
+                        && !type.getColorModel().hasAlpha() && type.getSampleModel().getSampleSize(0) == 8;
+
+                BufferedImage image = reader.read(0, param);
+
+                if ((gray && image.getType() == BufferedImage.TYPE_BYTE_GRAY) || image.getType() == BufferedImage.TYPE_3BYTE_BGR) {
+                    return image;
+                }
+
+                BufferedImage converted = new BufferedImage(image.getWidth(), image.getHeight(), BufferedImage.TYPE_3BYTE_BGR);
+                Graphics2D graphics = converted.createGraphics();
+                graphics.drawImage(image, 0, 0, null);
+                graphics.dispose();
+
+                return converted;
+            } finally {
+                reader.dispose();
+            }
+        }
+    }
+
+    /*
+     * Writes a face as one file or as tiles.
+     */
+    private void writeFace(BufferedImage face, Path cubeFolder, String name) throws IOException {
+        if (tileSize == 0 || tileSize >= faceSize) {
+            writePNG(face, cubeFolder.resolve(name + ".png"));
+            return;
+        }
+
+        Path faceFolder = cubeFolder.resolve(name);
+        Files.createDirectories(faceFolder);
+
+        for (int y = 0, row = 0; y < faceSize; y += tileSize, row++) {
+            for (int x = 0, column = 0; x < faceSize; x += tileSize, column++) {
+                BufferedImage tile = face.getSubimage(x, y, Math.min(tileSize, faceSize - x), Math.min(tileSize, faceSize - y));
+
+                writePNG(tile, faceFolder.resolve(column + "_" + row + ".png"));
+            }
+        }
+    }
+
+    private static void writePNG(BufferedImage image, Path target) throws IOException {
+        Path temp = WriteBatch.createTempFile(target);
+
+        try {
+            if (!ImageIO.write(image, "png", temp.toFile())) {
+                throw new IOException("no png writer for " + target);
+            }
+
+            Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    /*
+     * Key of a lookup table.
+     */
+    private static final class TableKey {
+
+        private final int faceSize;
+        private final int height;
+        private final int width;
+
+        private TableKey(int width, int height, int faceSize) {
+            this.width = width;
+            this.height = height;
+            this.faceSize = faceSize;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+
+            if (!(o instanceof TableKey)) {
+                return false;
+            }
+
+            TableKey key = (TableKey) o;
+
+            return width == key.width && height == key.height && faceSize == key.faceSize;
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(width, height, faceSize);
+        }
+
+    }
+
+    /*
+     * The source pixel index and the packed bilinear weights for every pixel of the six faces. The weights
+     * hold the horizontal weight in bit 0 to 8, the vertical weight in bit 9 to 17, a flag for the last row
+     * in bit 29 and a flag for the wrap around at the right border of the panorama in bit 30.
+     */
+    private static final class LookupTable {
+
+        private final int[] offsets;
+        private final int[] weights;
+
+        private LookupTable(int width, int height, int faceSize) {
+            final int facePixels = faceSize * faceSize;
+
+            offsets = new int[6 * facePixels];
+            weights = new int[6 * facePixels];
+
+            for (int face = 0; face < 6; face++) {
+                for (int y = 0; y < faceSize; y++) {
+                    final double b = 2.0 * (y + 0.5) / faceSize - 1.0;
+
+                    for (int x = 0; x < faceSize; x++) {
+                        final double a = 2.0 * (x + 0.5) / faceSize - 1.0;
+
+                        double dx, dy, dz;
+
+                        switch (face) {
+                            case 0: // front
+                                dx = a;
+                                dy = -b;
+                                dz = 1;
+                                break;
+                            case 1: // right
+                                dx = 1;
+                                dy = -b;
+                                dz = -a;
+                                break;
+                            case 2: // back
+                                dx = -a;
+                                dy = -b;
+                                dz = -1;
+                                break;
+                            case 3: // left
+                                dx = -1;
+                                dy = -b;
+                                dz = a;
+                                break;
+                            case 4: // up
+                                dx = a;
+                                dy = 1;
+                                dz = b;
+                                break;
+                            default: // down
+                                dx = a;
+                                dy = -1;
+                                dz = -b;
+                                break;
+                        }
+
+                        final double longitude = Math.atan2(dx, dz);
+                        final double latitude = Math.atan2(dy, Math.sqrt(dx * dx + dz * dz));
+
+                        final double sx = (longitude + Math.PI) / (2 * Math.PI) * width - 0.5;
+                        final double sy = (Math.PI / 2 - latitude) / Math.PI * height - 0.5;
+
+                        final double floorX = Math.floor(sx);
+                        final double floorY = Math.floor(sy);
+
+                        int x0 = (int) floorX;
+                        int y0 = (int) floorY;
+                        int fx = (int) Math.round((sx - floorX) * WEIGHT_ONE);
+                        int fy = (int) Math.round((sy - floorY) * WEIGHT_ONE);
+
+                        x0 = ((x0 % width) + width) % width;
+
+                        if (y0 < 0) {
+                            y0 = 0;
+                            fy = 0;
+                        }
+
+                        int flags = 0;
+
+                        if (y0 >= height - 1) {
+                            y0 = height - 1;
+                            fy = 0;
+                            flags |= WRAP_FLAG >> 1;
+                        }
+
+                        if (x0 == width - 1) {
+                            flags |= WRAP_FLAG;
+                        }
+
+                        final int index = face * facePixels + y * faceSize + x;
+
+                        offsets[index] = y0 * width + x0;
+                        weights[index] = fx | (fy << 9) | flags;
+                    }
+                }
+            }
+        }
+
+    }
+
+} // end of CubemapConverter
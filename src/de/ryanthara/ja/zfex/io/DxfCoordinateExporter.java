@@ -0,0 +1,102 @@
+/*
+ * License: MIT. Copyright (c) 2017 by Sebastian Aust (https://www.ryanthara.de/)
+ *
+ * This file is part of the package de.ryanthara.ja.zfex.io
+ *
+ * Copyright (c) 2017 ryanthara
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package de.ryanthara.ja.zfex.io;
+
+import de.ryanthara.ja.zfex.data.ViewpointTable;
+import de.ryanthara.ja.zfex.tools.CoordinateFormatter;
+
+import java.io.IOException;
+import java.io.Writer;
+
+/**
+ * The <tt>DxfCoordinateExporter</tt> writes the viewpoints as a minimal ASCII DXF file (AutoCAD R12), which
+ * only holds an entities section with a point and a text with the name for each viewpoint. The points are
+ * placed on the layer 'VIEWPOINTS', the names on the layer 'VIEWPOINT_NAMES'.
+ *
+ * @author sebastian
+ * @version 1
+ * @since 2
+ */
+public class DxfCoordinateExporter implements CoordinateExporter {
+
+    private static final String TEXT_HEIGHT = "0.1";
+
+    private final CoordinateFormatter formatter = new CoordinateFormatter(-1);
+
+    @Override
+    public String getName() {
+        return "dxf";
+    }
+
+    @Override
+    public String getFileSuffix() {
+        return ".dxf";
+    }
+
+    @Override
+    public void begin(Writer writer, String projectName) throws IOException {
+        writeGroup(writer, 0, "SECTION");
+        writeGroup(writer, 2, "ENTITIES");
+    }
+
+    @Override
+    public void write(Writer writer, ViewpointTable viewpoints, int index) throws IOException {
+        writeGroup(writer, 0, "POINT");
+        writeGroup(writer, 8, "VIEWPOINTS");
+        writeCoordinates(writer, viewpoints, index);
+
+        writeGroup(writer, 0, "TEXT");
+        writeGroup(writer, 8, "VIEWPOINT_NAMES");
+        writeCoordinates(writer, viewpoints, index);
+        writeGroup(writer, 40, TEXT_HEIGHT);
+        writeGroup(writer, 1, viewpoints.getName(index));
+    }
+
+    @Override
+    public void end(Writer writer) throws IOException {
+        writeGroup(writer, 0, "ENDSEC");
+        writeGroup(writer, 0, "EOF");
+    }
+
+    private void writeCoordinates(Writer writer, ViewpointTable viewpoints, int index) throws IOException {
+        for (int axis = ViewpointTable.X; axis <= ViewpointTable.Z; axis++) {
+            writer.write(" " + (10 * (axis + 1)));
+            writer.write(System.lineSeparator());
+            viewpoints.formatCoordinate(index, axis, formatter);
+            formatter.write(writer);
+            writer.write(System.lineSeparator());
+        }
+    }
+
+    private static void writeGroup(Writer writer, int code, String value) throws IOException {
+        writer.write(code < 10 ? "  " : " ");
+        writer.write(Integer.toString(code));
+        writer.write(System.lineSeparator());
+        writer.write(value);
+        writer.write(System.lineSeparator());
+    }
+
+} // end of DxfCoordinateExporter
@@ -26,9 +26,12 @@
 package de.ryanthara.ja.zfex.io;
 
 import de.ryanthara.ja.zfex.Main;
+import de.ryanthara.ja.zfex.StatusDisplay;
 import de.ryanthara.ja.zfex.i18n.LangStrings;
 import de.ryanthara.ja.zfex.i18n.ResourceBundleUtils;
-import javafx.concurrent.Task;
+import de.ryanthara.ja.zfex.metrics.Measurement;
+import de.ryanthara.ja.zfex.metrics.Metrics;
+import de.ryanthara.ja.zfex.tools.FxThread;
 import javafx.scene.control.Alert;
 import javafx.scene.control.ButtonBar;
 import javafx.scene.control.ButtonType;
@@ -41,17 +44,27 @@ import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.Optional;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
-import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
-
 /**
  * ExportFileWorker do all the file operations which has to be done to copy
  * and rename the 360° panoramic vies for every scan point.
  * <p>
- * The images are copied into a folder 'PNG' and renamed to the 'scan name'.png.
+ * The images are copied into a folder 'PNG' and renamed to the 'scan name'.png. The copies run in parallel
+ * with a {@link ParallelFileCopier}. Instead of copying them, the images can be converted into grayscale
+ * PNG files and the colored panoramic images into JPEG files in a folder 'JPG' by a {@link PanoramaConverter}.
+ * Additionally the panoramic images can be converted into cube maps in a folder 'CUBE' by a
+ * {@link CubemapConverter}.
+ * <p>
+ * In the incremental sync mode an {@link ExportManifest} in the export folders is used instead of asking the
+ * user about existing files. Only new or changed images are copied and images of removed scans are deleted.
+ * <p>
+ * Without the incremental sync mode the {@link OverwritePolicy} decides about existing files. In the synchronous
+ * mode the exports run in the calling thread, which is used by the headless mode without the JavaFX toolkit.
  *
  * @author sebastian
  * @version 1
@@ -61,9 +74,15 @@ public class ExportFileWorker {
 
     private final static Logger logger = Logger.getLogger(ExportFileWorker.class.getName());
 
+    private PanoramaConverter converter = new PanoramaConverter();
+    private CubemapConverter cubemapConverter = new CubemapConverter();
     private File exportFolder;
+    private ParallelFileCopier fileCopier = new ParallelFileCopier();
+    private boolean incrementalSync = false;
+    private Metrics metrics = Main.metrics;
+    private OverwritePolicy overwritePolicy = OverwritePolicy.ASK;
     private File projectFile;
-    private Path pngFolder;
+    private boolean synchronous = false;
 
     /**
      * Basic constructor without any functionality.
@@ -79,184 +98,552 @@ public class ExportFileWorker {
         logger.addHandler(Main.fileHandler);
     }
 
+    /**
+     * Sets the {@link PanoramaConverter} which is used for converting the images, for example to change the
+     * number of threads, the memory budget or the JPEG quality.
+     *
+     * @param converter converter to be used
+     */
+    public void setConverter(PanoramaConverter converter) {
+        this.converter = converter;
+    }
+
+    /**
+     * Sets the {@link CubemapConverter} which is used for the cube maps, for example to change the face size
+     * or the tiling of the faces.
+     *
+     * @param cubemapConverter cube map converter to be used
+     */
+    public void setCubemapConverter(CubemapConverter cubemapConverter) {
+        this.cubemapConverter = cubemapConverter;
+    }
+
+    /**
+     * Sets the {@link ParallelFileCopier} which is used for copying the images, for example to change the
+     * number of copy threads, the concurrent copies per target or the {@link TransferMode}.
+     *
+     * @param fileCopier file copier to be used
+     */
+    public void setFileCopier(ParallelFileCopier fileCopier) {
+        this.fileCopier = fileCopier;
+    }
+
+    /**
+     * Enables or disables the incremental sync mode with an {@link ExportManifest}.
+     *
+     * @param incrementalSync true for copying only new or changed images without asking the user
+     */
+    public void setIncrementalSync(boolean incrementalSync) {
+        this.incrementalSync = incrementalSync;
+    }
+
+    /**
+     * Sets the {@link Metrics} registry of the export run, which receives the measurements of this worker, its copies and its conversions.
+     *
+     * @param metrics metrics registry, the global one of {@link Main#metrics} is used by default
+     */
+    public void setMetrics(Metrics metrics) {
+        this.metrics = metrics;
+    }
+
+    /**
+     * Sets the {@link OverwritePolicy} for images that exist in the export folder already. With any other policy
+     * than {@link OverwritePolicy#ASK} no dialog is shown at all.
+     *
+     * @param overwritePolicy overwrite policy to be used
+     */
+    public void setOverwritePolicy(OverwritePolicy overwritePolicy) {
+        this.overwritePolicy = overwritePolicy;
+    }
+
+    /**
+     * Enables or disables the synchronous mode, which runs the exports in the calling thread instead of a
+     * JavaFX background task.
+     *
+     * @param synchronous true for running the exports in the calling thread
+     */
+    public void setSynchronous(boolean synchronous) {
+        this.synchronous = synchronous;
+    }
+
+    /**
+     * Initialize the grayscale png export to the given export folder. The panoramic images are converted
+     * into grayscale images, images which are grayscale already are transferred as they are.
+     *
+     * @return success of the export, in the asynchronous mode only the success of starting it
+     */
+    public boolean exportBlackAndWhitePNG() {
+        return export(ExportType.PNG, (files, listener) -> converter.convertToGrayscalePNG(files, listener, metrics));
+    }
+
+    /**
+     * Initialize the jpg export of the colored panoramic images to the given export folder.
+     *
+     * @return success of the export, in the asynchronous mode only the success of starting it
+     */
+    public boolean exportColorJPG() {
+        return export(ExportType.JPG, (files, listener) -> converter.convertToJPG(files, listener, metrics));
+    }
+
+    /**
+     * Initialize the cube map export of the panoramic images to the folder 'CUBE' of the given export folder.
+     * Every panoramic image gets a folder with its six faces, which is named by the scan.
+     *
+     * @return success of the export, in the asynchronous mode only the success of starting it
+     */
+    public boolean exportCubemaps() {
+        File[] files = listSources(ExportType.PNG);
+
+        if (files == null || files.length == 0) {
+            Main.eventBus.publishStatus(StatusDisplay.STATUS_ERROR, ResourceBundleUtils.getLangString(ExportType.PNG.copyError));
+            return false;
+        }
+
+        final Path cubeFolder = Paths.get(exportFolder.getPath(), "CUBE");
+        final LinkedHashMap<Path, String> images = new LinkedHashMap<>();
+
+        for (File file : files) {
+            String fileName = getTargetFile(ExportType.PNG, cubeFolder, file).getFileName().toString();
+
+            images.put(file.toPath(), fileName.substring(0, fileName.lastIndexOf('.')));
+        }
+
+        return TaskRunner.run(synchronous, () -> {
+            Files.createDirectories(cubeFolder);
+
+            return cubemapConverter.convert(images, cubeFolder, (filesDone, filesTotal, bytesDone, bytesTotal) ->
+                    Main.eventBus.publishProgress((double) filesDone / filesTotal));
+        }, result -> {
+            if (!result.isSuccess()) {
+                return operationFailed(LangStrings.statusExportCubemapFailed, LangStrings.title_cubemapFailed,
+                        LangStrings.head_cubemapFailed, files, result);
+            }
+
+            Main.eventBus.publishStatus(StatusDisplay.STATUS_OK, String.format(ResourceBundleUtils.getLangString(LangStrings.statusExportCubemapSuccess),
+                    result.getCopiedFiles(), exportFolder.getName()));
+
+            return true;
+        }, exception -> {
+            logger.log(Level.SEVERE, "cube map export failed", exception);
+
+            Main.eventBus.publishStatus(StatusDisplay.STATUS_ERROR, String.format(ResourceBundleUtils.getLangString(LangStrings.statusExportCubemapFailed),
+                    files.length, exportFolder.getName()));
+        });
+    }
+
     /**
      * Initialize the png export to the given export folder.
+     *
+     * @return success of the export, in the asynchronous mode only the success of starting it
      */
-    public void exportPNG() {
-        if (createFolderPNG()) {
-            File[] copyFiles = listPNGs();
+    public boolean exportPNG() {
+        return export(ExportType.PNG, (files, listener) -> fileCopier.copy(files, listener, metrics));
+    }
+
+    /*
+     * Creates the folder of the export type and exports all images with the given operation.
+     */
+    private boolean export(ExportType type, BatchOperation operation) {
+        final Path folder = createFolder(type);
+
+        if (folder != null) {
+            File[] copyFiles = listSources(type);
 
-            if (copyFiles != null) {
-                copyInit(copyFiles);
+            if (copyFiles != null && copyFiles.length > 0 && incrementalSync) {
+                return syncFiles(type, folder, copyFiles, operation);
+            } else if (copyFiles != null && copyFiles.length > 0) {
+                return copyInit(type, folder, copyFiles, operation);
             } else {
-                Main.statusPane.setStatusIcon(Main.statusPane.STATUS_ERROR);
-                Main.statusPane.setStatusText(ResourceBundleUtils.getLangString(LangStrings.statusCopyPNGError));
+                Main.eventBus.publishStatus(StatusDisplay.STATUS_ERROR, ResourceBundleUtils.getLangString(type.copyError));
             }
         }
+
+        return false;
     }
 
-    private void copyInit(File[] files) {
+    private boolean copyInit(ExportType type, Path folder, File[] files, BatchOperation operation) {
         ArrayList<String> duplicateFileNames = new ArrayList<>();
         ArrayList<File> notExistPath = new ArrayList<>();
 
         for (File file : files) {
-            String fileName = file.getName().replaceAll(".pano360rf", "");
-
-            Path src = Paths.get(file.getPath());
-            Path dest = Paths.get(pngFolder.toString() + FileSystems.getDefault().getSeparator() + fileName);
+            Path dest = getTargetFile(type, folder, file);
 
             if (dest.toFile().exists()) {
-                duplicateFileNames.add(fileName);
+                duplicateFileNames.add(dest.getFileName().toString());
             } else {
-                notExistPath.add(src.toFile());
+                notExistPath.add(file);
             }
         }
 
-        if (duplicateFileNames.size() > 0) {
-            Alert alert = new Alert(Alert.AlertType.WARNING);
-            alert.setTitle(ResourceBundleUtils.getLangString(LangStrings.copyPNGWarningTitle));
-            alert.setHeaderText(ResourceBundleUtils.getLangString(LangStrings.copyPNGWarningHeaderText));
-            alert.setContentText(ResourceBundleUtils.getLangString(LangStrings.copyPNGWarningText));
+        if (duplicateFileNames.isEmpty() || overwritePolicy == OverwritePolicy.OVERWRITE) {
+            return copyFiles(type, folder, files, operation);
+        } else if (overwritePolicy == OverwritePolicy.SKIP) {
+            return skipExisting(type, folder, notExistPath, operation);
+        } else if (overwritePolicy == OverwritePolicy.FAIL) {
+            logger.log(Level.SEVERE, "export of the " + type.folderName + " folder failed, files exist already: " +
+                    duplicateFileNames);
+
+            Main.eventBus.publishStatus(StatusDisplay.STATUS_ERROR, String.format(ResourceBundleUtils.getLangString(type.exportFailed),
+                    duplicateFileNames.size() + "/" + files.length, exportFolder.getName()));
 
+            return false;
+        } else {
             ButtonType buttonOverwrite = new ButtonType(ResourceBundleUtils.getLangString(LangStrings.overwriteBtn));
             ButtonType buttonSkip = new ButtonType(ResourceBundleUtils.getLangString(LangStrings.skipBtn));
             ButtonType buttonTypeCancel = new ButtonType(ResourceBundleUtils.getLangString(LangStrings.cancelBtn),
                     ButtonBar.ButtonData.CANCEL_CLOSE);
 
-            alert.getButtonTypes().setAll(buttonOverwrite, buttonSkip, buttonTypeCancel);
+            Optional<ButtonType> result = FxThread.callAndWait(() -> {
+                Alert alert = new Alert(Alert.AlertType.WARNING);
+                alert.setTitle(ResourceBundleUtils.getLangString(type.warningTitle));
+                alert.setHeaderText(ResourceBundleUtils.getLangString(type.warningHeaderText));
+                alert.setContentText(ResourceBundleUtils.getLangString(type.warningText));
+                alert.getButtonTypes().setAll(buttonOverwrite, buttonSkip, buttonTypeCancel);
 
-            Optional<ButtonType> result = alert.showAndWait();
+                return alert.showAndWait();
+            });
 
             if (result.orElse(null) == buttonOverwrite) {
                 // ... user chose "One"
-                copyPNGs(files);
+                return copyFiles(type, folder, files, operation);
             } else if (result.orElse(null) == buttonSkip) {
                 // ... user chose "Two"
-                if (notExistPath.toArray(new File[0]).length == 0) {
-                    Main.statusPane.setStatusIcon(Main.statusPane.STATUS_OK);
-                    Main.statusPane.setStatusText(ResourceBundleUtils.getLangString(LangStrings.statusExportPNGZero));
-                } else {
-                    copyPNGs(notExistPath.toArray(new File[0]));
-                }
+                return skipExisting(type, folder, notExistPath, operation);
             } else if (result.orElse(null) == buttonTypeCancel) {
-                Main.statusPane.setStatusIcon(Main.statusPane.STATUS_INFORMATION);
-                Main.statusPane.setStatusText(ResourceBundleUtils.getLangString(LangStrings.statusExportPNGCancelled));
+                Main.eventBus.publishStatus(StatusDisplay.STATUS_INFORMATION, ResourceBundleUtils.getLangString(type.exportCancelled));
             }
+
+            return false;
+        }
+    }
+
+    /*
+     * Copies only the files that do not exist in the export folder.
+     */
+    private boolean skipExisting(ExportType type, Path folder, ArrayList<File> notExistPath, BatchOperation operation) {
+        if (notExistPath.isEmpty()) {
+            Main.eventBus.publishStatus(StatusDisplay.STATUS_OK, ResourceBundleUtils.getLangString(type.exportZero));
+
+            return true;
+        }
+
+        return copyFiles(type, folder, notExistPath.toArray(new File[0]), operation);
+    }
+
+    private boolean copyFinished(ExportType type, File[] copyFiles, ParallelFileCopier.Result result) {
+        if (!result.isSuccess()) {
+            return copyFailed(type, copyFiles, result);
+        }
+
+        Main.eventBus.publishStatus(StatusDisplay.STATUS_OK, String.format(
+                ResourceBundleUtils.getLangString(type.exportSuccess), copyFiles.length, exportFolder.getName()));
+
+        return true;
+    }
+
+    /*
+     * Reports every file that could not be copied in the order of the copy batch.
+     */
+    private boolean copyFailed(ExportType type, File[] copyFiles, ParallelFileCopier.Result result) {
+        return operationFailed(type.exportFailed, LangStrings.title_copyPNGFailed, LangStrings.head_copyPNGFailed,
+                copyFiles, result);
+    }
+
+    /*
+     * Reports the failed files of a copy or conversion with the given status message and alert texts.
+     */
+    private boolean operationFailed(LangStrings failedMessage, LangStrings alertTitle, LangStrings alertHeader,
+                                    File[] copyFiles, ParallelFileCopier.Result result) {
+        StringBuilder failedFiles = new StringBuilder();
+
+        for (ParallelFileCopier.Failure failure : result.getFailures()) {
+            failedFiles.append(failure.toString()).append(System.lineSeparator());
+        }
+
+        Main.eventBus.publishStatus(StatusDisplay.STATUS_ERROR, String.format(ResourceBundleUtils.getLangString(failedMessage),
+                result.getFailures().size() + "/" + copyFiles.length, exportFolder.getName()));
+
+        if (overwritePolicy == OverwritePolicy.ASK) {
+            FxThread.callAndWait(() -> {
+                Alert alert = new Alert(Alert.AlertType.ERROR);
+                alert.setTitle(ResourceBundleUtils.getLangString(alertTitle));
+                alert.setHeaderText(String.format(ResourceBundleUtils.getLangString(alertHeader),
+                        result.getFailures().size(), copyFiles.length));
+                alert.setContentText(failedFiles.toString());
+
+                return alert.showAndWait();
+            });
         } else {
-            copyPNGs(files);
+            logger.log(Level.SEVERE, "files could not be exported: " + System.lineSeparator() + failedFiles);
+        }
+
+        return false;
+    }
+
+    /*
+     * Copies or converts the files in parallel in a background task or in the calling thread.
+     */
+    private boolean copyFiles(ExportType type, Path folder, File[] files, BatchOperation operation) {
+        final LinkedHashMap<Path, Path> copyFiles = new LinkedHashMap<>();
+
+        for (File file : files) {
+            copyFiles.put(Paths.get(file.getPath()), getTargetFile(type, folder, file));
         }
+
+        return TaskRunner.run(synchronous,
+                () -> runOperation(type, operation, copyFiles),
+                result -> copyFinished(type, files, result),
+                exception -> exportFailed(type, files, exception));
     }
 
-    private void copyPNGSuccess(File[] copyFiles) {
-        Main.statusPane.setStatusIcon(Main.statusPane.STATUS_OK);
-        Main.statusPane.setStatusText(String.format(
-                ResourceBundleUtils.getLangString(LangStrings.statusExportPNGSuccess), copyFiles.length, exportFolder.getName()));
+    /*
+     * Copies or converts the files with the progress in the status bar and measures the export of the whole
+     * folder, the single files are measured by the copier or the converter.
+     */
+    private ParallelFileCopier.Result runOperation(ExportType type, BatchOperation operation,
+                                                   LinkedHashMap<Path, Path> files) throws InterruptedException {
+        try (Measurement measurement = metrics.start(Metrics.EXPORT, type.folderName)) {
+            ParallelFileCopier.Result result = operation.run(files, (filesDone, filesTotal, bytesDone, bytesTotal) ->
+                    Main.eventBus.publishProgress(bytesTotal > 0 ? (double) bytesDone / bytesTotal : (double) filesDone / filesTotal));
 
-        if (Main.isLoadedLaserRadarProject && Main.isWrittenStandPointsFile && Main.isWrittenViewerFile) {
-            Alert alert = new Alert(Alert.AlertType.INFORMATION);
-            alert.setTitle(ResourceBundleUtils.getLangString(LangStrings.workSuccessTitle));
-            alert.setHeaderText(ResourceBundleUtils.getLangString(LangStrings.workSuccessHeaderText));
-            alert.setContentText(ResourceBundleUtils.getLangString(LangStrings.workSuccessContentText));
+            measurement.setItems(result.getCopiedFiles());
+            measurement.setBytes(result.getCopiedBytes());
 
-            alert.showAndWait();
+            if (result.isSuccess()) {
+                measurement.succeeded();
+            }
+
+            return result;
         }
     }
 
     /*
-     * Creates the folder with java.nio functions
+     * Reports an export that could not be finished at all.
      */
-    private void copyPNGs(File[] files) {
-        Task<Void> task = new Task<Void>() {
-            @Override
-            public Void call() throws Exception {
-                for (int i = 0; i < files.length; i++) {
-                    final double step = i + 1.0;
-                    final int counter = i + 1;
+    private void exportFailed(ExportType type, File[] files, Throwable exception) {
+        logger.log(Level.SEVERE, "export of the " + type.folderName + " folder failed", exception);
 
-                    File file = files[i];
-                    String fileName = file.getName().replaceAll(".pano360rf", "");
+        Main.eventBus.publishStatus(StatusDisplay.STATUS_ERROR, String.format(ResourceBundleUtils.getLangString(type.exportFailed),
+                files.length, exportFolder.getName()));
+    }
 
-                    Path src = Paths.get(file.getPath());
-                    Path dest = Paths.get(pngFolder.toString() + FileSystems.getDefault().getSeparator() + fileName);
+    /*
+     * Reports the result of an incremental sync.
+     */
+    private boolean syncFinished(ExportType type, File[] files, SyncResult result) {
+        if (!result.copyResult.isSuccess()) {
+            return copyFailed(type, files, result.copyResult);
+        }
 
-                    try {
-                        Files.copy(src, dest, REPLACE_EXISTING);
+        Main.eventBus.publishStatus(StatusDisplay.STATUS_OK, String.format(ResourceBundleUtils.getLangString(type.syncSuccess),
+                result.copyResult.getCopiedFiles(), result.skipped, result.removed, exportFolder.getName()));
 
-                        Main.statusPane.setProgress(step / files.length);
-                    } catch (IOException e) {
-                        logger.log(Level.SEVERE, "error while copying png files", e);
-                        logger.log(Level.SEVERE, e.getMessage());
+        return true;
+    }
 
-                        final String status = String.format(ResourceBundleUtils.getLangString(LangStrings.statusExportPNGFailed),
-                                counter, exportFolder.getName());
+    /*
+     * Copies or converts only new or changed files and deletes the stale ones in a background task, which
+     * is driven by the export manifest of the folder.
+     */
+    private boolean syncFiles(ExportType type, Path folder, File[] files, BatchOperation operation) {
+        return TaskRunner.run(synchronous, () -> {
+            ExportManifest manifest = ExportManifest.load(folder);
+
+            final LinkedHashMap<Path, Path> changedFiles = new LinkedHashMap<>();
+            final ArrayList<Path> targets = new ArrayList<>();
+
+            for (File file : files) {
+                Path source = Paths.get(file.getPath());
+                Path target = getTargetFile(type, folder, file);
+
+                targets.add(target);
+
+                if (!manifest.isUnchanged(source, target)) {
+                    changedFiles.put(source, target);
+                }
+            }
+
+            int removed = 0;
 
-                        Main.statusPane.setStatusIcon(Main.statusPane.STATUS_ERROR);
-                        Main.statusPane.setStatusText(status);
+            for (Path stale : manifest.removeStale(targets)) {
+                try {
+                    if (Files.deleteIfExists(stale)) {
+                        removed = removed + 1;
                     }
+                } catch (IOException e) {
+                    logger.log(Level.WARNING, "can not delete stale file " + stale, e);
                 }
+            }
+
+            ParallelFileCopier.Result copyResult = runOperation(type, operation, changedFiles);
 
-                return null;
+            final HashSet<Path> failedSources = new HashSet<>();
+
+            for (ParallelFileCopier.Failure failure : copyResult.getFailures()) {
+                failedSources.add(failure.getSource());
             }
-        };
 
-        task.setOnSucceeded(e -> copyPNGSuccess(files));
+            for (Path source : changedFiles.keySet()) {
+                if (!failedSources.contains(source)) {
+                    manifest.put(source, changedFiles.get(source));
+                }
+            }
+
+            manifest.store();
+
+            return new SyncResult(copyResult, files.length - changedFiles.size(), removed);
+        }, result -> syncFinished(type, files, result), exception -> {
+            logger.log(Level.SEVERE, "incremental sync of the " + type.folderName + " folder failed", exception);
 
-        new Thread(task).start();
+            Main.eventBus.publishStatus(StatusDisplay.STATUS_ERROR, String.format(ResourceBundleUtils.getLangString(type.exportFailed),
+                    files.length, exportFolder.getName()));
+        });
     }
 
     /*
-     * Creates the folder with java.nio functions
+     * Creates the folder with java.nio functions and returns it, or null if it could not be created.
      */
-    private boolean createFolderPNG() {
+    private Path createFolder(ExportType type) {
         boolean success = false;
 
-        pngFolder = Paths.get(exportFolder.getPath() + FileSystems.getDefault().getSeparator() + "PNG");
+        Path folder = Paths.get(exportFolder.getPath() + FileSystems.getDefault().getSeparator() + type.folderName);
 
-        if (Files.exists(pngFolder)) {
+        if (Files.exists(folder)) {
             success = true;
 
-            Main.statusPane.setStatusIcon(Main.statusPane.STATUS_INFORMATION);
-            Main.statusPane.setStatusText(String.format(
-                    ResourceBundleUtils.getLangString(LangStrings.statusCreatePNGFolderExists), exportFolder.getName()));
+            Main.eventBus.publishStatus(StatusDisplay.STATUS_INFORMATION, String.format(
+                    ResourceBundleUtils.getLangString(type.folderExists), exportFolder.getName()));
         } else {
             try {
-                Files.createDirectories(pngFolder);
+                Files.createDirectories(folder);
                 success = true;
             } catch (IOException e) {
-                logger.log(Level.SEVERE, "png folder creation failed");
+                logger.log(Level.SEVERE, type.folderName.toLowerCase() + " folder creation failed");
                 logger.log(Level.SEVERE, e.getMessage());
 
                 e.printStackTrace();
             }
 
             if (success) {
-                final String status = String.format(ResourceBundleUtils.getLangString(LangStrings.statusCreatePNGFolderSuccess),
+                final String status = String.format(ResourceBundleUtils.getLangString(type.folderSuccess),
                         exportFolder.getName());
 
-                Main.statusPane.setStatusIcon(Main.statusPane.STATUS_OK);
-                Main.statusPane.setStatusText(status);
+                Main.eventBus.publishStatus(StatusDisplay.STATUS_OK, status);
             } else {
-                final String status = String.format(ResourceBundleUtils.getLangString(LangStrings.statusCreatePNGFolderFailed),
+                final String status = String.format(ResourceBundleUtils.getLangString(type.folderFailed),
                         exportFolder.getName());
 
-                Main.statusPane.setStatusIcon(Main.statusPane.STATUS_ERROR);
-                Main.statusPane.setStatusText(status);
+                Main.eventBus.publishStatus(StatusDisplay.STATUS_ERROR, status);
             }
         }
 
-        return success;
+        return success ? folder : null;
+    }
+
+    /*
+     * Returns the file in the export folder for a panoramic image, which is named by the scan.
+     */
+    private Path getTargetFile(ExportType type, Path folder, File file) {
+        String fileName = file.getName().replace(type.indicator, "");
+        fileName = fileName.substring(0, fileName.lastIndexOf('.')) + type.extension;
+
+        return Paths.get(folder.toString() + FileSystems.getDefault().getSeparator() + fileName);
     }
 
     /*
-     * Lists only png files that are valid and contains the char sequence '.pano360rf.png'.
-     * The indicator '.pano360rf.png' is given by ZF Laser Control and identify the needed panoramic files.
+     * Lists only png files that are valid and contains the indicator of the export type, for example
+     * '.pano360rf.png'. The indicator is given by ZF Laser Control and identify the needed panoramic files.
      */
-    private File[] listPNGs() {
+    private File[] listSources(ExportType type) {
         FilenameFilter pngFilter = (dir, name) -> new File(dir, name).isFile() &&
-                name.toLowerCase().contains(".pano360rf.png") &&
+                name.toLowerCase().contains(type.indicator + ".png") &&
                 name.toLowerCase().endsWith(".png");
 
         return new File(projectFile.getParent() + File.separator + ".temp").listFiles(pngFilter);
     }
 
+    /*
+     * The kinds of exported panoramic images with their folder, file names and messages.
+     */
+    private enum ExportType {
+
+        PNG("PNG", ".pano360rf", ".png", LangStrings.statusCopyPNGError, LangStrings.statusCreatePNGFolderExists,
+                LangStrings.statusCreatePNGFolderSuccess, LangStrings.statusCreatePNGFolderFailed,
+                LangStrings.copyPNGWarningTitle, LangStrings.copyPNGWarningHeaderText, LangStrings.copyPNGWarningText,
+                LangStrings.statusExportPNGZero, LangStrings.statusExportPNGCancelled, LangStrings.statusExportPNGSuccess,
+                LangStrings.statusExportPNGFailed, LangStrings.statusSyncPNGSuccess),
+
+        JPG("JPG", ".pano360rgb", ".jpg", LangStrings.status_copyJPGError, LangStrings.status_createJPGFolderExists,
+                LangStrings.status_createJPGFolderSuccess, LangStrings.status_createJPGFolderFailed,
+                LangStrings.title_copyJPGWarning, LangStrings.head_copyJPGWarning, LangStrings.text_copyJPGWarning,
+                LangStrings.status_exportJPGZero, LangStrings.status_exportJPGCancelled, LangStrings.status_exportJPGSuccess,
+                LangStrings.status_exportJPGFailed, LangStrings.statusSyncJPGSuccess);
+
+        private final String folderName;
+        private final String indicator;
+        private final String extension;
+        private final LangStrings copyError;
+        private final LangStrings folderExists;
+        private final LangStrings folderSuccess;
+        private final LangStrings folderFailed;
+        private final LangStrings warningTitle;
+        private final LangStrings warningHeaderText;
+        private final LangStrings warningText;
+        private final LangStrings exportZero;
+        private final LangStrings exportCancelled;
+        private final LangStrings exportSuccess;
+        private final LangStrings exportFailed;
+        private final LangStrings syncSuccess;
+
+        ExportType(String folderName, String indicator, String extension, LangStrings copyError, LangStrings folderExists,
+                   LangStrings folderSuccess, LangStrings folderFailed, LangStrings warningTitle,
+                   LangStrings warningHeaderText, LangStrings warningText, LangStrings exportZero,
+                   LangStrings exportCancelled, LangStrings exportSuccess, LangStrings exportFailed,
+                   LangStrings syncSuccess) {
+            this.folderName = folderName;
+            this.indicator = indicator;
+            this.extension = extension;
+            this.copyError = copyError;
+            this.folderExists = folderExists;
+            this.folderSuccess = folderSuccess;
+            this.folderFailed = folderFailed;
+            this.warningTitle = warningTitle;
+            this.warningHeaderText = warningHeaderText;
+            this.warningText = warningText;
+            this.exportZero = exportZero;
+            this.exportCancelled = exportCancelled;
+            this.exportSuccess = exportSuccess;
+            this.exportFailed = exportFailed;
+            this.syncSuccess = syncSuccess;
+        }
+
+    }
+
+    /*
+     * A parallel batch operation on files, which is a copy or a conversion.
+     */
+    private interface BatchOperation {
+
+        ParallelFileCopier.Result run(LinkedHashMap<Path, Path> files, ParallelFileCopier.ProgressListener listener)
+                throws InterruptedException;
+
+    }
+
+    /*
+     * Result of an incremental sync.
+     */
+    private static final class SyncResult {
+
+        private final ParallelFileCopier.Result copyResult;
+        private final int removed;
+        private final int skipped;
+
+        private SyncResult(ParallelFileCopier.Result copyResult, int skipped, int removed) {
+            this.copyResult = copyResult;
+            this.skipped = skipped;
+            this.removed = removed;
+        }
+
+    }
+
 } // end of ExportFileWorker
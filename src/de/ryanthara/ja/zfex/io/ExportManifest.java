@@ -0,0 +1,256 @@
+/*
+ * License: MIT. Copyright (c) 2017 by Sebastian Aust (https://www.ryanthara.de/)
+ *
+ * This file is part of the package de.ryanthara.ja.zfex.io
+ *
+ * Copyright (c) 2017 ryanthara
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package de.ryanthara.ja.zfex.io;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * The <tt>ExportManifest</tt> remembers the size, the modification time and the CRC32 checksum of the source
+ * of every exported file in an export folder, and the size and the modification time of the exported file
+ * itself, so an export can be repeated incrementally.
+ * <p>
+ * A source file is unchanged as long as its size and modification time are the same as in the manifest and
+ * the exported file still exists as it was written. The exported file is compared with its own recorded state
+ * and not with the source, because a converted image has another size than its source. If only the
+ * modification time of the source differs, the checksum decides.
+ * <p>
+ * The manifest is stored as a tab separated text file '.zfex_manifest' in the export folder. Only files
+ * which are recorded in the manifest are ever removed as stale, files of the user are not touched.
+ *
+ * @author sebastian
+ * @version 1
+ * @since 2
+ */
+public class ExportManifest {
+
+    /**
+     * File name of the manifest in the export folder.
+     */
+    public static final String FILE_NAME = ".zfex_manifest";
+
+    private static final String HEADER = "# ZFEx export manifest 2";
+
+    private final static Logger logger = Logger.getLogger(ExportManifest.class.getName());
+
+    private final Map<String, Entry> entries = new TreeMap<>();
+    private final Path folder;
+
+    private ExportManifest(Path folder) {
+        this.folder = folder;
+    }
+
+    /**
+     * Loads the manifest of an export folder. A missing or unreadable manifest results in an empty one,
+     * which means that every file is copied again.
+     *
+     * @param folder export folder
+     *
+     * @return manifest of the export folder
+     */
+    public static ExportManifest load(Path folder) {
+        ExportManifest manifest = new ExportManifest(folder);
+
+        Path file = folder.resolve(FILE_NAME);
+
+        if (!Files.isRegularFile(file)) {
+            return manifest;
+        }
+
+        try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            String line = reader.readLine();
+
+            if (!HEADER.equals(line)) {
+                logger.log(Level.WARNING, "unknown export manifest format, all files are copied again: " + file);
+                return manifest;
+            }
+
+            while ((line = reader.readLine()) != null) {
+                String[] values = line.split("\t");
+
+                if (values.length == 6) {
+                    manifest.entries.put(values[0], new Entry(Long.parseLong(values[1]), Long.parseLong(values[2]),
+                            Long.parseLong(values[3], 16), Long.parseLong(values[4]), Long.parseLong(values[5])));
+                }
+            }
+        } catch (IOException | NumberFormatException e) {
+            logger.log(Level.WARNING, "can not read export manifest, all files are copied again: " + file, e);
+            manifest.entries.clear();
+        }
+
+        return manifest;
+    }
+
+    /**
+     * Checks whether the exported file is up to date with its source file.
+     *
+     * @param source source file
+     * @param target exported file in the export folder
+     *
+     * @return true if the file has not to be copied again
+     *
+     * @throws IOException if the source file could not be read
+     */
+    public boolean isUnchanged(Path source, Path target) throws IOException {
+        Entry entry = entries.get(target.getFileName().toString());
+
+        if (entry == null) {
+            return false;
+        }
+
+        final long size = Files.size(source);
+
+        if (size != entry.size || !Files.isRegularFile(target) || Files.size(target) != entry.targetSize ||
+                Files.getLastModifiedTime(target).toMillis() != entry.targetModified) {
+            return false;
+        }
+
+        final long modified = Files.getLastModifiedTime(source).toMillis();
+
+        if (modified == entry.modified) {
+            return true;
+        }
+
+        final long checksum = ParseCache.contentHash(source);
+
+        if (checksum == entry.checksum) {
+            // touched but not changed, the next run needs no checksum
+            entries.put(target.getFileName().toString(), new Entry(size, modified, checksum, entry.targetSize,
+                    entry.targetModified));
+            return true;
+        }
+
+        return false;
+    }
+
+    /**
+     * Records an exported file with the current state of its source file and of the written file.
+     *
+     * @param source source file
+     * @param target exported file in the export folder
+     *
+     * @throws IOException if the source or the exported file could not be read
+     */
+    public void put(Path source, Path target) throws IOException {
+        entries.put(target.getFileName().toString(), new Entry(Files.size(source),
+                Files.getLastModifiedTime(source).toMillis(), ParseCache.contentHash(source), Files.size(target),
+                Files.getLastModifiedTime(target).toMillis()));
+    }
+
+    /**
+     * Removes all entries whose files are not part of the current export anymore and returns their files.
+     *
+     * @param targets exported files of the current export
+     *
+     * @return stale files in the export folder, which have to be deleted
+     */
+    public List<Path> removeStale(Collection<Path> targets) {
+        Set<String> names = new HashSet<>();
+
+        for (Path target : targets) {
+            names.add(target.getFileName().toString());
+        }
+
+        List<Path> stale = new ArrayList<>();
+
+        for (Iterator<String> iterator = entries.keySet().iterator(); iterator.hasNext(); ) {
+            String name = iterator.next();
+
+            if (!names.contains(name)) {
+                stale.add(folder.resolve(name));
+                iterator.remove();
+            }
+        }
+
+        return stale;
+    }
+
+    /**
+     * Stores the manifest in the export folder. The old manifest is replaced atomically, so an interrupted
+     * export never leaves a broken manifest behind.
+     *
+     * @throws IOException if the manifest could not be written
+     */
+    public void store() throws IOException {
+        Path file = folder.resolve(FILE_NAME);
+        Path temp = WriteBatch.createTempFile(file);
+
+        try {
+            try (BufferedWriter writer = Files.newBufferedWriter(temp, StandardCharsets.UTF_8)) {
+                writer.write(HEADER);
+                writer.newLine();
+
+                for (Map.Entry<String, Entry> entry : entries.entrySet()) {
+                    writer.write(entry.getKey() + "\t" + entry.getValue().size + "\t" + entry.getValue().modified
+                            + "\t" + Long.toHexString(entry.getValue().checksum) + "\t" + entry.getValue().targetSize
+                            + "\t" + entry.getValue().targetModified);
+                    writer.newLine();
+                }
+            }
+
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    /*
+     * State of a source file and of its exported file at the time of the export.
+     */
+    private static final class Entry {
+
+        private final long checksum;
+        private final long modified;
+        private final long size;
+        private final long targetModified;
+        private final long targetSize;
+
+        private Entry(long size, long modified, long checksum, long targetSize, long targetModified) {
+            this.size = size;
+            this.modified = modified;
+            this.checksum = checksum;
+            this.targetSize = targetSize;
+            this.targetModified = targetModified;
+        }
+
+    }
+
+} // end of ExportManifest
@@ -0,0 +1,318 @@
+/*
+ * License: MIT. Copyright (c) 2017 by Sebastian Aust (https://www.ryanthara.de/)
+ *
+ * This file is part of the package de.ryanthara.ja.zfex.io
+ *
+ * Copyright (c) 2017 ryanthara
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package de.ryanthara.ja.zfex.io;
+
+import de.ryanthara.ja.zfex.data.ViewpointTable;
+import de.ryanthara.ja.zfex.tools.CoordinateFormatter;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * The <tt>GeoJsonWriter</tt> streams the viewpoints of a {@link ViewpointTable} as 'JSON like' feature
+ * collection for the scan data viewer into a file.
+ * <p>
+ * The features are encoded directly into a byte buffer, which is flushed to the file whenever it is full,
+ * so the size of the document does not matter. Coordinates are formatted by the viewpoint table into a
+ * {@link CoordinateFormatter} without any intermediate string, so they look exactly like in the project file.
+ * The pretty output is the same byte by byte as the former output based on
+ * {@link String#format(String, Object...)} with the coordinate strings of the project file, the compact output
+ * leaves out all white space.
+ *
+ * @author sebastian
+ * @version 1
+ * @since 2
+ */
+class GeoJsonWriter implements Closeable {
+
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    private static final long[] POWERS_OF_TEN = new long[19];
+
+    static {
+        POWERS_OF_TEN[0] = 1;
+
+        for (int i = 1; i < POWERS_OF_TEN.length; i++) {
+            POWERS_OF_TEN[i] = POWERS_OF_TEN[i - 1] * 10;
+        }
+    }
+
+    private final byte[] buffer = new byte[BUFFER_SIZE];
+    private final boolean compact;
+    private final CoordinateFormatter formatter = new CoordinateFormatter(-1);
+    private final byte[] lineSeparator = System.lineSeparator().getBytes(StandardCharsets.US_ASCII);
+    private final OutputStream out;
+    private int position = 0;
+
+    /**
+     * Opens a new writer for the given file, which is replaced if it exists.
+     *
+     * @param file    file to be written
+     * @param compact true for leaving out all white space
+     *
+     * @throws IOException if the file could not be opened
+     */
+    GeoJsonWriter(Path file, boolean compact) throws IOException {
+        this(Files.newOutputStream(file), compact);
+    }
+
+    /**
+     * Creates a new writer for the given stream.
+     *
+     * @param out     stream to be written, which is closed with the writer
+     * @param compact true for leaving out all white space
+     */
+    GeoJsonWriter(OutputStream out, boolean compact) {
+        this.out = out;
+        this.compact = compact;
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            flush();
+        } finally {
+            out.close();
+        }
+    }
+
+    /**
+     * Writes the whole feature collection with one point feature per viewpoint.
+     *
+     * @param varId      name of the java script variable
+     * @param id         id of the feature collection
+     * @param viewpoints viewpoints to be written
+     *
+     * @throws IOException if the file could not be written
+     */
+    void writeFeatureCollection(String varId, String id, ViewpointTable viewpoints) throws IOException {
+        writeFeatureCollection(varId, id, viewpoints, null, 0, viewpoints.size());
+    }
+
+    /**
+     * Writes a feature collection with one point feature for each of the given rows of the viewpoint table.
+     *
+     * @param varId      name of the java script variable
+     * @param id         id of the feature collection
+     * @param viewpoints viewpoints to be written
+     * @param rows       row indices of the viewpoints or null for the rows themselves
+     * @param from       first position in the rows, inclusive
+     * @param to         last position in the rows, exclusive
+     *
+     * @throws IOException if the file could not be written
+     */
+    void writeFeatureCollection(String varId, String id, ViewpointTable viewpoints, int[] rows, int from, int to)
+            throws IOException {
+
+        if (compact) {
+            writeString("var " + varId + "={'type':'FeatureCollection','id':'" + id + "','features':[");
+        } else {
+            writeString("var " + varId + " = {");
+            writeLineSeparator();
+            writeString("    'type': 'FeatureCollection',");
+            writeLineSeparator();
+            writeString("    'id': '" + id + "',");
+            writeLineSeparator();
+            writeString("    'features': [");
+            writeLineSeparator();
+        }
+
+        for (int j = from; j < to; j++) {
+            final int i = rows == null ? j : rows[j];
+
+            if (compact) {
+                if (j > from) {
+                    writeAscii(",");
+                }
+
+                writeAscii("{\"type\":\"Feature\",\"geometry\":{\"type\":\"Point\",\"coordinates\":[");
+                writeCoordinate(viewpoints, i, ViewpointTable.X);
+                writeAscii(",");
+                writeCoordinate(viewpoints, i, ViewpointTable.Y);
+                writeAscii("]},\"properties\":{\"ID\":");
+                writeString(viewpoints.getName(i));
+                writeAscii(",\"Typ\":\"Punkt\"}}");
+            } else {
+                writeAscii(j == from ? "        " : "       ,");
+                writeAscii("{ \"type\": \"Feature\", \"geometry\": { \"type\": \"Point\", \"coordinates\": [");
+                writeCoordinate(viewpoints, i, ViewpointTable.X);
+                writeAscii(", ");
+                writeCoordinate(viewpoints, i, ViewpointTable.Y);
+                writeAscii("] }, \"properties\": { \"ID\": ");
+                writeString(viewpoints.getName(i));
+                writeAscii(", \"Typ\": \"Punkt\" } }");
+                writeLineSeparator();
+            }
+        }
+
+        if (compact) {
+            writeAscii("]};");
+        } else {
+            writeAscii("    ]");
+            writeLineSeparator();
+            writeAscii("};");
+        }
+    }
+
+    /**
+     * Writes a coordinate of a viewpoint like in the project file.
+     *
+     * @param viewpoints table of the viewpoints
+     * @param index      row index of the viewpoint
+     * @param axis       axis {@link ViewpointTable#X}, {@link ViewpointTable#Y} or {@link ViewpointTable#Z}
+     *
+     * @throws IOException if the file could not be written
+     */
+    void writeCoordinate(ViewpointTable viewpoints, int index, int axis) throws IOException {
+        writeFormatted(viewpoints.formatCoordinate(index, axis, formatter));
+    }
+
+    /**
+     * Writes a value which is derived from the coordinates, like the bounds of the viewpoints.
+     *
+     * @param value          coordinate value
+     * @param fractionDigits number of fraction digits or -1 for the shortest representation
+     *
+     * @throws IOException if the file could not be written
+     */
+    void writeCoordinate(double value, int fractionDigits) throws IOException {
+        writeFormatted(formatter.format(value, fractionDigits));
+    }
+
+    /*
+     * Copies the last formatted value of the formatter into the buffer.
+     */
+    private void writeFormatted(int length) throws IOException {
+        ensureCapacity(length);
+        formatter.getBytes(buffer, position);
+        position += length;
+    }
+
+    /*
+     * Writes the digits of a non negative value with at least the given number of digits.
+     */
+    private void writeDigits(long value, int minDigits) {
+        int digits = 1;
+
+        while (digits < POWERS_OF_TEN.length && value >= POWERS_OF_TEN[digits]) {
+            digits++;
+        }
+
+        digits = Math.max(digits, minDigits);
+
+        for (int i = position + digits - 1; i >= position; i--) {
+            buffer[i] = (byte) ('0' + value % 10);
+            value /= 10;
+        }
+
+        position += digits;
+    }
+
+    private void ensureCapacity(int bytes) throws IOException {
+        if (position + bytes > buffer.length) {
+            flush();
+        }
+    }
+
+    private void flush() throws IOException {
+        out.write(buffer, 0, position);
+        position = 0;
+    }
+
+    /**
+     * Writes a string that only contains ascii characters.
+     *
+     * @param s string to be written
+     *
+     * @throws IOException if the file could not be written
+     */
+    void writeAscii(String s) throws IOException {
+        final int length = s.length();
+
+        if (length > buffer.length) {
+            writeString(s);
+            return;
+        }
+
+        ensureCapacity(length);
+
+        for (int i = 0; i < length; i++) {
+            buffer[position++] = (byte) s.charAt(i);
+        }
+    }
+
+    /**
+     * Writes the line separator of the system.
+     *
+     * @throws IOException if the file could not be written
+     */
+    void writeLineSeparator() throws IOException {
+        ensureCapacity(lineSeparator.length);
+
+        System.arraycopy(lineSeparator, 0, buffer, position, lineSeparator.length);
+        position += lineSeparator.length;
+    }
+
+    /**
+     * Writes a non negative integer value.
+     *
+     * @param value value to be written
+     *
+     * @throws IOException if the file could not be written
+     */
+    void writeLong(long value) throws IOException {
+        ensureCapacity(20);
+        writeDigits(value, 1);
+    }
+
+    /**
+     * Writes any string in UTF-8.
+     *
+     * @param s string to be written
+     *
+     * @throws IOException if the file could not be written
+     */
+    void writeString(String s) throws IOException {
+        byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+
+        if (bytes.length > buffer.length - position) {
+            flush();
+
+            if (bytes.length > buffer.length) {
+                out.write(bytes);
+                return;
+            }
+        }
+
+        System.arraycopy(bytes, 0, buffer, position, bytes.length);
+        position += bytes.length;
+    }
+
+} // end of GeoJsonWriter
@@ -0,0 +1,147 @@
+/*
+ * License: MIT. Copyright (c) 2017 by Sebastian Aust (https://www.ryanthara.de/)
+ *
+ * This file is part of the package de.ryanthara.ja.zfex.io
+ *
+ * Copyright (c) 2017 ryanthara
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package de.ryanthara.ja.zfex.io;
+
+import de.ryanthara.ja.zfex.data.ViewpointTable;
+import de.ryanthara.ja.zfex.tools.CoordinateFormatter;
+
+import java.io.IOException;
+import java.io.Writer;
+
+/**
+ * The <tt>GsiCoordinateExporter</tt> writes the viewpoints in the Leica GSI-16 format with one line per
+ * viewpoint, which holds the point number (word 11) and the easting, northing and height (words 81, 82 and 83)
+ * in millimeters.
+ * <p>
+ * The point number is limited to 16 characters, longer names keep their last 16 characters. Spaces are not
+ * allowed in GSI words and are replaced by underscores.
+ *
+ * @author sebastian
+ * @version 1
+ * @since 2
+ */
+public class GsiCoordinateExporter implements CoordinateExporter {
+
+    private static final int WORD_LENGTH = 16;
+
+    private final StringBuilder builder = new StringBuilder(4 * 24 + 2);
+    private final CoordinateFormatter formatter = new CoordinateFormatter(3);
+    private char[] chars = new char[builder.capacity()];
+    private byte[] digits = new byte[32];
+    private int line = 0;
+
+    @Override
+    public String getName() {
+        return "gsi";
+    }
+
+    @Override
+    public String getFileSuffix() {
+        return ".gsi";
+    }
+
+    @Override
+    public void begin(Writer writer, String projectName) {
+        line = 0;
+    }
+
+    @Override
+    public void write(Writer writer, ViewpointTable viewpoints, int index) throws IOException {
+        final String name = viewpoints.getName(index);
+
+        line = line % 9999 + 1;
+
+        String number = name.replace(' ', '_');
+
+        if (number.length() > WORD_LENGTH) {
+            number = number.substring(number.length() - WORD_LENGTH);
+        }
+
+        builder.setLength(0);
+        builder.append("*11");
+        appendPadded(builder, Integer.toString(line), 4);
+        builder.append('+');
+        appendPadded(builder, number, WORD_LENGTH);
+        builder.append(' ');
+
+        appendCoordinate(builder, "81..00", viewpoints.getX(index));
+        appendCoordinate(builder, "82..00", viewpoints.getY(index));
+        appendCoordinate(builder, "83..00", viewpoints.getZ(index));
+
+        builder.append(System.lineSeparator());
+
+        if (chars.length < builder.length()) {
+            chars = new char[builder.capacity()];
+        }
+
+        builder.getChars(0, builder.length(), chars, 0);
+        writer.write(chars, 0, builder.length());
+    }
+
+    @Override
+    public void end(Writer writer) {
+    }
+
+    /*
+     * Appends a coordinate word with the value in millimeters, which are the digits of the value with three
+     * fraction digits without the decimal point.
+     */
+    private void appendCoordinate(StringBuilder builder, String word, double value) {
+        final int length = formatter.format(value);
+
+        if (digits.length < length) {
+            digits = new byte[length];
+        }
+
+        formatter.getBytes(digits, 0);
+
+        final boolean negative = digits[0] == '-';
+
+        builder.append(word);
+        builder.append(negative ? '-' : '+');
+
+        for (int i = length - (negative ? 2 : 1); i < WORD_LENGTH; i++) {
+            builder.append('0');
+        }
+
+        for (int i = negative ? 1 : 0; i < length; i++) {
+            if (digits[i] != '.') {
+                builder.append((char) digits[i]);
+            }
+        }
+
+        builder.append(' ');
+    }
+
+    private static void appendPadded(StringBuilder builder, String value, int length) {
+        for (int i = value.length(); i < length; i++) {
+            builder.append('0');
+        }
+
+        builder.append(value);
+    }
+
+} // end of GsiCoordinateExporter
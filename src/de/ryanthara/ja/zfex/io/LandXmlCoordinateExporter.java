@@ -0,0 +1,156 @@
+/*
+ * License: MIT. Copyright (c) 2017 by Sebastian Aust (https://www.ryanthara.de/)
+ *
+ * This file is part of the package de.ryanthara.ja.zfex.io
+ *
+ * Copyright (c) 2017 ryanthara
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package de.ryanthara.ja.zfex.io;
+
+import de.ryanthara.ja.zfex.data.ViewpointTable;
+import de.ryanthara.ja.zfex.tools.CoordinateFormatter;
+
+import javax.xml.stream.XMLOutputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+
+/**
+ * The <tt>LandXmlCoordinateExporter</tt> streams the viewpoints as <tt>CgPoint</tt> elements of a LandXML 1.2
+ * file. The text of a point is 'northing easting elevation', which is 'y x z' of the viewpoint.
+ *
+ * @author sebastian
+ * @version 1
+ * @since 2
+ */
+public class LandXmlCoordinateExporter implements CoordinateExporter {
+
+    private static final String NAMESPACE = "http://www.landxml.org/schema/LandXML-1.2";
+
+    private final StringBuilder builder = new StringBuilder(64);
+    private final CoordinateFormatter formatter = new CoordinateFormatter(-1);
+    private char[] chars = new char[64];
+    private XMLStreamWriter xml;
+
+    @Override
+    public String getName() {
+        return "landxml";
+    }
+
+    @Override
+    public String getFileSuffix() {
+        return ".xml";
+    }
+
+    @Override
+    public void begin(Writer writer, String projectName) throws IOException {
+        final LocalDateTime now = LocalDateTime.now();
+
+        try {
+            xml = XMLOutputFactory.newInstance().createXMLStreamWriter(writer);
+
+            xml.writeStartDocument("UTF-8", "1.0");
+            newLine(0);
+            xml.writeStartElement("LandXML");
+            xml.writeDefaultNamespace(NAMESPACE);
+            xml.writeAttribute("version", "1.2");
+            xml.writeAttribute("date", now.format(DateTimeFormatter.ISO_LOCAL_DATE));
+            xml.writeAttribute("time", now.format(DateTimeFormatter.ofPattern("HH:mm:ss")));
+            newLine(1);
+            xml.writeStartElement("Units");
+            xml.writeEmptyElement("Metric");
+            xml.writeAttribute("linearUnit", "meter");
+            xml.writeAttribute("areaUnit", "squareMeter");
+            xml.writeAttribute("volumeUnit", "cubicMeter");
+            xml.writeAttribute("angularUnit", "decimal degrees");
+            xml.writeAttribute("directionUnit", "decimal degrees");
+            xml.writeEndElement();
+            newLine(1);
+            xml.writeEmptyElement("Project");
+            xml.writeAttribute("name", projectName);
+            newLine(1);
+            xml.writeStartElement("CgPoints");
+            xml.writeAttribute("name", projectName);
+        } catch (XMLStreamException e) {
+            throw new IOException("can not write LandXML header", e);
+        }
+    }
+
+    @Override
+    public void write(Writer writer, ViewpointTable viewpoints, int index) throws IOException {
+        final String name = viewpoints.getName(index);
+
+        try {
+            newLine(2);
+            xml.writeStartElement("CgPoint");
+            xml.writeAttribute("name", name);
+
+            builder.setLength(0);
+            viewpoints.formatCoordinate(index, ViewpointTable.Y, formatter);
+            formatter.append(builder);
+            builder.append(' ');
+            viewpoints.formatCoordinate(index, ViewpointTable.X, formatter);
+            formatter.append(builder);
+            builder.append(' ');
+            viewpoints.formatCoordinate(index, ViewpointTable.Z, formatter);
+            formatter.append(builder);
+
+            if (chars.length < builder.length()) {
+                chars = new char[builder.capacity()];
+            }
+
+            builder.getChars(0, builder.length(), chars, 0);
+            xml.writeCharacters(chars, 0, builder.length());
+            xml.writeEndElement();
+        } catch (XMLStreamException e) {
+            throw new IOException("can not write LandXML point " + name, e);
+        }
+    }
+
+    @Override
+    public void end(Writer writer) throws IOException {
+        try {
+            newLine(1);
+            xml.writeEndElement(); // CgPoints
+            newLine(0);
+            xml.writeEndElement(); // LandXML
+            newLine(0);
+            xml.writeEndDocument();
+            xml.flush();
+        } catch (XMLStreamException e) {
+            throw new IOException("can not write LandXML footer", e);
+        }
+    }
+
+    private void newLine(int indent) throws XMLStreamException {
+        final StringBuilder builder = new StringBuilder(System.lineSeparator());
+
+        for (int i = 0; i < indent; i++) {
+            builder.append("  ");
+        }
+
+        xml.writeCharacters(builder.toString());
+    }
+
+} // end of LandXmlCoordinateExporter
@@ -26,7 +26,8 @@
 package de.ryanthara.ja.zfex.io;
 
 import de.ryanthara.ja.zfex.Main;
-import de.ryanthara.ja.zfex.tools.Checker;
+import de.ryanthara.ja.zfex.metrics.Measurement;
+import de.ryanthara.ja.zfex.metrics.Metrics;
 
 import java.io.BufferedWriter;
 import java.io.IOException;
@@ -41,7 +42,9 @@ import java.util.logging.Logger;
 /**
  * Writes a string array line by line into a text file.
  * <p>
- * This is used for writing the coordinate file.
+ * This is used for writing the coordinate file. The lines are written into a temporary file, which replaces the
+ * file at once, so there is never a truncated file. With a {@link WriteBatch} the replacement is deferred until
+ * the batch is committed.
  *
  * @author sebastian
  * @version 1
@@ -51,7 +54,9 @@ class LineWriter {
 
     private final static Logger logger = Logger.getLogger(LineWriter.class.getName());
 
+    private final WriteBatch batch;
     private final String fileName;
+    private Metrics metrics = Main.metrics;
 
     /**
      * Constructs a new instance of this class with the filename of the file to be written.
@@ -59,12 +64,33 @@ class LineWriter {
      * @param fileName file name of the file to be written
      */
     LineWriter(String fileName) {
+        this(fileName, null);
+    }
+
+    /**
+     * Constructs a new instance of this class with the filename of the file to be written and the batch which
+     * commits the file.
+     *
+     * @param fileName file name of the file to be written
+     * @param batch    batch of the export run or null for replacing the file immediately
+     */
+    LineWriter(String fileName, WriteBatch batch) {
         this.fileName = fileName;
+        this.batch = batch;
 
         logger.setLevel(Main.loggingLevel);
         logger.addHandler(Main.fileHandler);
     }
 
+    /**
+     * Sets the {@link Metrics} registry of the export run, which receives the measurements of this writer.
+     *
+     * @param metrics metrics registry, the global one of {@link Main#metrics} is used by default
+     */
+    void setMetrics(Metrics metrics) {
+        this.metrics = metrics;
+    }
+
     /**
      * Writes a {@link StringBuilder} object that contains lines of strings into a file.
      *
@@ -73,21 +99,11 @@ class LineWriter {
      * @return success of file writing
      */
     boolean writeBuilder(final StringBuilder builder) {
-        boolean success = false;
-
-        final Path path = Paths.get(fileName);
-
-        if (Checker.isDirectory(path.toString())) {
-            try (BufferedWriter writer = Files.newBufferedWriter(path, Charset.forName("UTF-8"))) {
+        return write(temp -> {
+            try (BufferedWriter writer = Files.newBufferedWriter(temp, Charset.forName("UTF-8"))) {
                 writer.write(builder.toString());
-                success = true;
-            } catch (IOException e) {
-                logger.log(Level.SEVERE, "can not write string builder to file: " + fileName, e);
-                logger.log(Level.SEVERE, e.getMessage());
             }
-        }
-
-        return success;
+        }, "string builder", 0);
     }
 
     /**
@@ -98,19 +114,46 @@ class LineWriter {
      * @return success of file writing
      */
     boolean writeList(final List<String> lines) {
+        return write(temp -> Files.write(temp, lines), "list", lines.size());
+    }
+
+    private boolean write(Content content, String description, int lines) {
         boolean success = false;
 
         final Path path = Paths.get(fileName);
+        final WriteBatch target = batch != null ? batch : new WriteBatch(false);
 
-        try {
-            Files.write(path, lines);
+        try (Measurement measurement = metrics.start(Metrics.WRITE, path.getFileName().toString())) {
+            final Path temp = target.add(path);
+
+            content.write(temp);
+
+            measurement.setItems(lines);
+            measurement.setBytes(Files.size(temp));
+
+            if (batch == null) {
+                target.commit();
+            }
+
+            measurement.succeeded();
             success = true;
         } catch (IOException e) {
-            logger.log(Level.SEVERE, "can not write list to file: " + fileName, e);
+            target.discard(path);
+
+            logger.log(Level.SEVERE, "can not write " + description + " to file: " + fileName, e);
             logger.log(Level.SEVERE, e.getMessage());
         }
 
         return success;
     }
 
+    /*
+     * Writes the content into the temporary file.
+     */
+    private interface Content {
+
+        void write(Path temp) throws IOException;
+
+    }
+
 } // end of LineWriter
@@ -0,0 +1,73 @@
+/*
+ * License: MIT. Copyright (c) 2017 by Sebastian Aust (https://www.ryanthara.de/)
+ *
+ * This file is part of the package de.ryanthara.ja.zfex.io
+ *
+ * Copyright (c) 2017 ryanthara
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package de.ryanthara.ja.zfex.io;
+
+/**
+ * The <tt>OverwritePolicy</tt> defines what happens to files in the export or viewer folder that exist already.
+ * <p>
+ * The graphical user interface asks the user with a dialog, the headless mode uses one of the other policies,
+ * which do not show any dialog.
+ *
+ * @author sebastian
+ * @version 1
+ * @since 2
+ */
+public enum OverwritePolicy {
+
+    /**
+     * Asks the user with a dialog, which is the only policy that shows dialogs at all.
+     */
+    ASK,
+
+    /**
+     * Replaces the existing files.
+     */
+    OVERWRITE,
+
+    /**
+     * Keeps the existing files and writes only the new ones.
+     */
+    SKIP,
+
+    /**
+     * Writes nothing and fails if any of the files exists.
+     */
+    FAIL;
+
+    /**
+     * Returns the policy with the given name, which is case insensitive.
+     *
+     * @param name name of the policy, for example 'overwrite'
+     *
+     * @return the policy
+     *
+     * @throws IllegalArgumentException if there is no policy with the given name
+     */
+    public static OverwritePolicy parse(String name) {
+        return valueOf(name.trim().toUpperCase());
+    }
+
+} // end of OverwritePolicy
@@ -0,0 +1,393 @@
+/*
+ * License: MIT. Copyright (c) 2017 by Sebastian Aust (https://www.ryanthara.de/)
+ *
+ * This file is part of the package de.ryanthara.ja.zfex.io
+ *
+ * Copyright (c) 2017 ryanthara
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package de.ryanthara.ja.zfex.io;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * The <tt>PNGRowReader</tt> decodes a non interlaced PNG file row by row, so only one row of the image has to
+ * be held in memory at any time.
+ * <p>
+ * All color types and bit depths of the PNG specification are supported. The rows are delivered with one
+ * byte per sample, either as gray values or as r, g, b triples. Alpha channels are dropped and 16 bit samples
+ * are reduced to their high byte. Interlaced files are rejected, they have to be decoded as a whole.
+ *
+ * @author sebastian
+ * @version 1
+ * @since 2
+ */
+class PNGRowReader implements Closeable {
+
+    private static final long SIGNATURE = 0x89504E470D0A1A0AL;
+
+    private final int bitDepth;
+    private final int bytesPerPixel;
+    private final int colorType;
+    private final DataInputStream data;
+    private final int height;
+    private final DataInputStream in;
+    private final Inflater inflater = new Inflater();
+    private final byte[] palette = new byte[256 * 3];
+    private final int width;
+    private byte[] current;
+    private byte[] previous;
+    private int row = 0;
+
+    /**
+     * Opens a PNG file and reads its header.
+     *
+     * @param file PNG file
+     *
+     * @throws IOException if the file is not a non interlaced PNG file or could not be read
+     */
+    PNGRowReader(Path file) throws IOException {
+        this(Files.newInputStream(file));
+    }
+
+    /**
+     * Reads the header of a PNG stream.
+     *
+     * @param stream PNG stream, which is closed with the reader
+     *
+     * @throws IOException if the stream is not a non interlaced PNG stream or could not be read
+     */
+    PNGRowReader(InputStream stream) throws IOException {
+        in = new DataInputStream(new BufferedInputStream(stream, 1 << 16));
+
+        try {
+            if (in.readLong() != SIGNATURE) {
+                throw new IOException("not a png file");
+            }
+
+            int length = in.readInt();
+
+            if (!"IHDR".equals(readType()) || length != 13) {
+                throw new IOException("png file without header");
+            }
+
+            width = in.readInt();
+            height = in.readInt();
+            bitDepth = in.readUnsignedByte();
+            colorType = in.readUnsignedByte();
+            in.readUnsignedByte(); // compression method
+            in.readUnsignedByte(); // filter method
+            final int interlace = in.readUnsignedByte();
+            in.readInt(); // crc
+
+            if (interlace != 0) {
+                throw new IOException("interlaced png files are not supported");
+            }
+
+            final int channels = getChannels(colorType);
+
+            bytesPerPixel = Math.max(1, channels * bitDepth / 8);
+            current = new byte[(int) (((long) width * channels * bitDepth + 7) / 8)];
+            previous = new byte[current.length];
+
+            // skip to the first data chunk and remember the palette on the way
+            while (true) {
+                length = in.readInt();
+                String type = readType();
+
+                if ("IDAT".equals(type)) {
+                    break;
+                } else if ("PLTE".equals(type)) {
+                    in.readFully(palette, 0, Math.min(length, palette.length));
+                    skipFully(length - Math.min(length, palette.length) + 4);
+                } else if ("IEND".equals(type)) {
+                    throw new IOException("png file without image data");
+                } else {
+                    skipFully(length + 4);
+                }
+            }
+
+            data = new DataInputStream(new InflaterInputStream(new ChunkDataStream(length), inflater, 1 << 16));
+        } catch (IOException | RuntimeException e) {
+            close();
+            throw e;
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        inflater.end();
+        in.close();
+    }
+
+    /**
+     * Returns the height of the image.
+     *
+     * @return height in pixels
+     */
+    int getHeight() {
+        return height;
+    }
+
+    /**
+     * Returns the width of the image.
+     *
+     * @return width in pixels
+     */
+    int getWidth() {
+        return width;
+    }
+
+    /**
+     * Returns true if the rows are delivered as gray values, otherwise as r, g, b triples.
+     *
+     * @return true for gray images
+     */
+    boolean isGray() {
+        return colorType == 0 || colorType == 4;
+    }
+
+    /**
+     * Decodes the next row of the image.
+     *
+     * @param target array for the row, with a length of at least width or 3 * width for color images
+     *
+     * @throws IOException if the image data is broken or there is no more row
+     */
+    void readRow(byte[] target) throws IOException {
+        if (row >= height) {
+            throw new EOFException("no more rows in png file");
+        }
+
+        byte[] swap = previous;
+        previous = current;
+        current = swap;
+
+        final int filter = data.readUnsignedByte();
+        data.readFully(current);
+
+        unfilter(filter);
+        convert(target);
+
+        row++;
+    }
+
+    /*
+     * Converts the raw samples of the current row into one byte per gray value or per color sample.
+     */
+    private void convert(byte[] target) {
+        final int bytesPerSample = bitDepth == 16 ? 2 : 1;
+
+        switch (colorType) {
+            case 0: // gray
+                if (bitDepth < 8) {
+                    unpack(target, false);
+                } else {
+                    for (int x = 0, i = 0; x < width; x++, i += bytesPerSample) {
+                        target[x] = current[i];
+                    }
+                }
+                break;
+            case 2: // rgb
+                for (int x = 0, i = 0, j = 0; x < width; x++, i += 3 * bytesPerSample, j += 3) {
+                    target[j] = current[i];
+                    target[j + 1] = current[i + bytesPerSample];
+                    target[j + 2] = current[i + 2 * bytesPerSample];
+                }
+                break;
+            case 3: // palette
+                unpack(target, true);
+                break;
+            case 4: // gray and alpha
+                for (int x = 0, i = 0; x < width; x++, i += 2 * bytesPerSample) {
+                    target[x] = current[i];
+                }
+                break;
+            default: // rgb and alpha
+                for (int x = 0, i = 0, j = 0; x < width; x++, i += 4 * bytesPerSample, j += 3) {
+                    target[j] = current[i];
+                    target[j + 1] = current[i + bytesPerSample];
+                    target[j + 2] = current[i + 2 * bytesPerSample];
+                }
+                break;
+        }
+    }
+
+    /*
+     * Unpacks gray values or palette indices with a bit depth of up to 8 bits.
+     */
+    private void unpack(byte[] target, boolean indexed) {
+        final int mask = (1 << bitDepth) - 1;
+        final int scale = 255 / mask;
+
+        for (int x = 0; x < width; x++) {
+            final int bit = x * bitDepth;
+            final int value = ((current[bit >> 3] & 0xFF) >> (8 - bitDepth - (bit & 7))) & mask;
+
+            if (indexed) {
+                target[3 * x] = palette[3 * value];
+                target[3 * x + 1] = palette[3 * value + 1];
+                target[3 * x + 2] = palette[3 * value + 2];
+            } else {
+                target[x] = (byte) (value * scale);
+            }
+        }
+    }
+
+    /*
+     * Reverses the png filter of the current row.
+     */
+    private void unfilter(int filter) throws IOException {
+        final int length = current.length;
+
+        switch (filter) {
+            case 0: // none
+                break;
+            case 1: // sub
+                for (int i = bytesPerPixel; i < length; i++) {
+                    current[i] += current[i - bytesPerPixel];
+                }
+                break;
+            case 2: // up
+                for (int i = 0; i < length; i++) {
+                    current[i] += previous[i];
+                }
+                break;
+            case 3: // average
+                for (int i = 0; i < length; i++) {
+                    final int left = i >= bytesPerPixel ? current[i - bytesPerPixel] & 0xFF : 0;
+                    current[i] += (byte) ((left + (previous[i] & 0xFF)) >> 1);
+                }
+                break;
+            case 4: // paeth
+                for (int i = 0; i < length; i++) {
+                    final int a = i >= bytesPerPixel ? current[i - bytesPerPixel] & 0xFF : 0;
+                    final int b = previous[i] & 0xFF;
+                    final int c = i >= bytesPerPixel ? previous[i - bytesPerPixel] & 0xFF : 0;
+
+                    final int p = a + b - c;
+                    final int pa = Math.abs(p - a);
+                    final int pb = Math.abs(p - b);
+                    final int pc = Math.abs(p - c);
+
+                    current[i] += (byte) (pa <= pb && pa <= pc ? a : pb <= pc ? b : c);
+                }
+                break;
+            default:
+                throw new IOException("unknown png filter type " + filter + " in row " + row);
+        }
+    }
+
+    private static int getChannels(int colorType) throws IOException {
+        switch (colorType) {
+            case 0:
+            case 3:
+                return 1;
+            case 2:
+                return 3;
+            case 4:
+                return 2;
+            case 6:
+                return 4;
+            default:
+                throw new IOException("unknown png color type " + colorType);
+        }
+    }
+
+    private String readType() throws IOException {
+        byte[] type = new byte[4];
+        in.readFully(type);
+
+        return new String(type, StandardCharsets.US_ASCII);
+    }
+
+    private void skipFully(long bytes) throws IOException {
+        while (bytes > 0) {
+            long skipped = in.skip(bytes);
+
+            if (skipped <= 0) {
+                throw new EOFException("unexpected end of png file");
+            }
+
+            bytes -= skipped;
+        }
+    }
+
+    /*
+     * Delivers the data of all consecutive IDAT chunks as one stream.
+     */
+    private class ChunkDataStream extends InputStream {
+
+        private int remaining;
+
+        private ChunkDataStream(int firstLength) {
+            this.remaining = firstLength;
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] b = new byte[1];
+
+            return read(b, 0, 1) < 0 ? -1 : b[0] & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            while (remaining == 0) {
+                in.readInt(); // crc of the finished chunk
+
+                final int length = in.readInt();
+
+                if (!"IDAT".equals(readType())) {
+                    remaining = -1;
+                    break;
+                }
+
+                remaining = length;
+            }
+
+            if (remaining < 0) {
+                return -1;
+            }
+
+            final int count = in.read(b, off, Math.min(len, remaining));
+
+            if (count < 0) {
+                throw new EOFException("unexpected end of png file");
+            }
+
+            remaining -= count;
+
+            return count;
+        }
+
+    }
+
+} // end of PNGRowReader
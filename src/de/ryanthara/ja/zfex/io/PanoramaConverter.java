@@ -0,0 +1,539 @@
+/*
+ * License: MIT. Copyright (c) 2017 by Sebastian Aust (https://www.ryanthara.de/)
+ *
+ * This file is part of the package de.ryanthara.ja.zfex.io
+ *
+ * Copyright (c) 2017 ryanthara
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package de.ryanthara.ja.zfex.io;
+
+import de.ryanthara.ja.zfex.Main;
+import de.ryanthara.ja.zfex.metrics.Measurement;
+import de.ryanthara.ja.zfex.metrics.Metrics;
+import de.ryanthara.ja.zfex.metrics.QueueGauge;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReader;
+import javax.imageio.ImageTypeSpecifier;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.FileImageInputStream;
+import javax.imageio.stream.FileImageOutputStream;
+import javax.imageio.stream.ImageInputStream;
+import javax.imageio.stream.ImageOutputStream;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.color.ColorSpace;
+import java.awt.image.BufferedImage;
+import java.awt.image.ColorModel;
+import java.awt.image.DataBuffer;
+import java.awt.image.DataBufferByte;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * The <tt>PanoramaConverter</tt> converts the 360° panoramic images of a laser radar project into grayscale
+ * PNG files or color JPEG files.
+ * <p>
+ * The images are converted in parallel. Because a decoded panorama needs a lot of memory, the number of
+ * images in work is not only limited by the number of threads but also by a memory budget. Every image
+ * reserves its estimated pixel memory, which is computed from the image header, before it is decoded.
+ * <p>
+ * Sources that already are grayscale images without alpha are not decoded at all for the grayscale
+ * export but transferred as they are.
+ *
+ * @author sebastian
+ * @version 1
+ * @since 2
+ */
+public class PanoramaConverter {
+
+    /**
+     * Default quality of the JPEG files between 0 and 1.
+     */
+    public static final float DEFAULT_JPEG_QUALITY = 0.9f;
+
+    /**
+     * Default memory budget in bytes for all images in work.
+     */
+    public static final long DEFAULT_MEMORY_BUDGET = Runtime.getRuntime().maxMemory() / 4;
+
+    private final static Logger logger = Logger.getLogger(PanoramaConverter.class.getName());
+
+    private final Semaphore memoryLimit;
+    private final int memoryBudgetKB;
+    private final int threads;
+    private float jpegQuality = DEFAULT_JPEG_QUALITY;
+    private TransferMode transferMode = TransferMode.ZERO_COPY;
+
+    /**
+     * Constructs a new converter with the default number of threads and the default memory budget.
+     */
+    public PanoramaConverter() {
+        this(ParallelFileCopier.DEFAULT_THREADS, DEFAULT_MEMORY_BUDGET);
+    }
+
+    /**
+     * Constructs a new converter.
+     *
+     * @param threads      maximum number of images in work at the same time
+     * @param memoryBudget memory budget in bytes for all images in work
+     */
+    public PanoramaConverter(int threads, long memoryBudget) {
+        if (threads < 1 || memoryBudget < 1024) {
+            throw new IllegalArgumentException("threads must be at least 1 and the memory budget at least 1 KB");
+        }
+
+        this.threads = threads;
+        this.memoryBudgetKB = (int) Math.min(Integer.MAX_VALUE, memoryBudget / 1024);
+        this.memoryLimit = new Semaphore(memoryBudgetKB);
+    }
+
+    /**
+     * Sets the quality of the JPEG files.
+     *
+     * @param jpegQuality quality between 0 (smallest files) and 1 (best quality)
+     */
+    public void setJpegQuality(float jpegQuality) {
+        if (jpegQuality < 0f || jpegQuality > 1f) {
+            throw new IllegalArgumentException("jpeg quality must be between 0 and 1");
+        }
+
+        this.jpegQuality = jpegQuality;
+    }
+
+    /**
+     * Sets the {@link TransferMode} for sources that are already grayscale images.
+     *
+     * @param transferMode transfer mode to be used
+     */
+    public void setTransferMode(TransferMode transferMode) {
+        this.transferMode = transferMode;
+    }
+
+    /**
+     * Converts all images of the batch into grayscale PNG files and blocks until every image is finished.
+     * Existing target files are replaced.
+     *
+     * @param files    map with source files as keys and target files as values in batch order
+     * @param listener listener for the aggregated progress, may be null
+     *
+     * @return result with the number of written files and bytes and all failures in batch order
+     *
+     * @throws InterruptedException if the calling thread is interrupted
+     */
+    public ParallelFileCopier.Result convertToGrayscalePNG(LinkedHashMap<Path, Path> files,
+                                                           ParallelFileCopier.ProgressListener listener) throws InterruptedException {
+        return convert(files, listener, false, Main.metrics);
+    }
+
+    /**
+     * Converts all images of the batch into grayscale PNG files like {@link #convertToGrayscalePNG(LinkedHashMap,
+     * ParallelFileCopier.ProgressListener)} and measures the conversions in the given registry.
+     *
+     * @param files    map with source files as keys and target files as values in batch order
+     * @param listener listener for the aggregated progress, may be null
+     * @param metrics  metrics registry for the conversions, for example the one of an export run
+     *
+     * @return result with the number of written files and bytes and all failures in batch order
+     *
+     * @throws InterruptedException if the calling thread is interrupted
+     */
+    public ParallelFileCopier.Result convertToGrayscalePNG(LinkedHashMap<Path, Path> files,
+                                                           ParallelFileCopier.ProgressListener listener,
+                                                           Metrics metrics) throws InterruptedException {
+        return convert(files, listener, false, metrics);
+    }
+
+    /**
+     * Converts all images of the batch into color JPEG files and blocks until every image is finished.
+     * Existing target files are replaced.
+     *
+     * @param files    map with source files as keys and target files as values in batch order
+     * @param listener listener for the aggregated progress, may be null
+     *
+     * @return result with the number of written files and bytes and all failures in batch order
+     *
+     * @throws InterruptedException if the calling thread is interrupted
+     */
+    public ParallelFileCopier.Result convertToJPG(LinkedHashMap<Path, Path> files,
+                                                  ParallelFileCopier.ProgressListener listener) throws InterruptedException {
+        return convert(files, listener, true, Main.metrics);
+    }
+
+    /**
+     * Converts all images of the batch into color JPEG files like {@link #convertToJPG(LinkedHashMap,
+     * ParallelFileCopier.ProgressListener)} and measures the conversions in the given registry.
+     *
+     * @param files    map with source files as keys and target files as values in batch order
+     * @param listener listener for the aggregated progress, may be null
+     * @param metrics  metrics registry for the conversions, for example the one of an export run
+     *
+     * @return result with the number of written files and bytes and all failures in batch order
+     *
+     * @throws InterruptedException if the calling thread is interrupted
+     */
+    public ParallelFileCopier.Result convertToJPG(LinkedHashMap<Path, Path> files,
+                                                  ParallelFileCopier.ProgressListener listener,
+                                                  Metrics metrics) throws InterruptedException {
+        return convert(files, listener, true, metrics);
+    }
+
+    /*
+     * Converts the batch with a fixed thread pool.
+     */
+    private ParallelFileCopier.Result convert(LinkedHashMap<Path, Path> files, ParallelFileCopier.ProgressListener listener,
+                                              boolean jpg, Metrics metrics) throws InterruptedException {
+        final List<Path> sources = new ArrayList<>(files.keySet());
+        final int fileCount = sources.size();
+
+        final AtomicInteger filesDone = new AtomicInteger();
+        final AtomicLong bytesDone = new AtomicLong();
+        final AtomicLong bytesWritten = new AtomicLong();
+        final AtomicInteger filesStarted = new AtomicInteger();
+        final ParallelFileCopier.Failure[] failures = new ParallelFileCopier.Failure[fileCount];
+        final QueueGauge convertQueue = metrics.getQueue(Metrics.CONVERT_QUEUE);
+
+        long bytes = 0;
+
+        for (Path source : sources) {
+            try {
+                bytes += Files.size(source);
+            } catch (IOException e) {
+                // reported by the conversion itself
+            }
+        }
+
+        final long bytesTotal = bytes;
+
+        List<Callable<Void>> tasks = new ArrayList<>(fileCount);
+
+        for (int i = 0; i < fileCount; i++) {
+            final int index = i;
+            final Path source = sources.get(i);
+            final Path target = files.get(source);
+
+            tasks.add(() -> {
+                filesStarted.incrementAndGet();
+                convertQueue.remove();
+
+                try (Measurement measurement = metrics.start(Metrics.CONVERT, source.getFileName().toString())) {
+                    final long written = jpg ? convertToJPG(source, target) : convertToGrayscalePNG(source, target);
+
+                    bytesWritten.addAndGet(written);
+                    bytesDone.addAndGet(Files.size(source));
+
+                    measurement.setItems(1);
+                    measurement.setBytes(written);
+                    measurement.succeeded();
+                } catch (IOException | RuntimeException e) {
+                    logger.log(Level.SEVERE, "can not convert image " + source + " to " + target, e);
+                    failures[index] = new ParallelFileCopier.Failure(source, target,
+                            e instanceof IOException ? (IOException) e : new IOException(e.toString(), e));
+                }
+
+                int done = filesDone.incrementAndGet();
+
+                if (listener != null) {
+                    listener.progress(done, fileCount, bytesDone.get(), bytesTotal);
+                }
+
+                return null;
+            });
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, Math.min(threads, fileCount)), r -> {
+            Thread thread = new Thread(r, "ZFEx image conversion");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        convertQueue.add(fileCount);
+
+        try {
+            List<Future<Void>> futures = executor.invokeAll(tasks);
+
+            // a task that ended in another way than by a conversion result, for example by an error, is a failure
+            for (int i = 0; i < fileCount; i++) {
+                try {
+                    futures.get(i).get();
+                } catch (ExecutionException | CancellationException e) {
+                    if (failures[i] == null) {
+                        failures[i] = new ParallelFileCopier.Failure(sources.get(i), files.get(sources.get(i)),
+                                ParallelFileCopier.toIOException(e.getCause() != null ? e.getCause() : e));
+                    }
+                }
+            }
+        } finally {
+            executor.shutdownNow();
+
+            // Cancelled images never leave the queue otherwise
+            convertQueue.add(filesStarted.get() - fileCount);
+        }
+
+        List<ParallelFileCopier.Failure> failureList = new ArrayList<>();
+
+        for (ParallelFileCopier.Failure failure : failures) {
+            if (failure != null) {
+                failureList.add(failure);
+            }
+        }
+
+        return new ParallelFileCopier.Result(fileCount - failureList.size(), bytesWritten.get(), failureList);
+    }
+
+    /**
+     * Converts one image into a grayscale PNG file.
+     *
+     * @param source source image
+     * @param target target PNG file
+     *
+     * @return number of written bytes
+     *
+     * @throws IOException          if the image could not be read or written
+     * @throws InterruptedException if the thread is interrupted while waiting for memory
+     */
+    long convertToGrayscalePNG(Path source, Path target) throws IOException, InterruptedException {
+        final BufferedImage image;
+        final int permits;
+
+        try (ImageInputStream in = new FileImageInputStream(source.toFile())) {
+            ImageReader reader = getReader(in, source);
+
+            try {
+                ImageTypeSpecifier type = reader.getRawImageType(0);
+
+                if (type != null && isGray(type.getColorModel())) {
+                    return transferMode.transfer(source, target);
+                }
+
+                final long pixels = (long) reader.getWidth(0) * reader.getHeight(0);
+
+                permits = acquireMemory(pixels * (getBytesPerPixel(type) + 1));
+
+                try {
+                    image = reader.read(0);
+                } catch (IOException | RuntimeException | Error e) {
+                    memoryLimit.release(permits);
+                    throw e;
+                }
+            } finally {
+                reader.dispose();
+            }
+        }
+
+        try {
+            return write(toGray(image), "png", null, target);
+        } finally {
+            memoryLimit.release(permits);
+        }
+    }
+
+    /**
+     * Converts one image into a color JPEG file.
+     *
+     * @param source source image
+     * @param target target JPEG file
+     *
+     * @return number of written bytes
+     *
+     * @throws IOException          if the image could not be read or written
+     * @throws InterruptedException if the thread is interrupted while waiting for memory
+     */
+    long convertToJPG(Path source, Path target) throws IOException, InterruptedException {
+        final BufferedImage image;
+        final int permits;
+
+        try (ImageInputStream in = new FileImageInputStream(source.toFile())) {
+            ImageReader reader = getReader(in, source);
+
+            try {
+                final long pixels = (long) reader.getWidth(0) * reader.getHeight(0);
+
+                permits = acquireMemory(pixels * (getBytesPerPixel(reader.getRawImageType(0)) + 3));
+
+                try {
+                    image = reader.read(0);
+                } catch (IOException | RuntimeException | Error e) {
+                    memoryLimit.release(permits);
+                    throw e;
+                }
+            } finally {
+                reader.dispose();
+            }
+        }
+
+        try {
+            BufferedImage rgb = image;
+
+            if (image.getType() != BufferedImage.TYPE_3BYTE_BGR) {
+                // JPEG has no alpha channel, transparent pixels become white
+                rgb = new BufferedImage(image.getWidth(), image.getHeight(), BufferedImage.TYPE_3BYTE_BGR);
+
+                Graphics2D graphics = rgb.createGraphics();
+                graphics.setColor(Color.WHITE);
+                graphics.fillRect(0, 0, image.getWidth(), image.getHeight());
+                graphics.drawImage(image, 0, 0, null);
+                graphics.dispose();
+            }
+
+            return write(rgb, "jpg", jpegQuality, target);
+        } finally {
+            memoryLimit.release(permits);
+        }
+    }
+
+    /*
+     * Reserves the estimated memory of an image. An image that is larger than the whole budget reserves
+     * the whole budget and runs alone.
+     */
+    private int acquireMemory(long bytes) throws InterruptedException {
+        final int permits = (int) Math.max(1, Math.min(memoryBudgetKB, (bytes + 1023) / 1024));
+
+        memoryLimit.acquire(permits);
+
+        return permits;
+    }
+
+    private static int getBytesPerPixel(ImageTypeSpecifier type) {
+        if (type == null) {
+            return 4;
+        }
+
+        final int bits = DataBuffer.getDataTypeSize(type.getSampleModel().getDataType());
+
+        return Math.max(1, type.getSampleModel().getNumBands() * bits / 8);
+    }
+
+    private static ImageReader getReader(ImageInputStream in, Path source) throws IOException {
+        Iterator<ImageReader> readers = ImageIO.getImageReaders(in);
+
+        if (!readers.hasNext()) {
+            throw new IOException("unknown image format of " + source);
+        }
+
+        ImageReader reader = readers.next();
+        reader.setInput(in, true, true);
+
+        return reader;
+    }
+
+    private static boolean isGray(ColorModel colorModel) {
+        return colorModel.getColorSpace().getType() == ColorSpace.TYPE_GRAY && !colorModel.hasAlpha();
+    }
+
+    /*
+     * Converts an image into an 8 bit grayscale image with the luma weights of ITU-R BT.601.
+     */
+    private static BufferedImage toGray(BufferedImage image) {
+        final int width = image.getWidth();
+        final int height = image.getHeight();
+
+        BufferedImage gray = new BufferedImage(width, height, BufferedImage.TYPE_BYTE_GRAY);
+        final byte[] target = ((DataBufferByte) gray.getRaster().getDataBuffer()).getData();
+
+        final int type = image.getType();
+
+        if (type == BufferedImage.TYPE_3BYTE_BGR || type == BufferedImage.TYPE_4BYTE_ABGR) {
+            // fast path for the image types of the png reader, the samples are interleaved in b, g, r order
+            final byte[] source = ((DataBufferByte) image.getRaster().getDataBuffer()).getData();
+            final int step = type == BufferedImage.TYPE_3BYTE_BGR ? 3 : 4;
+            final int offset = step - 3;
+
+            for (int i = 0, j = offset; i < target.length; i++, j += step) {
+                final int b = source[j] & 0xFF;
+                final int g = source[j + 1] & 0xFF;
+                final int r = source[j + 2] & 0xFF;
+
+                target[i] = (byte) ((77 * r + 150 * g + 29 * b + 128) >> 8);
+            }
+        } else {
+            final int[] row = new int[width];
+
+            for (int y = 0; y < height; y++) {
+                image.getRGB(0, y, width, 1, row, 0, width);
+
+                for (int x = 0, i = y * width; x < width; x++, i++) {
+                    final int rgb = row[x];
+
+                    target[i] = (byte) ((77 * ((rgb >> 16) & 0xFF) + 150 * ((rgb >> 8) & 0xFF) + 29 * (rgb & 0xFF) + 128) >> 8);
+                }
+            }
+        }
+
+        return gray;
+    }
+
+    /*
+     * Writes the image into a temporary file next to the target, which replaces the target at the end.
+     */
+    private static long write(BufferedImage image, String format, Float quality, Path target) throws IOException {
+        Iterator<ImageWriter> writers = ImageIO.getImageWritersByFormatName(format);
+
+        if (!writers.hasNext()) {
+            throw new IOException("no image writer for " + format);
+        }
+
+        ImageWriter writer = writers.next();
+        ImageWriteParam param = writer.getDefaultWriteParam();
+
+        if (quality != null) {
+            param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+            param.setCompressionQuality(quality);
+        }
+
+        Path temp = WriteBatch.createTempFile(target);
+
+        try {
+            try (ImageOutputStream out = new FileImageOutputStream(temp.toFile())) {
+                writer.setOutput(out);
+                writer.write(null, new IIOImage(image, null, null), param);
+            } finally {
+                writer.dispose();
+            }
+
+            Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+
+        return Files.size(target);
+    }
+
+} // end of PanoramaConverter
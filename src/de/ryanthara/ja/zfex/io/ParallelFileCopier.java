@@ -0,0 +1,406 @@
+/*
+ * License: MIT. Copyright (c) 2017 by Sebastian Aust (https://www.ryanthara.de/)
+ *
+ * This file is part of the package de.ryanthara.ja.zfex.io
+ *
+ * Copyright (c) 2017 ryanthara
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package de.ryanthara.ja.zfex.io;
+
+import de.ryanthara.ja.zfex.Main;
+import de.ryanthara.ja.zfex.metrics.Measurement;
+import de.ryanthara.ja.zfex.metrics.Metrics;
+import de.ryanthara.ja.zfex.metrics.QueueGauge;
+
+import java.io.IOException;
+import java.nio.file.FileStore;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * The <tt>ParallelFileCopier</tt> copies a batch of files with a bounded number of threads.
+ * <p>
+ * Besides the total number of threads, the number of copies that run at the same time on one target
+ * file store is limited, so a slow network share is not flooded while a fast local disk gets all the
+ * threads it can use. The progress of all copies is aggregated into one value and every failed file
+ * is reported in the order of the batch.
+ *
+ * @author sebastian
+ * @version 1
+ * @since 2
+ */
+public class ParallelFileCopier {
+
+    /**
+     * Default number of copy threads.
+     */
+    public static final int DEFAULT_THREADS = Math.min(8, Math.max(2, Runtime.getRuntime().availableProcessors()));
+
+    /**
+     * Default number of concurrent copies per target file store.
+     */
+    public static final int DEFAULT_TARGET_CONCURRENCY = 4;
+
+    private final static Logger logger = Logger.getLogger(ParallelFileCopier.class.getName());
+
+    private final Map<Object, Semaphore> targetLimits = new ConcurrentHashMap<>();
+    private final int targetConcurrency;
+    private final int threads;
+    private final TransferMode transferMode;
+
+    /**
+     * Constructs a new copier with the default number of threads and concurrent copies per target.
+     */
+    public ParallelFileCopier() {
+        this(DEFAULT_THREADS, DEFAULT_TARGET_CONCURRENCY);
+    }
+
+    /**
+     * Constructs a new copier which transfers the files with {@link TransferMode#ZERO_COPY}.
+     *
+     * @param threads           maximum number of copies at the same time
+     * @param targetConcurrency maximum number of copies at the same time on one target file store
+     */
+    public ParallelFileCopier(int threads, int targetConcurrency) {
+        this(threads, targetConcurrency, TransferMode.ZERO_COPY);
+    }
+
+    /**
+     * Constructs a new copier.
+     *
+     * @param threads           maximum number of copies at the same time
+     * @param targetConcurrency maximum number of copies at the same time on one target file store
+     * @param transferMode      mode for transferring the files
+     */
+    public ParallelFileCopier(int threads, int targetConcurrency, TransferMode transferMode) {
+        if (threads < 1 || targetConcurrency < 1) {
+            throw new IllegalArgumentException("threads and target concurrency must be at least 1");
+        }
+
+        this.threads = threads;
+        this.targetConcurrency = targetConcurrency;
+        this.transferMode = transferMode;
+    }
+
+    /**
+     * Copies all files of the batch and blocks until every copy is finished. Existing target files are replaced.
+     *
+     * @param files    map with source files as keys and target files as values in batch order
+     * @param listener listener for the aggregated progress, may be null
+     *
+     * @return result with the number of copied files and bytes and all failures in batch order
+     *
+     * @throws InterruptedException if the calling thread is interrupted, all running copies are cancelled then
+     */
+    public Result copy(LinkedHashMap<Path, Path> files, ProgressListener listener) throws InterruptedException {
+        return copy(files, listener, Main.metrics);
+    }
+
+    /**
+     * Copies all files of the batch and blocks until every copy is finished. Existing target files are replaced.
+     * The copies are measured in the given registry, for example the one of an export run.
+     *
+     * @param files    map with source files as keys and target files as values in batch order
+     * @param listener listener for the aggregated progress, may be null
+     * @param metrics  metrics registry for the copies
+     *
+     * @return result with the number of copied files and bytes and all failures in batch order
+     *
+     * @throws InterruptedException if the calling thread is interrupted, all running copies are cancelled then
+     */
+    public Result copy(LinkedHashMap<Path, Path> files, ProgressListener listener, Metrics metrics)
+            throws InterruptedException {
+        final List<Path> sources = new ArrayList<>(files.keySet());
+        final int fileCount = sources.size();
+
+        final AtomicInteger filesDone = new AtomicInteger();
+        final AtomicLong bytesDone = new AtomicLong();
+        final AtomicInteger filesStarted = new AtomicInteger();
+        final Failure[] failures = new Failure[fileCount];
+        final QueueGauge copyQueue = metrics.getQueue(Metrics.COPY_QUEUE);
+
+        long bytes = 0;
+
+        for (Path source : sources) {
+            try {
+                bytes += Files.size(source);
+            } catch (IOException e) {
+                // reported by the copy itself
+            }
+        }
+
+        final long bytesTotal = bytes;
+
+        List<Callable<Void>> tasks = new ArrayList<>(fileCount);
+
+        for (int i = 0; i < fileCount; i++) {
+            final int index = i;
+            final Path source = sources.get(i);
+            final Path target = files.get(source);
+
+            tasks.add(() -> {
+                Semaphore limit = getTargetLimit(target);
+                limit.acquire();
+
+                filesStarted.incrementAndGet();
+                copyQueue.remove();
+
+                try (Measurement measurement = metrics.start(Metrics.COPY, source.getFileName().toString())) {
+                    long size = copyFile(source, target);
+
+                    bytesDone.addAndGet(size);
+
+                    measurement.setItems(1);
+                    measurement.setBytes(size);
+                    measurement.succeeded();
+                } catch (IOException | RuntimeException e) {
+                    logger.log(Level.SEVERE, "can not copy file " + source + " to " + target, e);
+                    failures[index] = new Failure(source, target, toIOException(e));
+                } finally {
+                    limit.release();
+                }
+
+                int done = filesDone.incrementAndGet();
+
+                if (listener != null) {
+                    listener.progress(done, fileCount, bytesDone.get(), bytesTotal);
+                }
+
+                return null;
+            });
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, Math.min(threads, fileCount)), r -> {
+            Thread thread = new Thread(r, "ZFEx file copy");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        copyQueue.add(fileCount);
+
+        try {
+            List<Future<Void>> futures = executor.invokeAll(tasks);
+
+            // a task that ended in another way than by a copy result, for example by an error, is a failure
+            for (int i = 0; i < fileCount; i++) {
+                try {
+                    futures.get(i).get();
+                } catch (ExecutionException | CancellationException e) {
+                    if (failures[i] == null) {
+                        failures[i] = new Failure(sources.get(i), files.get(sources.get(i)),
+                                toIOException(e.getCause() != null ? e.getCause() : e));
+                    }
+                }
+            }
+        } finally {
+            executor.shutdownNow();
+
+            // Cancelled files never leave the queue otherwise
+            copyQueue.add(filesStarted.get() - fileCount);
+        }
+
+        List<Failure> failureList = new ArrayList<>();
+
+        for (Failure failure : failures) {
+            if (failure != null) {
+                failureList.add(failure);
+            }
+        }
+
+        return new Result(fileCount - failureList.size(), bytesDone.get(), failureList);
+    }
+
+    /**
+     * Copies one file and returns the number of copied bytes.
+     *
+     * @param source source file
+     * @param target target file
+     *
+     * @return number of copied bytes
+     *
+     * @throws IOException if the copy failed
+     */
+    long copyFile(Path source, Path target) throws IOException {
+        return transferMode.transfer(source, target);
+    }
+
+    /*
+     * Returns the cause of a failed file as IOException, which is reported with the failure.
+     */
+    static IOException toIOException(Throwable throwable) {
+        return throwable instanceof IOException ? (IOException) throwable : new IOException(throwable);
+    }
+
+    /*
+     * Returns the limit for the file store of the target, or for its parent folder if the store is unknown.
+     */
+    private Semaphore getTargetLimit(Path target) {
+        Object key;
+
+        Path parent = target.toAbsolutePath().getParent();
+
+        try {
+            FileStore store = Files.getFileStore(parent);
+            key = store.name() + "|" + store.type();
+        } catch (IOException e) {
+            key = parent;
+        }
+
+        return targetLimits.computeIfAbsent(key, k -> new Semaphore(targetConcurrency));
+    }
+
+    /**
+     * Receives the aggregated progress of a batch copy. It is called from the copy threads.
+     */
+    public interface ProgressListener {
+
+        /**
+         * Is called after every finished file.
+         *
+         * @param filesDone  number of finished files
+         * @param filesTotal number of files of the batch
+         * @param bytesDone  number of copied bytes
+         * @param bytesTotal number of bytes of the batch
+         */
+        void progress(int filesDone, int filesTotal, long bytesDone, long bytesTotal);
+
+    }
+
+    /**
+     * A file that could not be copied.
+     */
+    public static final class Failure {
+
+        private final IOException exception;
+        private final Path source;
+        private final Path target;
+
+        Failure(Path source, Path target, IOException exception) {
+            this.source = source;
+            this.target = target;
+            this.exception = exception;
+        }
+
+        /**
+         * Returns the cause of the failure.
+         *
+         * @return exception of the copy
+         */
+        public IOException getException() {
+            return exception;
+        }
+
+        /**
+         * Returns the source file.
+         *
+         * @return source file
+         */
+        public Path getSource() {
+            return source;
+        }
+
+        /**
+         * Returns the target file.
+         *
+         * @return target file
+         */
+        public Path getTarget() {
+            return target;
+        }
+
+        @Override
+        public String toString() {
+            return source.getFileName() + ": " + exception;
+        }
+
+    }
+
+    /**
+     * The result of a batch copy.
+     */
+    public static final class Result {
+
+        private final long copiedBytes;
+        private final int copiedFiles;
+        private final List<Failure> failures;
+
+        Result(int copiedFiles, long copiedBytes, List<Failure> failures) {
+            this.copiedFiles = copiedFiles;
+            this.copiedBytes = copiedBytes;
+            this.failures = Collections.unmodifiableList(failures);
+        }
+
+        /**
+         * Returns the number of copied bytes.
+         *
+         * @return copied bytes
+         */
+        public long getCopiedBytes() {
+            return copiedBytes;
+        }
+
+        /**
+         * Returns the number of successfully copied files.
+         *
+         * @return copied files
+         */
+        public int getCopiedFiles() {
+            return copiedFiles;
+        }
+
+        /**
+         * Returns all failed files in batch order.
+         *
+         * @return list of failures
+         */
+        public List<Failure> getFailures() {
+            return failures;
+        }
+
+        /**
+         * Returns true if all files were copied.
+         *
+         * @return success of the batch copy
+         */
+        public boolean isSuccess() {
+            return failures.isEmpty();
+        }
+
+    }
+
+} // end of ParallelFileCopier
@@ -0,0 +1,292 @@
+/*
+ * License: MIT. Copyright (c) 2017 by Sebastian Aust (https://www.ryanthara.de/)
+ *
+ * This file is part of the package de.ryanthara.ja.zfex.io
+ *
+ * Copyright (c) 2017 ryanthara
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package de.ryanthara.ja.zfex.io;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * The <tt>ParallelGzipOutputStream</tt> writes a gzip file whose data is compressed block by block on several
+ * threads, like <tt>pigz</tt> does.
+ * <p>
+ * Every block is deflated on its own with the last 32 KB of the previous block as preset dictionary and ends
+ * with a sync flush, so the compressed blocks can simply be concatenated into one deflate stream. Only the
+ * last block finishes the stream. The result is a standard gzip file which is only a little larger than the
+ * output of a single {@link Deflater}.
+ * <p>
+ * The threads are started with the first full block, files smaller than one block are compressed on the
+ * calling thread, as well as all blocks if there is only one thread. The number of blocks in flight is limited, so the memory usage does not depend on the size
+ * of the file.
+ *
+ * @author sebastian
+ * @version 1
+ * @since 2
+ */
+class ParallelGzipOutputStream extends OutputStream {
+
+    /**
+     * The default size of the uncompressed blocks.
+     */
+    static final int DEFAULT_BLOCK_SIZE = 128 * 1024;
+
+    private static final int DICTIONARY_SIZE = 32 * 1024;
+
+    private final int blockSize;
+    private final CRC32 crc = new CRC32();
+    private final int level;
+    private final OutputStream out;
+    private final ArrayDeque<Future<byte[]>> pending = new ArrayDeque<>();
+    private final int threads;
+    private byte[] block;
+    private int blockLength = 0;
+    private boolean closed = false;
+    private ExecutorService executor;
+    private byte[] previousBlock;
+    private long totalLength = 0;
+
+    /**
+     * Creates a new stream with the default block size and writes the gzip header.
+     *
+     * @param out     stream for the compressed data, which is closed with this stream
+     * @param level   compression level between 0 and 9 or {@link Deflater#DEFAULT_COMPRESSION}
+     * @param threads number of threads for the compression
+     *
+     * @throws IOException if the header could not be written
+     */
+    ParallelGzipOutputStream(OutputStream out, int level, int threads) throws IOException {
+        this(out, level, threads, DEFAULT_BLOCK_SIZE);
+    }
+
+    /**
+     * Creates a new stream and writes the gzip header.
+     *
+     * @param out       stream for the compressed data, which is closed with this stream
+     * @param level     compression level between 0 and 9 or {@link Deflater#DEFAULT_COMPRESSION}
+     * @param threads   number of threads for the compression
+     * @param blockSize size of the uncompressed blocks, at least 32 KB
+     *
+     * @throws IOException if the header could not be written
+     */
+    ParallelGzipOutputStream(OutputStream out, int level, int threads, int blockSize) throws IOException {
+        if (level < Deflater.DEFAULT_COMPRESSION || level > Deflater.BEST_COMPRESSION) {
+            throw new IllegalArgumentException("invalid compression level " + level);
+        }
+
+        this.out = out;
+        this.level = level;
+        this.threads = Math.max(1, threads);
+        this.blockSize = Math.max(DICTIONARY_SIZE, blockSize);
+        this.block = new byte[this.blockSize];
+
+        final int extraFlags = level == Deflater.BEST_COMPRESSION ? 2 : level == Deflater.BEST_SPEED ? 4 : 0;
+
+        out.write(new byte[]{0x1F, (byte) 0x8B, Deflater.DEFLATED, 0, 0, 0, 0, 0, (byte) extraFlags, 0});
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+
+        closed = true;
+
+        try {
+            submitBlock(true);
+
+            while (!pending.isEmpty()) {
+                writeBlock(pending.removeFirst());
+            }
+
+            final byte[] trailer = new byte[8];
+            writeInt(trailer, 0, crc.getValue());
+            writeInt(trailer, 4, totalLength);
+
+            out.write(trailer);
+        } finally {
+            if (executor != null) {
+                executor.shutdownNow();
+            }
+
+            out.close();
+        }
+    }
+
+    @Override
+    public void flush() throws IOException {
+        out.flush();
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        write(new byte[]{(byte) b}, 0, 1);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        if (closed) {
+            throw new IOException("stream closed");
+        }
+
+        crc.update(b, off, len);
+        totalLength += len;
+
+        while (len > 0) {
+            final int count = Math.min(len, blockSize - blockLength);
+
+            System.arraycopy(b, off, block, blockLength, count);
+            blockLength += count;
+            off += count;
+            len -= count;
+
+            if (blockLength == blockSize) {
+                submitBlock(false);
+            }
+        }
+    }
+
+    /*
+     * Compresses the current block on a thread of the pool or directly, if there is only one thread or the
+     * file is smaller than one block.
+     */
+    private void submitBlock(boolean last) throws IOException {
+        final byte[] data = block;
+        final int length = blockLength;
+        final byte[] dictionary = previousBlock;
+
+        if (threads == 1 || last && executor == null) {
+            writeBlock(deflate(data, length, dictionary, last));
+        } else {
+            submitBlock(data, length, dictionary, last);
+        }
+
+        previousBlock = data;
+        block = new byte[blockSize];
+        blockLength = 0;
+    }
+
+    private void submitBlock(byte[] data, int length, byte[] dictionary, boolean last) throws IOException {
+        if (executor == null) {
+            executor = Executors.newFixedThreadPool(threads, r -> {
+                Thread thread = new Thread(r, "ZFEx gzip compression");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+
+        while (pending.size() >= 2 * threads) {
+            writeBlock(pending.removeFirst());
+        }
+
+        pending.addLast(executor.submit(() -> deflate(data, length, dictionary, last)));
+
+        while (!pending.isEmpty() && pending.peekFirst().isDone()) {
+            writeBlock(pending.removeFirst());
+        }
+    }
+
+    private void writeBlock(Future<byte[]> future) throws IOException {
+        try {
+            writeBlock(future.get());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("gzip compression interrupted");
+        } catch (ExecutionException e) {
+            throw new IOException("gzip compression failed", e.getCause());
+        }
+    }
+
+    private void writeBlock(byte[] compressed) throws IOException {
+        out.write(compressed);
+    }
+
+    /*
+     * Deflates one block with the end of the previous block as dictionary. All blocks but the last end with a
+     * sync flush on a byte boundary.
+     */
+    private byte[] deflate(byte[] data, int length, byte[] dictionary, boolean last) {
+        Deflater deflater = new Deflater(level, true);
+
+        try {
+            if (dictionary != null) {
+                deflater.setDictionary(dictionary, dictionary.length - DICTIONARY_SIZE, DICTIONARY_SIZE);
+            }
+
+            deflater.setInput(data, 0, length);
+
+            if (last) {
+                deflater.finish();
+            }
+
+            byte[] buffer = new byte[length + (length >> 8) + 64];
+            int position = 0;
+
+            while (true) {
+                if (position == buffer.length) {
+                    buffer = Arrays.copyOf(buffer, buffer.length * 2);
+                }
+
+                final int available = buffer.length - position;
+
+                if (last) {
+                    position += deflater.deflate(buffer, position, available);
+
+                    if (deflater.finished()) {
+                        break;
+                    }
+                } else {
+                    final int count = deflater.deflate(buffer, position, available, Deflater.SYNC_FLUSH);
+                    position += count;
+
+                    if (count < available) {
+                        break;
+                    }
+                }
+            }
+
+            return Arrays.copyOf(buffer, position);
+        } finally {
+            deflater.end();
+        }
+    }
+
+    private static void writeInt(byte[] target, int offset, long value) {
+        target[offset] = (byte) value;
+        target[offset + 1] = (byte) (value >> 8);
+        target[offset + 2] = (byte) (value >> 16);
+        target[offset + 3] = (byte) (value >> 24);
+    }
+
+} // end of ParallelGzipOutputStream
@@ -0,0 +1,364 @@
+/*
+ * License: MIT. Copyright (c) 2017 by Sebastian Aust (https://www.ryanthara.de/)
+ *
+ * This file is part of the package de.ryanthara.ja.zfex.io
+ *
+ * Copyright (c) 2017 ryanthara
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package de.ryanthara.ja.zfex.io;
+
+import de.ryanthara.ja.zfex.data.ViewpointTable;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.zip.CRC32;
+
+/**
+ * The <tt>ParseCache</tt> stores the parsed viewpoints of ZF Laser Radar projects as compact binary snapshots
+ * in a cache directory, so a project that did not change has not to be parsed again.
+ * <p>
+ * A snapshot is valid as long as the size and the modification time of the project file are the same.
+ * If only the modification time differs, the CRC32 content hash of the project file decides, so a touched
+ * or copied project is still found. Snapshots are loaded through a memory mapped file.
+ * <p>
+ * The least recently used snapshots are deleted as soon as all snapshots together are larger than the
+ * size budget of the cache.
+ *
+ * @author sebastian
+ * @version 1
+ * @since 2
+ */
+public class ParseCache {
+
+    /**
+     * Default size budget of the cache in bytes.
+     */
+    public static final long DEFAULT_SIZE_BUDGET = 256L * 1024 * 1024;
+
+    private static final String EXTENSION = ".zfc";
+    private static final int MAGIC = 0x5A464343; // 'ZFCC'
+    private static final int VERSION = 3;
+
+    private final static Logger logger = Logger.getLogger(ParseCache.class.getName());
+
+    private final Path cacheDirectory;
+    private final long sizeBudget;
+
+    /**
+     * Constructs a new parse cache in the given directory.
+     *
+     * @param cacheDirectory directory for the snapshots, which is created if necessary
+     * @param sizeBudget     maximum size of all snapshots in bytes
+     */
+    public ParseCache(Path cacheDirectory, long sizeBudget) {
+        this.cacheDirectory = cacheDirectory;
+        this.sizeBudget = sizeBudget;
+    }
+
+    /**
+     * Returns the default cache directory '.zfex/cache' in the home directory of the user.
+     *
+     * @return default cache directory
+     */
+    public static Path getDefaultDirectory() {
+        return Paths.get(System.getProperty("user.home"), ".zfex", "cache");
+    }
+
+    /**
+     * Computes the CRC32 content hash of a file through a memory mapped file.
+     *
+     * @param file file to be hashed
+     *
+     * @return CRC32 value of the file content
+     *
+     * @throws IOException if the file could not be read
+     */
+    public static long contentHash(Path file) throws IOException {
+        CRC32 crc = new CRC32();
+
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            final long size = channel.size();
+
+            for (long position = 0; position < size; position += Integer.MAX_VALUE) {
+                crc.update(channel.map(FileChannel.MapMode.READ_ONLY, position, Math.min(Integer.MAX_VALUE, size - position)));
+            }
+        }
+
+        return crc.getValue();
+    }
+
+    /**
+     * Loads the snapshot of a project file if there is a valid one.
+     *
+     * @param projectFile project file
+     *
+     * @return table with the cached viewpoints or null if there is no valid snapshot
+     */
+    public ViewpointTable load(Path projectFile) {
+        Path snapshot = getSnapshotFile(projectFile);
+
+        if (!Files.isRegularFile(snapshot)) {
+            return null;
+        }
+
+        try (FileChannel channel = FileChannel.open(snapshot, StandardOpenOption.READ)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+
+            if (buffer.getInt() != MAGIC || buffer.getInt() != VERSION
+                    || !projectFile.toAbsolutePath().toString().equals(readString(buffer))) {
+                return null;
+            }
+
+            final long size = buffer.getLong();
+            final long modified = buffer.getLong();
+            final long hash = buffer.getLong();
+
+            if (size != Files.size(projectFile)) {
+                return null;
+            }
+
+            if (modified != Files.getLastModifiedTime(projectFile).toMillis() && hash != contentHash(projectFile)) {
+                return null;
+            }
+
+            final int count = buffer.getInt();
+            final String[] dictionary = new String[buffer.getInt()];
+
+            for (int i = 0; i < dictionary.length; i++) {
+                dictionary[i] = readString(buffer);
+            }
+
+            int[] nameIds = new int[Math.max(count, 1)];
+            buffer.asIntBuffer().get(nameIds, 0, count);
+            buffer.position(buffer.position() + count * 4);
+
+            double[] rotations = new double[nameIds.length * ViewpointTable.ROTATION_SIZE];
+            buffer.asDoubleBuffer().get(rotations, 0, count * ViewpointTable.ROTATION_SIZE);
+            buffer.position(buffer.position() + count * 8 * ViewpointTable.ROTATION_SIZE);
+
+            double[] x = readDoubles(buffer, count, nameIds.length);
+            double[] y = readDoubles(buffer, count, nameIds.length);
+            double[] z = readDoubles(buffer, count, nameIds.length);
+
+            byte[] scales = new byte[nameIds.length * 3];
+            buffer.get(scales, 0, count * 3);
+
+            Map<Integer, String> texts = new HashMap<>();
+
+            for (int i = buffer.getInt(); i > 0; i--) {
+                final int key = buffer.getInt();
+                texts.put(key, readString(buffer));
+            }
+
+            // mark the snapshot as recently used for the eviction
+            Files.setLastModifiedTime(snapshot, FileTime.fromMillis(System.currentTimeMillis()));
+
+            return ViewpointTable.fromColumns(dictionary, nameIds, rotations, x, y, z, scales, texts, count);
+        } catch (IOException | RuntimeException e) {
+            logger.log(Level.WARNING, "can not read parse cache snapshot: " + snapshot, e);
+
+            return null;
+        }
+    }
+
+    /**
+     * Stores a snapshot of the parsed viewpoints of a project file and evicts the least recently used
+     * snapshots if the cache exceeds its size budget afterwards.
+     *
+     * @param projectFile project file
+     * @param viewpoints  parsed viewpoints
+     *
+     * @throws IOException if the snapshot could not be written
+     */
+    public void store(Path projectFile, ViewpointTable viewpoints) throws IOException {
+        Files.createDirectories(cacheDirectory);
+
+        final int count = viewpoints.size();
+
+        byte[] path = projectFile.toAbsolutePath().toString().getBytes(StandardCharsets.UTF_8);
+        byte[][] dictionary = new byte[viewpoints.getDictionarySize()][];
+
+        long length = 4 + 4 + 4 + path.length + 8 + 8 + 8 + 4 + 4;
+
+        for (int i = 0; i < dictionary.length; i++) {
+            dictionary[i] = viewpoints.getDictionaryName(i).getBytes(StandardCharsets.UTF_8);
+            length += 4 + dictionary[i].length;
+        }
+
+        length += count * 4L + count * 8L * (ViewpointTable.ROTATION_SIZE + 3) + count * 3L + 4;
+
+        final Map<Integer, String> coordinateTexts = viewpoints.getCoordinateTexts();
+        final Map<Integer, byte[]> texts = new HashMap<>();
+
+        for (Map.Entry<Integer, String> entry : coordinateTexts.entrySet()) {
+            texts.put(entry.getKey(), entry.getValue().getBytes(StandardCharsets.UTF_8));
+            length += 4 + 4 + texts.get(entry.getKey()).length;
+        }
+
+        if (length > Integer.MAX_VALUE) {
+            throw new IOException("snapshot is too large for the parse cache: " + length + " bytes");
+        }
+
+        ByteBuffer buffer = ByteBuffer.allocate((int) length);
+
+        buffer.putInt(MAGIC);
+        buffer.putInt(VERSION);
+        buffer.putInt(path.length).put(path);
+        buffer.putLong(Files.size(projectFile));
+        buffer.putLong(Files.getLastModifiedTime(projectFile).toMillis());
+        buffer.putLong(contentHash(projectFile));
+        buffer.putInt(count);
+        buffer.putInt(dictionary.length);
+
+        for (byte[] name : dictionary) {
+            buffer.putInt(name.length).put(name);
+        }
+
+        buffer.asIntBuffer().put(viewpoints.getNameIdColumn(), 0, count);
+        buffer.position(buffer.position() + count * 4);
+        buffer.asDoubleBuffer().put(viewpoints.getRotationColumn(), 0, count * ViewpointTable.ROTATION_SIZE);
+        buffer.position(buffer.position() + count * 8 * ViewpointTable.ROTATION_SIZE);
+        writeDoubles(buffer, viewpoints.getXColumn(), count);
+        writeDoubles(buffer, viewpoints.getYColumn(), count);
+        writeDoubles(buffer, viewpoints.getZColumn(), count);
+        buffer.put(viewpoints.getScaleColumn(), 0, count * 3);
+        buffer.putInt(texts.size());
+
+        for (Map.Entry<Integer, byte[]> entry : texts.entrySet()) {
+            buffer.putInt(entry.getKey());
+            buffer.putInt(entry.getValue().length).put(entry.getValue());
+        }
+
+        buffer.position(0);
+
+        Path snapshot = getSnapshotFile(projectFile);
+        Path temp = Files.createTempFile(cacheDirectory, snapshot.getFileName().toString(), ".tmp");
+
+        try {
+            try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.WRITE)) {
+                while (buffer.hasRemaining()) {
+                    channel.write(buffer);
+                }
+            }
+
+            Files.move(temp, snapshot, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+
+        evict();
+    }
+
+    /**
+     * Deletes the least recently used snapshots until all snapshots together fit into the size budget.
+     *
+     * @throws IOException if the cache directory could not be read
+     */
+    public void evict() throws IOException {
+        if (!Files.isDirectory(cacheDirectory)) {
+            return;
+        }
+
+        List<Path> snapshots = new ArrayList<>();
+        long total = 0;
+
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(cacheDirectory, "*" + EXTENSION)) {
+            for (Path snapshot : stream) {
+                snapshots.add(snapshot);
+                total += Files.size(snapshot);
+            }
+        }
+
+        if (total <= sizeBudget) {
+            return;
+        }
+
+        snapshots.sort((a, b) -> {
+            try {
+                return Files.getLastModifiedTime(a).compareTo(Files.getLastModifiedTime(b));
+            } catch (IOException e) {
+                return 0;
+            }
+        });
+
+        for (Path snapshot : snapshots) {
+            if (total <= sizeBudget) {
+                break;
+            }
+
+            try {
+                long size = Files.size(snapshot);
+
+                if (Files.deleteIfExists(snapshot)) {
+                    total -= size;
+                    logger.log(Level.FINE, "evicted parse cache snapshot: " + snapshot);
+                }
+            } catch (IOException e) {
+                // a snapshot that is still mapped can not be deleted on every platform
+                logger.log(Level.WARNING, "can not evict parse cache snapshot: " + snapshot, e);
+            }
+        }
+    }
+
+    private Path getSnapshotFile(Path projectFile) {
+        String path = projectFile.toAbsolutePath().toString();
+        String name = projectFile.getFileName().toString().replaceAll("[^A-Za-z0-9._-]", "_");
+
+        return cacheDirectory.resolve(name + "-" + Integer.toHexString(path.hashCode()) + EXTENSION);
+    }
+
+    private double[] readDoubles(ByteBuffer buffer, int count, int capacity) {
+        double[] values = new double[capacity];
+        buffer.asDoubleBuffer().get(values, 0, count);
+        buffer.position(buffer.position() + count * 8);
+
+        return values;
+    }
+
+    private String readString(ByteBuffer buffer) {
+        byte[] bytes = new byte[buffer.getInt()];
+        buffer.get(bytes);
+
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private void writeDoubles(ByteBuffer buffer, double[] values, int count) {
+        buffer.asDoubleBuffer().put(values, 0, count);
+        buffer.position(buffer.position() + count * 8);
+    }
+
+} // end of ParseCache
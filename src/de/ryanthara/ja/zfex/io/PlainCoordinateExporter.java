@@ -0,0 +1,79 @@
+/*
+ * License: MIT. Copyright (c) 2017 by Sebastian Aust (https://www.ryanthara.de/)
+ *
+ * This file is part of the package de.ryanthara.ja.zfex.io
+ *
+ * Copyright (c) 2017 ryanthara
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package de.ryanthara.ja.zfex.io;
+
+import de.ryanthara.ja.zfex.data.ViewpointTable;
+import de.ryanthara.ja.zfex.tools.CoordinateFormatter;
+
+import java.io.IOException;
+import java.io.Writer;
+
+/**
+ * The <tt>PlainCoordinateExporter</tt> writes the original coordinate file '_register.txt' with the name and
+ * the coordinates of a viewpoint separated by four spaces on each line.
+ *
+ * @author sebastian
+ * @version 1
+ * @since 2
+ */
+public class PlainCoordinateExporter implements CoordinateExporter {
+
+    private static final String SEPARATOR = "    ";
+
+    private final CoordinateFormatter formatter = new CoordinateFormatter(-1);
+
+    @Override
+    public String getName() {
+        return "plain";
+    }
+
+    @Override
+    public String getFileSuffix() {
+        return "_register.txt";
+    }
+
+    @Override
+    public void begin(Writer writer, String projectName) {
+    }
+
+    @Override
+    public void write(Writer writer, ViewpointTable viewpoints, int index) throws IOException {
+        writer.write(viewpoints.getName(index));
+
+        for (int axis = ViewpointTable.X; axis <= ViewpointTable.Z; axis++) {
+            writer.write(SEPARATOR);
+            viewpoints.formatCoordinate(index, axis, formatter);
+            formatter.write(writer);
+        }
+
+        writer.write(System.lineSeparator());
+    }
+
+    @Override
+    public void end(Writer writer) {
+    }
+
+} // end of PlainCoordinateExporter
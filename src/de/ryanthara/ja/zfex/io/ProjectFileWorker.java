@@ -26,9 +26,16 @@
 package de.ryanthara.ja.zfex.io;
 
 import de.ryanthara.ja.zfex.Main;
+import de.ryanthara.ja.zfex.StatusDisplay;
+import de.ryanthara.ja.zfex.data.AffineTransformation;
 import de.ryanthara.ja.zfex.data.ExtPoint;
+import de.ryanthara.ja.zfex.data.ViewpointTable;
 import de.ryanthara.ja.zfex.i18n.LangStrings;
 import de.ryanthara.ja.zfex.i18n.ResourceBundleUtils;
+import de.ryanthara.ja.zfex.metrics.Measurement;
+import de.ryanthara.ja.zfex.metrics.Metrics;
+import de.ryanthara.ja.zfex.tools.FxThread;
+import de.ryanthara.ja.zfex.tools.TransformationEngine;
 import javafx.scene.control.Alert;
 import javafx.scene.control.ButtonType;
 import org.w3c.dom.Document;
@@ -40,20 +47,31 @@ import org.xml.sax.SAXException;
 import javax.xml.parsers.DocumentBuilder;
 import javax.xml.parsers.DocumentBuilderFactory;
 import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.stream.XMLStreamException;
+import java.io.BufferedInputStream;
 import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.ArrayList;
+import java.util.List;
 import java.util.Optional;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.stream.Collectors;
 
-import static de.ryanthara.ja.zfex.Main.statusPane;
 
 /**
  * ProjectFileWorker do all the operations on the ZF Laser Radar project file (*.zfprj).
  * <p>
  * First the xml based file is read, then parsed into a DOM and afterwards extract all the needed information
  * for preparing the coordinate export and the file copying of the 360° panoramic scan views.
+ * <p>
+ * For large projects the file can be read in a streaming mode as well, which does not build a DOM
+ * and only looks at the 'Viewpoint' elements. Single viewpoints can be read on demand with the help
+ * of a byte offset index of all viewpoints.
  *
  * @author sebastian
  * @version 1
@@ -61,8 +79,16 @@ import static de.ryanthara.ja.zfex.Main.statusPane;
  */
 public class ProjectFileWorker {
 
-    private ExtPoint[] extPoints = new ExtPoint[0];
+    private final static Logger logger = Logger.getLogger(ProjectFileWorker.class.getName());
+
+    private Metrics metrics = Main.metrics;
+    private OverwritePolicy overwritePolicy = OverwritePolicy.ASK;
+    private ParseCache parseCache;
     private File projectFile;
+    private ViewpointIndex viewpointIndex;
+    private ViewpointStreamParser viewpointParser;
+    private ViewpointTable viewpoints = new ViewpointTable();
+    private WriteBatch writeBatch;
 
     /**
      * Default constructor without any functionality.
@@ -71,67 +97,242 @@ public class ProjectFileWorker {
      */
     public ProjectFileWorker(File projectFile) {
         this.projectFile = projectFile;
+
+        logger.setLevel(Main.loggingLevel);
+        logger.addHandler(Main.fileHandler);
+    }
+
+    /**
+     * Sets the {@link Metrics} registry of the export run, which receives the measurements of this worker.
+     *
+     * @param metrics metrics registry, the global one of {@link Main#metrics} is used by default
+     */
+    public void setMetrics(Metrics metrics) {
+        this.metrics = metrics;
+    }
+
+    /**
+     * Sets the {@link OverwritePolicy} for coordinate files that exist already. With any other policy than
+     * {@link OverwritePolicy#ASK} no dialog is shown.
+     *
+     * @param overwritePolicy overwrite policy to be used
+     */
+    public void setOverwritePolicy(OverwritePolicy overwritePolicy) {
+        this.overwritePolicy = overwritePolicy;
+    }
+
+    /**
+     * Sets the {@link ParseCache} which is asked for a snapshot of the viewpoints before the project file
+     * is parsed, and which receives a snapshot after parsing.
+     *
+     * @param parseCache parse cache or null for parsing every time
+     */
+    public void setParseCache(ParseCache parseCache) {
+        this.parseCache = parseCache;
+    }
+
+    /**
+     * Sets the {@link WriteBatch} of the export run, which commits the coordinate file together with the other
+     * files of the run.
+     *
+     * @param writeBatch write batch or null for replacing the coordinate file immediately
+     */
+    public void setWriteBatch(WriteBatch writeBatch) {
+        this.writeBatch = writeBatch;
     }
 
     /**
      * Returns the array of {@link ExtPoint}
+     * <p>
+     * The extended points are views of the rows of the {@link ViewpointTable}.
      *
      * @return array of extended points
      */
     public ExtPoint[] getExtPoints() {
-        return extPoints;
+        return viewpoints.toExtPoints();
     }
 
-    public boolean processProjectFile() throws IOException, SAXException, ParserConfigurationException {
-        boolean success = false;
+    /**
+     * Returns the column oriented {@link ViewpointTable} with all the read viewpoints.
+     *
+     * @return table of the viewpoints
+     */
+    public ViewpointTable getViewpointTable() {
+        return viewpoints;
+    }
 
-        DocumentBuilderFactory dbf = DocumentBuilderFactory.newInstance();
-        DocumentBuilder db = dbf.newDocumentBuilder();
-        Document doc = db.parse(projectFile);
+    /**
+     * Reads the project file into a DOM and extracts the viewpoints from it.
+     *
+     * @return success of reading the project file
+     *
+     * @throws IOException                  if the project file could not be read
+     * @throws SAXException                 if the project file could not be parsed
+     * @throws ParserConfigurationException if no document builder is available
+     */
+    public boolean processProjectFile() throws IOException, SAXException, ParserConfigurationException {
+        if (loadFromCache()) {
+            return readSuccess(true);
+        }
 
-        //Optional, but recommended
-        //Read this: http://stackoverflow.com/questions/13786607/normalization-in-dom-parsing-with-java-how-does-it-work
-        doc.getDocumentElement().normalize();
+        final NodeList nodeList;
 
-        NodeList nodeList = doc.getElementsByTagName("Viewpoint");
+        try (Measurement measurement = metrics.start(Metrics.PARSE, projectFile.getName())) {
+            DocumentBuilderFactory dbf = DocumentBuilderFactory.newInstance();
+            DocumentBuilder db = dbf.newDocumentBuilder();
+            Document doc = db.parse(projectFile);
 
-        extPoints = new ExtPoint[nodeList.getLength()];
+            //Optional, but recommended
+            //Read this: http://stackoverflow.com/questions/13786607/normalization-in-dom-parsing-with-java-how-does-it-work
+            doc.getDocumentElement().normalize();
 
-        for (int i = 0; i < nodeList.getLength(); i++) {
-            Node node = nodeList.item(i);
+            nodeList = doc.getElementsByTagName("Viewpoint");
 
-            if (node.getNodeType() == Node.ELEMENT_NODE) {
-                Element element = (Element) node;
+            ViewpointTable table = new ViewpointTable(nodeList.getLength());
 
-                //String name = element.getAttribute("name");
-                String register = element.getElementsByTagName("RegisterMatrix").item(0).getTextContent();
-                String scans = element.getElementsByTagName("Scans").item(0).getTextContent().trim();
+            for (int i = 0; i < nodeList.getLength(); i++) {
+                Node node = nodeList.item(i);
 
-                String[] coordinates = register.split("[\\s]+");
-                String x = coordinates[3];
-                String y = coordinates[7];
-                String z = coordinates[11];
+                if (node.getNodeType() == Node.ELEMENT_NODE) {
+                    Element element = (Element) node;
 
-                // Remove '.zfs' file ending string
-                String scan = scans.substring(0, scans.lastIndexOf('.'));
+                    //String name = element.getAttribute("name");
+                    String register = element.getElementsByTagName("RegisterMatrix").item(0).getTextContent();
+                    String scans = element.getElementsByTagName("Scans").item(0).getTextContent().trim();
 
-                extPoints[i] = new ExtPoint(scan, x, y, z);
+                    addViewpoint(table, scans, register);
+                }
             }
+
+            table.trimToSize();
+            viewpoints = table;
+
+            measurement.setItems(viewpoints.size());
+            measurement.setBytes(projectFile.length());
+            measurement.succeeded();
         }
 
-        if (nodeList.getLength() == extPoints.length) {
-            success = true;
+        storeInCache();
 
-            statusPane.setStatusIcon(statusPane.STATUS_OK);
-            statusPane.setStatusText(String.format(
-                    ResourceBundleUtils.getLangString(LangStrings.statusLaserRadarProjectReadSuccess), projectFile.getName()));
-        } else {
-            statusPane.setStatusIcon(statusPane.STATUS_ERROR);
-            statusPane.setStatusText(String.format(
-                    ResourceBundleUtils.getLangString(LangStrings.statusLaserRadarProjectReadFailed), projectFile.getName()));
+        return readSuccess(nodeList.getLength() == viewpoints.size());
+    }
+
+    /**
+     * Reads the project file in one forward pass with a streaming parser and extracts the viewpoints from it.
+     * <p>
+     * The result is the same as the one of {@link #processProjectFile()}, but no DOM is built and all the
+     * elements that do not belong to a viewpoint are skipped. This keeps the memory footprint constant
+     * for large projects with a lot of viewpoints and metadata.
+     *
+     * @return success of reading the project file
+     *
+     * @throws IOException        if the project file could not be read
+     * @throws XMLStreamException if the project file could not be parsed
+     */
+    public boolean processProjectFileStreaming() throws IOException, XMLStreamException {
+        if (loadFromCache()) {
+            return readSuccess(true);
         }
 
-        return success;
+        final ViewpointTable table = new ViewpointTable();
+
+        int counter;
+
+        try (Measurement measurement = metrics.start(Metrics.PARSE, projectFile.getName());
+             InputStream inputStream = new BufferedInputStream(Files.newInputStream(projectFile.toPath()), 1 << 16)) {
+            counter = getViewpointParser().parse(inputStream,
+                    (scans, register) -> addViewpoint(table, scans, register));
+
+            measurement.setItems(counter);
+            measurement.setBytes(projectFile.length());
+            measurement.succeeded();
+        }
+
+        table.trimToSize();
+        viewpoints = table;
+
+        storeInCache();
+
+        return readSuccess(counter == viewpoints.size());
+    }
+
+    /**
+     * Builds the byte offset index of all viewpoints or loads it from the sidecar file (*.zfprj.vpi)
+     * next to the project file if it is still valid.
+     * <p>
+     * The index is the base for reading single viewpoints with {@link #readViewpoint(int)} and
+     * {@link #readViewpoints(String...)} without parsing the complete project file.
+     *
+     * @return number of indexed viewpoints
+     *
+     * @throws IOException if the project file could not be read
+     */
+    public int buildViewpointIndex() throws IOException {
+        viewpointIndex = ViewpointIndex.open(projectFile.toPath(), getViewpointParser());
+
+        return viewpointIndex.size();
+    }
+
+    /**
+     * Reads a single viewpoint by its position in the project file through the memory mapped project file.
+     * The index is built on the first call if {@link #buildViewpointIndex()} was not called before.
+     *
+     * @param index position of the viewpoint in the project file
+     *
+     * @return the viewpoint as extended point
+     *
+     * @throws IOException        if the project file could not be read
+     * @throws XMLStreamException if the viewpoint could not be parsed
+     */
+    public ExtPoint readViewpoint(int index) throws IOException, XMLStreamException {
+        if (viewpointIndex == null) {
+            buildViewpointIndex();
+        }
+
+        final ViewpointTable table = new ViewpointTable(1);
+
+        viewpointIndex.parse(index, getViewpointParser(), (scans, register) -> addViewpoint(table, scans, register));
+
+        return table.getExtPoint(0);
+    }
+
+    /**
+     * Reads the viewpoints with the given scan names through the memory mapped project file into a new table.
+     * Unknown scan names are skipped. The index is built on the first call if {@link #buildViewpointIndex()}
+     * was not called before.
+     *
+     * @param scanNames scan names without the file ending
+     *
+     * @return table with the found viewpoints in the order of the given names
+     *
+     * @throws IOException        if the project file could not be read
+     * @throws XMLStreamException if a viewpoint could not be parsed
+     */
+    public ViewpointTable readViewpoints(String... scanNames) throws IOException, XMLStreamException {
+        if (viewpointIndex == null) {
+            buildViewpointIndex();
+        }
+
+        final ViewpointTable table = new ViewpointTable(scanNames.length);
+
+        for (String scanName : scanNames) {
+            int index = viewpointIndex.find(scanName);
+
+            if (index >= 0) {
+                viewpointIndex.parse(index, getViewpointParser(), (scans, register) -> addViewpoint(table, scans, register));
+            }
+        }
+
+        return table;
+    }
+
+    /**
+     * Transforms all read viewpoints with their register matrices into a superior coordinate system.
+     *
+     * @param transformation transformation into the superior coordinate system
+     */
+    public void applySuperiorCoordinateSystem(AffineTransformation transformation) {
+        new TransformationEngine(transformation).transform(viewpoints);
     }
 
     /**
@@ -146,28 +347,122 @@ public class ProjectFileWorker {
 
         ArrayList<String> lines = new ArrayList<>();
 
-        for (ExtPoint extPoint : extPoints) {
-            lines.add(extPoint.toString());
+        for (int i = 0; i < viewpoints.size(); i++) {
+            lines.add(viewpoints.getExtPoint(i).toString());
         }
 
         Path targetFile = Paths.get(fileName);
 
-        if (targetFile.toFile().exists()) {
+        if (targetFile.toFile().exists() && overwritePolicy != OverwritePolicy.ASK) {
+            success = overwritePolicy == OverwritePolicy.OVERWRITE ? write(fileName, lines) :
+                    keepExisting(targetFile.getFileName().toString());
+        } else if (targetFile.toFile().exists()) {
+            Optional<ButtonType> result = confirmOverwrite();
+
+            if (result.orElse(null) == ButtonType.OK) {
+                success = write(fileName, lines);
+            } else if (result.orElse(null) == ButtonType.CANCEL) {
+                Main.eventBus.publishStatus(StatusDisplay.STATUS_OK, "");
+            }
+        } else {
+            success = write(fileName, lines);
+        }
+
+        return success;
+    }
+
+    /**
+     * Writes the coordinate files of all given formats in one pass over the viewpoints.
+     *
+     * @param folder    folder of the coordinate files
+     * @param baseName  base name of the coordinate files, usually the name of the project file
+     * @param exporters exporters of the formats, see {@link CoordinateExportWriter#loadExporters(java.util.Collection)}
+     *
+     * @return success of file writing
+     */
+    public boolean writeCoordinateFiles(String folder, String baseName, List<CoordinateExporter> exporters) {
+        boolean success = false;
+
+        final CoordinateExportWriter exportWriter = new CoordinateExportWriter(exporters, writeBatch);
+        exportWriter.setMetrics(metrics);
+        final List<Path> files = exportWriter.getFiles(Paths.get(folder), baseName);
+
+        if (files.stream().anyMatch(Files::exists) && overwritePolicy != OverwritePolicy.ASK) {
+            success = overwritePolicy == OverwritePolicy.OVERWRITE ? write(exportWriter, folder, baseName, files) :
+                    keepExisting(files.stream().filter(Files::exists).map(file -> file.getFileName().toString())
+                            .collect(Collectors.joining(", ")));
+        } else if (files.stream().anyMatch(Files::exists)) {
+            Optional<ButtonType> result = confirmOverwrite();
+
+            if (result.orElse(null) == ButtonType.OK) {
+                success = write(exportWriter, folder, baseName, files);
+            } else if (result.orElse(null) == ButtonType.CANCEL) {
+                Main.eventBus.publishStatus(StatusDisplay.STATUS_OK, "");
+            }
+        } else {
+            success = write(exportWriter, folder, baseName, files);
+        }
+
+        return success;
+    }
+
+    /*
+     * Asks the user on the JavaFX application thread whether the existing coordinate files are overwritten.
+     */
+    private Optional<ButtonType> confirmOverwrite() {
+        return FxThread.callAndWait(() -> {
             Alert alert = new Alert(Alert.AlertType.CONFIRMATION);
             alert.setTitle(ResourceBundleUtils.getLangString(LangStrings.coordinateFileConfirmationTitle));
             alert.setHeaderText(ResourceBundleUtils.getLangString(LangStrings.coordinateFileConfirmationHeaderText));
             alert.setContentText(ResourceBundleUtils.getLangString(LangStrings.coordinateFileConfirmationText));
 
-            Optional<ButtonType> result = alert.showAndWait();
+            return alert.showAndWait();
+        });
+    }
 
-            if (result.orElse(null) == ButtonType.OK) {
-                success = write(fileName, lines);
-            } else if (result.orElse(null) == ButtonType.CANCEL) {
-                Main.statusPane.setStatusIcon(statusPane.STATUS_OK);
-                Main.statusPane.setStatusText("");
+    /*
+     * Keeps the existing coordinate files with the overwrite policy skip, or fails with the policy fail.
+     */
+    private boolean keepExisting(String names) {
+        if (overwritePolicy == OverwritePolicy.SKIP) {
+            Main.eventBus.publishStatus(StatusDisplay.STATUS_INFORMATION, String.format(ResourceBundleUtils.getLangString(LangStrings.statusExistingFileKept), names));
+
+            return true;
+        }
+
+        logger.log(Level.SEVERE, "coordinate file exists already: " + names);
+
+        Main.eventBus.publishStatus(StatusDisplay.STATUS_ERROR, String.format(ResourceBundleUtils.getLangString(LangStrings.statusExistingFileFailed), names));
+
+        return false;
+    }
+
+    private boolean write(CoordinateExportWriter exportWriter, String folder, String baseName, List<Path> files) {
+        boolean success = false;
+
+        try {
+            ParallelFileCopier.Result result = exportWriter.write(viewpoints, Paths.get(folder), baseName);
+
+            for (ParallelFileCopier.Failure failure : result.getFailures()) {
+                logger.log(Level.SEVERE, "can not write coordinate file: " + failure.getTarget(), failure.getException());
             }
+
+            success = result.isSuccess();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            logger.log(Level.SEVERE, "interrupted while writing the coordinate files", e);
+        }
+
+        final String names = files.stream().map(file -> file.getFileName().toString()).collect(Collectors.joining(", "));
+
+        if (success) {
+            Main.eventBus.publishStatus(StatusDisplay.STATUS_OK, String.format(
+                    ResourceBundleUtils.getLangString(LangStrings.statusLaserRadarProjectExportCoordinatesSuccess),
+                    names));
         } else {
-            success = write(fileName, lines);
+            Main.eventBus.publishStatus(StatusDisplay.STATUS_ERROR, String.format(
+                    ResourceBundleUtils.getLangString(LangStrings.statusLaserRadarProjectExportCoordinatesFailed),
+                    names));
         }
 
         return success;
@@ -176,17 +471,16 @@ public class ProjectFileWorker {
     private boolean write(String fileName, ArrayList<String> lines) {
         boolean success;
 
-        LineWriter lineWriter = new LineWriter(fileName);
+        LineWriter lineWriter = new LineWriter(fileName, writeBatch);
+        lineWriter.setMetrics(metrics);
         success = lineWriter.writeList(lines);
 
         if (success) {
-            statusPane.setStatusIcon(statusPane.STATUS_OK);
-            statusPane.setStatusText(String.format(
+            Main.eventBus.publishStatus(StatusDisplay.STATUS_OK, String.format(
                     ResourceBundleUtils.getLangString(LangStrings.statusLaserRadarProjectExportCoordinatesSuccess),
                     new File(fileName).getName()));
         } else {
-            statusPane.setStatusIcon(statusPane.STATUS_ERROR);
-            statusPane.setStatusText(String.format(
+            Main.eventBus.publishStatus(StatusDisplay.STATUS_ERROR, String.format(
                     ResourceBundleUtils.getLangString(LangStrings.statusLaserRadarProjectExportCoordinatesFailed),
                     new File(fileName).getName()));
         }
@@ -194,4 +488,78 @@ public class ProjectFileWorker {
         return success;
     }
 
+    /*
+     * Adds a viewpoint row from the text content of the 'Scans' and the 'RegisterMatrix' element.
+     */
+    private void addViewpoint(ViewpointTable table, String scans, String register) {
+        String[] values = register.trim().split("[\\s]+");
+
+        if (values.length < 12) {
+            throw new IllegalArgumentException("register matrix with less than 12 values: " + register);
+        }
+
+        double[] matrix = new double[values.length < ViewpointTable.MATRIX_SIZE ? 12 : ViewpointTable.MATRIX_SIZE];
+
+        for (int i = 0; i < matrix.length; i++) {
+            matrix[i] = Double.parseDouble(values[i]);
+        }
+
+        // Remove '.zfs' file ending string
+        String scan = scans.substring(0, scans.lastIndexOf('.'));
+
+        // The string coordinates define the number of fraction digits for the output
+        int index = table.add(scan, values[3], values[7], values[11]);
+        table.setRegisterMatrix(index, matrix);
+    }
+
+    private boolean loadFromCache() {
+        if (parseCache != null) {
+            try (Measurement measurement = metrics.start(Metrics.PARSE_CACHE, projectFile.getName())) {
+                ViewpointTable table = parseCache.load(projectFile.toPath());
+
+                if (table != null) {
+                    viewpoints = table;
+                    logger.log(Level.FINE, "loaded viewpoints from parse cache: " + projectFile);
+
+                    measurement.setItems(table.size());
+                    measurement.succeeded();
+
+                    return true;
+                }
+            }
+        }
+
+        return false;
+    }
+
+    private void storeInCache() {
+        if (parseCache != null) {
+            try {
+                parseCache.store(projectFile.toPath(), viewpoints);
+            } catch (IOException e) {
+                logger.log(Level.WARNING, "can not store viewpoints in parse cache: " + projectFile, e);
+            }
+        }
+    }
+
+    private ViewpointStreamParser getViewpointParser() {
+        if (viewpointParser == null) {
+            viewpointParser = new ViewpointStreamParser();
+        }
+
+        return viewpointParser;
+    }
+
+    private boolean readSuccess(boolean success) {
+        if (success) {
+            Main.eventBus.publishStatus(StatusDisplay.STATUS_OK, String.format(
+                    ResourceBundleUtils.getLangString(LangStrings.statusLaserRadarProjectReadSuccess), projectFile.getName()));
+        } else {
+            Main.eventBus.publishStatus(StatusDisplay.STATUS_ERROR, String.format(
+                    ResourceBundleUtils.getLangString(LangStrings.statusLaserRadarProjectReadFailed), projectFile.getName()));
+        }
+
+        return success;
+    }
+
 } // end of ProjectFileWorker
@@ -0,0 +1,100 @@
+/*
+ * License: MIT. Copyright (c) 2017 by Sebastian Aust (https://www.ryanthara.de/)
+ *
+ * This file is part of the package de.ryanthara.ja.zfex.io
+ *
+ * Copyright (c) 2017 ryanthara
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package de.ryanthara.ja.zfex.io;
+
+import de.ryanthara.ja.zfex.tools.BlockingExecutors;
+import javafx.concurrent.Task;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+
+/**
+ * The <tt>TaskRunner</tt> runs the long lasting work of the workers either as JavaFX {@link Task} in a
+ * background thread, which is a virtual thread if possible, or synchronously in the calling thread for the headless mode, which must not touch
+ * the JavaFX toolkit.
+ *
+ * @author sebastian
+ * @version 1
+ * @since 2
+ */
+final class TaskRunner {
+
+    // Tasks of the workers block on files, so they do not need a platform thread of their own
+    private static final ExecutorService executor = BlockingExecutors.newExecutor("ZFEx-task");
+
+    private TaskRunner() {
+    }
+
+    /**
+     * Runs the work and calls one of the handlers with its result or its exception.
+     * <p>
+     * In the asynchronous mode the handlers are called on the JavaFX application thread.
+     *
+     * @param synchronous true for running the work in the calling thread
+     * @param work        the work to be done
+     * @param onSucceeded handler for the result, which returns the success of the work
+     * @param onFailed    handler for the exception of the work
+     * @param <T>         type of the result
+     *
+     * @return in the synchronous mode the success of the work, otherwise true as the task is started
+     */
+    static <T> boolean run(boolean synchronous, Callable<T> work, Predicate<T> onSucceeded, Consumer<Throwable> onFailed) {
+        if (synchronous) {
+            final T value;
+
+            try {
+                value = work.call();
+            } catch (Exception e) {
+                if (e instanceof InterruptedException) {
+                    Thread.currentThread().interrupt();
+                }
+
+                onFailed.accept(e);
+
+                return false;
+            }
+
+            return onSucceeded.test(value);
+        }
+
+        Task<T> task = new Task<T>() {
+            @Override
+            public T call() throws Exception {
+                return work.call();
+            }
+        };
+
+        task.setOnSucceeded(e -> onSucceeded.test(task.getValue()));
+        task.setOnFailed(e -> onFailed.accept(task.getException()));
+
+        executor.execute(task);
+
+        return true;
+    }
+
+} // end of TaskRunner
@@ -0,0 +1,545 @@
+/*
+ * License: MIT. Copyright (c) 2017 by Sebastian Aust (https://www.ryanthara.de/)
+ *
+ * This file is part of the package de.ryanthara.ja.zfex.io
+ *
+ * Copyright (c) 2017 ryanthara
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package de.ryanthara.ja.zfex.io;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.ImageTypeSpecifier;
+import javax.imageio.stream.FileImageInputStream;
+import javax.imageio.stream.ImageInputStream;
+import java.awt.Rectangle;
+import java.awt.color.ColorSpace;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferByte;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.stream.Stream;
+
+/**
+ * The <tt>TilePyramidWriter</tt> cuts panoramic images into a Deep Zoom tile pyramid, which a viewer can
+ * load progressively level by level.
+ * <p>
+ * For every image a descriptor file 'name.dzi' and a folder 'name_files' are written. The folder contains
+ * one sub folder per level with the tiles 'column_row.png'. Level 0 is a single pixel, every following
+ * level doubles the size until the last level has the full resolution of the image.
+ * <p>
+ * The images are decoded in stripes of one tile row. PNG files are decoded row by row by a
+ * {@link PNGRowReader}, other formats are read stripe by stripe through the source region of an
+ * {@link ImageReader}. Every decoded row is passed down through all levels at once, each level keeps only
+ * its current stripe of tiles, so the memory need is about two stripes of the full resolution and not the
+ * whole image. Several images are processed in parallel.
+ *
+ * @author sebastian
+ * @version 1
+ * @since 2
+ */
+public class TilePyramidWriter {
+
+    /**
+     * Default edge length of the tiles in pixels.
+     */
+    public static final int DEFAULT_TILE_SIZE = 256;
+
+    private final static Logger logger = Logger.getLogger(TilePyramidWriter.class.getName());
+
+    private final int threads;
+    private final int tileSize;
+
+    /**
+     * Constructs a new writer with the default tile size and one thread per processor up to eight threads.
+     */
+    public TilePyramidWriter() {
+        this(DEFAULT_TILE_SIZE, ParallelFileCopier.DEFAULT_THREADS);
+    }
+
+    /**
+     * Constructs a new writer.
+     *
+     * @param tileSize edge length of the tiles in pixels
+     * @param threads  maximum number of images in work at the same time
+     */
+    public TilePyramidWriter(int tileSize, int threads) {
+        if (tileSize < 16 || threads < 1) {
+            throw new IllegalArgumentException("tile size must be at least 16 and threads at least 1");
+        }
+
+        this.tileSize = tileSize;
+        this.threads = threads;
+    }
+
+    /**
+     * Writes the tile pyramids of all images and blocks until every image is finished.
+     *
+     * @param images   map with the source images as keys and the names of the pyramids as values
+     * @param folder   folder for the descriptor files and tile folders
+     * @param listener listener for the progress by images, may be null
+     *
+     * @return result with the number of written pyramids and all failures in the order of the images
+     *
+     * @throws InterruptedException if the calling thread is interrupted
+     */
+    public ParallelFileCopier.Result write(LinkedHashMap<Path, String> images, Path folder,
+                                           ParallelFileCopier.ProgressListener listener) throws InterruptedException {
+        final int count = images.size();
+        final AtomicInteger done = new AtomicInteger();
+        final ParallelFileCopier.Failure[] failures = new ParallelFileCopier.Failure[count];
+        final List<Path> descriptors = new ArrayList<>(count);
+        final List<Path> sources = new ArrayList<>(count);
+
+        List<Callable<Void>> tasks = new ArrayList<>(count);
+
+        int index = 0;
+
+        for (Map.Entry<Path, String> entry : images.entrySet()) {
+            final int i = index++;
+            final Path source = entry.getKey();
+            final Path descriptor = folder.resolve(entry.getValue() + ".dzi");
+
+            sources.add(source);
+            descriptors.add(descriptor);
+
+            tasks.add(() -> {
+                try {
+                    write(source, folder, entry.getValue());
+                } catch (IOException | RuntimeException e) {
+                    logger.log(Level.SEVERE, "can not write tile pyramid of " + source, e);
+                    failures[i] = new ParallelFileCopier.Failure(source, descriptor,
+                            e instanceof IOException ? (IOException) e : new IOException(e.toString(), e));
+                }
+
+                if (listener != null) {
+                    listener.progress(done.incrementAndGet(), count, 0, 0);
+                }
+
+                return null;
+            });
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, Math.min(threads, count)), r -> {
+            Thread thread = new Thread(r, "ZFEx tile pyramid");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        try {
+            List<Future<Void>> futures = executor.invokeAll(tasks);
+
+            // a task that ended in another way than by a pyramid result, for example by an error, is a failure
+            for (int i = 0; i < count; i++) {
+                try {
+                    futures.get(i).get();
+                } catch (ExecutionException | CancellationException e) {
+                    if (failures[i] == null) {
+                        failures[i] = new ParallelFileCopier.Failure(sources.get(i), descriptors.get(i),
+                                ParallelFileCopier.toIOException(e.getCause() != null ? e.getCause() : e));
+                    }
+                }
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        List<ParallelFileCopier.Failure> failureList = new ArrayList<>();
+
+        for (ParallelFileCopier.Failure failure : failures) {
+            if (failure != null) {
+                failureList.add(failure);
+            }
+        }
+
+        return new ParallelFileCopier.Result(count - failureList.size(), 0, failureList);
+    }
+
+    /**
+     * Writes the tile pyramid of one image. An existing pyramid with the same name is replaced.
+     *
+     * @param source image file
+     * @param folder folder for the descriptor file and the tile folder
+     * @param name   name of the pyramid
+     *
+     * @throws IOException if the image could not be read or the tiles could not be written
+     */
+    public void write(Path source, Path folder, String name) throws IOException {
+        final Path tileFolder = folder.resolve(name + "_files");
+
+        if (Files.isDirectory(tileFolder)) {
+            deleteTree(tileFolder);
+        }
+
+        Rectangle size;
+
+        try {
+            size = writeWithRowReader(source, tileFolder);
+        } catch (UnsupportedFormatException e) {
+            size = writeWithImageReader(source, tileFolder);
+        }
+
+        writeDescriptor(folder.resolve(name + ".dzi"), size.width, size.height);
+    }
+
+    /*
+     * Decodes a png file row by row and returns the size of the image.
+     */
+    private Rectangle writeWithRowReader(Path source, Path tileFolder) throws IOException {
+        final PNGRowReader reader;
+
+        try {
+            reader = new PNGRowReader(source);
+        } catch (IOException e) {
+            throw new UnsupportedFormatException();
+        }
+
+        try {
+            final int bands = reader.isGray() ? 1 : 3;
+
+            PyramidLevel level = createLevels(reader.getWidth(), reader.getHeight(), bands, tileFolder);
+            byte[] row = new byte[reader.getWidth() * bands];
+
+            for (int y = 0; y < reader.getHeight(); y++) {
+                reader.readRow(row);
+                level.addRow(row);
+            }
+
+            return new Rectangle(reader.getWidth(), reader.getHeight());
+        } finally {
+            reader.close();
+        }
+    }
+
+    /*
+     * Decodes any image format of ImageIO stripe by stripe and returns the size of the image.
+     */
+    private Rectangle writeWithImageReader(Path source, Path tileFolder) throws IOException {
+        try (ImageInputStream in = new FileImageInputStream(source.toFile())) {
+            Iterator<ImageReader> readers = ImageIO.getImageReaders(in);
+
+            if (!readers.hasNext()) {
+                throw new IOException("unknown image format of " + source);
+            }
+
+            ImageReader reader = readers.next();
+
+            try {
+                reader.setInput(in, true, true);
+
+                final int width = reader.getWidth(0);
+                final int height = reader.getHeight(0);
+
+                ImageTypeSpecifier type = reader.getRawImageType(0);
+
+                final int bands = type != null && type.getColorModel().getColorSpace().getType() == ColorSpace.TYPE_GRAY ? 1 : 3;
+
+                PyramidLevel level = createLevels(width, height, bands, tileFolder);
+
+                byte[] row = new byte[width * bands];
+                int[] rgb = new int[width];
+
+                ImageReadParam param = reader.getDefaultReadParam();
+
+                for (int y = 0; y < height; y += tileSize) {
+                    param.setSourceRegion(new Rectangle(0, y, width, Math.min(tileSize, height - y)));
+
+                    BufferedImage stripe = reader.read(0, param);
+
+                    for (int r = 0; r < stripe.getHeight(); r++) {
+                        stripe.getRGB(0, r, width, 1, rgb, 0, width);
+
+                        for (int x = 0; x < width; x++) {
+                            if (bands == 1) {
+                                row[x] = (byte) rgb[x];
+                            } else {
+                                row[3 * x] = (byte) (rgb[x] >> 16);
+                                row[3 * x + 1] = (byte) (rgb[x] >> 8);
+                                row[3 * x + 2] = (byte) rgb[x];
+                            }
+                        }
+
+                        level.addRow(row);
+                    }
+                }
+
+                return new Rectangle(width, height);
+            } finally {
+                reader.dispose();
+            }
+        }
+    }
+
+    /*
+     * Creates the chain of levels from the full resolution down to level 0.
+     */
+    private PyramidLevel createLevels(int width, int height, int bands, Path tileFolder) {
+        int maxLevel = 0;
+
+        while ((1L << maxLevel) < Math.max(width, height)) {
+            maxLevel++;
+        }
+
+        PyramidLevel level = null;
+
+        for (int i = 0; i <= maxLevel; i++) {
+            final int shift = maxLevel - i;
+
+            level = new PyramidLevel(i, (int) ((width + (1L << shift) - 1) >> shift), (int) ((height + (1L << shift) - 1) >> shift),
+                    bands, tileFolder.resolve(Integer.toString(i)), level);
+        }
+
+        return level;
+    }
+
+    /*
+     * Writes the Deep Zoom descriptor of a pyramid.
+     */
+    private void writeDescriptor(Path descriptor, int width, int height) throws IOException {
+        Path temp = WriteBatch.createTempFile(descriptor);
+
+        try {
+            try (BufferedWriter writer = Files.newBufferedWriter(temp, StandardCharsets.UTF_8)) {
+                writer.write("<?xml version=\"1.0\" encoding=\"UTF-8\"?>");
+                writer.newLine();
+                writer.write("<Image xmlns=\"http://schemas.microsoft.com/deepzoom/2008\" Format=\"png\" Overlap=\"0\" TileSize=\""
+                        + tileSize + "\">");
+                writer.newLine();
+                writer.write("    <Size Width=\"" + width + "\" Height=\"" + height + "\"/>");
+                writer.newLine();
+                writer.write("</Image>");
+                writer.newLine();
+            }
+
+            Files.move(temp, descriptor, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    /*
+     * Deletes a folder with all its content.
+     */
+    static void deleteTree(Path folder) throws IOException {
+        try (Stream<Path> paths = Files.walk(folder)) {
+            List<Path> list = new ArrayList<>();
+            paths.forEach(list::add);
+
+            for (int i = list.size() - 1; i >= 0; i--) {
+                Files.deleteIfExists(list.get(i));
+            }
+        }
+    }
+
+    /*
+     * Replaces a folder by a completely written one. The former folder is renamed aside first and deleted only
+     * after the new one is in place, if the new folder could not be moved the former one is restored.
+     */
+    static void replaceTree(Path written, Path folder) throws IOException {
+        final Path former = folder.resolveSibling(folder.getFileName() + ".old");
+
+        if (Files.exists(former)) {
+            // left behind by an interrupted replacement
+            if (Files.exists(folder)) {
+                deleteTree(former);
+            } else {
+                Files.move(former, folder, StandardCopyOption.ATOMIC_MOVE);
+            }
+        }
+
+        final boolean exists = Files.exists(folder);
+
+        if (exists) {
+            Files.move(folder, former, StandardCopyOption.ATOMIC_MOVE);
+        }
+
+        try {
+            Files.move(written, folder, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            if (exists) {
+                try {
+                    Files.move(former, folder, StandardCopyOption.ATOMIC_MOVE);
+                } catch (IOException restore) {
+                    e.addSuppressed(restore);
+                }
+            }
+
+            throw e;
+        }
+
+        if (exists) {
+            try {
+                deleteTree(former);
+            } catch (IOException e) {
+                // the new folder is in place, the rest is removed by the next replacement
+                logger.log(Level.WARNING, "can not delete the former folder " + former, e);
+            }
+        }
+    }
+
+    /*
+     * Signals that a source can not be decoded row by row.
+     */
+    private static class UnsupportedFormatException extends IOException {
+
+        private static final long serialVersionUID = 1L;
+
+    }
+
+    /*
+     * One level of the pyramid, which collects a stripe of one tile row and writes its tiles as soon as the
+     * stripe is full. Every two rows are reduced to one row of the next smaller level.
+     */
+    private class PyramidLevel {
+
+        private final int bands;
+        private final Path folder;
+        private final int height;
+        private final int index;
+        private final PyramidLevel next;
+        private final byte[] pending;
+        private final byte[] reduced;
+        private final byte[] stripe;
+        private final int width;
+        private boolean hasPending = false;
+        private int rows = 0;
+        private int stripeRows = 0;
+
+        private PyramidLevel(int index, int width, int height, int bands, Path folder, PyramidLevel next) {
+            this.index = index;
+            this.width = width;
+            this.height = height;
+            this.bands = bands;
+            this.folder = folder;
+            this.next = next;
+
+            stripe = new byte[width * Math.min(tileSize, height) * bands];
+            pending = next != null ? new byte[width * bands] : null;
+            reduced = next != null ? new byte[next.width * bands] : null;
+        }
+
+        /*
+         * Adds the next row of this level.
+         */
+        private void addRow(byte[] row) throws IOException {
+            System.arraycopy(row, 0, stripe, stripeRows * width * bands, width * bands);
+
+            stripeRows++;
+            rows++;
+
+            if (stripeRows == tileSize || rows == height) {
+                writeStripe();
+            }
+
+            if (next == null) {
+                return;
+            }
+
+            if (hasPending) {
+                reduce(pending, row);
+                hasPending = false;
+            } else if (rows == height) {
+                reduce(row, row);
+            } else {
+                System.arraycopy(row, 0, pending, 0, width * bands);
+                hasPending = true;
+            }
+        }
+
+        /*
+         * Averages two rows and blocks of two pixels into one row of the next level.
+         */
+        private void reduce(byte[] upper, byte[] lower) throws IOException {
+            for (int x = 0; x < next.width; x++) {
+                final int left = 2 * x;
+                final int right = Math.min(left + 1, width - 1);
+
+                for (int b = 0; b < bands; b++) {
+                    final int sum = (upper[left * bands + b] & 0xFF) + (upper[right * bands + b] & 0xFF)
+                            + (lower[left * bands + b] & 0xFF) + (lower[right * bands + b] & 0xFF);
+
+                    reduced[x * bands + b] = (byte) ((sum + 2) >> 2);
+                }
+            }
+
+            next.addRow(reduced);
+        }
+
+        /*
+         * Cuts the stripe into tiles and writes them.
+         */
+        private void writeStripe() throws IOException {
+            Files.createDirectories(folder);
+
+            final int tileRow = (rows - 1) / tileSize;
+
+            for (int x = 0, column = 0; x < width; x += tileSize, column++) {
+                final int tileWidth = Math.min(tileSize, width - x);
+
+                BufferedImage tile = new BufferedImage(tileWidth, stripeRows,
+                        bands == 1 ? BufferedImage.TYPE_BYTE_GRAY : BufferedImage.TYPE_3BYTE_BGR);
+                final byte[] pixels = ((DataBufferByte) tile.getRaster().getDataBuffer()).getData();
+
+                for (int y = 0; y < stripeRows; y++) {
+                    final int offset = (y * width + x) * bands;
+                    final int target = y * tileWidth * bands;
+
+                    if (bands == 1) {
+                        System.arraycopy(stripe, offset, pixels, target, tileWidth);
+                    } else {
+                        for (int i = 0; i < tileWidth * 3; i += 3) {
+                            pixels[target + i] = stripe[offset + i + 2];
+                            pixels[target + i + 1] = stripe[offset + i + 1];
+                            pixels[target + i + 2] = stripe[offset + i];
+                        }
+                    }
+                }
+
+                if (!ImageIO.write(tile, "png", folder.resolve(column + "_" + tileRow + ".png").toFile())) {
+                    throw new IOException("no png writer for tiles of level " + index);
+                }
+            }
+
+            stripeRows = 0;
+        }
+
+    }
+
+} // end of TilePyramidWriter
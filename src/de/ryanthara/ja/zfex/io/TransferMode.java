@@ -0,0 +1,277 @@
+/*
+ * License: MIT. Copyright (c) 2017 by Sebastian Aust (https://www.ryanthara.de/)
+ *
+ * This file is part of the package de.ryanthara.ja.zfex.io
+ *
+ * Copyright (c) 2017 ryanthara
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package de.ryanthara.ja.zfex.io;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.FileStore;
+import java.nio.file.FileSystemException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
+
+/**
+ * The <tt>TransferMode</tt> enumeration holds the strategies for transferring a file into the export folder.
+ * <p>
+ * Every mode except {@link #COPY} falls back to the next cheaper mode if it is not supported for a pair of
+ * source and target, for example a hard link across file systems. A hard link or reflink that failed because
+ * the file stores of source and target do not support it is not tried again for this pair of file stores.
+ * Other failures, like a missing permission, do not disable the mode.
+ *
+ * @author sebastian
+ * @version 1
+ * @since 2
+ */
+public enum TransferMode {
+
+    /**
+     * Copies the file with {@link Files#copy(Path, Path, java.nio.file.CopyOption...)}.
+     */
+    COPY {
+        @Override
+        void transferOnce(Path source, Path target) throws IOException {
+            Files.copy(source, target, REPLACE_EXISTING);
+        }
+    },
+
+    /**
+     * Copies the file with {@link FileChannel#transferTo(long, long, java.nio.channels.WritableByteChannel)},
+     * which lets the operating system move the bytes without copying them into the java heap.
+     */
+    ZERO_COPY {
+        @Override
+        void transferOnce(Path source, Path target) throws IOException {
+            // never write through an old hard link into the source file
+            Files.deleteIfExists(target);
+
+            try (FileChannel in = FileChannel.open(source, StandardOpenOption.READ);
+                 FileChannel out = FileChannel.open(target, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                         StandardOpenOption.TRUNCATE_EXISTING)) {
+                final long size = in.size();
+
+                long position = 0;
+
+                while (position < size) {
+                    position += in.transferTo(position, size - position, out);
+                }
+            }
+        }
+    },
+
+    /**
+     * Creates a hard link to the source file, which only works if source and target share a file system.
+     * The exported file and the source file are the same file afterwards.
+     */
+    HARD_LINK {
+        @Override
+        void transferOnce(Path source, Path target) throws IOException {
+            Files.deleteIfExists(target);
+            Files.createLink(target, source);
+        }
+    },
+
+    /**
+     * Creates a copy on write clone of the source file (reflink on Linux, clonefile on Mac OS X), which only
+     * works on file systems like Btrfs, XFS or APFS. The clone shares the data blocks with the source until
+     * one of them is changed.
+     */
+    REFLINK {
+        @Override
+        void transferOnce(Path source, Path target) throws IOException {
+            final String os = System.getProperty("os.name").toLowerCase();
+
+            ProcessBuilder builder;
+
+            if (os.startsWith("linux")) {
+                builder = new ProcessBuilder("cp", "--reflink=always", source.toString(), target.toString());
+            } else if (os.startsWith("mac os x")) {
+                builder = new ProcessBuilder("cp", "-c", source.toString(), target.toString());
+            } else {
+                throw new UnsupportedOperationException("reflink is not supported on " + os);
+            }
+
+            builder.redirectErrorStream(true);
+            builder.environment().put("LC_ALL", "C");
+
+            try {
+                Process process = builder.start();
+
+                // the message of cp tells whether the file stores do not support a reflink
+                final String output = readOutput(process.getInputStream());
+
+                if (!process.waitFor(1, TimeUnit.MINUTES)) {
+                    process.destroyForcibly();
+                    throw new IOException("reflink of " + source + " timed out");
+                }
+
+                if (process.exitValue() != 0) {
+                    throw new FileSystemException(source.toString(), target.toString(),
+                            output.isEmpty() ? "cp failed with exit code " + process.exitValue() : output);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("reflink of " + source + " interrupted", e);
+            }
+        }
+    },
+
+    /**
+     * Tries a reflink first, then a hard link and copies the file without copying into the heap otherwise.
+     */
+    AUTO {
+        @Override
+        void transferOnce(Path source, Path target) throws IOException {
+            throw new IOException("the automatic mode has no own transfer");
+        }
+    };
+
+    // pairs of source and target file store which do not support this mode
+    private final Map<List<Object>, Boolean> unsupportedStores = new ConcurrentHashMap<>();
+
+    /**
+     * Transfers the source file to the target file, which is replaced if it exists, and falls back to the
+     * next cheaper mode if this mode is not supported.
+     *
+     * @param source source file
+     * @param target target file
+     *
+     * @return number of transferred bytes
+     *
+     * @throws IOException if the file could not be transferred with any mode
+     */
+    public long transfer(Path source, Path target) throws IOException {
+        final List<Object> stores = Arrays.asList(getStoreKey(source), getStoreKey(target));
+
+        IOException exception = null;
+
+        for (TransferMode mode : getChain()) {
+            if (mode.unsupportedStores.containsKey(stores)) {
+                continue;
+            }
+
+            try {
+                mode.transferOnce(source, target);
+
+                return Files.size(source);
+            } catch (IOException | UnsupportedOperationException e) {
+                final IOException failure = e instanceof IOException ? (IOException) e : new IOException(e);
+
+                if (!Files.isRegularFile(source)) {
+                    throw failure;
+                }
+
+                if ((mode == HARD_LINK || mode == REFLINK) && isUnsupported(e)) {
+                    // a missing capability of the file stores, the next files will not try it again
+                    mode.unsupportedStores.put(stores, Boolean.TRUE);
+                }
+
+                exception = failure;
+            }
+        }
+
+        throw exception != null ? exception : new IOException("no transfer mode left for " + target);
+    }
+
+    /**
+     * Transfers the file with this mode only.
+     *
+     * @param source source file
+     * @param target target file
+     *
+     * @throws IOException if the transfer failed
+     */
+    abstract void transferOnce(Path source, Path target) throws IOException;
+
+    /*
+     * Returns this mode followed by its fallback modes.
+     */
+    private TransferMode[] getChain() {
+        switch (this) {
+            case ZERO_COPY:
+                return new TransferMode[]{ZERO_COPY, COPY};
+            case HARD_LINK:
+                return new TransferMode[]{HARD_LINK, ZERO_COPY, COPY};
+            case REFLINK:
+                return new TransferMode[]{REFLINK, ZERO_COPY, COPY};
+            case AUTO:
+                return new TransferMode[]{REFLINK, HARD_LINK, ZERO_COPY, COPY};
+            default:
+                return new TransferMode[]{COPY};
+        }
+    }
+
+    private static Object getStoreKey(Path file) {
+        Path parent = file.toAbsolutePath().getParent();
+
+        try {
+            FileStore store = Files.getFileStore(parent);
+            return store.name() + "|" + store.type();
+        } catch (IOException e) {
+            return parent;
+        }
+    }
+
+    /*
+     * Returns true if the exception tells that the file stores do not support the mode at all (ENOTSUP or
+     * EXDEV), and not that this one file failed.
+     */
+    private static boolean isUnsupported(Exception e) {
+        if (e instanceof UnsupportedOperationException) {
+            return true;
+        }
+
+        if (e instanceof FileSystemException && ((FileSystemException) e).getReason() != null) {
+            final String reason = ((FileSystemException) e).getReason().toLowerCase(Locale.ENGLISH);
+
+            return reason.contains("not supported") || reason.contains("cross-device");
+        }
+
+        return false;
+    }
+
+    private static String readOutput(InputStream in) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[1024];
+
+        for (int count = in.read(buffer); count >= 0; count = in.read(buffer)) {
+            out.write(buffer, 0, count);
+        }
+
+        return new String(out.toByteArray(), Charset.defaultCharset()).trim();
+    }
+
+} // end of TransferMode
@@ -26,24 +26,40 @@
 package de.ryanthara.ja.zfex.io;
 
 import de.ryanthara.ja.zfex.Main;
+import de.ryanthara.ja.zfex.StatusDisplay;
 import de.ryanthara.ja.zfex.data.ExtPoint;
+import de.ryanthara.ja.zfex.data.ViewpointTable;
 import de.ryanthara.ja.zfex.i18n.LangStrings;
 import de.ryanthara.ja.zfex.i18n.ResourceBundleUtils;
+import de.ryanthara.ja.zfex.metrics.Measurement;
+import de.ryanthara.ja.zfex.metrics.Metrics;
+import de.ryanthara.ja.zfex.tools.FxThread;
 import javafx.scene.control.Alert;
 import javafx.scene.control.ButtonType;
 
 import java.io.File;
+import java.io.FilenameFilter;
+import java.io.IOException;
+import java.io.OutputStream;
 import java.nio.file.FileSystems;
+import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.LinkedHashMap;
 import java.util.Optional;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.zip.Deflater;
 
-import static de.ryanthara.ja.zfex.Main.statusPane;
 
 /**
  * {@link ViewerFileWorker} does all the operations for the initial preparing of JSON files
  * for using in the scan data viewer.
  * <p>
+ * Besides the JSON file a Deep Zoom tile pyramid can be written for every panoramic image, so the viewer
+ * can load the panoramas progressively instead of loading the full size images. The descriptor of a pyramid
+ * is named by the scan and placed in the folder 'project name_tiles' of the viewer folder.
+ * <p>
  * The scan data viewer is not part of ZFEx.
  *
  * @author sebastian
@@ -52,8 +68,18 @@ import static de.ryanthara.ja.zfex.Main.statusPane;
  */
 public class ViewerFileWorker {
 
+    private final static Logger logger = Logger.getLogger(ViewerFileWorker.class.getName());
+
+    private boolean compact = false;
+    private int gzipLevel = Deflater.DEFAULT_COMPRESSION;
+    private Metrics metrics = Main.metrics;
+    private OverwritePolicy overwritePolicy = OverwritePolicy.ASK;
+    private boolean synchronous = false;
+    private int tileCapacity = 0;
     private File projectFile;
+    private TilePyramidWriter tilePyramidWriter = new TilePyramidWriter();
     private File viewerFolder;
+    private WriteBatch writeBatch;
 
     /**
      * Basic constructor with a reference to the viewer folder.
@@ -64,81 +90,254 @@ public class ViewerFileWorker {
     public ViewerFileWorker(File projectFile, File viewerFolder) {
         this.projectFile = projectFile;
         this.viewerFolder = viewerFolder;
+
+        logger.setLevel(Main.loggingLevel);
+        logger.addHandler(Main.fileHandler);
+    }
+
+    /**
+     * Enables or disables the compact viewer file without any white space.
+     *
+     * @param compact true for a compact viewer file
+     */
+    public void setCompact(boolean compact) {
+        this.compact = compact;
+    }
+
+    /**
+     * Sets the compression level of the pre-compressed viewer file, which is written next to the plain one
+     * with the extension '.gz'. With level 0 no compressed file is written.
+     *
+     * @param gzipLevel compression level between 0 and 9 or {@link Deflater#DEFAULT_COMPRESSION}
+     */
+    public void setGzipLevel(int gzipLevel) {
+        this.gzipLevel = gzipLevel;
+    }
+
+    /**
+     * Sets the {@link OverwritePolicy} for a viewer file that exists already. With any other policy than
+     * {@link OverwritePolicy#ASK} no dialog is shown.
+     *
+     * @param overwritePolicy overwrite policy to be used
+     */
+    public void setOverwritePolicy(OverwritePolicy overwritePolicy) {
+        this.overwritePolicy = overwritePolicy;
+    }
+
+    /**
+     * Enables or disables the synchronous mode, which writes the tile pyramids in the calling thread instead of
+     * a JavaFX background task.
+     *
+     * @param synchronous true for writing the tile pyramids in the calling thread
+     */
+    public void setSynchronous(boolean synchronous) {
+        this.synchronous = synchronous;
+    }
+
+    /**
+     * Sets the number of viewpoints a tile of the viewpoint quadtree holds. With a capacity greater than 0 the
+     * viewpoints are also written as quadtree tiles with cluster summaries for each zoom level into the folder
+     * '&lt;project&gt;_points', see {@link ViewpointTileWriter}.
+     *
+     * @param tileCapacity number of viewpoints per tile or 0 for no tiles
+     */
+    public void setTileCapacity(int tileCapacity) {
+        this.tileCapacity = tileCapacity;
+    }
+
+    /**
+     * Sets the {@link Metrics} registry of the export run, which receives the measurements of this worker.
+     *
+     * @param metrics metrics registry, the global one of {@link Main#metrics} is used by default
+     */
+    public void setMetrics(Metrics metrics) {
+        this.metrics = metrics;
+    }
+
+    /**
+     * Sets the {@link WriteBatch} of the export run, which commits the viewer file together with the other files
+     * of the run.
+     *
+     * @param writeBatch write batch or null for replacing the viewer file immediately
+     */
+    public void setWriteBatch(WriteBatch writeBatch) {
+        this.writeBatch = writeBatch;
+    }
+
+    /**
+     * Sets the {@link TilePyramidWriter} which is used for the tile pyramids, for example to change the tile
+     * size or the number of threads.
+     *
+     * @param tilePyramidWriter tile pyramid writer to be used
+     */
+    public void setTilePyramidWriter(TilePyramidWriter tilePyramidWriter) {
+        this.tilePyramidWriter = tilePyramidWriter;
     }
 
     /**
      * Writes the needed 'JSON like' viewer file to the file system.
      * <p>
      * Due to some reasons there is no Java JSON (e.g. @see (javax.json.Json)) functionality used at the moment.
+     * The file is streamed by a {@link GeoJsonWriter}.
      *
      * @param extPoints array with the coordinates to write
      *
      * @return write success
      */
     public boolean exportViewerJSON(ExtPoint[] extPoints) {
+        return exportViewerJSON(ViewpointTable.fromExtPoints(extPoints));
+    }
+
+    /**
+     * Writes the needed 'JSON like' viewer file for the rows of a {@link ViewpointTable} to the file system.
+     *
+     * @param viewpoints table with the coordinates to write
+     *
+     * @return write success
+     */
+    public boolean exportViewerJSON(ViewpointTable viewpoints) {
         boolean success = true;
 
         final String fileName = viewerFolder.getPath() + FileSystems.getDefault().getSeparator() + getProjectName() + ".js";
         Path output = Paths.get(fileName);
 
-        if (output.toFile().exists()) {
-            Alert alert = new Alert(Alert.AlertType.CONFIRMATION);
-            alert.setTitle(ResourceBundleUtils.getLangString(LangStrings.viewerFileConfirmationTitle));
-            alert.setHeaderText(ResourceBundleUtils.getLangString(LangStrings.viewerFileConfirmationHeaderText));
-            alert.setContentText(ResourceBundleUtils.getLangString(LangStrings.viewerFileConfirmationText));
+        if (output.toFile().exists() && overwritePolicy == OverwritePolicy.SKIP) {
+            Main.eventBus.publishStatus(StatusDisplay.STATUS_INFORMATION, String.format(ResourceBundleUtils.getLangString(LangStrings.statusExistingFileKept),
+                    output.getFileName().toString()));
+
+            return true;
+        } else if (output.toFile().exists() && overwritePolicy == OverwritePolicy.FAIL) {
+            logger.log(Level.SEVERE, "viewer file exists already: " + fileName);
+
+            Main.eventBus.publishStatus(StatusDisplay.STATUS_ERROR, String.format(ResourceBundleUtils.getLangString(LangStrings.statusExistingFileFailed),
+                    output.getFileName().toString()));
+
+            return false;
+        } else if (output.toFile().exists() && overwritePolicy == OverwritePolicy.ASK) {
+            Optional<ButtonType> result = FxThread.callAndWait(() -> {
+                Alert alert = new Alert(Alert.AlertType.CONFIRMATION);
+                alert.setTitle(ResourceBundleUtils.getLangString(LangStrings.viewerFileConfirmationTitle));
+                alert.setHeaderText(ResourceBundleUtils.getLangString(LangStrings.viewerFileConfirmationHeaderText));
+                alert.setContentText(ResourceBundleUtils.getLangString(LangStrings.viewerFileConfirmationText));
 
-            Optional<ButtonType> result = alert.showAndWait();
+                return alert.showAndWait();
+            });
 
             if (result.orElse(null) == ButtonType.OK) {
-                success = export(fileName, extPoints);
+                success = export(fileName, viewpoints);
             } else if (result.orElse(null) == ButtonType.CANCEL) {
-                Main.statusPane.setStatusText("");
+                Main.eventBus.publishStatus(StatusDisplay.STATUS_OK, "");
             }
         } else {
-            success = export(fileName, extPoints);
+            success = export(fileName, viewpoints);
         }
 
         if (success) {
-            Main.statusPane.setStatusIcon(statusPane.STATUS_OK);
-            Main.statusPane.setStatusText(String.format(ResourceBundleUtils.getLangString(LangStrings.statusViewerExportSuccess), output.getFileName().toString()));
+            Main.eventBus.publishStatus(StatusDisplay.STATUS_OK, String.format(ResourceBundleUtils.getLangString(LangStrings.statusViewerExportSuccess), output.getFileName().toString()));
         }
 
         return success;
     }
 
-    private boolean export(String fileName, ExtPoint[] extPoints) {
-        boolean success;
+    /**
+     * Writes the tile pyramids of all panoramic images of the project in a background task.
+     *
+     * @return success of writing the tile pyramids, in the asynchronous mode only the success of starting it
+     */
+    public boolean exportTilePyramids() {
+        FilenameFilter pngFilter = (dir, name) -> new File(dir, name).isFile() &&
+                name.toLowerCase().contains(".pano360rf.png") &&
+                name.toLowerCase().endsWith(".png");
+
+        File[] files = new File(projectFile.getParent() + File.separator + ".temp").listFiles(pngFilter);
+
+        if (files == null || files.length == 0) {
+            return true;
+        }
+
+        final LinkedHashMap<Path, String> images = new LinkedHashMap<>();
+
+        for (File file : files) {
+            images.put(file.toPath(), file.getName().substring(0, file.getName().toLowerCase().indexOf(".pano360rf.png")));
+        }
+
+        final Path tileFolder = Paths.get(viewerFolder.getPath(), getProjectName() + "_tiles");
+
+        return TaskRunner.run(synchronous, () -> {
+            Files.createDirectories(tileFolder);
+
+            return tilePyramidWriter.write(images, tileFolder, (filesDone, filesTotal, bytesDone, bytesTotal) ->
+                    Main.eventBus.publishProgress((double) filesDone / filesTotal));
+        }, result -> {
+            if (result.isSuccess()) {
+                Main.eventBus.publishStatus(StatusDisplay.STATUS_OK, String.format(ResourceBundleUtils.getLangString(LangStrings.statusViewerTilesSuccess),
+                        result.getCopiedFiles(), tileFolder.getFileName().toString()));
+            } else {
+                Main.eventBus.publishStatus(StatusDisplay.STATUS_ERROR, String.format(ResourceBundleUtils.getLangString(LangStrings.statusViewerTilesFailed),
+                        result.getFailures().size() + "/" + images.size(), tileFolder.getFileName().toString()));
+            }
+
+            return result.isSuccess();
+        }, exception -> {
+            logger.log(Level.SEVERE, "can not write tile pyramids to " + tileFolder, exception);
 
-        final String varId = getProjectName().toUpperCase();
-        final String id = getProjectName();
+            Main.eventBus.publishStatus(StatusDisplay.STATUS_ERROR, String.format(ResourceBundleUtils.getLangString(LangStrings.statusViewerTilesFailed),
+                    images.size(), tileFolder.getFileName().toString()));
+        });
+    }
 
-        StringBuilder builder = new StringBuilder();
+    private boolean export(String fileName, ViewpointTable viewpoints) {
+        boolean success = false;
 
-        builder.append("var " + varId + " = {" + System.lineSeparator());
-        builder.append("    'type': 'FeatureCollection'," + System.lineSeparator());
-        builder.append("    'id': '" + id + "'," + System.lineSeparator());
-        builder.append("    'features': [" + System.lineSeparator());
+        final Path file = Paths.get(fileName);
+        final Path gzipFile = Paths.get(fileName + ".gz");
+        final WriteBatch batch = writeBatch != null ? writeBatch : new WriteBatch(false);
 
-        for (int i = 0; i < extPoints.length; i++) {
-            ExtPoint point = extPoints[i];
+        try (Measurement measurement = metrics.start(Metrics.VIEWER, file.getFileName().toString())) {
+            final Path temp = batch.add(file);
 
-            String s = "       ";
+            OutputStream out = Files.newOutputStream(temp);
 
-            if (i == 0) {
-                s = s + " ";
+            if (gzipLevel == 0) {
+                // an outdated compressed copy is removed together with the new file
+                batch.delete(gzipFile);
             } else {
-                s = s + ",";
+                try {
+                    out = new TeeOutputStream(out, new ParallelGzipOutputStream(Files.newOutputStream(batch.add(gzipFile)),
+                            gzipLevel, Runtime.getRuntime().availableProcessors()));
+                } catch (IOException e) {
+                    out.close();
+                    throw e;
+                }
             }
-            s = s + "{ \"type\": \"Feature\", \"geometry\": { \"type\": \"Point\", \"coordinates\": [%s, %s] }, \"properties\": { \"ID\": %s, \"Typ\": \"Punkt\" } }" + System.lineSeparator();
 
-            builder.append(String.format(s, point.getX(), point.getY(), point.getNumber()));
-        }
+            try (GeoJsonWriter writer = new GeoJsonWriter(out, compact)) {
+                writer.writeFeatureCollection(getProjectName().toUpperCase(), getProjectName(), viewpoints);
+            }
 
-        builder.append("    ]" + System.lineSeparator());
-        builder.append("};");
+            measurement.setItems(viewpoints.size());
+            measurement.setBytes(Files.size(temp));
 
-        LineWriter lineWriter = new LineWriter(fileName);
-        success = lineWriter.writeBuilder(builder);
+            if (tileCapacity > 0) {
+                final Path tileFolder = viewerFolder.toPath().resolve(getProjectName() + "_points");
+                final int tiles = new ViewpointTileWriter(tileCapacity, compact).write(tileFolder,
+                        getProjectName().toUpperCase(), getProjectName(), viewpoints);
+
+                logger.log(Level.INFO, "wrote " + tiles + " viewpoint tiles to " + tileFolder);
+            }
+
+            if (writeBatch == null) {
+                batch.commit();
+            }
+
+            measurement.succeeded();
+            success = true;
+        } catch (IOException e) {
+            logger.log(Level.SEVERE, "can not write viewer file: " + fileName, e);
+
+            batch.discard(file);
+            batch.discard(gzipFile);
+        }
 
         return success;
     }
@@ -147,4 +346,46 @@ public class ViewerFileWorker {
         return this.projectFile.getName().substring(0, this.projectFile.getName().lastIndexOf("."));
     }
 
+    /*
+     * Writes everything into two streams, used for the plain and the compressed viewer file.
+     */
+    private static class TeeOutputStream extends OutputStream {
+
+        private final OutputStream first;
+        private final OutputStream second;
+
+        private TeeOutputStream(OutputStream first, OutputStream second) {
+            this.first = first;
+            this.second = second;
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                first.close();
+            } finally {
+                second.close();
+            }
+        }
+
+        @Override
+        public void flush() throws IOException {
+            first.flush();
+            second.flush();
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            first.write(b);
+            second.write(b);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            first.write(b, off, len);
+            second.write(b, off, len);
+        }
+
+    }
+
 } // end of ViewerFileWorker
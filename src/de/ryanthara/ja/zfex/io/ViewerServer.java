@@ -0,0 +1,672 @@
+/*
+ * License: MIT. Copyright (c) 2017 by Sebastian Aust (https://www.ryanthara.de/)
+ *
+ * This file is part of the package de.ryanthara.ja.zfex.io
+ *
+ * Copyright (c) 2017 ryanthara
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package de.ryanthara.ja.zfex.io;
+
+import com.sun.net.httpserver.Headers;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import de.ryanthara.ja.zfex.Main;
+import de.ryanthara.ja.zfex.data.AffineTransformation;
+import de.ryanthara.ja.zfex.data.ViewpointTable;
+import de.ryanthara.ja.zfex.tools.BlockingExecutors;
+
+import javax.xml.stream.XMLStreamException;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.FutureTask;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * The <tt>ViewerServer</tt> serves the files of the scan data viewer for one project by a local HTTP server,
+ * so a project can be reviewed before any export is written.
+ * <p>
+ * The resources are made from the parsed project and the panoramic images in its '.temp' folder, with the same
+ * names the {@link ViewerFileWorker} uses in the viewer folder:
+ * <ul>
+ * <li>/name.js with the feature collection of all viewpoints,</li>
+ * <li>/name_points/... with the viewpoint tiles, if a tile capacity is set,</li>
+ * <li>/name_tiles/scan.dzi and /name_tiles/scan_files/level/column_row.png with the tile pyramids and</li>
+ * <li>/panoramas/scan.png with the full panoramic image.</li>
+ * </ul>
+ * The project is parsed again when the project file changes. The tile pyramids and the viewpoint tiles are
+ * written on the first request into a temporary folder of the server. Rendered responses are kept in a least
+ * recently used cache with a size budget. Every response has an ETag, which is derived from the content hash
+ * of the project file, and the panoramic images are streamed from the file with support for range requests.
+ *
+ * @author sebastian
+ * @version 1
+ * @since 2
+ */
+public class ViewerServer implements Closeable {
+
+    /**
+     * Default size budget of the response cache in bytes.
+     */
+    public static final long DEFAULT_CACHE_SIZE = 64L * 1024 * 1024;
+
+    private static final String PANORAMA_SUFFIX = ".pano360rf.png";
+    private static final Pattern RANGE = Pattern.compile("bytes=(\\d*)-(\\d*)");
+    private static final Pattern TILE = Pattern.compile("([^/]+)_files/(\\d+)/(\\d+_\\d+\\.png)");
+
+    private final static Logger logger = Logger.getLogger(ViewerServer.class.getName());
+
+    private final Path cacheFolder;
+    private final ExecutorService executor;
+    private final Map<Path, FutureTask<Path>> generated = new ConcurrentHashMap<>();
+    private final File projectFile;
+    private final String projectName;
+    private final ResponseCache responses;
+    private final HttpServer server;
+    private boolean compact = false;
+    private Model model;
+    private ParseCache parseCache;
+    private int tileCapacity = 0;
+    private AffineTransformation transformation;
+
+    /**
+     * Constructs a server for a project, which is started with {@link #start()}.
+     *
+     * @param projectFile project file
+     * @param address     address and port of the server, port 0 for any free port
+     * @param cacheSize   size budget of the response cache in bytes
+     *
+     * @throws IOException if the server could not be bound to the address
+     */
+    public ViewerServer(File projectFile, InetSocketAddress address, long cacheSize) throws IOException {
+        this.projectFile = projectFile;
+        this.projectName = projectFile.getName().substring(0, projectFile.getName().lastIndexOf('.'));
+        this.responses = new ResponseCache(cacheSize);
+
+        logger.setLevel(Main.loggingLevel);
+        logger.addHandler(Main.fileHandler);
+
+        server = HttpServer.create(address, 0);
+        cacheFolder = Files.createTempDirectory("zfex-viewer");
+        executor = BlockingExecutors.newExecutor("ZFEx-http");
+
+        server.createContext("/", this::handle);
+        server.setExecutor(executor);
+    }
+
+    /**
+     * Enables or disables the compact feature collections without any white space.
+     *
+     * @param compact true for compact feature collections
+     */
+    public void setCompact(boolean compact) {
+        this.compact = compact;
+    }
+
+    /**
+     * Sets the {@link ParseCache} for the project file.
+     *
+     * @param parseCache parse cache or null for parsing every time
+     */
+    public void setParseCache(ParseCache parseCache) {
+        this.parseCache = parseCache;
+    }
+
+    /**
+     * Sets the number of viewpoints a tile holds before it is split, 0 for no viewpoint tiles.
+     *
+     * @param tileCapacity tile capacity
+     */
+    public void setTileCapacity(int tileCapacity) {
+        this.tileCapacity = tileCapacity;
+    }
+
+    /**
+     * Sets the transformation of the viewpoints into the superior coordinate system.
+     *
+     * @param transformation transformation or null for the coordinate system of the project
+     */
+    public void setTransformation(AffineTransformation transformation) {
+        this.transformation = transformation;
+    }
+
+    /**
+     * Stops the server and deletes the written tiles.
+     *
+     * @throws IOException if the written tiles could not be deleted
+     */
+    @Override
+    public void close() throws IOException {
+        server.stop(0);
+        executor.shutdownNow();
+
+        TilePyramidWriter.deleteTree(cacheFolder);
+    }
+
+    /**
+     * Returns the address the server is bound to.
+     *
+     * @return address with the actual port
+     */
+    public InetSocketAddress getAddress() {
+        return server.getAddress();
+    }
+
+    /**
+     * Starts the server in its own threads.
+     */
+    public void start() {
+        server.start();
+
+        logger.log(Level.INFO, "viewer server for " + projectFile + " started on " + server.getAddress());
+    }
+
+    /*
+     * Returns the parsed project, which is parsed again if the project file was changed.
+     */
+    private synchronized Model getModel() throws IOException {
+        final Path path = projectFile.toPath();
+        final long size = Files.size(path);
+        final long modified = Files.getLastModifiedTime(path).toMillis();
+
+        if (model == null || model.size != size || model.modified != modified) {
+            ProjectFileWorker projectFileWorker = new ProjectFileWorker(projectFile);
+            projectFileWorker.setParseCache(parseCache);
+
+            try {
+                if (!projectFileWorker.processProjectFileStreaming()) {
+                    throw new IOException("can't read the project file " + projectFile);
+                }
+            } catch (XMLStreamException e) {
+                throw new IOException("can't parse the project file " + projectFile, e);
+            }
+
+            if (transformation != null) {
+                projectFileWorker.applySuperiorCoordinateSystem(transformation);
+            }
+
+            final Model former = model;
+
+            model = new Model(size, modified, ParseCache.contentHash(path), projectFileWorker.getViewpointTable());
+
+            logger.log(Level.INFO, "parsed " + projectFile + " with " + model.viewpoints.size() + " viewpoints");
+
+            if (former != null && former.hash != model.hash) {
+                dropGenerated(cacheFolder.resolve(Long.toHexString(model.hash)));
+            }
+        }
+
+        return model;
+    }
+
+    /*
+     * Deletes the folders written for former versions of the project, so the cache folder does not grow with
+     * every change. A request which still uses a former version writes its folder again.
+     */
+    private void dropGenerated(Path current) {
+        generated.keySet().removeIf(folder -> !folder.startsWith(current));
+
+        try (DirectoryStream<Path> folders = Files.newDirectoryStream(cacheFolder)) {
+            for (Path folder : folders) {
+                if (!folder.equals(current)) {
+                    TilePyramidWriter.deleteTree(folder);
+                }
+            }
+        } catch (IOException e) {
+            logger.log(Level.WARNING, "can't delete the outdated folders in " + cacheFolder, e);
+        }
+    }
+
+    /*
+     * Returns the panoramic image of a scan or null if there is none.
+     */
+    private Path getPanorama(String scan) {
+        final Path panorama = projectFile.toPath().resolveSibling(".temp").resolve(scan + PANORAMA_SUFFIX);
+
+        // The name must not leave the image folder
+        if (scan.isEmpty() || scan.contains("/") || scan.contains("\\") || scan.contains("..") ||
+                !Files.isRegularFile(panorama)) {
+            return null;
+        }
+
+        return panorama;
+    }
+
+    /*
+     * Writes a folder of tiles once and returns it, concurrent requests wait for the same writer. The folder is
+     * written under a temporary name first, so a failed writer does not leave an incomplete folder behind.
+     */
+    private Path generate(Path folder, FolderWriter writer) throws IOException {
+        final FutureTask<Path> task = new FutureTask<>(() -> {
+            if (!Files.isDirectory(folder)) {
+                final Path temp = folder.resolveSibling(folder.getFileName() + ".tmp");
+
+                if (Files.exists(temp)) {
+                    TilePyramidWriter.deleteTree(temp);
+                }
+
+                Files.createDirectories(temp);
+
+                try {
+                    writer.write(temp);
+                    TilePyramidWriter.replaceTree(temp, folder);
+                } finally {
+                    if (Files.exists(temp)) {
+                        TilePyramidWriter.deleteTree(temp);
+                    }
+                }
+            }
+
+            return folder;
+        });
+
+        FutureTask<Path> running = generated.putIfAbsent(folder, task);
+
+        if (running == null) {
+            running = task;
+            task.run();
+        }
+
+        try {
+            return running.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("interrupted while writing " + folder, e);
+        } catch (ExecutionException e) {
+            generated.remove(folder, running);
+
+            throw e.getCause() instanceof IOException ? (IOException) e.getCause() :
+                    new IOException("can't write " + folder, e.getCause());
+        }
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try {
+            final String method = exchange.getRequestMethod();
+
+            if (!"GET".equals(method) && !"HEAD".equals(method)) {
+                exchange.getResponseHeaders().set("Allow", "GET, HEAD");
+                sendStatus(exchange, 405);
+            } else {
+                route(exchange, exchange.getRequestURI().getPath());
+            }
+        } catch (IOException | RuntimeException e) {
+            logger.log(Level.WARNING, "can't serve " + exchange.getRequestURI(), e);
+
+            sendStatus(exchange, 500);
+        } finally {
+            exchange.close();
+        }
+    }
+
+    /*
+     * Finds the resource of a path and sends it.
+     */
+    private void route(HttpExchange exchange, String path) throws IOException {
+        final Model model = getModel();
+        final String hash = Long.toHexString(model.hash);
+
+        if (path.equals("/" + projectName + ".js")) {
+            sendCached(exchange, path, hash, "application/javascript; charset=utf-8", () -> {
+                ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+                try (GeoJsonWriter writer = new GeoJsonWriter(out, compact)) {
+                    writer.writeFeatureCollection(projectName.toUpperCase(), projectName, model.viewpoints);
+                }
+
+                return out.toByteArray();
+            });
+        } else if (path.startsWith("/" + projectName + "_points/") && tileCapacity > 0) {
+            if (sendNotModified(exchange, hash)) {
+                return;
+            }
+
+            final Path folder = generate(cacheFolder.resolve(hash).resolve("points"), target ->
+                    new ViewpointTileWriter(tileCapacity, compact).write(target, projectName.toUpperCase(),
+                            projectName, model.viewpoints));
+
+            sendFile(exchange, path, hash, folder, path.substring(projectName.length() + 9));
+        } else if (path.startsWith("/" + projectName + "_tiles/")) {
+            final String name = path.substring(projectName.length() + 8);
+            final Matcher tile = TILE.matcher(name);
+            final String scan = tile.matches() ? tile.group(1) :
+                    name.endsWith(".dzi") ? name.substring(0, name.length() - 4) : "";
+            final Path panorama = getPanorama(scan);
+
+            if (panorama == null) {
+                sendStatus(exchange, 404);
+                return;
+            }
+
+            // The tiles depend on the image, which may be changed without the project
+            final String etag = hash + "-" + getStamp(panorama);
+
+            if (sendNotModified(exchange, etag)) {
+                return;
+            }
+
+            final Path folder = generate(cacheFolder.resolve(hash).resolve("tiles").resolve(scan + "-" + getStamp(panorama)),
+                    target -> new TilePyramidWriter().write(panorama, target, scan));
+
+            sendFile(exchange, path, etag, folder, name);
+        } else if (path.startsWith("/panoramas/") && path.endsWith(".png")) {
+            final Path panorama = getPanorama(path.substring(11, path.length() - 4));
+
+            if (panorama == null) {
+                sendStatus(exchange, 404);
+                return;
+            }
+
+            // Large images are streamed from the file and not cached
+            final long length = Files.size(panorama);
+
+            send(exchange, hash + "-" + getStamp(panorama), "image/png", length, (out, offset, count) -> {
+                try (FileChannel channel = FileChannel.open(panorama, StandardOpenOption.READ)) {
+                    final WritableByteChannel target = Channels.newChannel(out);
+                    long position = offset;
+                    final long end = offset + count;
+
+                    while (position < end) {
+                        final long transferred = channel.transferTo(position, end - position, target);
+
+                        // Nothing is transferred beyond the end of an image which was truncated meanwhile
+                        if (transferred <= 0) {
+                            throw new EOFException("can't send " + panorama + " beyond byte " + position);
+                        }
+
+                        position += transferred;
+                    }
+                }
+            });
+        } else {
+            sendStatus(exchange, 404);
+        }
+    }
+
+    /*
+     * Sends a body with the headers for caching and a part of it for a valid range request.
+     */
+    private void send(HttpExchange exchange, String etag, String contentType, long length, BodyWriter writer)
+            throws IOException {
+        final Headers request = exchange.getRequestHeaders();
+        final Headers response = exchange.getResponseHeaders();
+        final String quotedETag = "\"" + etag + "\"";
+
+        response.set("ETag", quotedETag);
+        response.set("Accept-Ranges", "bytes");
+        response.set("Cache-Control", "no-cache");
+
+        if (quotedETag.equals(request.getFirst("If-None-Match"))) {
+            sendStatus(exchange, 304);
+            return;
+        }
+
+        long offset = 0;
+        long count = length;
+        int status = 200;
+
+        final String range = request.getFirst("Range");
+        final String ifRange = request.getFirst("If-Range");
+
+        if (range != null && (ifRange == null || ifRange.equals(quotedETag))) {
+            final Matcher matcher = RANGE.matcher(range.trim());
+
+            if (matcher.matches() && !(matcher.group(1).isEmpty() && matcher.group(2).isEmpty())) {
+                try {
+                    if (matcher.group(1).isEmpty()) {
+                        // Suffix range with the last bytes
+                        count = Math.min(length, Long.parseLong(matcher.group(2)));
+                        offset = length - count;
+                    } else {
+                        offset = Long.parseLong(matcher.group(1));
+                        final long last = matcher.group(2).isEmpty() ? length - 1 :
+                                Math.min(length - 1, Long.parseLong(matcher.group(2)));
+                        count = last - offset + 1;
+                    }
+                } catch (NumberFormatException e) {
+                    count = -1;
+                }
+
+                if (offset >= length || count <= 0) {
+                    response.set("Content-Range", "bytes */" + length);
+                    sendStatus(exchange, 416);
+                    return;
+                }
+
+                response.set("Content-Range", "bytes " + offset + "-" + (offset + count - 1) + "/" + length);
+                status = 206;
+            }
+        }
+
+        response.set("Content-Type", contentType);
+
+        if ("HEAD".equals(exchange.getRequestMethod())) {
+            response.set("Content-Length", String.valueOf(count));
+            exchange.sendResponseHeaders(status, -1);
+            return;
+        }
+
+        exchange.sendResponseHeaders(status, count == 0 ? -1 : count);
+
+        if (count > 0) {
+            try (OutputStream out = exchange.getResponseBody()) {
+                writer.write(out, offset, count);
+            }
+        }
+    }
+
+    /*
+     * Sends a rendered resource from the response cache, which is rendered on a cache miss.
+     */
+    private void sendCached(HttpExchange exchange, String path, String etag, String contentType, Renderer renderer)
+            throws IOException {
+        if (sendNotModified(exchange, etag)) {
+            return;
+        }
+
+        byte[] body = responses.get(path, etag);
+
+        if (body == null) {
+            body = renderer.render();
+            responses.put(path, etag, body);
+        }
+
+        final byte[] content = body;
+
+        send(exchange, etag, contentType, content.length, (out, offset, count) ->
+                out.write(content, (int) offset, (int) count));
+    }
+
+    /*
+     * Sends the status 304 to a client with the current version, so nothing is rendered or written for it.
+     */
+    private boolean sendNotModified(HttpExchange exchange, String etag) throws IOException {
+        if (!("\"" + etag + "\"").equals(exchange.getRequestHeaders().getFirst("If-None-Match"))) {
+            return false;
+        }
+
+        send(exchange, etag, null, 0, (out, offset, count) -> {
+        });
+
+        return true;
+    }
+
+    /*
+     * Sends a file of a written folder through the response cache.
+     */
+    private void sendFile(HttpExchange exchange, String path, String etag, Path folder, String name) throws IOException {
+        final Path file = folder.resolve(name).normalize();
+
+        if (!file.startsWith(folder) || !Files.isRegularFile(file)) {
+            sendStatus(exchange, 404);
+            return;
+        }
+
+        final String contentType = name.endsWith(".png") ? "image/png" : name.endsWith(".dzi") ?
+                "application/xml" : "application/javascript; charset=utf-8";
+
+        sendCached(exchange, path, etag, contentType, () -> {
+            try (InputStream in = Files.newInputStream(file)) {
+                ByteArrayOutputStream out = new ByteArrayOutputStream((int) Files.size(file));
+                byte[] buffer = new byte[1 << 16];
+                int read;
+
+                while ((read = in.read(buffer)) > 0) {
+                    out.write(buffer, 0, read);
+                }
+
+                return out.toByteArray();
+            }
+        });
+    }
+
+    private static String getStamp(Path file) throws IOException {
+        return Long.toHexString(Files.size(file) ^ Files.getLastModifiedTime(file).toMillis());
+    }
+
+    private static void sendStatus(HttpExchange exchange, int status) throws IOException {
+        exchange.sendResponseHeaders(status, -1);
+    }
+
+    /*
+     * Writes a part of a response body.
+     */
+    @FunctionalInterface
+    private interface BodyWriter {
+
+        void write(OutputStream out, long offset, long count) throws IOException;
+
+    }
+
+    /*
+     * Writes a folder of tiles.
+     */
+    @FunctionalInterface
+    private interface FolderWriter {
+
+        void write(Path folder) throws IOException;
+
+    }
+
+    /*
+     * Renders a response body.
+     */
+    @FunctionalInterface
+    private interface Renderer {
+
+        byte[] render() throws IOException;
+
+    }
+
+    /*
+     * The parsed project with the size, the modification time and the content hash of the project file.
+     */
+    private static class Model {
+
+        private final long hash;
+        private final long modified;
+        private final long size;
+        private final ViewpointTable viewpoints;
+
+        private Model(long size, long modified, long hash, ViewpointTable viewpoints) {
+            this.size = size;
+            this.modified = modified;
+            this.hash = hash;
+            this.viewpoints = viewpoints;
+        }
+
+    }
+
+    /*
+     * Least recently used cache of rendered responses with a size budget in bytes. An entry is only valid for
+     * the ETag it was rendered for.
+     */
+    private static class ResponseCache {
+
+        private final long budget;
+        private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(64, 0.75f, true);
+        private long size = 0;
+
+        private ResponseCache(long budget) {
+            this.budget = budget;
+        }
+
+        private synchronized byte[] get(String path, String etag) {
+            final Entry entry = entries.get(path);
+
+            return entry != null && entry.etag.equals(etag) ? entry.body : null;
+        }
+
+        private synchronized void put(String path, String etag, byte[] body) {
+            if (body.length > budget) {
+                return;
+            }
+
+            final Entry previous = entries.put(path, new Entry(etag, body));
+
+            if (previous != null) {
+                size -= previous.body.length;
+            }
+
+            size += body.length;
+
+            for (Iterator<Entry> iterator = entries.values().iterator(); size > budget && iterator.hasNext(); ) {
+                size -= iterator.next().body.length;
+                iterator.remove();
+            }
+        }
+
+        private static class Entry {
+
+            private final byte[] body;
+            private final String etag;
+
+            private Entry(String etag, byte[] body) {
+                this.etag = etag;
+                this.body = body;
+            }
+
+        }
+
+    }
+
+} // end of ViewerServer
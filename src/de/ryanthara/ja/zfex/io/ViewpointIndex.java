@@ -0,0 +1,466 @@
+/*
+ * License: MIT. Copyright (c) 2017 by Sebastian Aust (https://www.ryanthara.de/)
+ *
+ * This file is part of the package de.ryanthara.ja.zfex.io
+ *
+ * Copyright (c) 2017 ryanthara
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package de.ryanthara.ja.zfex.io;
+
+import javax.xml.stream.XMLStreamException;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * The <tt>ViewpointIndex</tt> holds the byte offset and length of every 'Viewpoint' element of a
+ * ZF Laser Radar project file (*.zfprj) for random access to single viewpoints.
+ * <p>
+ * The index is built once by scanning the bytes of the memory mapped project file for the start and end tags
+ * of the viewpoints, which is a lot faster than parsing the xml. It is stored in a compact binary sidecar file
+ * next to the project file (*.zfprj.vpi) and reused as long as size and modification time of the project
+ * file do not change.
+ * <p>
+ * The project file has to be encoded in an ASCII compatible encoding like UTF-8, which is the case for
+ * the files written by ZF LaserControl.
+ *
+ * @author sebastian
+ * @version 1
+ * @since 2
+ */
+final class ViewpointIndex {
+
+    /**
+     * File extension of the sidecar file which is appended to the name of the project file.
+     */
+    static final String SIDECAR_EXTENSION = ".vpi";
+
+    private static final int MAGIC = 0x5A465649; // 'ZFVI'
+    private static final int MIN_SIDECAR_ENTRY_SIZE = 8 + 4 + 2;
+    private static final int SIDECAR_HEADER_SIZE = 4 + 4 + 8 + 8 + 4;
+    private static final int VERSION = 1;
+    private static final long WINDOW = 64L * 1024 * 1024;
+
+    private static final byte[] END_TAG = "</Viewpoint".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] SCANS_END_TAG = "</Scans".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] SCANS_TAG = "<Scans".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] START_TAG = "<Viewpoint".getBytes(StandardCharsets.US_ASCII);
+
+    private final static Logger logger = Logger.getLogger(ViewpointIndex.class.getName());
+
+    private final int count;
+    private final int[] lengths;
+    private final String[] names;
+    private final HashMap<String, Integer> nameIndex;
+    private final long[] offsets;
+    private final Path projectFile;
+
+    private MappedByteBuffer mappedFile;
+
+    private ViewpointIndex(Path projectFile, long[] offsets, int[] lengths, String[] names, int count) {
+        this.projectFile = projectFile;
+        this.offsets = offsets;
+        this.lengths = lengths;
+        this.names = names;
+        this.count = count;
+
+        nameIndex = new HashMap<>(count * 2);
+
+        for (int i = 0; i < count; i++) {
+            nameIndex.putIfAbsent(names[i], i);
+        }
+    }
+
+    /**
+     * Loads the index from the sidecar file if it is valid for the project file, otherwise the project file
+     * is scanned and a new sidecar file is written. A sidecar file that can not be written is logged and the
+     * index is used in memory only.
+     *
+     * @param projectFile path of the project file
+     * @param parser      parser for the scan names that contain xml entities
+     *
+     * @return index of the project file
+     *
+     * @throws IOException if the project file could not be read
+     */
+    static ViewpointIndex open(Path projectFile, ViewpointStreamParser parser) throws IOException {
+        Path sidecar = getSidecarFile(projectFile);
+
+        final long size = Files.size(projectFile);
+        final long modified = Files.getLastModifiedTime(projectFile).toMillis();
+
+        if (Files.isRegularFile(sidecar)) {
+            ViewpointIndex index = read(projectFile, sidecar, size, modified);
+
+            if (index != null) {
+                return index;
+            }
+        }
+
+        ViewpointIndex index = scan(projectFile, parser);
+
+        try {
+            index.write(sidecar, size, modified);
+        } catch (IOException e) {
+            logger.log(Level.WARNING, "can not write viewpoint index file: " + sidecar, e);
+        }
+
+        return index;
+    }
+
+    /**
+     * Returns the path of the sidecar file for a project file.
+     *
+     * @param projectFile path of the project file
+     *
+     * @return path of the sidecar file
+     */
+    static Path getSidecarFile(Path projectFile) {
+        return projectFile.resolveSibling(projectFile.getFileName().toString() + SIDECAR_EXTENSION);
+    }
+
+    /*
+     * Reads the sidecar file. Returns null if it does not fit to the project file or is damaged.
+     */
+    private static ViewpointIndex read(Path projectFile, Path sidecar, long size, long modified) {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(sidecar)))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION || in.readLong() != size || in.readLong() != modified) {
+                return null;
+            }
+
+            final int count = in.readInt();
+
+            // A damaged count is not allocated, every entry has an offset, a length and a name of at least 2 bytes
+            if (count < 0 || count > (Files.size(sidecar) - SIDECAR_HEADER_SIZE) / MIN_SIDECAR_ENTRY_SIZE) {
+                logger.log(Level.WARNING, "damaged viewpoint index file, the index is built again: " + sidecar);
+
+                return null;
+            }
+
+            long[] offsets = new long[count];
+            int[] lengths = new int[count];
+            String[] names = new String[count];
+
+            for (int i = 0; i < count; i++) {
+                offsets[i] = in.readLong();
+                lengths[i] = in.readInt();
+                names[i] = in.readUTF();
+            }
+
+            return new ViewpointIndex(projectFile, offsets, lengths, names, count);
+        } catch (IOException e) {
+            logger.log(Level.WARNING, "can not read viewpoint index file: " + sidecar, e);
+
+            return null;
+        }
+    }
+
+    /*
+     * Scans the memory mapped project file window by window for the viewpoint tags.
+     */
+    private static ViewpointIndex scan(Path projectFile, ViewpointStreamParser parser) throws IOException {
+        long[] offsets = new long[1024];
+        int[] lengths = new int[1024];
+        String[] names = new String[1024];
+        int count = 0;
+
+        try (FileChannel channel = FileChannel.open(projectFile, StandardOpenOption.READ)) {
+            final long size = channel.size();
+
+            long position = 0;
+
+            while (position < size) {
+                final long windowSize = Math.min(WINDOW, size - position);
+                final boolean lastWindow = position + windowSize == size;
+
+                MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, position, windowSize);
+
+                int from = 0;
+                long next = lastWindow ? size : position + windowSize - START_TAG.length;
+
+                while (true) {
+                    int start = findTag(buffer, START_TAG, from, buffer.limit());
+
+                    if (start < 0 || (!lastWindow && position + start >= next)) {
+                        break;
+                    }
+
+                    int startClose = indexOf(buffer, (byte) '>', start + START_TAG.length, buffer.limit());
+
+                    if (startClose > 0 && buffer.get(startClose - 1) == '/') {
+                        // an empty viewpoint can not contain any register matrix
+                        from = startClose + 1;
+                        continue;
+                    }
+
+                    int end = findTag(buffer, END_TAG, start + START_TAG.length, buffer.limit());
+                    int close = end < 0 ? -1 : indexOf(buffer, (byte) '>', end + END_TAG.length, buffer.limit());
+
+                    if (close < 0) {
+                        if (lastWindow) {
+                            throw new IOException("viewpoint without end tag at offset " + (position + start));
+                        } else if (start == 0) {
+                            throw new IOException("viewpoint at offset " + position + " is larger than " + WINDOW + " bytes");
+                        }
+
+                        // continue with a window that starts at this viewpoint
+                        next = position + start;
+                        break;
+                    }
+
+                    if (count == offsets.length) {
+                        offsets = Arrays.copyOf(offsets, count * 2);
+                        lengths = Arrays.copyOf(lengths, count * 2);
+                        names = Arrays.copyOf(names, count * 2);
+                    }
+
+                    offsets[count] = position + start;
+                    lengths[count] = close + 1 - start;
+                    names[count] = readScanName(buffer, start, close + 1, parser);
+                    count++;
+
+                    from = close + 1;
+                    next = lastWindow ? size : Math.max(next, position + from);
+                }
+
+                position = lastWindow ? size : next;
+            }
+        }
+
+        return new ViewpointIndex(projectFile, offsets, lengths, names, count);
+    }
+
+    /*
+     * Reads the scan name without the file ending of the first 'Scans' element in [from, to).
+     */
+    private static String readScanName(ByteBuffer buffer, int from, int to, ViewpointStreamParser parser) throws IOException {
+        int tag = findTag(buffer, SCANS_TAG, from, to);
+        int textStart = tag < 0 ? -1 : indexOf(buffer, (byte) '>', tag + SCANS_TAG.length, to);
+        int textEnd = textStart < 0 ? -1 : findTag(buffer, SCANS_END_TAG, textStart + 1, to);
+
+        if (textEnd < 0) {
+            throw new IOException("viewpoint without 'Scans' element");
+        }
+
+        byte[] bytes = new byte[textEnd - textStart - 1];
+
+        for (int i = 0; i < bytes.length; i++) {
+            bytes[i] = buffer.get(textStart + 1 + i);
+        }
+
+        String scans = new String(bytes, StandardCharsets.UTF_8).trim();
+
+        if (scans.indexOf('&') >= 0 || scans.indexOf('<') >= 0) {
+            // entities, CDATA or nested elements need the xml parser
+            final String[] result = new String[1];
+
+            try {
+                ByteBuffer slice = buffer.duplicate();
+                slice.limit(to).position(from);
+
+                parser.parse(new ByteBufferInputStream(slice), (s, register) -> result[0] = s);
+            } catch (XMLStreamException e) {
+                throw new IOException("can not read scan name of viewpoint", e);
+            }
+
+            scans = result[0];
+        }
+
+        return scans.substring(0, scans.lastIndexOf('.'));
+    }
+
+    /*
+     * Finds a tag name that is followed by white space, '/' or '>' in [from, to).
+     */
+    private static int findTag(ByteBuffer buffer, byte[] tag, int from, int to) {
+        int last = to - tag.length;
+
+        for (int i = indexOf(buffer, tag[0], from, last); i >= 0; i = indexOf(buffer, tag[0], i + 1, last)) {
+            int j = 1;
+
+            while (j < tag.length && buffer.get(i + j) == tag[j]) {
+                j++;
+            }
+
+            if (j == tag.length) {
+                byte b = buffer.get(i + j);
+
+                if (b == '>' || b == '/' || b == ' ' || b == '\t' || b == '\r' || b == '\n') {
+                    return i;
+                }
+            }
+        }
+
+        return -1;
+    }
+
+    private static int indexOf(ByteBuffer buffer, byte b, int from, int to) {
+        for (int i = from; i < to; i++) {
+            if (buffer.get(i) == b) {
+                return i;
+            }
+        }
+
+        return -1;
+    }
+
+    /**
+     * Returns the number of indexed viewpoints.
+     *
+     * @return number of viewpoints
+     */
+    int size() {
+        return count;
+    }
+
+    /**
+     * Returns the position of a viewpoint by its scan name.
+     *
+     * @param scanName scan name without file ending
+     *
+     * @return position of the viewpoint or -1 if there is no viewpoint with this name
+     */
+    int find(String scanName) {
+        Integer index = nameIndex.get(scanName);
+
+        return index == null ? -1 : index;
+    }
+
+    /**
+     * Returns the scan name of a viewpoint.
+     *
+     * @param index position of the viewpoint
+     *
+     * @return scan name without file ending
+     */
+    String getName(int index) {
+        return names[checkIndex(index)];
+    }
+
+    /**
+     * Parses a single viewpoint from the memory mapped project file.
+     *
+     * @param index   position of the viewpoint
+     * @param parser  parser for the viewpoint element
+     * @param handler handler which receives the viewpoint
+     *
+     * @throws IOException        if the project file could not be mapped
+     * @throws XMLStreamException if the viewpoint could not be parsed
+     */
+    void parse(int index, ViewpointStreamParser parser, ViewpointStreamParser.ViewpointHandler handler)
+            throws IOException, XMLStreamException {
+        checkIndex(index);
+
+        ByteBuffer slice;
+
+        if (mappedFile == null && offsets[index] + lengths[index] <= Integer.MAX_VALUE) {
+            try (FileChannel channel = FileChannel.open(projectFile, StandardOpenOption.READ)) {
+                mappedFile = channel.map(FileChannel.MapMode.READ_ONLY, 0, Math.min(channel.size(), Integer.MAX_VALUE));
+            }
+        }
+
+        if (mappedFile != null && offsets[index] + lengths[index] <= mappedFile.capacity()) {
+            slice = mappedFile.duplicate();
+            slice.limit((int) offsets[index] + lengths[index]).position((int) offsets[index]);
+        } else {
+            // viewpoints behind the first 2 GB are mapped one by one
+            try (FileChannel channel = FileChannel.open(projectFile, StandardOpenOption.READ)) {
+                slice = channel.map(FileChannel.MapMode.READ_ONLY, offsets[index], lengths[index]);
+            }
+        }
+
+        parser.parse(new ByteBufferInputStream(slice), handler);
+    }
+
+    private int checkIndex(int index) {
+        if (index < 0 || index >= count) {
+            throw new IndexOutOfBoundsException("index: " + index + ", size: " + count);
+        }
+
+        return index;
+    }
+
+    private void write(Path sidecar, long size, long modified) throws IOException {
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(sidecar)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeLong(size);
+            out.writeLong(modified);
+            out.writeInt(count);
+
+            for (int i = 0; i < count; i++) {
+                out.writeLong(offsets[i]);
+                out.writeInt(lengths[i]);
+                out.writeUTF(names[i]);
+            }
+        }
+    }
+
+    /*
+     * Input stream view of the remaining bytes of a byte buffer.
+     */
+    private static final class ByteBufferInputStream extends InputStream {
+
+        private final ByteBuffer buffer;
+
+        private ByteBufferInputStream(ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        @Override
+        public int available() {
+            return buffer.remaining();
+        }
+
+        @Override
+        public int read() {
+            return buffer.hasRemaining() ? buffer.get() & 0xFF : -1;
+        }
+
+        @Override
+        public int read(byte[] bytes, int offset, int length) {
+            if (!buffer.hasRemaining()) {
+                return -1;
+            }
+
+            length = Math.min(length, buffer.remaining());
+            buffer.get(bytes, offset, length);
+
+            return length;
+        }
+
+    }
+
+} // end of ViewpointIndex
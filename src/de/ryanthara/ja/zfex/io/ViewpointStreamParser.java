@@ -0,0 +1,215 @@
+/*
+ * License: MIT. Copyright (c) 2017 by Sebastian Aust (https://www.ryanthara.de/)
+ *
+ * This file is part of the package de.ryanthara.ja.zfex.io
+ *
+ * Copyright (c) 2017 ryanthara
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package de.ryanthara.ja.zfex.io;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import java.io.InputStream;
+
+/**
+ * The <tt>ViewpointStreamParser</tt> reads the 'Viewpoint' elements of a ZF Laser Radar project file (*.zfprj)
+ * in one forward pass with the StAX API.
+ * <p>
+ * Only the text content of the first 'RegisterMatrix' and 'Scans' descendant of every viewpoint is collected.
+ * All other elements are walked through by the stream reader without building any objects for them,
+ * so the memory footprint does not depend on the size of the project file.
+ *
+ * @author sebastian
+ * @version 1
+ * @since 2
+ */
+final class ViewpointStreamParser {
+
+    private static final String REGISTER_MATRIX = "RegisterMatrix";
+    private static final String SCANS = "Scans";
+    private static final String VIEWPOINT = "Viewpoint";
+
+    private final XMLInputFactory factory;
+
+    /**
+     * Constructs a new instance of this class with a stream reader factory that neither resolves
+     * a DTD nor external entities.
+     */
+    ViewpointStreamParser() {
+        factory = XMLInputFactory.newInstance();
+        factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+        factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+        factory.setProperty(XMLInputFactory.IS_COALESCING, false);
+    }
+
+    /**
+     * Reads all viewpoints from the given input stream and hands them over to the handler in document order.
+     * <p>
+     * The input stream is not closed by this method.
+     *
+     * @param inputStream input stream with the xml content
+     * @param handler     handler which receives every viewpoint
+     *
+     * @return number of read viewpoints
+     *
+     * @throws XMLStreamException if the xml is not well formed or a viewpoint is incomplete
+     */
+    int parse(InputStream inputStream, ViewpointHandler handler) throws XMLStreamException {
+        int counter = 0;
+
+        XMLStreamReader reader = factory.createXMLStreamReader(inputStream);
+
+        try {
+            while (reader.hasNext()) {
+                if (reader.next() == XMLStreamConstants.START_ELEMENT && VIEWPOINT.equals(reader.getLocalName())) {
+                    readViewpoint(reader, handler);
+                    counter++;
+                }
+            }
+        } finally {
+            reader.close();
+        }
+
+        return counter;
+    }
+
+    /*
+     * Reads the content of one viewpoint. The reader is positioned on the start element and left on the end element.
+     */
+    private void readViewpoint(XMLStreamReader reader, ViewpointHandler handler) throws XMLStreamException {
+        String register = null;
+        String scans = null;
+
+        int depth = 1;
+
+        while (depth > 0) {
+            switch (reader.next()) {
+                case XMLStreamConstants.START_ELEMENT:
+                    String name = reader.getLocalName();
+
+                    if (register == null && REGISTER_MATRIX.equals(name)) {
+                        register = readText(reader);
+                    } else if (scans == null && SCANS.equals(name)) {
+                        scans = readText(reader);
+                    } else if (register != null && scans != null) {
+                        skipElement(reader);
+                    } else {
+                        depth++;
+                    }
+                    break;
+
+                case XMLStreamConstants.END_ELEMENT:
+                    depth--;
+                    break;
+
+                case XMLStreamConstants.END_DOCUMENT:
+                    throw new XMLStreamException("unexpected end of document inside of a viewpoint", reader.getLocation());
+
+                default:
+                    break;
+            }
+        }
+
+        if (register == null || scans == null) {
+            throw new XMLStreamException("viewpoint without 'RegisterMatrix' or 'Scans' element", reader.getLocation());
+        }
+
+        handler.viewpoint(scans.trim(), register);
+    }
+
+    /*
+     * Collects the text content of the current element and all of its descendants like Node.getTextContent() does.
+     */
+    private String readText(XMLStreamReader reader) throws XMLStreamException {
+        StringBuilder builder = new StringBuilder();
+
+        int depth = 1;
+
+        while (depth > 0) {
+            switch (reader.next()) {
+                case XMLStreamConstants.START_ELEMENT:
+                    depth++;
+                    break;
+
+                case XMLStreamConstants.END_ELEMENT:
+                    depth--;
+                    break;
+
+                case XMLStreamConstants.CHARACTERS:
+                case XMLStreamConstants.CDATA:
+                case XMLStreamConstants.SPACE:
+                    builder.append(reader.getTextCharacters(), reader.getTextStart(), reader.getTextLength());
+                    break;
+
+                case XMLStreamConstants.END_DOCUMENT:
+                    throw new XMLStreamException("unexpected end of document", reader.getLocation());
+
+                default:
+                    break;
+            }
+        }
+
+        return builder.toString();
+    }
+
+    /*
+     * Walks over the current element and all of its descendants without looking at the content.
+     */
+    private void skipElement(XMLStreamReader reader) throws XMLStreamException {
+        int depth = 1;
+
+        while (depth > 0) {
+            switch (reader.next()) {
+                case XMLStreamConstants.START_ELEMENT:
+                    depth++;
+                    break;
+
+                case XMLStreamConstants.END_ELEMENT:
+                    depth--;
+                    break;
+
+                case XMLStreamConstants.END_DOCUMENT:
+                    throw new XMLStreamException("unexpected end of document", reader.getLocation());
+
+                default:
+                    break;
+            }
+        }
+    }
+
+    /**
+     * Receives the raw text content of one viewpoint.
+     */
+    interface ViewpointHandler {
+
+        /**
+         * Is called once for every viewpoint in document order.
+         *
+         * @param scans          trimmed text content of the 'Scans' element
+         * @param registerMatrix text content of the 'RegisterMatrix' element
+         */
+        void viewpoint(String scans, String registerMatrix);
+
+    }
+
+} // end of ViewpointStreamParser
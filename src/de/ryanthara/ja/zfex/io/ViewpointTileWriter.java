@@ -0,0 +1,435 @@
+/*
+ * License: MIT. Copyright (c) 2017 by Sebastian Aust (https://www.ryanthara.de/)
+ *
+ * This file is part of the package de.ryanthara.ja.zfex.io
+ *
+ * Copyright (c) 2017 ryanthara
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package de.ryanthara.ja.zfex.io;
+
+import de.ryanthara.ja.zfex.data.ViewpointTable;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * The <tt>ViewpointTileWriter</tt> partitions the viewpoints of a {@link ViewpointTable} into the tiles of a
+ * quadtree, so the viewer only has to load the tiles which are visible.
+ * <p>
+ * The quadtree covers the bounding square of all viewpoints. A tile is split into four children as long as
+ * it holds more viewpoints than the tile capacity. For every zoom level the non empty cells are summarised
+ * as clusters with the number of viewpoints, their centroid and their bounding box, which the viewer can
+ * show instead of the single viewpoints when zoomed out.
+ * <p>
+ * The written folder contains these 'JSON like' files:
+ * <ul>
+ * <li>index.js with the bounds of the project and the key, the size and the bounding box of each tile,</li>
+ * <li>clusters_ZOOM.js with the cluster summaries of each zoom level and</li>
+ * <li>tile_KEY.js with the feature collection of each tile.</li>
+ * </ul>
+ * The key of the root tile is 'r', the keys of the children append the quadrant 0 to 3 with the x bit as low
+ * bit and the y bit as high bit, like 'r03'. The variables are named by the project and the key.
+ *
+ * @author sebastian
+ * @version 1
+ * @since 2
+ */
+class ViewpointTileWriter {
+
+    private static final int MAX_DEPTH = 16;
+
+    private final int capacity;
+    private final boolean compact;
+
+    /**
+     * Creates a new writer.
+     *
+     * @param capacity number of viewpoints a tile holds before it is split
+     * @param compact  true for files without any white space
+     */
+    ViewpointTileWriter(int capacity, boolean compact) {
+        this.capacity = Math.max(1, capacity);
+        this.compact = compact;
+    }
+
+    /**
+     * Writes the tiles, clusters and the index of the viewpoints into a folder, which is replaced as a whole.
+     *
+     * @param folder     folder for the files
+     * @param varId      prefix of the java script variables
+     * @param id         id of the feature collections
+     * @param viewpoints viewpoints to be written
+     *
+     * @return number of written tiles
+     *
+     * @throws IOException if a file could not be written
+     */
+    int write(Path folder, String varId, String id, ViewpointTable viewpoints) throws IOException {
+        final Path temp = folder.resolveSibling(folder.getFileName() + ".tmp");
+
+        if (Files.exists(temp)) {
+            TilePyramidWriter.deleteTree(temp);
+        }
+
+        Files.createDirectories(temp);
+
+        final int count;
+
+        try {
+            count = writeFiles(temp, varId, id, viewpoints);
+
+            TilePyramidWriter.replaceTree(temp, folder);
+        } finally {
+            if (Files.exists(temp)) {
+                TilePyramidWriter.deleteTree(temp);
+            }
+        }
+
+        return count;
+    }
+
+    private int writeFiles(Path folder, String varId, String id, ViewpointTable viewpoints) throws IOException {
+        final int size = viewpoints.size();
+
+        double minX = Double.POSITIVE_INFINITY;
+        double minY = Double.POSITIVE_INFINITY;
+        double maxX = Double.NEGATIVE_INFINITY;
+        double maxY = Double.NEGATIVE_INFINITY;
+
+        for (int i = 0; i < size; i++) {
+            minX = Math.min(minX, viewpoints.getX(i));
+            minY = Math.min(minY, viewpoints.getY(i));
+            maxX = Math.max(maxX, viewpoints.getX(i));
+            maxY = Math.max(maxY, viewpoints.getY(i));
+        }
+
+        if (size == 0) {
+            minX = minY = maxX = maxY = 0;
+        }
+
+        final double extent = Math.max(Math.max(maxX - minX, maxY - minY), Double.MIN_NORMAL);
+
+        // sort the rows along the z-order curve, so every cell of the quadtree is a range of rows
+        final long[] keys = new long[size];
+
+        for (int i = 0; i < size; i++) {
+            final int x = quantize((viewpoints.getX(i) - minX) / extent);
+            final int y = quantize((viewpoints.getY(i) - minY) / extent);
+
+            keys[i] = (interleave(x) | interleave(y) << 1) << 32 | i;
+        }
+
+        Arrays.sort(keys);
+
+        final long[] codes = new long[size];
+        final int[] rows = new int[size];
+
+        for (int i = 0; i < size; i++) {
+            codes[i] = keys[i] >>> 32;
+            rows[i] = (int) keys[i];
+        }
+
+        final List<Cell> tiles = new ArrayList<>();
+        final int depth = split(codes, 0, size, 0, "r", tiles);
+
+        for (Cell tile : tiles) {
+            try (GeoJsonWriter writer = new GeoJsonWriter(folder.resolve("tile_" + tile.key + ".js"), compact)) {
+                writer.writeFeatureCollection(varId + "_" + tile.key.toUpperCase(), id, viewpoints, rows,
+                        tile.from, tile.to);
+            }
+        }
+
+        for (int zoom = 0; zoom <= depth; zoom++) {
+            writeClusters(folder.resolve("clusters_" + zoom + ".js"), varId + "_CLUSTERS_" + zoom, id, viewpoints,
+                    codes, rows, zoom);
+        }
+
+        writeIndex(folder.resolve("index.js"), varId + "_INDEX", id, viewpoints, rows, tiles, depth,
+                new double[]{minX, minY, maxX, maxY});
+
+        return tiles.size();
+    }
+
+    /*
+     * Splits the range of sorted rows into tiles and returns the depth of the deepest tile.
+     */
+    private int split(long[] codes, int from, int to, int depth, String key, List<Cell> tiles) {
+        if (to - from <= capacity || depth == MAX_DEPTH) {
+            if (to > from || depth == 0) {
+                tiles.add(new Cell(key, from, to));
+            }
+
+            return depth;
+        }
+
+        final int shift = 2 * (MAX_DEPTH - depth - 1);
+        int maxDepth = depth;
+        int start = from;
+
+        for (int quadrant = 0; quadrant < 4; quadrant++) {
+            int end = start;
+
+            while (end < to && (codes[end] >>> shift & 3) == quadrant) {
+                end++;
+            }
+
+            if (end > start) {
+                maxDepth = Math.max(maxDepth, split(codes, start, end, depth + 1, key + quadrant, tiles));
+            }
+
+            start = end;
+        }
+
+        return maxDepth;
+    }
+
+    private void writeClusters(Path file, String varId, String id, ViewpointTable viewpoints, long[] codes,
+                               int[] rows, int zoom) throws IOException {
+        final int shift = 2 * (MAX_DEPTH - zoom);
+        final int fractionDigits = viewpoints.getFractionDigits();
+
+        try (GeoJsonWriter writer = new GeoJsonWriter(file, compact)) {
+            writeHeader(writer, varId, id, "features");
+
+            int from = 0;
+
+            while (from < codes.length) {
+                int to = from + 1;
+
+                while (to < codes.length && codes[to] >>> shift == codes[from] >>> shift) {
+                    to++;
+                }
+
+                final double[] bounds = getBounds(viewpoints, rows, from, to);
+
+                double sumX = 0;
+                double sumY = 0;
+
+                for (int i = from; i < to; i++) {
+                    sumX += viewpoints.getX(rows[i]);
+                    sumY += viewpoints.getY(rows[i]);
+                }
+
+                writeSeparator(writer, from == 0);
+                writer.writeAscii(compact ? "{\"type\":\"Feature\",\"geometry\":{\"type\":\"Point\",\"coordinates\":[" :
+                        "{ \"type\": \"Feature\", \"geometry\": { \"type\": \"Point\", \"coordinates\": [");
+                writer.writeCoordinate(sumX / (to - from), fractionDigits);
+                writer.writeAscii(compact ? "," : ", ");
+                writer.writeCoordinate(sumY / (to - from), fractionDigits);
+                writer.writeAscii(compact ? "]},\"properties\":{\"tile\":\"" :
+                        "] }, \"properties\": { \"tile\": \"");
+                writer.writeAscii(getKey(codes[from], zoom));
+                writer.writeAscii(compact ? "\",\"count\":" : "\", \"count\": ");
+                writer.writeLong(to - from);
+                writer.writeAscii(compact ? ",\"bbox\":" : ", \"bbox\": ");
+                writeBounds(writer, bounds, fractionDigits);
+                writer.writeAscii(compact ? "}}" : " } }");
+
+                from = to;
+            }
+
+            writeFooter(writer, codes.length == 0);
+        }
+    }
+
+    private void writeIndex(Path file, String varId, String id, ViewpointTable viewpoints, int[] rows,
+                            List<Cell> tiles, int depth, double[] bounds) throws IOException {
+        final int fractionDigits = viewpoints.getFractionDigits();
+
+        try (GeoJsonWriter writer = new GeoJsonWriter(file, compact)) {
+            if (compact) {
+                writer.writeString("var " + varId + "={'id':'" + id + "','count':");
+                writer.writeLong(viewpoints.size());
+                writer.writeAscii(",'capacity':");
+                writer.writeLong(capacity);
+                writer.writeAscii(",'zoomLevels':");
+                writer.writeLong(depth + 1);
+                writer.writeAscii(",'bbox':");
+                writeBounds(writer, bounds, fractionDigits);
+                writer.writeAscii(",'tiles':[");
+            } else {
+                writer.writeString("var " + varId + " = {");
+                writer.writeLineSeparator();
+                writer.writeString("    'id': '" + id + "',");
+                writer.writeLineSeparator();
+                writer.writeAscii("    'count': ");
+                writer.writeLong(viewpoints.size());
+                writer.writeAscii(",");
+                writer.writeLineSeparator();
+                writer.writeAscii("    'capacity': ");
+                writer.writeLong(capacity);
+                writer.writeAscii(",");
+                writer.writeLineSeparator();
+                writer.writeAscii("    'zoomLevels': ");
+                writer.writeLong(depth + 1);
+                writer.writeAscii(",");
+                writer.writeLineSeparator();
+                writer.writeAscii("    'bbox': ");
+                writeBounds(writer, bounds, fractionDigits);
+                writer.writeAscii(",");
+                writer.writeLineSeparator();
+                writer.writeAscii("    'tiles': [");
+                writer.writeLineSeparator();
+            }
+
+            for (int i = 0; i < tiles.size(); i++) {
+                final Cell tile = tiles.get(i);
+
+                writeSeparator(writer, i == 0);
+                writer.writeAscii(compact ? "{\"key\":\"" : "{ \"key\": \"");
+                writer.writeAscii(tile.key);
+                writer.writeAscii(compact ? "\",\"count\":" : "\", \"count\": ");
+                writer.writeLong(tile.to - tile.from);
+                writer.writeAscii(compact ? ",\"bbox\":" : ", \"bbox\": ");
+                writeBounds(writer, tile.to > tile.from ? getBounds(viewpoints, rows, tile.from, tile.to) : bounds,
+                        fractionDigits);
+                writer.writeAscii(compact ? "}" : " }");
+            }
+
+            writeFooter(writer, tiles.isEmpty());
+        }
+    }
+
+    private void writeHeader(GeoJsonWriter writer, String varId, String id, String array) throws IOException {
+        if (compact) {
+            writer.writeString("var " + varId + "={'type':'FeatureCollection','id':'" + id + "','" + array + "':[");
+        } else {
+            writer.writeString("var " + varId + " = {");
+            writer.writeLineSeparator();
+            writer.writeAscii("    'type': 'FeatureCollection',");
+            writer.writeLineSeparator();
+            writer.writeString("    'id': '" + id + "',");
+            writer.writeLineSeparator();
+            writer.writeAscii("    '" + array + "': [");
+            writer.writeLineSeparator();
+        }
+    }
+
+    private void writeFooter(GeoJsonWriter writer, boolean empty) throws IOException {
+        if (compact) {
+            writer.writeAscii("]};");
+        } else {
+            if (!empty) {
+                writer.writeLineSeparator();
+            }
+
+            writer.writeAscii("    ]");
+            writer.writeLineSeparator();
+            writer.writeAscii("};");
+        }
+    }
+
+    private void writeSeparator(GeoJsonWriter writer, boolean first) throws IOException {
+        if (compact) {
+            writer.writeAscii(first ? "" : ",");
+        } else {
+            if (!first) {
+                writer.writeLineSeparator();
+            }
+
+            writer.writeAscii(first ? "        " : "       ,");
+        }
+    }
+
+    private void writeBounds(GeoJsonWriter writer, double[] bounds, int fractionDigits) throws IOException {
+        writer.writeAscii("[");
+
+        for (int i = 0; i < bounds.length; i++) {
+            if (i > 0) {
+                writer.writeAscii(compact ? "," : ", ");
+            }
+
+            writer.writeCoordinate(bounds[i], fractionDigits);
+        }
+
+        writer.writeAscii("]");
+    }
+
+    private static double[] getBounds(ViewpointTable viewpoints, int[] rows, int from, int to) {
+        final double[] bounds = {Double.POSITIVE_INFINITY, Double.POSITIVE_INFINITY,
+                Double.NEGATIVE_INFINITY, Double.NEGATIVE_INFINITY};
+
+        for (int i = from; i < to; i++) {
+            final double x = viewpoints.getX(rows[i]);
+            final double y = viewpoints.getY(rows[i]);
+
+            bounds[0] = Math.min(bounds[0], x);
+            bounds[1] = Math.min(bounds[1], y);
+            bounds[2] = Math.max(bounds[2], x);
+            bounds[3] = Math.max(bounds[3], y);
+        }
+
+        return bounds;
+    }
+
+    /*
+     * Returns the key of the cell at the given zoom level which contains the z-order code.
+     */
+    private static String getKey(long code, int zoom) {
+        final StringBuilder key = new StringBuilder(zoom + 1).append('r');
+
+        for (int level = 0; level < zoom; level++) {
+            key.append((char) ('0' + (code >>> 2 * (MAX_DEPTH - level - 1) & 3)));
+        }
+
+        return key.toString();
+    }
+
+    /*
+     * Spreads the 16 bits of a value to the even bits of a long.
+     */
+    private static long interleave(int value) {
+        long bits = value & 0xFFFFL;
+
+        bits = (bits | bits << 8) & 0x00FF00FFL;
+        bits = (bits | bits << 4) & 0x0F0F0F0FL;
+        bits = (bits | bits << 2) & 0x33333333L;
+        bits = (bits | bits << 1) & 0x55555555L;
+
+        return bits;
+    }
+
+    private static int quantize(double value) {
+        return (int) Math.max(0, Math.min((1 << MAX_DEPTH) - 1, value * (1 << MAX_DEPTH)));
+    }
+
+    /*
+     * A tile of the quadtree with its range in the sorted rows.
+     */
+    private static class Cell {
+
+        private final int from;
+        private final String key;
+        private final int to;
+
+        private Cell(String key, int from, int to) {
+            this.key = key;
+            this.from = from;
+            this.to = to;
+        }
+
+    }
+
+} // end of ViewpointTileWriter
@@ -0,0 +1,260 @@
+/*
+ * License: MIT. Copyright (c) 2017 by Sebastian Aust (https://www.ryanthara.de/)
+ *
+ * This file is part of the package de.ryanthara.ja.zfex.io
+ *
+ * Copyright (c) 2017 ryanthara
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package de.ryanthara.ja.zfex.io;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Pattern;
+
+/**
+ * The <tt>WriteBatch</tt> collects the files of one export run, which are written into temporary files next to
+ * their targets and become visible all together with an atomic rename on {@link #commit()}.
+ * <p>
+ * A crash or a full disk therefore never leaves a truncated file under the name of a target, which sync jobs
+ * or other tools could pick up. With sync enabled, all temporary files are forced to the disk before the first
+ * rename and every folder is forced once after the renames, so the durability costs only one flush per file
+ * and folder for the whole run.
+ * <p>
+ * The temporary files are hidden files with the name of the target and are created with the default
+ * permissions of the folder, so the renamed files are readable like any other written file. Temporary files of
+ * a target which are left by a crashed run are deleted when the target is added again. A target which is not
+ * written any more, like an outdated compressed copy, can be deleted with the commit as well.
+ *
+ * @author sebastian
+ * @version 1
+ * @since 2
+ */
+public class WriteBatch {
+
+    private static final AtomicLong counter = new AtomicLong(System.nanoTime());
+    private static final long STALE_TEMP_MILLIS = TimeUnit.HOURS.toMillis(1);
+    private static final Pattern TEMP_SUFFIX = Pattern.compile("\\.[0-9a-f]+\\.tmp");
+
+    private final Set<Path> deletions = new LinkedHashSet<>();
+    private final Map<Path, Path> pending = new LinkedHashMap<>();
+    private final boolean sync;
+
+    /**
+     * Creates a new empty batch.
+     *
+     * @param sync true for forcing the files and folders to the disk on commit
+     */
+    public WriteBatch(boolean sync) {
+        this.sync = sync;
+    }
+
+    /**
+     * Creates a new empty temporary file in the folder of the target, which can be moved onto the target.
+     *
+     * @param target target file
+     *
+     * @return temporary file
+     *
+     * @throws IOException if the file could not be created
+     */
+    static Path createTempFile(Path target) throws IOException {
+        final Path folder = target.toAbsolutePath().getParent();
+        final String name = "." + target.getFileName() + ".";
+
+        while (true) {
+            try {
+                return Files.createFile(folder.resolve(name + Long.toHexString(counter.incrementAndGet()) + ".tmp"));
+            } catch (FileAlreadyExistsException e) {
+                // try the next name
+            }
+        }
+    }
+
+    /**
+     * Adds a target to the batch and returns the temporary file which has to be written instead. A target which
+     * is added twice replaces the former temporary file.
+     *
+     * @param target target file
+     *
+     * @return temporary file for the content of the target
+     *
+     * @throws IOException if the temporary file could not be created
+     */
+    public synchronized Path add(Path target) throws IOException {
+        deleteStaleTempFiles(target);
+
+        final Path temp = createTempFile(target);
+        final Path former = pending.put(target.toAbsolutePath(), temp);
+
+        deletions.remove(target.toAbsolutePath());
+
+        if (former != null) {
+            Files.deleteIfExists(former);
+        }
+
+        return temp;
+    }
+
+    /**
+     * Removes a target from the batch and deletes its temporary file, for example after a failed write.
+     *
+     * @param target target file
+     */
+    public synchronized void discard(Path target) {
+        final Path temp = pending.remove(target.toAbsolutePath());
+
+        if (temp != null) {
+            deleteQuietly(temp);
+        }
+    }
+
+    /**
+     * Adds a target to the batch which is deleted on commit after all files are moved, so it is left untouched
+     * if the batch is aborted. A temporary file of the target is discarded.
+     *
+     * @param target target file to be deleted
+     */
+    public synchronized void delete(Path target) {
+        discard(target);
+        deletions.add(target.toAbsolutePath());
+    }
+
+    /**
+     * Deletes the temporary files of all targets, which are left untouched.
+     */
+    public synchronized void abort() {
+        for (Path temp : pending.values()) {
+            deleteQuietly(temp);
+        }
+
+        pending.clear();
+        deletions.clear();
+    }
+
+    /**
+     * Moves all temporary files onto their targets and deletes the targets to be deleted afterwards. If a file
+     * could not be moved, the remaining temporary files are deleted and their targets are left untouched.
+     *
+     * @throws IOException if a file could not be forced or moved
+     */
+    public synchronized void commit() throws IOException {
+        try {
+            if (sync) {
+                for (Path temp : pending.values()) {
+                    try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.WRITE)) {
+                        channel.force(true);
+                    }
+                }
+            }
+
+            final Set<Path> folders = new LinkedHashSet<>();
+
+            for (Map.Entry<Path, Path> entry : pending.entrySet()) {
+                Files.move(entry.getValue(), entry.getKey(), StandardCopyOption.REPLACE_EXISTING,
+                        StandardCopyOption.ATOMIC_MOVE);
+                folders.add(entry.getKey().getParent());
+            }
+
+            pending.clear();
+
+            for (Path target : deletions) {
+                Files.deleteIfExists(target);
+                folders.add(target.getParent());
+            }
+
+            deletions.clear();
+
+            if (sync) {
+                for (Path folder : folders) {
+                    forceFolder(folder);
+                }
+            }
+        } finally {
+            abort();
+        }
+    }
+
+    /**
+     * Returns the number of targets which are waiting for the commit.
+     *
+     * @return number of targets
+     */
+    public synchronized int size() {
+        return pending.size() + deletions.size();
+    }
+
+    /*
+     * Forces the renamed entries of a folder to the disk. Not every platform can open a folder as channel, there
+     * the rename is as durable as the file system makes it.
+     */
+    private static void forceFolder(Path folder) {
+        try (FileChannel channel = FileChannel.open(folder, StandardOpenOption.READ)) {
+            channel.force(true);
+        } catch (IOException e) {
+            // folders can not be forced on this platform
+        }
+    }
+
+    /*
+     * Deletes the temporary files of a target which are older than any running export, for example after a
+     * crash. Fresh ones may belong to another batch and are kept.
+     */
+    private static void deleteStaleTempFiles(Path target) {
+        final Path folder = target.toAbsolutePath().getParent();
+        final String prefix = "." + target.getFileName();
+        final long staleBefore = System.currentTimeMillis() - STALE_TEMP_MILLIS;
+
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(folder, file -> {
+            final String name = file.getFileName().toString();
+
+            return name.startsWith(prefix) && TEMP_SUFFIX.matcher(name.substring(prefix.length())).matches();
+        })) {
+            for (Path file : files) {
+                if (Files.getLastModifiedTime(file).toMillis() < staleBefore) {
+                    deleteQuietly(file);
+                }
+            }
+        } catch (IOException e) {
+            // the stale files are deleted by the next batch
+        }
+    }
+
+    private static void deleteQuietly(Path file) {
+        try {
+            Files.deleteIfExists(file);
+        } catch (IOException e) {
+            // a left temporary file is hidden and deleted when its target is added again after some time
+        }
+    }
+
+} // end of WriteBatch
@@ -0,0 +1,226 @@
+/*
+ * License: MIT. Copyright (c) 2017 by Sebastian Aust (https://www.ryanthara.de/)
+ *
+ * This file is part of the package de.ryanthara.ja.zfex.jobs
+ *
+ * Copyright (c) 2017 ryanthara
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package de.ryanthara.ja.zfex.jobs;
+
+import de.ryanthara.ja.zfex.Main;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.FileSystems;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.nio.file.Paths;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.function.Function;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * The <tt>BatchExport</tt> exports a list of ZF Laser Radar projects at the same time.
+ * <p>
+ * Every project is exported by its own {@link ExportRun}, but the stages of all runs share one
+ * {@link ForkJoinPool}. A stage is started as soon as it is ready and a thread of the pool is free, idle threads
+ * steal the ready stages of other projects. So a huge project does not hold up the small ones, and the number of
+ * stages that run at the same time is bounded by the parallelism of the pool. Limits per device, like the
+ * concurrent copies per target file store of a shared {@link de.ryanthara.ja.zfex.io.ParallelFileCopier}, are
+ * set up by the factory of the runs.
+ *
+ * @author sebastian
+ * @version 1
+ * @since 2
+ */
+public class BatchExport {
+
+    /**
+     * Default number of stages of all projects that run at the same time.
+     */
+    public static final int DEFAULT_PARALLELISM = Math.max(4, Runtime.getRuntime().availableProcessors());
+
+    private final static Logger logger = Logger.getLogger(BatchExport.class.getName());
+
+    private final Function<File, ExportRun> exportRunFactory;
+    private final int parallelism;
+    private final List<File> projectFiles;
+    private final List<ExportRun> runs = new ArrayList<>();
+    private boolean started = false;
+
+    /**
+     * Constructs a batch export of the given projects.
+     *
+     * @param projectFiles     project files to be exported
+     * @param parallelism      number of stages of all projects that run at the same time
+     * @param exportRunFactory factory of the configured export run for a project file
+     */
+    public BatchExport(List<File> projectFiles, int parallelism, Function<File, ExportRun> exportRunFactory) {
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("the parallelism must be at least 1");
+        }
+
+        this.projectFiles = new ArrayList<>(projectFiles);
+        this.parallelism = parallelism;
+        this.exportRunFactory = exportRunFactory;
+
+        logger.setLevel(Main.loggingLevel);
+        logger.addHandler(Main.fileHandler);
+    }
+
+    /**
+     * Finds the project files of a comma separated list of files and glob patterns like 'scans/&#42;&#42;/&#42;.zfprj'.
+     * The pattern is matched against the path below the leading folders of the pattern without wildcards.
+     *
+     * @param patterns comma separated list of files and glob patterns
+     *
+     * @return project files in sorted order without duplicates
+     *
+     * @throws IOException if a folder could not be searched
+     */
+    public static List<File> findProjects(String patterns) throws IOException {
+        final TreeSet<File> projects = new TreeSet<>();
+
+        for (String pattern : patterns.split(",")) {
+            pattern = pattern.trim();
+
+            if (pattern.isEmpty()) {
+                continue;
+            }
+
+            final File file = new File(pattern);
+
+            if (file.isFile()) {
+                projects.add(file);
+                continue;
+            }
+
+            // Split the pattern into the folder to be searched and the glob below it
+            final String normalized = pattern.replace('\\', '/');
+            final int wildcard = indexOfWildcard(normalized);
+
+            if (wildcard < 0) {
+                continue;
+            }
+
+            final int separator = normalized.lastIndexOf('/', wildcard);
+            final Path folder = Paths.get(separator < 0 ? "." : separator == 0 ? "/" : normalized.substring(0, separator));
+            final PathMatcher matcher = FileSystems.getDefault().getPathMatcher("glob:" + normalized.substring(separator + 1));
+
+            if (!Files.isDirectory(folder)) {
+                continue;
+            }
+
+            Files.walkFileTree(folder, new SimpleFileVisitor<Path>() {
+                @Override
+                public FileVisitResult visitFile(Path path, BasicFileAttributes attrs) {
+                    if (attrs.isRegularFile() && matcher.matches(folder.relativize(path))) {
+                        projects.add(path.toFile());
+                    }
+
+                    return FileVisitResult.CONTINUE;
+                }
+            });
+        }
+
+        return new ArrayList<>(projects);
+    }
+
+    /**
+     * Cancels the export runs of all projects.
+     */
+    public synchronized void cancel() {
+        for (ExportRun run : runs) {
+            run.cancel();
+        }
+    }
+
+    /**
+     * Starts the export runs of all projects and returns a future of their results, which is completed when all
+     * runs are finished.
+     *
+     * @return future of the run results in the order of the project files
+     *
+     * @throws IllegalStateException if the batch was started already
+     */
+    public synchronized CompletableFuture<Map<File, RunResult>> start() {
+        if (started) {
+            throw new IllegalStateException("the batch export was started already");
+        }
+
+        started = true;
+
+        final ForkJoinPool pool = new ForkJoinPool(parallelism, forkJoinPool -> {
+            ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(forkJoinPool);
+            thread.setName("ZFEx-batch-" + thread.getPoolIndex());
+
+            return thread;
+        }, null, true);
+
+        final List<CompletableFuture<RunResult>> futures = new ArrayList<>();
+
+        for (File projectFile : projectFiles) {
+            ExportRun run = exportRunFactory.apply(projectFile);
+            runs.add(run);
+            futures.add(run.start(pool));
+        }
+
+        logger.log(Level.INFO, "batch export of " + projectFiles.size() + " projects with a parallelism of " + parallelism);
+
+        return CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[0])).handle((ignored, throwable) -> {
+            pool.shutdown();
+
+            final Map<File, RunResult> results = new LinkedHashMap<>();
+
+            for (int i = 0; i < projectFiles.size(); i++) {
+                results.put(projectFiles.get(i), futures.get(i).join());
+            }
+
+            return results;
+        });
+    }
+
+    /*
+     * Returns the position of the first glob wildcard or -1 for none.
+     */
+    private static int indexOfWildcard(String pattern) {
+        for (int i = 0; i < pattern.length(); i++) {
+            if ("*?[{".indexOf(pattern.charAt(i)) >= 0) {
+                return i;
+            }
+        }
+
+        return -1;
+    }
+
+} // end of BatchExport
@@ -0,0 +1,341 @@
+/*
+ * License: MIT. Copyright (c) 2017 by Sebastian Aust (https://www.ryanthara.de/)
+ *
+ * This file is part of the package de.ryanthara.ja.zfex.jobs
+ *
+ * Copyright (c) 2017 ryanthara
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package de.ryanthara.ja.zfex.jobs;
+
+import de.ryanthara.ja.zfex.Main;
+import de.ryanthara.ja.zfex.StatusDisplay;
+import de.ryanthara.ja.zfex.data.AffineTransformation;
+import de.ryanthara.ja.zfex.i18n.LangStrings;
+import de.ryanthara.ja.zfex.i18n.ResourceBundleUtils;
+import de.ryanthara.ja.zfex.io.CoordinateExportWriter;
+import de.ryanthara.ja.zfex.io.CoordinateExporter;
+import de.ryanthara.ja.zfex.io.CubemapConverter;
+import de.ryanthara.ja.zfex.io.ExportFileWorker;
+import de.ryanthara.ja.zfex.io.OverwritePolicy;
+import de.ryanthara.ja.zfex.io.PanoramaConverter;
+import de.ryanthara.ja.zfex.io.ParallelFileCopier;
+import de.ryanthara.ja.zfex.io.ParseCache;
+import de.ryanthara.ja.zfex.io.ProjectFileWorker;
+import de.ryanthara.ja.zfex.io.ViewerFileWorker;
+import de.ryanthara.ja.zfex.io.WriteBatch;
+import de.ryanthara.ja.zfex.metrics.Metrics;
+import de.ryanthara.ja.zfex.tools.BlockingExecutors;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * The <tt>ExportRun</tt> is the complete export of a ZF Laser Radar project as a graph of stages, which are run
+ * by a {@link StageScheduler}.
+ * <p>
+ * The project file is parsed first and the coordinate files are written. Afterwards the panoramic images are
+ * exported and the viewer file is written concurrently. The coordinate and the viewer file are committed
+ * together by a {@link WriteBatch}, and the tile pyramids of the viewer are written after the commit.
+ * <p>
+ * The success of every stage is part of the {@link RunResult}, there are no global flags for it. All the workers
+ * run synchronously in the threads of the stages. Options which are not set here are taken from {@link Main}.
+ *
+ * @author sebastian
+ * @version 1
+ * @since 2
+ */
+public class ExportRun {
+
+    /**
+     * Stage which parses the project file and transforms the viewpoints.
+     */
+    public static final String STAGE_PARSE = "parse";
+    /**
+     * Stage which writes the coordinate files.
+     */
+    public static final String STAGE_COORDINATES = "coordinates";
+    /**
+     * Stage which exports the panoramic images as grayscale png files.
+     */
+    public static final String STAGE_PNG = "png";
+    /**
+     * Stage which exports the colored panoramic images as jpg files.
+     */
+    public static final String STAGE_JPG = "jpg";
+    /**
+     * Stage which converts the panoramic images into cube maps.
+     */
+    public static final String STAGE_CUBEMAPS = "cubemaps";
+    /**
+     * Stage which writes the viewer file.
+     */
+    public static final String STAGE_VIEWER = "viewer";
+    /**
+     * Stage which commits the coordinate and the viewer file.
+     */
+    public static final String STAGE_COMMIT = "commit";
+    /**
+     * Stage which writes the tile pyramids of the viewer.
+     */
+    public static final String STAGE_TILES = "tiles";
+
+    private final static Logger logger = Logger.getLogger(ExportRun.class.getName());
+
+    private final File exportFolder;
+    private final Metrics metrics = new Metrics(Main.metrics);
+    private final File projectFile;
+    private final File viewerFolder;
+    private List<CoordinateExporter> coordinateExporters;
+    private PanoramaConverter converter = new PanoramaConverter();
+    private ParallelFileCopier fileCopier = new ParallelFileCopier();
+    private boolean incrementalSync = Main.useIncrementalSync;
+    private OverwritePolicy overwritePolicy = OverwritePolicy.ASK;
+    private ParseCache parseCache;
+    private StageScheduler scheduler;
+    private AffineTransformation transformation;
+
+    /**
+     * Constructs an export run of a project.
+     *
+     * @param projectFile  project file
+     * @param exportFolder folder for the coordinate files and the panoramic images
+     * @param viewerFolder folder for the viewer file or null for no viewer file
+     */
+    public ExportRun(File projectFile, File exportFolder, File viewerFolder) {
+        this.projectFile = projectFile;
+        this.exportFolder = exportFolder;
+        this.viewerFolder = viewerFolder;
+
+        logger.setLevel(Main.loggingLevel);
+        logger.addHandler(Main.fileHandler);
+    }
+
+    /**
+     * Sets the exporters of the coordinate files, see
+     * {@link de.ryanthara.ja.zfex.io.CoordinateExportWriter#loadExporters(java.util.Collection)}.
+     *
+     * @param coordinateExporters exporters of the coordinate files
+     */
+    public void setCoordinateExporters(List<CoordinateExporter> coordinateExporters) {
+        this.coordinateExporters = coordinateExporters;
+    }
+
+    /**
+     * Sets the {@link PanoramaConverter} for the panoramic images.
+     *
+     * @param converter converter to be used
+     */
+    public void setConverter(PanoramaConverter converter) {
+        this.converter = converter;
+    }
+
+    /**
+     * Sets the {@link ParallelFileCopier} for the panoramic images.
+     *
+     * @param fileCopier file copier to be used
+     */
+    public void setFileCopier(ParallelFileCopier fileCopier) {
+        this.fileCopier = fileCopier;
+    }
+
+    /**
+     * Sets the incremental sync of the panoramic images, which copies only new or changed images.
+     *
+     * @param incrementalSync true for the incremental sync
+     */
+    public void setIncrementalSync(boolean incrementalSync) {
+        this.incrementalSync = incrementalSync;
+    }
+
+    /**
+     * Sets the {@link OverwritePolicy} of all workers.
+     *
+     * @param overwritePolicy overwrite policy to be used
+     */
+    public void setOverwritePolicy(OverwritePolicy overwritePolicy) {
+        this.overwritePolicy = overwritePolicy;
+    }
+
+    /**
+     * Sets the {@link ParseCache} for the project file.
+     *
+     * @param parseCache parse cache or null for parsing every time
+     */
+    public void setParseCache(ParseCache parseCache) {
+        this.parseCache = parseCache;
+    }
+
+    /**
+     * Sets the transformation of the viewpoints into the superior coordinate system.
+     *
+     * @param transformation transformation or null for the coordinate system of the project
+     */
+    public void setTransformation(AffineTransformation transformation) {
+        this.transformation = transformation;
+    }
+
+    /**
+     * Returns the metrics of this run, which are added to the global metrics of {@link Main#metrics} as well.
+     *
+     * @return metrics of the run
+     */
+    public Metrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Cancels the run, running stages are interrupted and stages that are not started yet are not started at all.
+     */
+    public synchronized void cancel() {
+        if (scheduler != null) {
+            scheduler.cancel(true);
+        }
+    }
+
+    /**
+     * Starts the run with its own threads, which are ended with the run. The stages run on virtual threads if
+     * the Java runtime supports them, see {@link BlockingExecutors}.
+     *
+     * @return future of the run result
+     */
+    public CompletableFuture<RunResult> start() {
+        final ExecutorService executor = BlockingExecutors.newExecutor("ZFEx-stage");
+
+        return start(executor).whenComplete((result, throwable) -> executor.shutdown());
+    }
+
+    /**
+     * Starts the run with the given executor, which needs a thread for every stage that runs concurrently.
+     *
+     * @param executor executor for the stages
+     *
+     * @return future of the run result
+     */
+    public synchronized CompletableFuture<RunResult> start(Executor executor) {
+        // Files of the run become visible together after the viewer file is written
+        final WriteBatch writeBatch = new WriteBatch(Main.useFsync);
+
+        final ProjectFileWorker projectFileWorker = new ProjectFileWorker(projectFile);
+        projectFileWorker.setParseCache(parseCache);
+        projectFileWorker.setMetrics(metrics);
+        projectFileWorker.setOverwritePolicy(overwritePolicy);
+        projectFileWorker.setWriteBatch(writeBatch);
+
+        final ExportFileWorker exportFileWorker = new ExportFileWorker(projectFile, exportFolder);
+        exportFileWorker.setFileCopier(fileCopier);
+        exportFileWorker.setConverter(converter);
+        exportFileWorker.setIncrementalSync(incrementalSync);
+        exportFileWorker.setMetrics(metrics);
+        exportFileWorker.setOverwritePolicy(overwritePolicy);
+        exportFileWorker.setSynchronous(true);
+
+        scheduler = new StageScheduler(executor);
+
+        scheduler.add(STAGE_PARSE, () -> {
+            if (!projectFileWorker.processProjectFileStreaming()) {
+                return false;
+            }
+
+            // Transform into the superior coordinate system
+            if (transformation != null) {
+                projectFileWorker.applySuperiorCoordinateSystem(transformation);
+            }
+
+            return true;
+        });
+
+        scheduler.add(STAGE_COORDINATES, () -> projectFileWorker.writeCoordinateFiles(exportFolder.getPath(),
+                projectFile.getName(), coordinateExporters != null ? coordinateExporters :
+                        CoordinateExportWriter.loadExporters(Collections.singletonList("plain"))))
+                .requires(STAGE_PARSE);
+
+        scheduler.add(STAGE_PNG, exportFileWorker::exportBlackAndWhitePNG).requires(STAGE_COORDINATES);
+
+        if (Main.useColorPictures) {
+            scheduler.add(STAGE_JPG, exportFileWorker::exportColorJPG).requires(STAGE_COORDINATES);
+        }
+
+        if (Main.cubeFaceSize > 0) {
+            exportFileWorker.setCubemapConverter(new CubemapConverter(Main.cubeFaceSize, Main.cubeTileSize,
+                    ParallelFileCopier.DEFAULT_THREADS));
+
+            scheduler.add(STAGE_CUBEMAPS, exportFileWorker::exportCubemaps).requires(STAGE_COORDINATES);
+        }
+
+        if (viewerFolder != null) {
+            final ViewerFileWorker viewerFileWorker = new ViewerFileWorker(projectFile, viewerFolder);
+            viewerFileWorker.setCompact(Main.useCompactViewerFile);
+            viewerFileWorker.setGzipLevel(Main.viewerGzipLevel);
+            viewerFileWorker.setMetrics(metrics);
+            viewerFileWorker.setTileCapacity(Main.viewerTileCapacity);
+            viewerFileWorker.setOverwritePolicy(overwritePolicy);
+            viewerFileWorker.setSynchronous(true);
+            viewerFileWorker.setWriteBatch(writeBatch);
+
+            scheduler.add(STAGE_VIEWER, () -> viewerFileWorker.exportViewerJSON(projectFileWorker.getViewpointTable()))
+                    .requires(STAGE_COORDINATES);
+
+            // The coordinate files are committed even if the viewer file failed
+            scheduler.add(STAGE_COMMIT, () -> commit(writeBatch)).requires(STAGE_COORDINATES).after(STAGE_VIEWER);
+
+            scheduler.add(STAGE_TILES, viewerFileWorker::exportTilePyramids).requires(STAGE_VIEWER, STAGE_COMMIT);
+        } else {
+            scheduler.add(STAGE_COMMIT, () -> commit(writeBatch)).requires(STAGE_COORDINATES);
+        }
+
+        return scheduler.start().thenApply(result -> {
+            // Temporary files of a failed or cancelled run are not left behind
+            if (!result.isSucceeded(STAGE_COMMIT)) {
+                writeBatch.abort();
+            }
+
+            logger.log(Level.INFO, "export run of " + projectFile.getName() + System.lineSeparator() + result.getSummary());
+            logger.log(Level.INFO, "metrics of the export run of " + projectFile.getName() + System.lineSeparator() +
+                    metrics.getSummary());
+
+            return result.withMetrics(metrics);
+        });
+    }
+
+    /*
+     * Makes the coordinate and the viewer file visible.
+     */
+    private boolean commit(WriteBatch writeBatch) throws IOException {
+        try {
+            writeBatch.commit();
+        } catch (IOException e) {
+            Main.eventBus.publishStatus(StatusDisplay.STATUS_ERROR, String.format(ResourceBundleUtils.getLangString(LangStrings.statusWriteBatchFailed),
+                    exportFolder.getName()));
+
+            throw e;
+        }
+
+        return true;
+    }
+
+} // end of ExportRun
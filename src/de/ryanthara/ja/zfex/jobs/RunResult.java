@@ -0,0 +1,173 @@
+/*
+ * License: MIT. Copyright (c) 2017 by Sebastian Aust (https://www.ryanthara.de/)
+ *
+ * This file is part of the package de.ryanthara.ja.zfex.jobs
+ *
+ * Copyright (c) 2017 ryanthara
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package de.ryanthara.ja.zfex.jobs;
+
+import de.ryanthara.ja.zfex.metrics.Metrics;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The <tt>RunResult</tt> holds the results of all stages of a run of a {@link StageScheduler} in the order the
+ * stages were added. The result of an {@link ExportRun} holds the metrics of the run as well.
+ *
+ * @author sebastian
+ * @version 1
+ * @since 2
+ */
+public final class RunResult {
+
+    private final long durationNanos;
+    private final Metrics metrics;
+    private final List<StageResult> stageResults;
+
+    RunResult(List<StageResult> stageResults, long durationNanos) {
+        this(stageResults, durationNanos, new Metrics());
+    }
+
+    private RunResult(List<StageResult> stageResults, long durationNanos, Metrics metrics) {
+        this.stageResults = Collections.unmodifiableList(new ArrayList<>(stageResults));
+        this.durationNanos = durationNanos;
+        this.metrics = metrics;
+    }
+
+    /**
+     * Returns the wall clock time of the run.
+     *
+     * @param unit time unit of the result
+     *
+     * @return duration of the run
+     */
+    public long getDuration(TimeUnit unit) {
+        return unit.convert(durationNanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Returns the metrics of the run, which are empty for a run without its own metrics.
+     *
+     * @return metrics of the run
+     */
+    public Metrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Returns the first stage that failed or was cancelled, in the order the stages were added.
+     *
+     * @return the result of the stage or null if no stage failed
+     */
+    public StageResult getFirstFailure() {
+        for (StageResult result : stageResults) {
+            if (result.getStatus() == StageResult.Status.FAILED || result.getStatus() == StageResult.Status.CANCELLED) {
+                return result;
+            }
+        }
+
+        return null;
+    }
+
+    /**
+     * Returns the result of the stage with the given name.
+     *
+     * @param name name of the stage
+     *
+     * @return the result of the stage or null if there is no such stage
+     */
+    public StageResult getStageResult(String name) {
+        for (StageResult result : stageResults) {
+            if (result.getName().equals(name)) {
+                return result;
+            }
+        }
+
+        return null;
+    }
+
+    /**
+     * Returns the results of all stages in the order the stages were added.
+     *
+     * @return results of the stages
+     */
+    public List<StageResult> getStageResults() {
+        return stageResults;
+    }
+
+    /**
+     * Returns a summary with one line per stage and the duration of the run, for example for the log file.
+     *
+     * @return summary of the run
+     */
+    public String getSummary() {
+        StringBuilder summary = new StringBuilder();
+
+        for (StageResult result : stageResults) {
+            summary.append(result).append(System.lineSeparator());
+        }
+
+        summary.append(String.format("%-12s %-9s %6d ms", "run", isSuccess() ? StageResult.Status.SUCCEEDED :
+                StageResult.Status.FAILED, getDuration(TimeUnit.MILLISECONDS)));
+
+        return summary.toString();
+    }
+
+    /**
+     * Returns true if the stage with the given name exists and succeeded.
+     *
+     * @param name name of the stage
+     *
+     * @return success of the stage
+     */
+    public boolean isSucceeded(String name) {
+        StageResult result = getStageResult(name);
+
+        return result != null && result.getStatus() == StageResult.Status.SUCCEEDED;
+    }
+
+    /**
+     * Returns true if all stages succeeded.
+     *
+     * @return success of the run
+     */
+    public boolean isSuccess() {
+        for (StageResult result : stageResults) {
+            if (result.getStatus() != StageResult.Status.SUCCEEDED) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    /*
+     * Returns the same result with the metrics of the run.
+     */
+    RunResult withMetrics(Metrics metrics) {
+        return new RunResult(stageResults, durationNanos, metrics);
+    }
+
+} // end of RunResult
@@ -0,0 +1,135 @@
+/*
+ * License: MIT. Copyright (c) 2017 by Sebastian Aust (https://www.ryanthara.de/)
+ *
+ * This file is part of the package de.ryanthara.ja.zfex.jobs
+ *
+ * Copyright (c) 2017 ryanthara
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package de.ryanthara.ja.zfex.jobs;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The <tt>StageResult</tt> holds the status and the timing of a finished stage of a {@link StageScheduler}.
+ *
+ * @author sebastian
+ * @version 1
+ * @since 2
+ */
+public final class StageResult {
+
+    private final long durationNanos;
+    private final Throwable exception;
+    private final String name;
+    private final long startNanos;
+    private final Status status;
+
+    StageResult(String name, Status status, long startNanos, long durationNanos, Throwable exception) {
+        this.name = name;
+        this.status = status;
+        this.startNanos = startNanos;
+        this.durationNanos = durationNanos;
+        this.exception = exception;
+    }
+
+    /**
+     * Returns the time the stage was running, which is 0 if it was not started.
+     *
+     * @param unit time unit of the result
+     *
+     * @return duration of the stage
+     */
+    public long getDuration(TimeUnit unit) {
+        return unit.convert(durationNanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Returns the exception the stage failed with.
+     *
+     * @return exception or null
+     */
+    public Throwable getException() {
+        return exception;
+    }
+
+    /**
+     * Returns the name of the stage.
+     *
+     * @return name of the stage
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Returns the time between the start of the run and the start of the stage.
+     *
+     * @param unit time unit of the result
+     *
+     * @return start offset of the stage
+     */
+    public long getStart(TimeUnit unit) {
+        return unit.convert(startNanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Returns the status of the stage.
+     *
+     * @return status of the stage
+     */
+    public Status getStatus() {
+        return status;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%-12s %-9s start %6d ms, duration %6d ms", name, status,
+                getStart(TimeUnit.MILLISECONDS), getDuration(TimeUnit.MILLISECONDS));
+    }
+
+    /**
+     * The status of a finished stage.
+     */
+    public enum Status {
+
+        /**
+         * The stage did its work successfully.
+         */
+        SUCCEEDED,
+
+        /**
+         * The stage returned false or threw an exception.
+         */
+        FAILED,
+
+        /**
+         * The stage was not started, because a required stage did not succeed.
+         */
+        SKIPPED,
+
+        /**
+         * The stage was not started or interrupted, because the run was cancelled.
+         */
+        CANCELLED
+
+    }
+
+} // end of StageResult
@@ -0,0 +1,321 @@
+/*
+ * License: MIT. Copyright (c) 2017 by Sebastian Aust (https://www.ryanthara.de/)
+ *
+ * This file is part of the package de.ryanthara.ja.zfex.jobs
+ *
+ * Copyright (c) 2017 ryanthara
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package de.ryanthara.ja.zfex.jobs;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * The <tt>StageScheduler</tt> runs the stages of a job as a dependency graph.
+ * <p>
+ * A stage starts as soon as all the stages it requires succeeded and all the stages it runs after are finished,
+ * so stages that do not depend on each other run concurrently. A stage whose required stage did not succeed is
+ * skipped. Dependencies can only refer to stages that were added before, which keeps the graph free of cycles.
+ * <p>
+ * The scheduler does not block, {@link #start()} returns a future of the {@link RunResult} with the status and
+ * the timing of every stage.
+ *
+ * @author sebastian
+ * @version 1
+ * @since 2
+ */
+public class StageScheduler {
+
+    private final static Logger logger = Logger.getLogger(StageScheduler.class.getName());
+
+    private final Executor executor;
+    private final Map<Stage, Thread> running = new HashMap<>();
+    private final LinkedHashMap<String, Stage> stages = new LinkedHashMap<>();
+    private volatile boolean cancelled = false;
+    private long startNanos;
+    private boolean started = false;
+
+    /**
+     * Constructs a scheduler which runs the stages with the given executor.
+     *
+     * @param executor executor for the stages, which needs as many threads as stages may run concurrently
+     */
+    public StageScheduler(Executor executor) {
+        this.executor = executor;
+    }
+
+    /**
+     * Adds a stage, which is configured with the returned {@link Stage}.
+     *
+     * @param name unique name of the stage
+     * @param task work of the stage
+     *
+     * @return the stage for adding dependencies
+     *
+     * @throws IllegalArgumentException if there is a stage with this name already
+     * @throws IllegalStateException    if the scheduler was started already
+     */
+    public synchronized Stage add(String name, StageTask task) {
+        if (started) {
+            throw new IllegalStateException("the scheduler was started already");
+        } else if (stages.containsKey(name)) {
+            throw new IllegalArgumentException("duplicate stage " + name);
+        }
+
+        Stage stage = new Stage(name, task);
+        stages.put(name, stage);
+
+        return stage;
+    }
+
+    /**
+     * Cancels the run. Stages that are not started yet are not started at all.
+     *
+     * @param mayInterruptIfRunning true for interrupting the threads of the running stages
+     */
+    public void cancel(boolean mayInterruptIfRunning) {
+        cancelled = true;
+
+        if (mayInterruptIfRunning) {
+            synchronized (running) {
+                for (Thread thread : running.values()) {
+                    thread.interrupt();
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns true if the run was cancelled.
+     *
+     * @return true for a cancelled run
+     */
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    /**
+     * Starts all stages and returns a future of the result, which is completed when all stages are finished.
+     *
+     * @return future of the run result
+     *
+     * @throws IllegalStateException if the scheduler was started already
+     */
+    public synchronized CompletableFuture<RunResult> start() {
+        if (started) {
+            throw new IllegalStateException("the scheduler was started already");
+        }
+
+        started = true;
+        startNanos = System.nanoTime();
+
+        final List<CompletableFuture<StageResult>> futures = new ArrayList<>();
+
+        for (Stage stage : stages.values()) {
+            final List<CompletableFuture<StageResult>> dependencies = new ArrayList<>();
+
+            for (Stage dependency : stage.getDependencies()) {
+                dependencies.add(dependency.future);
+            }
+
+            stage.future = CompletableFuture.allOf(dependencies.toArray(new CompletableFuture<?>[0]))
+                    .handleAsync((ignored, throwable) -> execute(stage), stage.executor != null ? stage.executor : executor)
+                    .exceptionally(throwable -> finish(stage, StageResult.Status.FAILED, 0, throwable));
+
+            futures.add(stage.future);
+        }
+
+        return CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[0])).thenApply(ignored -> {
+            final List<StageResult> results = new ArrayList<>();
+
+            for (CompletableFuture<StageResult> future : futures) {
+                results.add(future.join());
+            }
+
+            return new RunResult(results, System.nanoTime() - startNanos);
+        });
+    }
+
+    /*
+     * Runs a stage whose dependencies are finished, or skips it.
+     */
+    private StageResult execute(Stage stage) {
+        for (Stage required : stage.required) {
+            if (required.future.join().getStatus() != StageResult.Status.SUCCEEDED) {
+                return finish(stage, cancelled ? StageResult.Status.CANCELLED : StageResult.Status.SKIPPED, 0, null);
+            }
+        }
+
+        if (cancelled) {
+            return finish(stage, StageResult.Status.CANCELLED, 0, null);
+        }
+
+        synchronized (running) {
+            running.put(stage, Thread.currentThread());
+        }
+
+        final long start = System.nanoTime();
+
+        StageResult.Status status;
+        Throwable exception = null;
+
+        try {
+            status = stage.task.run() ? StageResult.Status.SUCCEEDED : StageResult.Status.FAILED;
+        } catch (Exception e) {
+            status = StageResult.Status.FAILED;
+            exception = e;
+        } finally {
+            synchronized (running) {
+                running.remove(stage);
+
+                // do not hand over an interrupt of a cancelled stage to the next task of the thread
+                if (cancelled) {
+                    Thread.interrupted();
+                }
+            }
+        }
+
+        if (cancelled && status == StageResult.Status.FAILED) {
+            status = StageResult.Status.CANCELLED;
+        }
+
+        return finish(stage, status, start, exception);
+    }
+
+    private StageResult finish(Stage stage, StageResult.Status status, long start, Throwable exception) {
+        final long end = System.nanoTime();
+        final StageResult result = new StageResult(stage.name, status, start > 0 ? start - startNanos : end - startNanos,
+                start > 0 ? end - start : 0, exception);
+
+        if (exception != null) {
+            logger.log(Level.SEVERE, "stage " + stage.name + " failed", exception);
+        } else {
+            logger.log(Level.FINE, result.toString());
+        }
+
+        return result;
+    }
+
+    /**
+     * A stage of the scheduler with its dependencies.
+     */
+    public final class Stage {
+
+        private final List<Stage> after = new ArrayList<>();
+        private final String name;
+        private final List<Stage> required = new ArrayList<>();
+        private final StageTask task;
+        private Executor executor;
+        private CompletableFuture<StageResult> future;
+
+        private Stage(String name, StageTask task) {
+            this.name = name;
+            this.task = task;
+        }
+
+        /**
+         * Lets the stage run after the given stages are finished, no matter if they succeeded. Unknown names
+         * are ignored, so optional stages can be referred to.
+         *
+         * @param names names of stages that were added before
+         *
+         * @return this stage
+         */
+        public Stage after(String... names) {
+            synchronized (StageScheduler.this) {
+                for (String name : names) {
+                    Stage stage = stages.get(name);
+
+                    if (stage != null) {
+                        checkOrder(stage);
+                        after.add(stage);
+                    }
+                }
+            }
+
+            return this;
+        }
+
+        /**
+         * Lets the stage run on the given executor instead of the executor of the scheduler.
+         *
+         * @param executor executor of the stage
+         *
+         * @return this stage
+         */
+        public Stage on(Executor executor) {
+            this.executor = executor;
+
+            return this;
+        }
+
+        /**
+         * Lets the stage run after the given stages succeeded, otherwise it is skipped.
+         *
+         * @param names names of stages that were added before
+         *
+         * @return this stage
+         *
+         * @throws IllegalArgumentException if a stage is unknown or was not added before
+         */
+        public Stage requires(String... names) {
+            synchronized (StageScheduler.this) {
+                for (String name : names) {
+                    Stage stage = stages.get(name);
+
+                    if (stage == null) {
+                        throw new IllegalArgumentException("unknown stage " + name + " required by " + this.name);
+                    }
+
+                    checkOrder(stage);
+                    required.add(stage);
+                }
+            }
+
+            return this;
+        }
+
+        private void checkOrder(Stage dependency) {
+            final List<Stage> order = new ArrayList<>(stages.values());
+
+            if (order.indexOf(dependency) >= order.indexOf(this)) {
+                throw new IllegalArgumentException("stage " + name + " can only depend on stages added before, not on " +
+                        dependency.name);
+            }
+        }
+
+        private List<Stage> getDependencies() {
+            final List<Stage> dependencies = new ArrayList<>(required);
+            dependencies.addAll(after);
+
+            return dependencies;
+        }
+
+    }
+
+} // end of StageScheduler
@@ -0,0 +1,367 @@
+/*
+ * License: MIT. Copyright (c) 2017 by Sebastian Aust (https://www.ryanthara.de/)
+ *
+ * This file is part of the package de.ryanthara.ja.zfex.jobs
+ *
+ * Copyright (c) 2017 ryanthara
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package de.ryanthara.ja.zfex.jobs;
+
+import de.ryanthara.ja.zfex.Main;
+import de.ryanthara.ja.zfex.tools.BlockingExecutors;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileSystems;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * The <tt>WatchFolderDaemon</tt> watches folders with a {@link WatchService} and exports every ZF Laser Radar
+ * project that is written into them.
+ * <p>
+ * A project is exported when its project file or a file in the '.temp' folder with its panoramic images next to
+ * it is changed. LaserControl writes a project in many steps, so the export is debounced: it starts when there
+ * was no change of the project for the debounce time. The exports are queued and done one after another by an
+ * {@link ExportRun} of the factory, a project that is changed again during its export is exported once more.
+ * <p>
+ * Sub folders are watched as well, also the ones that are created while the daemon is running.
+ *
+ * @author sebastian
+ * @version 1
+ * @since 2
+ */
+public class WatchFolderDaemon implements Closeable {
+
+    /**
+     * Default time without change of a project before it is exported.
+     */
+    public static final long DEFAULT_DEBOUNCE_MILLIS = 2000;
+
+    private static final String IMAGE_FOLDER = ".temp";
+    private static final String PROJECT_EXTENSION = ".zfprj";
+
+    private final static Logger logger = Logger.getLogger(WatchFolderDaemon.class.getName());
+
+    private final long debounceNanos;
+    private final ExecutorService exportExecutor;
+    private final Function<File, ExportRun> exportRunFactory;
+    private final Map<WatchKey, Path> keys = new HashMap<>();
+    private final Map<Path, Long> pending = new LinkedHashMap<>();
+    private final Set<Path> queued = ConcurrentHashMap.newKeySet();
+    private final List<Path> roots;
+    private final WatchService watchService;
+    private volatile boolean closed = false;
+    private volatile ExportRun currentRun;
+
+    /**
+     * Constructs a daemon and registers the folders and all their sub folders.
+     *
+     * @param roots            folders to be watched
+     * @param debounceMillis   time without change of a project before it is exported
+     * @param exportRunFactory factory of the configured export run for a project file
+     *
+     * @throws IOException if a folder could not be registered
+     */
+    public WatchFolderDaemon(List<Path> roots, long debounceMillis, Function<File, ExportRun> exportRunFactory)
+            throws IOException {
+        this.roots = new ArrayList<>(roots);
+        this.debounceNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(0, debounceMillis));
+        this.exportRunFactory = exportRunFactory;
+
+        logger.setLevel(Main.loggingLevel);
+        logger.addHandler(Main.fileHandler);
+
+        watchService = FileSystems.getDefault().newWatchService();
+
+        try {
+            for (Path root : this.roots) {
+                registerAll(root);
+            }
+        } catch (IOException e) {
+            watchService.close();
+            throw e;
+        }
+
+        // One export at a time, the stages of an export run concurrently anyway
+        exportExecutor = Executors.newSingleThreadExecutor(BlockingExecutors.newDaemonThreadFactory("ZFEx-watch"));
+    }
+
+    /**
+     * Stops watching, cancels the running export and drops the queued exports.
+     *
+     * @throws IOException if the watch service could not be closed
+     */
+    @Override
+    public void close() throws IOException {
+        closed = true;
+
+        exportExecutor.shutdownNow();
+
+        final ExportRun run = currentRun;
+
+        if (run != null) {
+            run.cancel();
+        }
+
+        watchService.close();
+    }
+
+    /**
+     * Watches the folders until the daemon is closed or the calling thread is interrupted.
+     */
+    public void run() {
+        logger.log(Level.INFO, "watching " + roots + " for changed projects");
+
+        while (!closed) {
+            try {
+                WatchKey key = watchService.poll(getPollMillis(), TimeUnit.MILLISECONDS);
+
+                while (key != null) {
+                    processEvents(key);
+                    key = watchService.poll();
+                }
+            } catch (ClosedWatchServiceException e) {
+                break;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+
+            queueDueProjects();
+        }
+
+        logger.log(Level.INFO, "stopped watching " + roots);
+    }
+
+    /*
+     * Exports a project in the thread of the export executor.
+     */
+    private void export(Path project) {
+        queued.remove(project);
+
+        if (closed || !Files.isRegularFile(project)) {
+            return;
+        }
+
+        logger.log(Level.INFO, "export of the changed project " + project);
+
+        try {
+            currentRun = exportRunFactory.apply(project.toFile());
+
+            final RunResult result = currentRun.start().join();
+
+            if (!result.isSuccess()) {
+                logger.log(Level.WARNING, "export of the changed project " + project + " failed");
+            }
+        } catch (CompletionException | IllegalArgumentException | IllegalStateException e) {
+            logger.log(Level.SEVERE, "export of the changed project " + project + " failed", e);
+        } finally {
+            currentRun = null;
+        }
+    }
+
+    /*
+     * Returns the project files that are affected by a changed path. A change in a '.temp' folder affects all
+     * projects in the folder above it.
+     */
+    private List<Path> getAffectedProjects(Path path) {
+        final List<Path> projects = new ArrayList<>();
+
+        if (isProjectFile(path)) {
+            projects.add(path);
+        } else {
+            for (Path folder = path; folder != null && folder.getParent() != null; folder = folder.getParent()) {
+                if (folder.getFileName().toString().equals(IMAGE_FOLDER)) {
+                    try (DirectoryStream<Path> stream = Files.newDirectoryStream(folder.getParent())) {
+                        for (Path file : stream) {
+                            if (isProjectFile(file) && Files.isRegularFile(file)) {
+                                projects.add(file);
+                            }
+                        }
+                    } catch (IOException e) {
+                        logger.log(Level.WARNING, "can't list the projects in " + folder.getParent(), e);
+                    }
+
+                    break;
+                }
+            }
+        }
+
+        return projects;
+    }
+
+    /*
+     * Returns the time to wait for the next change, which is the time until the next pending project is due.
+     */
+    private long getPollMillis() {
+        if (pending.isEmpty()) {
+            return TimeUnit.SECONDS.toMillis(1);
+        }
+
+        final long now = System.nanoTime();
+        long next = Long.MAX_VALUE;
+
+        for (long due : pending.values()) {
+            next = Math.min(next, due - now);
+        }
+
+        return Math.max(1, TimeUnit.NANOSECONDS.toMillis(next));
+    }
+
+    private static boolean isProjectFile(Path path) {
+        return path.getFileName() != null && path.getFileName().toString().toLowerCase().endsWith(PROJECT_EXTENSION);
+    }
+
+    private void processEvents(WatchKey key) {
+        final Path folder = keys.get(key);
+
+        for (WatchEvent<?> event : key.pollEvents()) {
+            if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                // Events are lost, so every project could be changed
+                logger.log(Level.WARNING, "too many changes at once, all watched projects are exported");
+
+                for (Path root : roots) {
+                    touchAll(root);
+                }
+            } else if (folder != null) {
+                final Path path = folder.resolve((Path) event.context());
+
+                if (event.kind() == StandardWatchEventKinds.ENTRY_CREATE &&
+                        Files.isDirectory(path, LinkOption.NOFOLLOW_LINKS)) {
+                    try {
+                        registerAll(path);
+                    } catch (IOException e) {
+                        logger.log(Level.WARNING, "can't watch the new folder " + path, e);
+                    }
+
+                    // Files may be written into the new folder before it is registered
+                    touchAll(path);
+                }
+
+                touch(path);
+            }
+        }
+
+        if (!key.reset()) {
+            keys.remove(key);
+        }
+    }
+
+    /*
+     * Hands the projects without change during the debounce time over to the export executor.
+     */
+    private void queueDueProjects() {
+        final long now = System.nanoTime();
+
+        for (Iterator<Map.Entry<Path, Long>> iterator = pending.entrySet().iterator(); iterator.hasNext(); ) {
+            final Map.Entry<Path, Long> entry = iterator.next();
+
+            if (entry.getValue() - now <= 0) {
+                iterator.remove();
+
+                // A project that waits in the queue already is exported with its latest changes anyway
+                if (queued.add(entry.getKey())) {
+                    exportExecutor.execute(() -> export(entry.getKey()));
+                }
+            }
+        }
+    }
+
+    private void registerAll(Path root) throws IOException {
+        Files.walkFileTree(root, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) throws IOException {
+                keys.put(dir.register(watchService, StandardWatchEventKinds.ENTRY_CREATE,
+                        StandardWatchEventKinds.ENTRY_MODIFY, StandardWatchEventKinds.ENTRY_DELETE), dir);
+
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+
+    /*
+     * Restarts the debounce time of all projects that are affected by the changed path.
+     */
+    private void touch(Path path) {
+        for (Path project : getAffectedProjects(path)) {
+            pending.put(project, System.nanoTime() + debounceNanos);
+        }
+    }
+
+    /*
+     * Restarts the debounce time of all projects in a folder and its sub folders.
+     */
+    private void touchAll(Path folder) {
+        try {
+            Files.walkFileTree(folder, new SimpleFileVisitor<Path>() {
+                @Override
+                public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) {
+                    if (dir.getFileName() != null && dir.getFileName().toString().equals(IMAGE_FOLDER)) {
+                        touch(dir);
+
+                        return FileVisitResult.SKIP_SUBTREE;
+                    }
+
+                    return FileVisitResult.CONTINUE;
+                }
+
+                @Override
+                public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+                    if (isProjectFile(file)) {
+                        touch(file);
+                    }
+
+                    return FileVisitResult.CONTINUE;
+                }
+            });
+        } catch (IOException e) {
+            logger.log(Level.WARNING, "can't list the projects in " + folder, e);
+        }
+    }
+
+} // end of WatchFolderDaemon
@@ -0,0 +1,199 @@
+/*
+ * License: MIT. Copyright (c) 2017 by Sebastian Aust (https://www.ryanthara.de/)
+ *
+ * This file is part of the package de.ryanthara.ja.zfex.metrics
+ *
+ * Copyright (c) 2017 ryanthara
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package de.ryanthara.ja.zfex.metrics;
+
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Method;
+import java.util.Arrays;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * FlightRecorder creates the JDK Flight Recorder events of the measured operations.
+ * <p>
+ * ZFEx is still built for Java 8, which has no event API for the flight recorder. Therefore the event type
+ * 'de.ryanthara.ja.zfex.Operation' is defined by reflection with the event factory of newer runtimes. On older
+ * runtimes, or if no recording is running, no event is created at all.
+ *
+ * @author sebastian
+ * @version 1
+ * @since 2
+ */
+final class FlightRecorder {
+
+    /**
+     * Name of the event type in the recording.
+     */
+    static final String EVENT_NAME = "de.ryanthara.ja.zfex.Operation";
+
+    private final static Logger logger = Logger.getLogger(FlightRecorder.class.getName());
+
+    // Order of the fields of the event type
+    private static final int FIELD_OPERATION = 0;
+    private static final int FIELD_SUBJECT = 1;
+    private static final int FIELD_ITEMS = 2;
+    private static final int FIELD_BYTES = 3;
+    private static final int FIELD_SUCCESS = 4;
+
+    private static final Object EVENT_FACTORY;
+    private static final Method NEW_EVENT;
+    private static final Method IS_ENABLED;
+    private static final Method BEGIN;
+    private static final Method END;
+    private static final Method SHOULD_COMMIT;
+    private static final Method SET;
+    private static final Method COMMIT;
+
+    static {
+        Object eventFactory = null;
+        Method newEvent = null;
+        Method isEnabled = null;
+        Method begin = null;
+        Method end = null;
+        Method shouldCommit = null;
+        Method set = null;
+        Method commit = null;
+
+        try {
+            final Class<?> annotationElement = Class.forName("jdk.jfr.AnnotationElement");
+            final Class<?> valueDescriptor = Class.forName("jdk.jfr.ValueDescriptor");
+            final Class<?> factory = Class.forName("jdk.jfr.EventFactory");
+            final Class<?> event = Class.forName("jdk.jfr.Event");
+
+            final Constructor<?> newAnnotation = annotationElement.getConstructor(Class.class, Object.class);
+            final Constructor<?> newValue = valueDescriptor.getConstructor(Class.class, String.class);
+
+            final List<Object> annotations = Arrays.asList(
+                    newAnnotation.newInstance(Class.forName("jdk.jfr.Name"), EVENT_NAME),
+                    newAnnotation.newInstance(Class.forName("jdk.jfr.Label"), "ZFEx Operation"),
+                    newAnnotation.newInstance(Class.forName("jdk.jfr.Category"), new String[]{"ZFEx"}),
+                    newAnnotation.newInstance(Class.forName("jdk.jfr.Description"),
+                            "Parsing, writing, copying or converting a file by ZFEx"));
+
+            final List<Object> fields = Arrays.asList(
+                    newValue.newInstance(String.class, "operation"),
+                    newValue.newInstance(String.class, "subject"),
+                    newValue.newInstance(long.class, "items"),
+                    newValue.newInstance(long.class, "bytes"),
+                    newValue.newInstance(boolean.class, "success"));
+
+            eventFactory = factory.getMethod("create", List.class, List.class).invoke(null, annotations, fields);
+            newEvent = factory.getMethod("newEvent");
+            isEnabled = event.getMethod("isEnabled");
+            begin = event.getMethod("begin");
+            end = event.getMethod("end");
+            shouldCommit = event.getMethod("shouldCommit");
+            set = event.getMethod("set", int.class, Object.class);
+            commit = event.getMethod("commit");
+        } catch (ClassNotFoundException e) {
+            eventFactory = null;
+        } catch (ReflectiveOperationException | LinkageError | RuntimeException e) {
+            logger.log(Level.WARNING, "can't define the flight recorder event, no events are recorded", e);
+            eventFactory = null;
+        }
+
+        EVENT_FACTORY = eventFactory;
+        NEW_EVENT = newEvent;
+        IS_ENABLED = isEnabled;
+        BEGIN = begin;
+        END = end;
+        SHOULD_COMMIT = shouldCommit;
+        SET = set;
+        COMMIT = commit;
+    }
+
+    private FlightRecorder() {
+    }
+
+    /**
+     * Returns true if the Java runtime supports flight recorder events.
+     *
+     * @return true for flight recorder events
+     */
+    static boolean isAvailable() {
+        return EVENT_FACTORY != null;
+    }
+
+    /**
+     * Creates and begins an event if a recording is running.
+     *
+     * @return the event or null if there is no running recording
+     */
+    static Object begin() {
+        if (!isAvailable()) {
+            return null;
+        }
+
+        try {
+            final Object event = NEW_EVENT.invoke(EVENT_FACTORY);
+
+            if (!(Boolean) IS_ENABLED.invoke(event)) {
+                return null;
+            }
+
+            BEGIN.invoke(event);
+
+            return event;
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            logger.log(Level.FINE, "can't begin the flight recorder event", e);
+
+            return null;
+        }
+    }
+
+    /**
+     * Ends the event and commits it with the values of the operation.
+     *
+     * @param event     event of {@link #begin()}, nothing is done for null
+     * @param operation name of the operation
+     * @param subject   the file or the project
+     * @param items     number of processed items
+     * @param bytes     number of processed bytes
+     * @param success   success of the operation
+     */
+    static void commit(Object event, String operation, String subject, long items, long bytes, boolean success) {
+        if (event == null) {
+            return;
+        }
+
+        try {
+            END.invoke(event);
+
+            if ((Boolean) SHOULD_COMMIT.invoke(event)) {
+                SET.invoke(event, FIELD_OPERATION, operation);
+                SET.invoke(event, FIELD_SUBJECT, subject);
+                SET.invoke(event, FIELD_ITEMS, items);
+                SET.invoke(event, FIELD_BYTES, bytes);
+                SET.invoke(event, FIELD_SUCCESS, success);
+                COMMIT.invoke(event);
+            }
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            logger.log(Level.FINE, "can't commit the flight recorder event", e);
+        }
+    }
+
+} // end of FlightRecorder
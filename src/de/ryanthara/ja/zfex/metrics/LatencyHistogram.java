@@ -0,0 +1,126 @@
+/*
+ * License: MIT. Copyright (c) 2017 by Sebastian Aust (https://www.ryanthara.de/)
+ *
+ * This file is part of the package de.ryanthara.ja.zfex.metrics
+ *
+ * Copyright (c) 2017 ryanthara
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package de.ryanthara.ja.zfex.metrics;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * The <tt>LatencyHistogram</tt> counts latencies in buckets with powers of two as bounds.
+ * <p>
+ * Recording takes no lock, so the copy threads can share one histogram. A percentile is the upper bound of
+ * its bucket, which is at most twice the real value and good enough for finding slow files and slow mounts.
+ *
+ * @author sebastian
+ * @version 1
+ * @since 2
+ */
+public final class LatencyHistogram {
+
+    private static final int BUCKETS = 64;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    private final AtomicLong max = new AtomicLong();
+
+    /**
+     * Returns the number of recorded latencies.
+     *
+     * @return number of latencies
+     */
+    public long getCount() {
+        long count = 0;
+
+        for (int i = 0; i < BUCKETS; i++) {
+            count += counts.get(i);
+        }
+
+        return count;
+    }
+
+    /**
+     * Returns the highest recorded latency.
+     *
+     * @param unit time unit of the result
+     *
+     * @return highest latency
+     */
+    public long getMax(TimeUnit unit) {
+        return unit.convert(max.get(), TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Returns the latency below which the given part of all latencies are.
+     *
+     * @param percentile the percentile between 0 and 100
+     * @param unit       time unit of the result
+     *
+     * @return the latency or 0 if nothing was recorded
+     */
+    public long getPercentile(double percentile, TimeUnit unit) {
+        final long count = getCount();
+
+        if (count == 0) {
+            return 0;
+        }
+
+        final long rank = Math.max(1, (long) Math.ceil(count * percentile / 100));
+        long seen = 0;
+
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += counts.get(i);
+
+            if (seen >= rank) {
+                final long bound = i < BUCKETS - 1 ? (1L << (i + 1)) - 1 : Long.MAX_VALUE;
+
+                return unit.convert(Math.min(bound, max.get()), TimeUnit.NANOSECONDS);
+            }
+        }
+
+        return getMax(unit);
+    }
+
+    /**
+     * Records a latency.
+     *
+     * @param nanos latency in nanoseconds
+     */
+    public void record(long nanos) {
+        final long value = Math.max(0, nanos);
+
+        counts.incrementAndGet(BUCKETS - 1 - Long.numberOfLeadingZeros(value | 1));
+        max.accumulateAndGet(value, Math::max);
+    }
+
+    void reset() {
+        for (int i = 0; i < BUCKETS; i++) {
+            counts.set(i, 0);
+        }
+
+        max.set(0);
+    }
+
+} // end of LatencyHistogram
@@ -0,0 +1,94 @@
+/*
+ * License: MIT. Copyright (c) 2017 by Sebastian Aust (https://www.ryanthara.de/)
+ *
+ * This file is part of the package de.ryanthara.ja.zfex.metrics
+ *
+ * Copyright (c) 2017 ryanthara
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package de.ryanthara.ja.zfex.metrics;
+
+/**
+ * The <tt>Measurement</tt> of one operation, which is started by {@link Metrics#start(String, String)} and
+ * recorded when it is closed.
+ * <p>
+ * A measurement counts as failure unless {@link #succeeded()} is called before it is closed, so an exception
+ * that leaves the try-with-resources block is counted as well.
+ *
+ * @author sebastian
+ * @version 1
+ * @since 2
+ */
+public final class Measurement implements AutoCloseable {
+
+    private final long beginNanos = System.nanoTime();
+    private final Object event;
+    private final OperationMetrics operation;
+    private final String subject;
+    private long bytes;
+    private boolean closed = false;
+    private long items;
+    private boolean success = false;
+
+    Measurement(OperationMetrics operation, String subject) {
+        this.operation = operation;
+        this.subject = subject;
+        this.event = FlightRecorder.begin();
+    }
+
+    /**
+     * Records the measurement. Closing it again does nothing.
+     */
+    @Override
+    public void close() {
+        if (!closed) {
+            closed = true;
+
+            operation.record(beginNanos, System.nanoTime(), items, bytes, success);
+            FlightRecorder.commit(event, operation.getName(), subject, items, bytes, success);
+        }
+    }
+
+    /**
+     * Sets the number of processed bytes.
+     *
+     * @param bytes number of bytes
+     */
+    public void setBytes(long bytes) {
+        this.bytes = bytes;
+    }
+
+    /**
+     * Sets the number of processed items, like viewpoints or files.
+     *
+     * @param items number of items
+     */
+    public void setItems(long items) {
+        this.items = items;
+    }
+
+    /**
+     * Marks the operation as successful.
+     */
+    public void succeeded() {
+        success = true;
+    }
+
+} // end of Measurement
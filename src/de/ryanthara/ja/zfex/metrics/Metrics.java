@@ -0,0 +1,187 @@
+/*
+ * License: MIT. Copyright (c) 2017 by Sebastian Aust (https://www.ryanthara.de/)
+ *
+ * This file is part of the package de.ryanthara.ja.zfex.metrics
+ *
+ * Copyright (c) 2017 ryanthara
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package de.ryanthara.ja.zfex.metrics;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+/**
+ * The <tt>Metrics</tt> registry holds the measurements of all operations and the depths of the queues since
+ * the start of ZFEx or the last reset.
+ * <p>
+ * Every export run has its own registry with the global registry as parent, so the summary of a run shows
+ * only its own measurements, even if several projects are exported at the same time, while the global
+ * registry sums up all of them.
+ * <p>
+ * Every measurement is also a JDK Flight Recorder event if the Java runtime supports it and a recording is
+ * running, for example with the option '-XX:StartFlightRecording'. The summary at the end of an export run
+ * shows where the time went, like a slow network mount with high copy latencies.
+ *
+ * @author sebastian
+ * @version 1
+ * @since 2
+ */
+public final class Metrics {
+
+    /**
+     * Converting a panoramic image, the items are images.
+     */
+    public static final String CONVERT = "convert";
+    /**
+     * Copying an image, the items are files.
+     */
+    public static final String COPY = "copy";
+    /**
+     * Exporting an image folder, the items are files.
+     */
+    public static final String EXPORT = "export";
+    /**
+     * Parsing the project file, the items are viewpoints.
+     */
+    public static final String PARSE = "parse";
+    /**
+     * Loading the viewpoints from the parse cache, the items are viewpoints and a miss counts as failure.
+     */
+    public static final String PARSE_CACHE = "parse cache";
+    /**
+     * Writing the viewer file, the items are viewpoints.
+     */
+    public static final String VIEWER = "viewer";
+    /**
+     * Writing a coordinate file, the items are lines or viewpoints.
+     */
+    public static final String WRITE = "write";
+
+    /**
+     * Images waiting for a conversion thread.
+     */
+    public static final String CONVERT_QUEUE = "convert queue";
+    /**
+     * Files waiting for a copy thread or for their target file store.
+     */
+    public static final String COPY_QUEUE = "copy queue";
+    /**
+     * Chunks of viewpoints waiting for a coordinate exporter.
+     */
+    public static final String WRITE_QUEUE = "write queue";
+
+    private final ConcurrentMap<String, OperationMetrics> operations = new ConcurrentSkipListMap<>();
+    private final ConcurrentMap<String, QueueGauge> queues = new ConcurrentSkipListMap<>();
+    private final Metrics parent;
+
+    /**
+     * Constructs a new registry without parent, like the global one.
+     */
+    public Metrics() {
+        this(null);
+    }
+
+    /**
+     * Constructs a new registry whose measurements and queue entries are added to the parent as well.
+     *
+     * @param parent registry which sums up the measurements, may be null
+     */
+    public Metrics(Metrics parent) {
+        this.parent = parent;
+    }
+
+    /**
+     * Returns true if the measurements are recorded as flight recorder events, too.
+     *
+     * @return true for flight recorder events
+     */
+    public static boolean isFlightRecorderAvailable() {
+        return FlightRecorder.isAvailable();
+    }
+
+    /**
+     * Returns the metrics of the operation with the given name, which are created on the first call.
+     *
+     * @param name name of the operation
+     *
+     * @return metrics of the operation
+     */
+    public OperationMetrics getOperation(String name) {
+        return operations.computeIfAbsent(name, key -> new OperationMetrics(key,
+                parent != null ? parent.getOperation(key) : null));
+    }
+
+    /**
+     * Returns the gauge of the queue with the given name, which is created on the first call.
+     *
+     * @param name name of the queue
+     *
+     * @return gauge of the queue
+     */
+    public QueueGauge getQueue(String name) {
+        return queues.computeIfAbsent(name, key -> new QueueGauge(parent != null ? parent.getQueue(key) : null));
+    }
+
+    /**
+     * Returns a summary with one line per operation and per queue, for example for the log file.
+     *
+     * @return summary of the metrics
+     */
+    public String getSummary() {
+        StringBuilder summary = new StringBuilder();
+
+        summary.append(String.format("%-14s %6s %6s %9s %11s %9s %8s %8s %8s", "operation", "count", "failed",
+                "active ms", "items/s", "MiB/s", "p50 ms", "p95 ms", "max ms"));
+
+        for (OperationMetrics operation : operations.values()) {
+            summary.append(System.lineSeparator()).append(operation);
+        }
+
+        for (Map.Entry<String, QueueGauge> queue : queues.entrySet()) {
+            summary.append(System.lineSeparator()).append(String.format("%-14s depth %d, max depth %d",
+                    queue.getKey(), queue.getValue().getDepth(), queue.getValue().getMaxDepth()));
+        }
+
+        return summary.toString();
+    }
+
+    /**
+     * Clears all measurements and the highest depths of the queues.
+     */
+    public void reset() {
+        operations.values().forEach(OperationMetrics::reset);
+        queues.values().forEach(QueueGauge::reset);
+    }
+
+    /**
+     * Starts the measurement of an operation, which is recorded when it is closed.
+     *
+     * @param operation name of the operation, like {@link #COPY}
+     * @param subject   the file or the project of the operation
+     *
+     * @return the running measurement
+     */
+    public Measurement start(String operation, String subject) {
+        return new Measurement(getOperation(operation), subject);
+    }
+
+} // end of Metrics
@@ -0,0 +1,191 @@
+/*
+ * License: MIT. Copyright (c) 2017 by Sebastian Aust (https://www.ryanthara.de/)
+ *
+ * This file is part of the package de.ryanthara.ja.zfex.metrics
+ *
+ * Copyright (c) 2017 ryanthara
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package de.ryanthara.ja.zfex.metrics;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The <tt>OperationMetrics</tt> sum up all measurements of one operation, like copying a file.
+ * <p>
+ * The rates are related to the time between the begin of the first and the end of the last measurement, so
+ * parallel copies are not counted twice. The measurements of an operation with a parent are added to the
+ * parent operation as well.
+ *
+ * @author sebastian
+ * @version 1
+ * @since 2
+ */
+public final class OperationMetrics {
+
+    private final LongAdder bytes = new LongAdder();
+    private final LongAdder count = new LongAdder();
+    private final LongAdder failures = new LongAdder();
+    private final AtomicLong firstBegin = new AtomicLong(Long.MAX_VALUE);
+    private final LongAdder items = new LongAdder();
+    private final AtomicLong lastEnd = new AtomicLong(Long.MIN_VALUE);
+    private final LatencyHistogram latencies = new LatencyHistogram();
+    private final String name;
+    private final OperationMetrics parent;
+
+    OperationMetrics(String name, OperationMetrics parent) {
+        this.name = name;
+        this.parent = parent;
+    }
+
+    /**
+     * Returns the number of processed bytes.
+     *
+     * @return number of bytes
+     */
+    public long getBytes() {
+        return bytes.sum();
+    }
+
+    /**
+     * Returns the processed bytes per second.
+     *
+     * @return bytes per second or 0 if nothing was measured
+     */
+    public double getBytesPerSecond() {
+        return perSecond(getBytes());
+    }
+
+    /**
+     * Returns the number of measurements.
+     *
+     * @return number of measurements
+     */
+    public long getCount() {
+        return count.sum();
+    }
+
+    /**
+     * Returns the time between the begin of the first and the end of the last measurement.
+     *
+     * @param unit time unit of the result
+     *
+     * @return active time of the operation
+     */
+    public long getDuration(TimeUnit unit) {
+        final long begin = firstBegin.get();
+        final long end = lastEnd.get();
+
+        return end > begin ? unit.convert(end - begin, TimeUnit.NANOSECONDS) : 0;
+    }
+
+    /**
+     * Returns the number of failed measurements.
+     *
+     * @return number of failures
+     */
+    public long getFailures() {
+        return failures.sum();
+    }
+
+    /**
+     * Returns the number of processed items, like viewpoints or files.
+     *
+     * @return number of items
+     */
+    public long getItems() {
+        return items.sum();
+    }
+
+    /**
+     * Returns the processed items per second.
+     *
+     * @return items per second or 0 if nothing was measured
+     */
+    public double getItemsPerSecond() {
+        return perSecond(getItems());
+    }
+
+    /**
+     * Returns the histogram of the latencies of the measurements.
+     *
+     * @return histogram of the latencies
+     */
+    public LatencyHistogram getLatencies() {
+        return latencies;
+    }
+
+    /**
+     * Returns the name of the operation.
+     *
+     * @return name of the operation
+     */
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%-14s %6d %6d %9d %11.1f %9.2f %8d %8d %8d", name, getCount(), getFailures(),
+                getDuration(TimeUnit.MILLISECONDS), getItemsPerSecond(), getBytesPerSecond() / (1024 * 1024),
+                latencies.getPercentile(50, TimeUnit.MILLISECONDS), latencies.getPercentile(95, TimeUnit.MILLISECONDS),
+                latencies.getMax(TimeUnit.MILLISECONDS));
+    }
+
+    /*
+     * Adds a finished measurement.
+     */
+    void record(long beginNanos, long endNanos, long items, long bytes, boolean success) {
+        this.count.increment();
+        this.items.add(items);
+        this.bytes.add(bytes);
+
+        if (!success) {
+            failures.increment();
+        }
+
+        latencies.record(endNanos - beginNanos);
+        firstBegin.accumulateAndGet(beginNanos, Math::min);
+        lastEnd.accumulateAndGet(endNanos, Math::max);
+
+        if (parent != null) {
+            parent.record(beginNanos, endNanos, items, bytes, success);
+        }
+    }
+
+    void reset() {
+        count.reset();
+        failures.reset();
+        items.reset();
+        bytes.reset();
+        latencies.reset();
+        firstBegin.set(Long.MAX_VALUE);
+        lastEnd.set(Long.MIN_VALUE);
+    }
+
+    private double perSecond(long value) {
+        final long nanos = getDuration(TimeUnit.NANOSECONDS);
+
+        return nanos > 0 ? value * 1e9 / nanos : 0;
+    }
+
+} // end of OperationMetrics
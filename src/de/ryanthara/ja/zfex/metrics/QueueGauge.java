@@ -0,0 +1,97 @@
+/*
+ * License: MIT. Copyright (c) 2017 by Sebastian Aust (https://www.ryanthara.de/)
+ *
+ * This file is part of the package de.ryanthara.ja.zfex.metrics
+ *
+ * Copyright (c) 2017 ryanthara
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package de.ryanthara.ja.zfex.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The <tt>QueueGauge</tt> follows the number of files that wait in a queue, for example for a free copy
+ * thread, and remembers the highest number. The entries of a gauge with a parent are counted in the parent
+ * gauge as well.
+ *
+ * @author sebastian
+ * @version 1
+ * @since 2
+ */
+public final class QueueGauge {
+
+    private final AtomicLong depth = new AtomicLong();
+    private final AtomicLong max = new AtomicLong();
+    private final QueueGauge parent;
+
+    QueueGauge(QueueGauge parent) {
+        this.parent = parent;
+    }
+
+    /**
+     * Adds entries to the queue.
+     *
+     * @param entries number of new entries
+     */
+    public void add(long entries) {
+        final long value = depth.addAndGet(entries);
+
+        max.accumulateAndGet(value, Math::max);
+
+        if (parent != null) {
+            parent.add(entries);
+        }
+    }
+
+    /**
+     * Returns the current number of entries in the queue.
+     *
+     * @return current depth
+     */
+    public long getDepth() {
+        return depth.get();
+    }
+
+    /**
+     * Returns the highest number of entries in the queue.
+     *
+     * @return highest depth
+     */
+    public long getMaxDepth() {
+        return max.get();
+    }
+
+    /**
+     * Removes an entry from the queue.
+     */
+    public void remove() {
+        depth.decrementAndGet();
+
+        if (parent != null) {
+            parent.remove();
+        }
+    }
+
+    void reset() {
+        max.set(depth.get());
+    }
+
+} // end of QueueGauge
@@ -0,0 +1,134 @@
+/*
+ * License: MIT. Copyright (c) 2017 by Sebastian Aust (https://www.ryanthara.de/)
+ *
+ * This file is part of the package de.ryanthara.ja.zfex.tools
+ *
+ * Copyright (c) 2017 ryanthara
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package de.ryanthara.ja.zfex.tools;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * BlockingExecutors creates the executors for blocking work like reading the project file or writing files,
+ * which must not run on the JavaFX application thread.
+ * <p>
+ * On a Java runtime with virtual threads every task gets its own virtual thread, so a blocked task does not
+ * hold a platform thread. ZFEx is still built for Java 8, therefore the virtual threads are created by
+ * reflection. On older runtimes a cached pool of daemon threads is used instead.
+ *
+ * @author sebastian
+ * @version 1
+ * @since 2
+ */
+public final class BlockingExecutors {
+
+    private final static Logger logger = Logger.getLogger(BlockingExecutors.class.getName());
+
+    private static final Method NEW_THREAD_PER_TASK_EXECUTOR;
+    private static final Method OF_VIRTUAL;
+    private static final Method BUILDER_NAME;
+    private static final Method BUILDER_FACTORY;
+
+    static {
+        Method newThreadPerTaskExecutor = null;
+        Method ofVirtual = null;
+        Method builderName = null;
+        Method builderFactory = null;
+
+        try {
+            final Class<?> builder = Class.forName("java.lang.Thread$Builder");
+
+            newThreadPerTaskExecutor = Executors.class.getMethod("newThreadPerTaskExecutor", ThreadFactory.class);
+            ofVirtual = Thread.class.getMethod("ofVirtual");
+            builderName = builder.getMethod("name", String.class, long.class);
+            builderFactory = builder.getMethod("factory");
+        } catch (ClassNotFoundException | NoSuchMethodException e) {
+            newThreadPerTaskExecutor = null;
+        }
+
+        NEW_THREAD_PER_TASK_EXECUTOR = newThreadPerTaskExecutor;
+        OF_VIRTUAL = ofVirtual;
+        BUILDER_NAME = builderName;
+        BUILDER_FACTORY = builderFactory;
+    }
+
+    private BlockingExecutors() {
+    }
+
+    /**
+     * Returns true if the Java runtime supports virtual threads.
+     *
+     * @return true for virtual threads
+     */
+    public static boolean isVirtualThreadsAvailable() {
+        return NEW_THREAD_PER_TASK_EXECUTOR != null;
+    }
+
+    /**
+     * Creates an executor which starts a new virtual thread for every task, or a cached pool of daemon threads
+     * if there are no virtual threads. The threads are named with the prefix and a counter.
+     *
+     * @param prefix prefix of the thread names
+     *
+     * @return new executor, which has to be shut down after use
+     */
+    public static ExecutorService newExecutor(String prefix) {
+        if (isVirtualThreadsAvailable()) {
+            try {
+                final Object builder = BUILDER_NAME.invoke(OF_VIRTUAL.invoke(null), prefix + "-", 1L);
+                final ThreadFactory factory = (ThreadFactory) BUILDER_FACTORY.invoke(builder);
+
+                return (ExecutorService) NEW_THREAD_PER_TASK_EXECUTOR.invoke(null, factory);
+            } catch (ReflectiveOperationException | RuntimeException e) {
+                logger.log(Level.WARNING, "can't create virtual threads, platform threads are used", e);
+            }
+        }
+
+        return Executors.newCachedThreadPool(newDaemonThreadFactory(prefix));
+    }
+
+    /**
+     * Creates a factory for platform daemon threads, so running work does not keep ZFEx alive. The threads are
+     * named with the prefix and a counter.
+     *
+     * @param prefix prefix of the thread names
+     *
+     * @return new thread factory
+     */
+    public static ThreadFactory newDaemonThreadFactory(String prefix) {
+        final AtomicInteger counter = new AtomicInteger();
+
+        return runnable -> {
+            Thread thread = new Thread(runnable, prefix + "-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+
+            return thread;
+        };
+    }
+
+} // end of BlockingExecutors
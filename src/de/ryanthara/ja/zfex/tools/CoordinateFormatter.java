@@ -0,0 +1,410 @@
+/*
+ * License: MIT. Copyright (c) 2017 by Sebastian Aust (https://www.ryanthara.de/)
+ *
+ * This file is part of the package de.ryanthara.ja.zfex.tools
+ *
+ * Copyright (c) 2017 ryanthara
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package de.ryanthara.ja.zfex.tools;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+
+/**
+ * The <tt>CoordinateFormatter</tt> formats coordinates into a reusable buffer without creating any object.
+ * <p>
+ * The output is the same as the plain string of {@link BigDecimal#valueOf(double)}: With a number of fraction
+ * digits the value is rounded half up and written with exactly these fraction digits. Without fraction digits
+ * (-1) the shortest decimal which reads back as the same double is written, with at least one fraction digit
+ * below 10<sup>7</sup>. NaN and infinite values are no coordinates and are rejected.
+ * <p>
+ * The value is scaled to a long and written digit by digit. Values close to a rounding tie, values which do not
+ * fit into a long after scaling and values far from common coordinates are formatted with {@link BigDecimal},
+ * which is rare and the only case that creates garbage.
+ * <p>
+ * An instance is not thread safe, every writer uses its own one.
+ *
+ * @author sebastian
+ * @version 1
+ * @since 2
+ */
+public class CoordinateFormatter {
+
+    private static final int MAX_FAST_FRACTION_DIGITS = 12;
+    private static final double MAX_SCALED = 9007199254740992d; // 2^53
+    private static final double[] POWERS_OF_TEN_DOUBLE = new double[19];
+    private static final long[] POWERS_OF_TEN = new long[19];
+
+    static {
+        POWERS_OF_TEN[0] = 1;
+        POWERS_OF_TEN_DOUBLE[0] = 1;
+
+        for (int i = 1; i < POWERS_OF_TEN.length; i++) {
+            POWERS_OF_TEN[i] = POWERS_OF_TEN[i - 1] * 10;
+            POWERS_OF_TEN_DOUBLE[i] = POWERS_OF_TEN[i];
+        }
+    }
+
+    private final int fractionDigits;
+    private byte[] bytes = new byte[32];
+    private char[] chars = new char[32];
+    private int length = 0;
+
+    /**
+     * Constructs a new formatter.
+     *
+     * @param fractionDigits number of fraction digits or -1 for the shortest representation
+     */
+    public CoordinateFormatter(int fractionDigits) {
+        this.fractionDigits = fractionDigits;
+    }
+
+    /**
+     * Returns the number of fraction digits.
+     *
+     * @return number of fraction digits or -1 for the shortest representation
+     */
+    public int getFractionDigits() {
+        return fractionDigits;
+    }
+
+    /**
+     * Formats a value into the internal buffer, which can be read with {@link #getBytes(byte[], int)} until
+     * the next value is formatted.
+     *
+     * @param value coordinate value
+     *
+     * @return length of the formatted value
+     *
+     * @throws IllegalArgumentException if the value is NaN or infinite
+     */
+    public int format(double value) {
+        return format(value, fractionDigits);
+    }
+
+    /**
+     * Formats a value with another number of fraction digits than the one of this formatter into the internal
+     * buffer, for example with the number of fraction digits of the coordinate in the project file.
+     *
+     * @param value          coordinate value
+     * @param fractionDigits number of fraction digits or -1 for the shortest representation
+     *
+     * @return length of the formatted value
+     *
+     * @throws IllegalArgumentException if the value is NaN or infinite
+     */
+    public int format(double value, int fractionDigits) {
+        if (!Double.isFinite(value)) {
+            throw new IllegalArgumentException("coordinate is not a finite number: " + value);
+        }
+
+        length = 0;
+
+        final boolean formatted = fractionDigits < 0
+                ? formatShortest(value) : formatFixed(value, fractionDigits);
+
+        if (!formatted) {
+            formatDecimal(value, fractionDigits);
+        }
+
+        return length;
+    }
+
+    /**
+     * Puts an already formatted coordinate, like the string of the project file, into the internal buffer.
+     *
+     * @param text formatted coordinate with ascii characters
+     *
+     * @return length of the coordinate
+     */
+    public int format(CharSequence text) {
+        length = 0;
+        ensureCapacity(text.length());
+
+        for (int i = 0; i < text.length(); i++) {
+            bytes[length++] = (byte) text.charAt(i);
+        }
+
+        return length;
+    }
+
+    /**
+     * Compares the last formatted value with a string.
+     *
+     * @param text string to compare with
+     *
+     * @return true if the last formatted value is the same as the string
+     */
+    public boolean contentEquals(CharSequence text) {
+        if (text.length() != length) {
+            return false;
+        }
+
+        for (int i = 0; i < length; i++) {
+            if (bytes[i] != text.charAt(i)) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * Copies the last formatted value as ascii bytes into a buffer.
+     *
+     * @param target target buffer with space for the length of the value
+     * @param offset offset in the target buffer
+     */
+    public void getBytes(byte[] target, int offset) {
+        System.arraycopy(bytes, 0, target, offset, length);
+    }
+
+    /**
+     * Formats a value into a byte buffer.
+     *
+     * @param value  coordinate value
+     * @param target target buffer
+     * @param offset offset in the target buffer
+     *
+     * @return offset behind the formatted value
+     *
+     * @throws IndexOutOfBoundsException if the value does not fit into the target buffer
+     */
+    public int format(double value, byte[] target, int offset) {
+        final int count = format(value);
+
+        if (count > target.length - offset) {
+            throw new IndexOutOfBoundsException("no space for " + count + " bytes at offset " + offset);
+        }
+
+        getBytes(target, offset);
+
+        return offset + count;
+    }
+
+    /**
+     * Formats a value and writes it into a {@link Writer}.
+     *
+     * @param value  coordinate value
+     * @param writer writer for the formatted value
+     *
+     * @throws IOException if the value could not be written
+     */
+    public void write(double value, Writer writer) throws IOException {
+        format(value);
+        write(writer);
+    }
+
+    /**
+     * Writes the last formatted value into a {@link Writer}.
+     *
+     * @param writer writer for the formatted value
+     *
+     * @throws IOException if the value could not be written
+     */
+    public void write(Writer writer) throws IOException {
+        writer.write(toChars(), 0, length);
+    }
+
+    /**
+     * Formats a value and appends it to a {@link StringBuilder}.
+     *
+     * @param value   coordinate value
+     * @param builder builder for the formatted value
+     */
+    public void append(double value, StringBuilder builder) {
+        format(value);
+        append(builder);
+    }
+
+    /**
+     * Appends the last formatted value to a {@link StringBuilder}.
+     *
+     * @param builder builder for the formatted value
+     */
+    public void append(StringBuilder builder) {
+        builder.append(toChars(), 0, length);
+    }
+
+    /**
+     * Formats a value into a new string, which is meant for single values only.
+     *
+     * @param value coordinate value
+     *
+     * @return formatted value
+     */
+    public String toString(double value) {
+        format(value);
+
+        return new String(toChars(), 0, length);
+    }
+
+    /*
+     * Returns the internal char buffer with the last formatted value.
+     */
+    private char[] toChars() {
+        if (chars.length < length) {
+            chars = new char[bytes.length];
+        }
+
+        for (int i = 0; i < length; i++) {
+            chars[i] = (char) bytes[i];
+        }
+
+        return chars;
+    }
+
+    /*
+     * The value is scaled to a long and rounded half up, which is the same as rounding the shortest decimal
+     * representation unless the value is close to a rounding tie.
+     */
+    private boolean formatFixed(double value, int fractionDigits) {
+        if (fractionDigits > MAX_FAST_FRACTION_DIGITS) {
+            return false;
+        }
+
+        final double scaled = Math.abs(value) * POWERS_OF_TEN_DOUBLE[fractionDigits];
+
+        if (!(scaled < 1e15)) {
+            return false;
+        }
+
+        final double floor = Math.floor(scaled);
+        final double fraction = scaled - floor;
+
+        if (Math.abs(fraction - 0.5) <= 4 * Math.ulp(scaled) + 1e-7) {
+            return false;
+        }
+
+        final long rounded = (long) floor + (fraction > 0.5 ? 1 : 0);
+
+        writeScaled(value < 0 && rounded != 0, rounded, fractionDigits);
+
+        return true;
+    }
+
+    /*
+     * Searches the smallest number of fraction digits whose rounded value reads back as the same double. The
+     * division of two exact doubles is rounded correctly, so it is the same as parsing the decimal.
+     */
+    private boolean formatShortest(double value) {
+        final double abs = Math.abs(value);
+
+        if (!(abs >= 1e-3 && abs < 1e15)) {
+            return false;
+        }
+
+        for (int digits = abs < 1e7 ? 1 : 0; digits < POWERS_OF_TEN.length; digits++) {
+            final double scaled = abs * POWERS_OF_TEN_DOUBLE[digits];
+
+            if (scaled >= MAX_SCALED) {
+                return false;
+            }
+
+            final long rounded = Math.round(scaled);
+
+            if (rounded / POWERS_OF_TEN_DOUBLE[digits] == abs) {
+                writeScaled(value < 0, rounded, digits);
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    /*
+     * Formats the value with BigDecimal, which is the reference for the fast paths.
+     */
+    private void formatDecimal(double value, int fractionDigits) {
+        BigDecimal decimal = BigDecimal.valueOf(value);
+
+        if (fractionDigits >= 0) {
+            decimal = decimal.setScale(fractionDigits, RoundingMode.HALF_UP);
+        } else {
+            // the plain string of 1.0E-5 is 0.000010, so strip the zeros down to the digits of the fast path
+            decimal = decimal.stripTrailingZeros();
+
+            if (decimal.scale() < 1 && Math.abs(value) < 1e7) {
+                decimal = decimal.setScale(1);
+            }
+        }
+
+        final String s = decimal.toPlainString();
+
+        ensureCapacity(s.length());
+
+        for (int i = 0; i < s.length(); i++) {
+            bytes[length++] = (byte) s.charAt(i);
+        }
+    }
+
+    /*
+     * Writes a scaled long value with the given number of fraction digits.
+     */
+    private void writeScaled(boolean negative, long scaled, int digits) {
+        ensureCapacity(21 + digits);
+
+        if (negative) {
+            bytes[length++] = '-';
+        }
+
+        final long integer = scaled / POWERS_OF_TEN[digits];
+        final long fraction = scaled % POWERS_OF_TEN[digits];
+
+        writeDigits(integer, 1);
+
+        if (digits > 0) {
+            bytes[length++] = '.';
+            writeDigits(fraction, digits);
+        }
+    }
+
+    /*
+     * Writes the digits of a non negative value with at least the given number of digits.
+     */
+    private void writeDigits(long value, int minDigits) {
+        int digits = 1;
+
+        while (digits < POWERS_OF_TEN.length && value >= POWERS_OF_TEN[digits]) {
+            digits++;
+        }
+
+        digits = Math.max(digits, minDigits);
+
+        for (int i = length + digits - 1; i >= length; i--) {
+            bytes[i] = (byte) ('0' + value % 10);
+            value /= 10;
+        }
+
+        length += digits;
+    }
+
+    private void ensureCapacity(int count) {
+        if (bytes.length < length + count) {
+            byte[] larger = new byte[Math.max(2 * bytes.length, length + count)];
+            System.arraycopy(bytes, 0, larger, 0, length);
+            bytes = larger;
+        }
+    }
+
+} // end of CoordinateFormatter
@@ -0,0 +1,116 @@
+/*
+ * License: MIT. Copyright (c) 2017 by Sebastian Aust (https://www.ryanthara.de/)
+ *
+ * This file is part of the package de.ryanthara.ja.zfex.tools
+ *
+ * Copyright (c) 2017 ryanthara
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package de.ryanthara.ja.zfex.tools;
+
+import de.ryanthara.ja.zfex.data.AffineTransformation;
+import de.ryanthara.ja.zfex.data.ViewpointTable;
+
+import java.util.stream.IntStream;
+
+/**
+ * The <tt>TransformationEngine</tt> transforms all viewpoints of a {@link ViewpointTable} into a superior
+ * coordinate system in one batch.
+ * <p>
+ * The rows are split into blocks which are transformed in parallel on the common fork join pool. Inside
+ * of a block the coordinate columns are processed in a plain loop over primitive arrays without any
+ * dependencies between the iterations, which the JIT compiler can turn into SIMD instructions.
+ *
+ * @author sebastian
+ * @version 1
+ * @since 2
+ */
+public class TransformationEngine {
+
+    private static final int BLOCK_SIZE = 4096;
+
+    private final AffineTransformation transformation;
+
+    /**
+     * Constructs a new engine for the given transformation.
+     *
+     * @param transformation transformation into the superior coordinate system
+     */
+    public TransformationEngine(AffineTransformation transformation) {
+        this.transformation = transformation;
+    }
+
+    /**
+     * Transforms the coordinates and the register matrices of all rows of the table in place.
+     *
+     * @param viewpoints table to be transformed
+     */
+    public void transform(ViewpointTable viewpoints) {
+        final int size = viewpoints.size();
+        final int blocks = (size + BLOCK_SIZE - 1) / BLOCK_SIZE;
+
+        final double[] x = viewpoints.getXColumn();
+        final double[] y = viewpoints.getYColumn();
+        final double[] z = viewpoints.getZColumn();
+        final double[] rotations = viewpoints.getRotationColumn();
+
+        IntStream range = IntStream.range(0, blocks);
+
+        if (blocks > 1) {
+            range = range.parallel();
+        }
+
+        range.forEach(block -> {
+            final int from = block * BLOCK_SIZE;
+            final int to = Math.min(from + BLOCK_SIZE, size);
+
+            transformCoordinates(x, y, z, from, to);
+
+            for (int i = from; i < to; i++) {
+                transformation.transformRotation(rotations, i * ViewpointTable.ROTATION_SIZE);
+            }
+        });
+
+        viewpoints.clearCoordinateTexts();
+    }
+
+    /*
+     * Transforms the coordinate columns in the range [from, to).
+     */
+    private void transformCoordinates(double[] x, double[] y, double[] z, int from, int to) {
+        final double m00 = transformation.get(0, 0), m01 = transformation.get(0, 1);
+        final double m02 = transformation.get(0, 2), m03 = transformation.get(0, 3);
+        final double m10 = transformation.get(1, 0), m11 = transformation.get(1, 1);
+        final double m12 = transformation.get(1, 2), m13 = transformation.get(1, 3);
+        final double m20 = transformation.get(2, 0), m21 = transformation.get(2, 1);
+        final double m22 = transformation.get(2, 2), m23 = transformation.get(2, 3);
+
+        for (int i = from; i < to; i++) {
+            final double xi = x[i];
+            final double yi = y[i];
+            final double zi = z[i];
+
+            x[i] = m00 * xi + m01 * yi + m02 * zi + m03;
+            y[i] = m10 * xi + m11 * yi + m12 * zi + m13;
+            z[i] = m20 * xi + m21 * yi + m22 * zi + m23;
+        }
+    }
+
+} // end of TransformationEngine